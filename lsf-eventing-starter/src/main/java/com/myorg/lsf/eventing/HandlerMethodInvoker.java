@@ -1,41 +1,171 @@
 package com.myorg.lsf.eventing;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.myorg.lsf.contracts.core.envelope.EventEnvelope;
-import lombok.AllArgsConstructor;
-import lombok.Data;
+import com.myorg.lsf.eventing.serde.LazyEventEnvelope;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
 
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaConversionException;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 
-@Data
-@AllArgsConstructor
-//Sử dụng Java Reflection để gọi hàm của developer.hỗ trợ cả 2 kiểu viết hàm:
+//Gọi hàm của developer, hỗ trợ cả 2 kiểu viết hàm:
 // chỉ nhận payload (1 tham số) hoặc
 // nhận cả vỏ bọc EventEnvelope lẫn payload (2 tham số).
+// Số tham số được xác định 1 lần lúc đăng ký; method được biên dịch thành lời gọi trực tiếp
+// (LambdaMetafactory, bean gắn sẵn), không còn Method.invoke cho mỗi event.
+// Payload được bind bằng ObjectReader cache sẵn cho class payload; với LazyEventEnvelope thì
+// bind thẳng từ byte, không qua JsonNode.
+@Slf4j
+@Getter
 public class HandlerMethodInvoker {
     private final Object target;
     private final Method method;
     private final Class<?> payloadClass;
     private final ObjectMapper mapper;
+    private final ObjectReader payloadReader;
+
+    // đúng 1 trong 2 khác null
+    private final PayloadCall payloadCall;
+    private final EnvelopeCall envelopeCall;
+
+    /** handle(Payload p), bean đã gắn sẵn. Public: lớp lambda sinh ra nằm trong package của handler. */
+    @FunctionalInterface
+    public interface PayloadCall {
+        void call(Object payload) throws Exception;
+    }
+
+    /** handle(EventEnvelope env, Payload p), bean đã gắn sẵn. */
+    @FunctionalInterface
+    public interface EnvelopeCall {
+        void call(EventEnvelope env, Object payload) throws Exception;
+    }
+
+    public HandlerMethodInvoker(Object target, Method method, Class<?> payloadClass, ObjectMapper mapper) {
+        this.target = target;
+        this.method = method;
+        this.payloadClass = payloadClass;
+        this.mapper = mapper;
+        this.payloadReader = mapper.readerFor(payloadClass);
+
+        int params = method.getParameterCount();
+        if (params == 1) {
+            this.payloadCall = (PayloadCall) compile(target, method, PayloadCall.class,
+                    MethodType.methodType(void.class, Object.class));
+            this.envelopeCall = null;
+        } else if (params == 2 && method.getParameterTypes()[0].isAssignableFrom(EventEnvelope.class)) {
+            this.payloadCall = null;
+            this.envelopeCall = (EnvelopeCall) compile(target, method, EnvelopeCall.class,
+                    MethodType.methodType(void.class, EventEnvelope.class, Object.class));
+        } else {
+            throw new IllegalStateException("Handler method must have 1 or 2 params: (payload) or (envelope,payload): " + method);
+        }
+    }
 
     public void invoke(EventEnvelope env) {
+        Object payloadObj;
         try {
-            Object payloadObj = mapper.treeToValue(env.getPayload(), payloadClass);
-
-            // Hỗ trợ 2 signature:
-            // 1) handle(Payload p)
-            // 2) handle(EventEnvelope env, Payload p)
-            if (method.getParameterCount() == 1) {
-                method.invoke(target, payloadObj);
-                return;
+            if (env instanceof LazyEventEnvelope lazy) {
+                payloadObj = lazy.readPayload(payloadReader);
+            } else {
+                JsonNode node = env.getPayload();
+                payloadObj = node == null ? null : payloadReader.readValue(node);
             }
-            if (method.getParameterCount() == 2) {
-                method.invoke(target, env, payloadObj);
-                return;
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to convert payload for handler: " + method, e);
+        }
+
+        try {
+            if (payloadCall != null) {
+                payloadCall.call(payloadObj);
+            } else {
+                envelopeCall.call(env, payloadObj);
             }
-            throw new IllegalStateException("Handler method must have 1 or 2 params: (payload) or (envelope,payload)");
+        } catch (RuntimeException e) {
+            // giữ nguyên exception của handler (vd LsfRetryableException) cho error handler phân loại
+            throw e;
         } catch (Exception e) {
             throw new RuntimeException("Failed to invoke handler: " + method, e);
         }
     }
+
+    private static Object compile(Object target, Method method, Class<?> callType, MethodType callSignature) {
+        MethodHandle handle;
+        MethodHandles.Lookup lookup;
+        try {
+            lookup = MethodHandles.privateLookupIn(method.getDeclaringClass(), MethodHandles.lookup());
+            handle = lookup.unreflect(method);
+        } catch (IllegalAccessException e) {
+            // module không mở cho starter: vẫn gọi được qua MethodHandle sau setAccessible
+            log.warn("LSF handler {} is called through a MethodHandle, not a direct-call lambda: {}", method, e.toString());
+            lookup = null;
+            handle = unreflectAccessible(method);
+        }
+
+        boolean isStatic = Modifier.isStatic(method.getModifiers());
+        if (lookup != null) {
+            try {
+                // bean được capture vào lambda: target.method(payload) là lời gọi trực tiếp JIT inline được
+                CallSite site = LambdaMetafactory.metafactory(
+                        lookup,
+                        "call",
+                        isStatic ? MethodType.methodType(callType) : MethodType.methodType(callType, method.getDeclaringClass()),
+                        callSignature,
+                        handle,
+                        MethodType.methodType(void.class, method.getParameterTypes()));
+                return isStatic ? site.getTarget().invoke() : site.getTarget().invoke(target);
+            } catch (LambdaConversionException | LinkageError e) {
+                // classloader của handler không thấy interface của starter, ...: dùng MethodHandle.
+                // Chỉ chạy 1 lần lúc đăng ký handler nên WARN không lặp lại theo event.
+                log.warn("LSF handler {} is called through a MethodHandle, not a direct-call lambda: {}", method, e.toString());
+                log.debug("LambdaMetafactory failure for {}", method, e);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException("Cannot create call for handler method: " + method, e);
+            }
+        }
+        return viaMethodHandle(isStatic ? handle : handle.bindTo(target), callType, callSignature);
+    }
+
+    private static Object viaMethodHandle(MethodHandle bound, Class<?> callType, MethodType callSignature) {
+        MethodHandle exact = bound.asType(callSignature);
+        if (callType == PayloadCall.class) {
+            return (PayloadCall) payload -> {
+                try {
+                    exact.invokeExact(payload);
+                } catch (Exception | Error e) {
+                    throw e;
+                } catch (Throwable t) {
+                    throw new IllegalStateException(t);
+                }
+            };
+        }
+        return (EnvelopeCall) (env, payload) -> {
+            try {
+                exact.invokeExact(env, payload);
+            } catch (Exception | Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new IllegalStateException(t);
+            }
+        };
+    }
+
+    private static MethodHandle unreflectAccessible(Method method) {
+        try {
+            method.setAccessible(true);
+            return MethodHandles.lookup().unreflect(method);
+        } catch (RuntimeException | IllegalAccessException e) {
+            throw new IllegalStateException("Handler method is not accessible: " + method, e);
+        }
+    }
 }
@@ -3,6 +3,7 @@ package com.myorg.lsf.eventing;
 import com.myorg.lsf.contracts.core.envelope.EventEnvelope;
 import com.myorg.lsf.eventing.context.LsfDispatchOutcome;
 import com.myorg.lsf.eventing.idempotency.IdempotencyStore;
+import com.myorg.lsf.eventing.idempotency.PreAcquiredLease;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 //Sử dụng Design Pattern "Decorator". Nó bọc bên ngoài DefaultLsfDispatcher.
@@ -25,7 +26,9 @@ public class IdempotentLsfDispatcher implements LsfDispatcher {
             return;
         }
 
-        IdempotencyStore.Lease lease = store.tryBeginProcessing(eventId);
+        // PreDispatchFilter đã lấy lease từ header lsf-event-id thì dùng luôn, không hỏi store lần 2
+        IdempotencyStore.Lease lease = PreAcquiredLease.take(eventId);
+        if (lease == null) lease = store.tryBeginProcessing(eventId);
 
         if (lease.decision() == IdempotencyStore.Decision.DUPLICATE) {
             LsfDispatchOutcome.markDuplicate();
@@ -3,18 +3,23 @@ package com.myorg.lsf.eventing;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.myorg.lsf.contracts.core.envelope.EventEnvelope;
+import com.myorg.lsf.eventing.serde.LsfEnvelopeDeserializer;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.springframework.kafka.support.KafkaNull;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
-//cố gắng convert mọi dạng dữ liệu (JsonNode, Map, String)
+//cố gắng convert mọi dạng dữ liệu (JsonNode, Map, String, byte[])
 // thành EventEnvelope chuẩn để hệ thống có thể đọc hiểu.
+// byte[]/String đi qua LsfEnvelopeDeserializer: payload giữ dạng byte, handler bind thẳng.
 public class JacksonPayloadConverter implements PayloadConverter {
 
     private final ObjectMapper mapper;
+    private final LsfEnvelopeDeserializer envelopeReader;
 
     public JacksonPayloadConverter(ObjectMapper mapper) {
         this.mapper = mapper;
+        this.envelopeReader = new LsfEnvelopeDeserializer(mapper);
     }
 
     @Override
@@ -31,8 +36,11 @@ public class JacksonPayloadConverter implements PayloadConverter {
             if (value instanceof Map<?, ?> map) {
                 return mapper.convertValue(map, EventEnvelope.class);
             }
+            if (value instanceof byte[] bytes) {
+                return bytes.length == 0 ? null : envelopeReader.read(bytes);
+            }
             if (value instanceof String s) {
-                return mapper.readValue(s, EventEnvelope.class);
+                return envelopeReader.read(s.getBytes(StandardCharsets.UTF_8));
             }
 
             // fallback: cố convert mọi kiểu object khác
@@ -0,0 +1,11 @@
+package com.myorg.lsf.eventing;
+
+/**
+ * Chuyển context của thread container (observation, ...) sang thread chạy handler khi dispatch song song
+ * ({@code lsf.eventing.listener.parallel}). {@link #wrap} được gọi trên thread container: chụp context ở đó,
+ * runnable trả về khôi phục nó trên thread worker rồi dọn khi xong. MDC đã được listener tự chép.
+ */
+@FunctionalInterface
+public interface LsfContextPropagator {
+    Runnable wrap(Runnable task);
+}
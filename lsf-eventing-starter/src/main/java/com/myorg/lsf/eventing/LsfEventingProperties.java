@@ -7,7 +7,9 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
 
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @Data
 @NoArgsConstructor
@@ -28,6 +30,38 @@ public class LsfEventingProperties {
     @Data
     public static class Listener {
         private boolean enabled = true;
+        /**
+         * true: consumerFactory dùng {@code LsfEnvelopeDeserializer} thay cho deserializer JSON Schema,
+         * value là EventEnvelope với payload giữ dạng byte, handler bind thẳng vào class payload
+         * (không dựng JsonNode). Áp dụng cho mọi listener dùng consumerFactory mặc định.
+         */
+        private boolean streamingEnvelope = false;
+        /**
+         * Lọc record theo header lsf-event-type / lsf-event-id trước khi đọc value:
+         * eventType không có handler (khi ignoreUnknownEventType=true) và eventId trùng bị bỏ luôn.
+         * Tắt mặc định: record trùng / đang xử lý không còn đi qua dispatcher chain (LsfDispatcher bọc ngoài
+         * không thấy chúng), chỉ được báo qua LsfSkippedRecordListener.
+         */
+        private boolean headerFilter = false;
+        private Parallel parallel = new Parallel();
+    }
+
+    @Data
+    public static class Parallel {
+        // bật batch listener song song theo key (cần lsf.kafka.consumer.batch=true)
+        private boolean enabled = false;
+        // key: Kafka record key | aggregate-id: EventEnvelope.aggregateId (fallback record key)
+        // | none: mỗi record chạy riêng, không giữ thứ tự theo key
+        private String groupBy = "key";
+        // số thread của pool cố định = số nhóm key chạy cùng lúc trong 1 batch. Không dùng khi virtual-threads=true
+        private int maxConcurrency = 16;
+        // true: mỗi nhóm key chạy trên 1 virtual thread thay vì pool cố định, giới hạn bằng max-in-flight
+        private boolean virtualThreads = false;
+        // số record đang chạy handler tối đa, chung mọi thread của container; record phải chờ thì partition của nó
+        // bị pause tới khi còn một nửa. 0 = không giới hạn
+        private int maxInFlight = 0;
+        // giới hạn riêng theo eventType, vd "[booking.created]": 20
+        private Map<String, Integer> handlerMaxInFlight = new HashMap<>();
     }
 
     @Data
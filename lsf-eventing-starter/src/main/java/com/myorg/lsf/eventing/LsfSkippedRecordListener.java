@@ -0,0 +1,16 @@
+package com.myorg.lsf.eventing;
+
+/**
+ * Được gọi cho mỗi record bị {@link PreDispatchFilter} bỏ qua trước khi parse envelope
+ * (lsf-observability-starter đếm bằng metric {@code lsf.event.skipped}).
+ */
+@FunctionalInterface
+public interface LsfSkippedRecordListener {
+
+    /**
+     * @param eventType giá trị header lsf-event-type (có thể null)
+     * @param reason    {@link PreDispatchFilter#UNHANDLED_TYPE}, {@link PreDispatchFilter#DUPLICATE}
+     *                  hoặc {@link PreDispatchFilter#IN_FLIGHT}
+     */
+    void onSkipped(String eventType, String reason);
+}
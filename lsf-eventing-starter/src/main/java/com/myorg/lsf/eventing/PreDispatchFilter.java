@@ -0,0 +1,85 @@
+package com.myorg.lsf.eventing;
+
+import com.myorg.lsf.eventing.context.LsfDispatchOutcome;
+import com.myorg.lsf.eventing.idempotency.IdempotencyStore;
+import com.myorg.lsf.eventing.idempotency.PreAcquiredLease;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+
+//Lọc record theo header Kafka (lsf-event-type, lsf-event-id do DefaultLsfPublisher ghi) trước khi
+// đụng tới value: eventType không có handler thì bỏ luôn, eventId đã xử lý / đang xử lý thì bỏ.
+// Record không có header đi tiếp như cũ (dispatcher tự quyết).
+@Slf4j
+public class PreDispatchFilter {
+
+    public static final String UNHANDLED_TYPE = "unhandled_type";
+    public static final String DUPLICATE = LsfDispatchOutcome.DUPLICATE;
+    public static final String IN_FLIGHT = LsfDispatchOutcome.IN_FLIGHT;
+
+    private final HandlerRegistry registry;
+    private final boolean ignoreUnknown;
+    private final IdempotencyStore store; // null = không dedup
+    private final List<LsfSkippedRecordListener> listeners;
+
+    public PreDispatchFilter(HandlerRegistry registry, boolean ignoreUnknown, IdempotencyStore store,
+                             List<LsfSkippedRecordListener> listeners) {
+        this.registry = registry;
+        this.ignoreUnknown = ignoreUnknown;
+        this.store = store;
+        this.listeners = List.copyOf(listeners);
+    }
+
+    /**
+     * true: dispatch record này. Khi có dedup và lấy được lease, lease được giữ cho
+     * IdempotentLsfDispatcher; người gọi phải gọi {@link #afterDispatch()} trong finally.
+     */
+    public boolean admit(String eventType, String eventId) {
+        // ignoreUnknown=false: để dispatcher ném UnknownEventTypeException như cũ
+        if (eventType != null && ignoreUnknown && registry.get(eventType) == null) {
+            log.debug("Skip eventType={} eventId={}: no handler", eventType, eventId);
+            skipped(eventType, UNHANDLED_TYPE);
+            return false;
+        }
+
+        if (store == null || eventId == null || eventId.isBlank()) return true;
+
+        IdempotencyStore.Lease lease = store.tryBeginProcessing(eventId);
+        switch (lease.decision()) {
+            case DUPLICATE -> {
+                log.info("Skip duplicate eventId={} eventType={}", eventId, eventType);
+                skipped(eventType, DUPLICATE);
+                return false;
+            }
+            case IN_FLIGHT -> {
+                log.info("Skip in-flight eventId={} eventType={}", eventId, eventType);
+                skipped(eventType, IN_FLIGHT);
+                return false;
+            }
+            default -> {
+                PreAcquiredLease.hold(eventId, lease);
+                return true;
+            }
+        }
+    }
+
+    /** Trả lại lease nếu dispatcher không dùng tới (convert lỗi, eventId trong envelope khác header, ...). */
+    public void afterDispatch() {
+        if (store == null) return;
+        try {
+            PreAcquiredLease.releaseUnused(store);
+        } catch (Exception ex) {
+            log.debug("Failed to release unused processing lease", ex);
+        }
+    }
+
+    private void skipped(String eventType, String reason) {
+        for (LsfSkippedRecordListener l : listeners) {
+            try {
+                l.onSkipped(eventType, reason);
+            } catch (RuntimeException ex) {
+                log.debug("LsfSkippedRecordListener failed", ex);
+            }
+        }
+    }
+}
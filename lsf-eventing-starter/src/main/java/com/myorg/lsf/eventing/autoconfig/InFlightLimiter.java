@@ -0,0 +1,116 @@
+package com.myorg.lsf.eventing.autoconfig;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.TopicPartition;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//Giới hạn số record đang chạy handler: toàn cục (chung mọi thread của container) và theo eventType.
+// Thread worker (thường là virtual thread) chờ permit nên chờ rẻ. Record nào phải chờ permit toàn cục thì
+// partition của nó bị pause ngay lúc đó (container vẫn poll để giữ membership nhưng không lấy record mới
+// của partition nóng); các partition bị pause được resume khi số đang chạy giảm còn một nửa.
+@Slf4j
+public class InFlightLimiter {
+
+    private final int maxInFlight;        // 0 = không giới hạn toàn cục
+    private final Semaphore global;       // null khi maxInFlight = 0
+    private final Map<String, Semaphore> perHandler = new HashMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final Set<TopicPartition> paused = ConcurrentHashMap.newKeySet();
+    private volatile Pausable container; // null: không pause được (chưa gắn container)
+
+    /** Partition được pause khi bão hoà (thường là MessageListenerContainer::pausePartition / ::resumePartition). */
+    public interface Pausable {
+        void pause(TopicPartition partition);
+        void resume(TopicPartition partition);
+    }
+
+    public InFlightLimiter(int maxInFlight, Map<String, Integer> handlerMaxInFlight) {
+        if (maxInFlight < 0) {
+            throw new IllegalStateException("lsf.eventing.listener.parallel.max-in-flight must be >= 0");
+        }
+        this.maxInFlight = maxInFlight;
+        this.global = maxInFlight > 0 ? new Semaphore(maxInFlight) : null;
+        if (handlerMaxInFlight != null) {
+            handlerMaxInFlight.forEach((eventType, limit) -> {
+                if (limit == null || limit < 1) {
+                    throw new IllegalStateException(
+                            "lsf.eventing.listener.parallel.handler-max-in-flight." + eventType + " must be >= 1");
+                }
+                perHandler.put(eventType, new Semaphore(limit));
+            });
+        }
+    }
+
+    public void attach(Pausable container) {
+        this.container = container;
+    }
+
+    /**
+     * Chờ tới khi có chỗ cho 1 record {@code eventType} (null = không rõ loại, chỉ tính giới hạn toàn cục).
+     * Hết permit toàn cục thì pause {@code partition} của record (null = không pause) trước khi chờ.
+     */
+    public void acquire(String eventType, TopicPartition partition) throws InterruptedException {
+        Semaphore handler = eventType == null ? null : perHandler.get(eventType);
+        if (handler != null) handler.acquire();
+        if (global != null && !global.tryAcquire()) {
+            pause(partition);
+            try {
+                global.acquire();
+            } catch (InterruptedException e) {
+                if (handler != null) handler.release();
+                throw e;
+            }
+        }
+        inFlight.incrementAndGet();
+    }
+
+    public void release(String eventType) {
+        int now = inFlight.decrementAndGet();
+        if (global != null) global.release();
+        Semaphore handler = eventType == null ? null : perHandler.get(eventType);
+        if (handler != null) handler.release();
+
+        if (now <= maxInFlight / 2 && !paused.isEmpty()) resumeAll(now);
+    }
+
+    // pause / resume chạy tuần tự: lệnh resume không được đi trước lệnh pause của cùng partition
+    private synchronized void pause(TopicPartition partition) {
+        Pausable c = container;
+        if (c == null || partition == null || !paused.add(partition)) return;
+        log.info("lsf dispatch in-flight reached {}: pause partition {}", maxInFlight, partition);
+        c.pause(partition);
+        // release có thể đã chạy hết giữa lúc hết permit và lúc pause
+        int now = inFlight.get();
+        if (now <= maxInFlight / 2) resumeAll(now);
+    }
+
+    private synchronized void resumeAll(int now) {
+        Pausable c = container;
+        for (TopicPartition partition : paused) {
+            if (paused.remove(partition) && c != null) {
+                log.info("lsf dispatch in-flight={} <= {}: resume partition {}", now, maxInFlight / 2, partition);
+                c.resume(partition);
+            }
+        }
+    }
+
+    /** Số record đang chạy tối đa, chung mọi thread của container (0 = không giới hạn). */
+    public int maxInFlight() {
+        return maxInFlight;
+    }
+
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    public Set<TopicPartition> pausedPartitions() {
+        return Set.copyOf(paused);
+    }
+}
@@ -0,0 +1,34 @@
+package com.myorg.lsf.eventing.autoconfig;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.myorg.lsf.eventing.serde.LsfEnvelopeDeserializer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+
+//lsf.eventing.listener.streaming-envelope=true:
+// thay value deserializer của consumerFactory (bean của lsf-kafka-starter) bằng LsfEnvelopeDeserializer,
+// các config khác (bootstrap, group, max.poll...) giữ nguyên.
+@Slf4j
+@RequiredArgsConstructor
+public class LsfEnvelopeDeserializerPostProcessor implements BeanPostProcessor {
+
+    static final String CONSUMER_FACTORY_BEAN = "consumerFactory";
+
+    private final ObjectProvider<ObjectMapper> mapper;
+
+    @Override
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (CONSUMER_FACTORY_BEAN.equals(beanName) && bean instanceof DefaultKafkaConsumerFactory<?, ?> cf) {
+            ObjectMapper m = mapper.getIfAvailable(() -> new ObjectMapper().findAndRegisterModules());
+            ((DefaultKafkaConsumerFactory) cf).setValueDeserializerSupplier(
+                    () -> (Deserializer) new LsfEnvelopeDeserializer(m));
+            log.info("lsf.eventing.listener.streaming-envelope=true: {} reads values with LsfEnvelopeDeserializer", beanName);
+        }
+        return bean;
+    }
+}
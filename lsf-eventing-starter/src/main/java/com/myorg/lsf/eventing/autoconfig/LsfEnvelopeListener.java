@@ -1,22 +1,37 @@
 package com.myorg.lsf.eventing.autoconfig;
 
+import com.myorg.lsf.contracts.core.conventions.CoreHeaders;
 import com.myorg.lsf.contracts.core.envelope.EventEnvelope;
 import com.myorg.lsf.eventing.PayloadConverter;
 import com.myorg.lsf.eventing.LsfDispatcher;
+import com.myorg.lsf.eventing.PreDispatchFilter;
 import com.myorg.lsf.eventing.context.LsfDispatchOutcome;
-import lombok.RequiredArgsConstructor;
+import com.myorg.lsf.eventing.serde.LazyEventEnvelope;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
 import org.springframework.kafka.annotation.KafkaListener;
 
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 //Lắng nghe trực tiếp từ Kafka bằng @KafkaListener.
-// Nhận dữ liệu thô, ép kiểu, rồi đẩy sang cho LsfDispatcher
-@RequiredArgsConstructor
+// Nhận dữ liệu thô, lọc theo header (PreDispatchFilter, nếu bật), ép kiểu, rồi đẩy sang cho LsfDispatcher
 public class LsfEnvelopeListener {
 
     private final LsfDispatcher dispatcher;
     private final PayloadConverter payloadConverter;
+    private final PreDispatchFilter filter; // nullable
+
+    public LsfEnvelopeListener(LsfDispatcher dispatcher, PayloadConverter payloadConverter) {
+        this(dispatcher, payloadConverter, null);
+    }
+
+    public LsfEnvelopeListener(LsfDispatcher dispatcher, PayloadConverter payloadConverter, PreDispatchFilter filter) {
+        this.dispatcher = dispatcher;
+        this.payloadConverter = payloadConverter;
+        this.filter = filter;
+    }
 
     @KafkaListener(
             topics = "#{@lsfConsumeTopics}",
@@ -28,13 +43,13 @@ public class LsfEnvelopeListener {
         try {
             // single record
             if (payload instanceof ConsumerRecord<?, ?> rec) {
-                dispatchOne(rec.value());
+                dispatchOne(rec.value(), rec.headers());
                 return;
             }
 
             // batch records (ConsumerRecords)
             if (payload instanceof ConsumerRecords<?, ?> recs) {
-                recs.forEach(r -> dispatchOne(r.value()));
+                recs.forEach(r -> dispatchOne(r.value(), r.headers()));
                 return;
             }
 
@@ -42,32 +57,56 @@ public class LsfEnvelopeListener {
             if (payload instanceof List<?> list) {
                 for (Object item : list) {
                     if (item instanceof ConsumerRecord<?, ?> rec2) {
-                        dispatchOne(rec2.value());
+                        dispatchOne(rec2.value(), rec2.headers());
                     } else {
-                        dispatchOne(item);
+                        dispatchOne(item, null);
                     }
                 }
                 return;
             }
 
             // single value
-            dispatchOne(payload);
+            dispatchOne(payload, null);
         } finally {
             // safety net: avoid leaking marker between polls/records
             LsfDispatchOutcome.clear();
         }
     }
 
-    private void dispatchOne(Object value) {
+    // package-private: LsfParallelBatchListener dùng lại cho từng record
+    void dispatchOne(Object value, Headers headers) {
         if (value == null) return;
 
+        if (filter != null) {
+            String eventType;
+            String eventId;
+            if (headers != null) {
+                eventType = header(headers, CoreHeaders.EVENT_TYPE);
+                eventId = header(headers, CoreHeaders.EVENT_ID);
+            } else if (value instanceof LazyEventEnvelope lazy) {
+                // batch nhận value: LsfEnvelopeDeserializer đã chép header vào envelope (chưa parse)
+                eventType = lazy.eventTypeHint();
+                eventId = lazy.eventIdHint();
+            } else {
+                eventType = null;
+                eventId = null;
+            }
+            if (!filter.admit(eventType, eventId)) return;
+        }
+
         try {
             EventEnvelope env = payloadConverter.toEnvelope(value);
             if (env == null) return;
             dispatcher.dispatch(env);
         } finally {
+            if (filter != null) filter.afterDispatch();
             // if observability wrapper isn't present, this prevents thread-local leak
             LsfDispatchOutcome.clear();
         }
     }
+
+    private static String header(Headers headers, String name) {
+        Header h = headers.lastHeader(name);
+        return h == null || h.value() == null ? null : new String(h.value(), StandardCharsets.UTF_8);
+    }
 }
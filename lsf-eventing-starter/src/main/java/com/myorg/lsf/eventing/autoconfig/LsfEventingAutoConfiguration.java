@@ -6,6 +6,7 @@ import com.myorg.lsf.eventing.idempotency.IdempotencyStore;
 import com.myorg.lsf.eventing.idempotency.InMemoryIdempotencyStore;
 import com.myorg.lsf.eventing.idempotency.RedisIdempotencyStore;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.TopicPartition;
 import org.springframework.aop.framework.AopProxyUtils;
 import org.springframework.aop.support.AopUtils;
 import org.springframework.beans.factory.ObjectProvider;
@@ -19,7 +20,9 @@ import org.springframework.core.MethodIntrospector;
 import org.springframework.core.annotation.AnnotatedElementUtils;
 import org.springframework.core.env.Environment;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.MessageListenerContainer;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
 
@@ -59,6 +62,13 @@ public class LsfEventingAutoConfiguration {
     }
 
 
+    @Bean
+    @ConditionalOnProperty(prefix = "lsf.eventing.listener", name = "streaming-envelope", havingValue = "true")
+    public static LsfEnvelopeDeserializerPostProcessor lsfEnvelopeDeserializerPostProcessor(ObjectProvider<ObjectMapper> mapper) {
+        // static: BeanPostProcessor phải tạo trước các bean khác, không kéo theo cả autoconfig
+        return new LsfEnvelopeDeserializerPostProcessor(mapper);
+    }
+
     @Bean
     @ConditionalOnMissingBean(name = "lsfHandlerScanner")
     public Object lsfHandlerScanner(ApplicationContext ctx, HandlerRegistry registry, ObjectMapper mapper) {
@@ -88,11 +98,67 @@ public class LsfEventingAutoConfiguration {
 
     @Bean
     @ConditionalOnProperty(prefix = "lsf.eventing.listener", name = "enabled", havingValue = "true", matchIfMissing = true)
+    @ConditionalOnProperty(prefix = "lsf.eventing.listener.parallel", name = "enabled", havingValue = "false", matchIfMissing = true)
+    @ConditionalOnExpression(
+            "('${lsf.eventing.consume-topics:}'.length() > 0) || ('${lsf.eventing.consume-topics[0]:}'.length() > 0)"
+    )
+    public LsfEnvelopeListener lsfEnvelopeListener(LsfDispatcher dispatcher, PayloadConverter payloadConverter, LsfEventingProperties props,
+                                                   ObjectProvider<PreDispatchFilter> filterProvider) {
+        return new LsfEnvelopeListener(dispatcher, payloadConverter, filterProvider.getIfAvailable());
+    }
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(prefix = "lsf.eventing.listener", name = "enabled", havingValue = "true", matchIfMissing = true)
+    @ConditionalOnProperty(prefix = "lsf.eventing.listener.parallel", name = "enabled", havingValue = "true")
     @ConditionalOnExpression(
             "('${lsf.eventing.consume-topics:}'.length() > 0) || ('${lsf.eventing.consume-topics[0]:}'.length() > 0)"
     )
-    public LsfEnvelopeListener lsfEnvelopeListener(LsfDispatcher dispatcher, PayloadConverter payloadConverter, LsfEventingProperties props) {
-        return new LsfEnvelopeListener(dispatcher, payloadConverter);
+    public LsfParallelBatchListener lsfParallelBatchListener(LsfDispatcher dispatcher, PayloadConverter payloadConverter,
+                                                             LsfEventingProperties props, Environment env,
+                                                             ObjectProvider<PreDispatchFilter> filterProvider,
+                                                             ObjectProvider<LsfContextPropagator> propagators,
+                                                             ObjectProvider<KafkaListenerEndpointRegistry> listenerRegistry) {
+        if (!env.getProperty("lsf.kafka.consumer.batch", Boolean.class, true)) {
+            throw new IllegalStateException("lsf.eventing.listener.parallel.enabled=true cần lsf.kafka.consumer.batch=true");
+        }
+        var parallel = props.getListener().getParallel();
+
+        InFlightLimiter limiter = null;
+        if (parallel.getMaxInFlight() > 0 || !parallel.getHandlerMaxInFlight().isEmpty()) {
+            limiter = new InFlightLimiter(parallel.getMaxInFlight(), parallel.getHandlerMaxInFlight());
+            // container chỉ có sau khi registry khởi động: tra lúc cần pause
+            limiter.attach(new InFlightLimiter.Pausable() {
+                @Override
+                public void pause(TopicPartition partition) {
+                    MessageListenerContainer c = listenerRegistry.getObject().getListenerContainer(LsfParallelBatchListener.LISTENER_ID);
+                    if (c != null) c.pausePartition(partition);
+                }
+
+                @Override
+                public void resume(TopicPartition partition) {
+                    MessageListenerContainer c = listenerRegistry.getObject().getListenerContainer(LsfParallelBatchListener.LISTENER_ID);
+                    if (c != null) c.resumePartition(partition);
+                }
+            });
+        }
+
+        // listener tuần tự không đăng ký làm bean (không có @KafkaListener thứ 2), chỉ dùng để dispatch từng record
+        LsfEnvelopeListener perRecord = new LsfEnvelopeListener(dispatcher, payloadConverter, filterProvider.getIfAvailable());
+        return new LsfParallelBatchListener(perRecord, parallel.getGroupBy(), parallel.getMaxConcurrency(),
+                parallel.isVirtualThreads(), limiter, propagators.orderedStream().toList());
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "lsf.eventing.listener", name = "header-filter", havingValue = "true")
+    public PreDispatchFilter lsfPreDispatchFilter(HandlerRegistry registry,
+                                                  LsfEventingProperties props,
+                                                  ObjectProvider<IdempotencyStore> storeProvider,
+                                                  ObjectProvider<LsfSkippedRecordListener> skipListeners) {
+        // dedup theo header chỉ khi lsfDispatcher cũng dedup (cùng điều kiện bên dưới)
+        IdempotencyStore store = props.getIdempotency().isEnabled() ? storeProvider.getIfAvailable() : null;
+        return new PreDispatchFilter(registry, props.isIgnoreUnknownEventType(), store,
+                skipListeners.orderedStream().toList());
     }
 
     /**
@@ -3,7 +3,10 @@ package com.myorg.lsf.eventing.autoconfig;
 import com.myorg.lsf.eventing.LsfEventingProperties;
 import com.myorg.lsf.eventing.idempotency.IdempotencyStore;
 import com.myorg.lsf.eventing.idempotency.RedisIdempotencyStore;
+import com.myorg.lsf.redis.autoconfig.LsfRedisScriptAutoConfiguration;
+import com.myorg.lsf.redis.script.RedisScriptRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.autoconfigure.AutoConfiguration;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
@@ -26,9 +29,12 @@ import org.springframework.util.StringUtils;
  * <p>This class is separated from {@link LsfEventingAutoConfiguration} so that
  * applications that do not include Redis dependencies can still use the starter
  * (e.g., store=memory).
+ *
+ * <p>Runs before {@link LsfRedisScriptAutoConfiguration} so the StringRedisTemplate created
+ * here gets the shared script registry as well.
  */
 @Slf4j
-@AutoConfiguration(before = LsfEventingAutoConfiguration.class)
+@AutoConfiguration(before = {LsfEventingAutoConfiguration.class, LsfRedisScriptAutoConfiguration.class})
 @EnableConfigurationProperties(LsfEventingProperties.class)
 @ConditionalOnClass(RedisConnectionFactory.class)
 public class LsfEventingRedisAutoConfiguration {
@@ -84,7 +90,8 @@ public class LsfEventingRedisAutoConfiguration {
 
         @Bean
         @ConditionalOnMissingBean(IdempotencyStore.class)
-        public IdempotencyStore idempotencyStore(LsfEventingProperties props, StringRedisTemplate redis, Environment env) {
+        public IdempotencyStore idempotencyStore(LsfEventingProperties props, StringRedisTemplate redis, Environment env,
+                                                 ObjectProvider<RedisScriptRegistry> scriptRegistryProvider) {
             var idem = props.getIdempotency();
             if (!idem.getRedis().isEnabled()) {
                 throw new IllegalStateException("store=redis nhưng lsf.eventing.idempotency.redis.enabled=false");
@@ -93,7 +100,8 @@ public class LsfEventingRedisAutoConfiguration {
             String groupId = resolveGroupId(env);
             String prefix = effectiveKeyPrefix(idem.getRedis().getKeyPrefix(), groupId);
 
-            return new RedisIdempotencyStore(redis, idem.getTtl(), idem.getProcessingTtl(), prefix);
+            return new RedisIdempotencyStore(redis, idem.getTtl(), idem.getProcessingTtl(), prefix,
+                    scriptRegistryProvider.getIfAvailable(() -> new RedisScriptRegistry(redis)));
         }
 
     }
@@ -116,11 +124,13 @@ public class LsfEventingRedisAutoConfiguration {
 
         @Bean
         @ConditionalOnMissingBean(IdempotencyStore.class)
-        public IdempotencyStore idempotencyStore(LsfEventingProperties props, StringRedisTemplate redis, Environment env) {
+        public IdempotencyStore idempotencyStore(LsfEventingProperties props, StringRedisTemplate redis, Environment env,
+                                                 ObjectProvider<RedisScriptRegistry> scriptRegistryProvider) {
             var idem = props.getIdempotency();
             String groupId = resolveGroupId(env);
             String prefix = effectiveKeyPrefix(idem.getRedis().getKeyPrefix(), groupId);
-            return new RedisIdempotencyStore(redis, idem.getTtl(), idem.getProcessingTtl(), prefix);
+            return new RedisIdempotencyStore(redis, idem.getTtl(), idem.getProcessingTtl(), prefix,
+                    scriptRegistryProvider.getIfAvailable(() -> new RedisScriptRegistry(redis)));
         }
 
     }
@@ -0,0 +1,277 @@
+package com.myorg.lsf.eventing.autoconfig;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.myorg.lsf.contracts.core.conventions.CoreHeaders;
+import com.myorg.lsf.contracts.core.envelope.EventEnvelope;
+import com.myorg.lsf.eventing.LsfContextPropagator;
+import com.myorg.lsf.eventing.context.LsfDispatchOutcome;
+import com.myorg.lsf.eventing.serde.LazyEventEnvelope;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Header;
+import org.slf4j.MDC;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.listener.BatchListenerFailedException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+//Batch listener song song theo key (lsf.eventing.listener.parallel.enabled=true, cần lsf.kafka.consumer.batch=true).
+// Record trong 1 poll được gom theo Kafka key (hoặc aggregateId); các key khác nhau chạy song song,
+// record cùng key chạy tuần tự đúng thứ tự offset. Listener chỉ trả về khi cả batch xong
+// => AckMode.BATCH commit offset sau cùng.
+// virtual-threads=true: mỗi nhóm chạy trên 1 virtual thread (kể cả batch chỉ có 1 nhóm), số worker không bị
+// max-concurrency chặn mà do InFlightLimiter (nếu có) giới hạn số record đang chạy toàn cục / theo eventType;
+// record phải chờ permit toàn cục thì partition của nó bị pause. MDC + LsfContextPropagator được chép từ
+// thread container sang worker.
+// Lỗi: ném BatchListenerFailedException cho record lỗi đứng trước nhất trong batch; error handler commit
+// các record trước nó, retry/DLQ record đó, các record sau được poll lại (idempotency lo phần đã chạy rồi).
+@Slf4j
+public class LsfParallelBatchListener implements AutoCloseable {
+
+    public static final String GROUP_BY_KEY = "key";
+    public static final String GROUP_BY_AGGREGATE_ID = "aggregate-id";
+    // mỗi record 1 nhóm: song song tối đa, KHÔNG giữ thứ tự theo key
+    public static final String GROUP_BY_NONE = "none";
+
+    // id của listener container (KafkaListenerEndpointRegistry), dùng để pause/resume
+    public static final String LISTENER_ID = "lsfParallelBatchListener";
+
+    private final LsfEnvelopeListener delegate;
+    private final String groupBy;
+    private final int maxConcurrency;
+    private final boolean virtualThreads;
+    private final ExecutorService executor;
+    private final InFlightLimiter limiter; // nullable
+    private final List<LsfContextPropagator> propagators;
+
+    public LsfParallelBatchListener(LsfEnvelopeListener delegate, String groupBy, int maxConcurrency, boolean virtualThreads) {
+        this(delegate, groupBy, maxConcurrency, virtualThreads, null, List.of());
+    }
+
+    public LsfParallelBatchListener(LsfEnvelopeListener delegate, String groupBy, int maxConcurrency, boolean virtualThreads,
+                                    InFlightLimiter limiter, List<LsfContextPropagator> propagators) {
+        if (!virtualThreads && maxConcurrency < 1) {
+            throw new IllegalStateException("lsf.eventing.listener.parallel.max-concurrency must be >= 1");
+        }
+        String g = groupBy == null ? GROUP_BY_KEY : groupBy.trim().toLowerCase();
+        if (!GROUP_BY_KEY.equals(g) && !GROUP_BY_AGGREGATE_ID.equals(g) && !GROUP_BY_NONE.equals(g)) {
+            throw new IllegalStateException("lsf.eventing.listener.parallel.group-by must be key | aggregate-id | none: " + groupBy);
+        }
+        this.delegate = delegate;
+        this.groupBy = g;
+        this.maxConcurrency = maxConcurrency;
+        this.virtualThreads = virtualThreads;
+        this.limiter = limiter;
+        this.propagators = List.copyOf(propagators);
+        this.executor = virtualThreads
+                ? Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("lsf-batch-dispatch-", 0).factory())
+                : Executors.newFixedThreadPool(maxConcurrency, daemonThreads());
+    }
+
+    @KafkaListener(
+            id = LISTENER_ID,
+            idIsGroup = false,
+            topics = "#{@lsfConsumeTopics}",
+            containerFactory = "kafkaListenerContainerFactory"
+    )
+    public void onBatch(List<ConsumerRecord<Object, Object>> records) {
+        if (records == null || records.isEmpty()) return;
+
+        List<List<Indexed>> groups = group(records);
+        // pool cố định: 1 nhóm thì chạy luôn trên thread container, không tốn 1 lần chuyển thread
+        if (groups.size() == 1 && !virtualThreads) {
+            runInline(groups.get(0));
+            return;
+        }
+
+        ConcurrentLinkedQueue<List<Indexed>> pending = new ConcurrentLinkedQueue<>(groups);
+        Failures failures = new Failures();
+
+        int workers = Math.min(groups.size(), workerLimit());
+        CompletableFuture<?>[] running = new CompletableFuture<?>[workers];
+        for (int w = 0; w < workers; w++) {
+            running[w] = CompletableFuture.runAsync(propagate(() -> drain(pending, failures)), executor);
+        }
+        // chờ cả batch: offset chỉ được commit khi listener trả về
+        CompletableFuture.allOf(running).join();
+
+        failures.throwIfAny(records);
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    // virtual thread: giới hạn là số permit max-in-flight (0 = mỗi nhóm 1 thread), max-concurrency chỉ cho pool cố định
+    private int workerLimit() {
+        if (!virtualThreads) return maxConcurrency;
+        int permits = limiter == null ? 0 : limiter.maxInFlight();
+        return permits > 0 ? permits : Integer.MAX_VALUE;
+    }
+
+    private void drain(ConcurrentLinkedQueue<List<Indexed>> pending, Failures failures) {
+        List<Indexed> group;
+        while ((group = pending.poll()) != null) {
+            for (Indexed r : group) {
+                // record sau lỗi sớm nhất sẽ được poll lại: không chạy trước, giữ thứ tự theo key
+                if (r.index() > failures.firstIndex()) break;
+                try {
+                    dispatch(r.record());
+                } catch (RuntimeException e) {
+                    failures.add(r.index(), e);
+                    break; // các record sau cùng key phải chờ record này
+                }
+            }
+        }
+    }
+
+    private void runInline(List<Indexed> group) {
+        for (Indexed r : group) {
+            try {
+                dispatch(r.record());
+            } catch (RuntimeException e) {
+                throw new BatchListenerFailedException("LSF handler failed: " + e.getMessage(), e, r.record());
+            }
+        }
+    }
+
+    private void dispatch(ConsumerRecord<Object, Object> rec) {
+        String eventType = limiter == null ? null : eventType(rec);
+        if (limiter != null) {
+            try {
+                limiter.acquire(eventType, new TopicPartition(rec.topic(), rec.partition()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for an in-flight slot", e);
+            }
+        }
+        try {
+            delegate.dispatchOne(rec.value(), rec.headers());
+        } finally {
+            LsfDispatchOutcome.clear();
+            if (limiter != null) limiter.release(eventType);
+        }
+    }
+
+    // chụp MDC + context của các propagator trên thread container, khôi phục trên worker
+    private Runnable propagate(Runnable task) {
+        Runnable wrapped = task;
+        for (LsfContextPropagator p : propagators) {
+            wrapped = p.wrap(wrapped);
+        }
+        Map<String, String> mdc = MDC.getCopyOfContextMap();
+        Runnable withContext = wrapped;
+        return () -> {
+            if (mdc != null) MDC.setContextMap(mdc);
+            try {
+                withContext.run();
+            } finally {
+                MDC.clear();
+            }
+        };
+    }
+
+    private List<List<Indexed>> group(List<ConsumerRecord<Object, Object>> records) {
+        if (GROUP_BY_NONE.equals(groupBy)) {
+            List<List<Indexed>> single = new ArrayList<>(records.size());
+            for (int i = 0; i < records.size(); i++) single.add(List.of(new Indexed(i, records.get(i))));
+            return single;
+        }
+        Map<Object, List<Indexed>> byKey = new LinkedHashMap<>();
+        for (int i = 0; i < records.size(); i++) {
+            ConsumerRecord<Object, Object> rec = records.get(i);
+            byKey.computeIfAbsent(groupKey(rec), k -> new ArrayList<>()).add(new Indexed(i, rec));
+        }
+        return new ArrayList<>(byKey.values());
+    }
+
+    private Object groupKey(ConsumerRecord<Object, Object> rec) {
+        if (GROUP_BY_AGGREGATE_ID.equals(groupBy)) {
+            String aggregateId = aggregateId(rec.value());
+            if (aggregateId != null) return aggregateId;
+        }
+        if (rec.key() != null) return rec.key();
+        // không có key: giữ thứ tự theo partition
+        return new NoKey(rec.topic(), rec.partition());
+    }
+
+    private static String aggregateId(Object value) {
+        try {
+            if (value instanceof EventEnvelope env) return env.getAggregateId();
+            if (value instanceof JsonNode node && node.hasNonNull("aggregateId")) return node.get("aggregateId").asText();
+        } catch (RuntimeException e) {
+            // value hỏng: để dispatch báo lỗi đúng record
+        }
+        return null;
+    }
+
+    // loại event cho giới hạn theo handler: header trước, không parse value nếu tránh được
+    private static String eventType(ConsumerRecord<Object, Object> rec) {
+        Header h = rec.headers().lastHeader(CoreHeaders.EVENT_TYPE);
+        if (h != null && h.value() != null) return new String(h.value(), StandardCharsets.UTF_8);
+        Object value = rec.value();
+        if (value instanceof LazyEventEnvelope lazy && lazy.eventTypeHint() != null) return lazy.eventTypeHint();
+        try {
+            if (value instanceof EventEnvelope env) return env.getEventType();
+            if (value instanceof JsonNode node && node.hasNonNull("eventType")) return node.get("eventType").asText();
+        } catch (RuntimeException e) {
+            // value hỏng: dispatch sẽ báo lỗi
+        }
+        return null;
+    }
+
+    private static ThreadFactory daemonThreads() {
+        AtomicInteger seq = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, "lsf-batch-dispatch-" + seq.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    private record Indexed(int index, ConsumerRecord<Object, Object> record) {}
+
+    private record NoKey(String topic, int partition) {}
+
+    private static final class Failures {
+        private final AtomicInteger first = new AtomicInteger(Integer.MAX_VALUE);
+        private final AtomicReference<RuntimeException> firstError = new AtomicReference<>();
+
+        int firstIndex() {
+            return first.get();
+        }
+
+        synchronized void add(int index, RuntimeException e) {
+            if (index < first.get()) {
+                RuntimeException previous = firstError.get();
+                if (previous != null) {
+                    log.debug("Batch record failed after an earlier one, it will be redelivered", previous);
+                }
+                first.set(index);
+                firstError.set(e);
+            } else {
+                log.debug("Batch record index={} failed after an earlier one, it will be redelivered", index, e);
+            }
+        }
+
+        void throwIfAny(List<ConsumerRecord<Object, Object>> records) {
+            RuntimeException e = firstError.get();
+            if (e == null) return;
+            ConsumerRecord<Object, Object> failed = records.get(first.get());
+            throw new BatchListenerFailedException("LSF handler failed: " + e.getMessage(), e, failed);
+        }
+    }
+}
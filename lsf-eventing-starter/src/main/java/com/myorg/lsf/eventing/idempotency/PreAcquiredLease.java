@@ -0,0 +1,33 @@
+package com.myorg.lsf.eventing.idempotency;
+
+//Lease do PreDispatchFilter lấy từ header lsf-event-id (trước khi parse envelope),
+// chuyển cho IdempotentLsfDispatcher qua ThreadLocal (cùng kiểu LsfDispatchOutcome)
+// để store chỉ bị hỏi 1 lần cho mỗi record.
+public final class PreAcquiredLease {
+
+    private record Held(String eventId, IdempotencyStore.Lease lease) {}
+
+    private static final ThreadLocal<Held> HELD = new ThreadLocal<>();
+
+    private PreAcquiredLease() {}
+
+    public static void hold(String eventId, IdempotencyStore.Lease lease) {
+        HELD.set(new Held(eventId, lease));
+    }
+
+    /** Lease đang giữ cho đúng {@code eventId}, null nếu không có (hoặc của eventId khác). */
+    public static IdempotencyStore.Lease take(String eventId) {
+        Held held = HELD.get();
+        if (held == null || !held.eventId().equals(eventId)) return null;
+        HELD.remove();
+        return held.lease();
+    }
+
+    /** Trả lại lease chưa ai dùng (vd convert envelope lỗi trước khi dispatch). */
+    public static void releaseUnused(IdempotencyStore store) {
+        Held held = HELD.get();
+        if (held == null) return;
+        HELD.remove();
+        store.releaseProcessing(held.eventId(), held.lease().token());
+    }
+}
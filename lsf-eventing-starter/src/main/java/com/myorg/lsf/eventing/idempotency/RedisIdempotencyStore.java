@@ -1,28 +1,29 @@
 package com.myorg.lsf.eventing.idempotency;
 
-import lombok.RequiredArgsConstructor;
-import org.springframework.data.redis.core.script.DefaultRedisScript;
+import com.myorg.lsf.redis.script.LsfRedisScript;
+import com.myorg.lsf.redis.script.RedisScriptRegistry;
 import org.springframework.data.redis.core.StringRedisTemplate;
 
 import java.time.Duration;
 import java.util.List;
 //Dành cho môi trường Production (nhiều instance chạy song song)
-//Sử dụng Lua Scripts của Redis thông qua DefaultRedisScript
+//Sử dụng Lua Scripts của Redis thông qua RedisScriptRegistry (SCRIPT LOAD sẵn, gọi bằng EVALSHA)
 // để gộp nhiều thao tác (GET, SETNX, COMPARE) thành một khối nguyên tử (Atomic),
 // ngăn chặn tuyệt đối lỗi Race Condition khi 2 instance nhận cùng 1 message tại cùng 1 micro-giây.
-@RequiredArgsConstructor
 public class RedisIdempotencyStore implements IdempotencyStore {
 
     private final StringRedisTemplate redis;
     private final Duration doneTtl;
     private final Duration processingTtl;
     private final String keyPrefix;
+    private final RedisScriptRegistry scripts;
 
     private static final String PROCESSING_PREFIX = "P:";
     private static final String DONE_VALUE = "D";
 
     // 0=acquired, 1=duplicate(done), 2=inFlight(processing)
-    private static final DefaultRedisScript<Long> TRY_BEGIN_SCRIPT = new DefaultRedisScript<>(
+    private static final LsfRedisScript<Long> TRY_BEGIN_SCRIPT = LsfRedisScript.of(
+            "lsf.idempotency.try-begin",
             "local ok = redis.call('SET', KEYS[1], ARGV[1], 'NX', 'PX', ARGV[2]); " +
                     "if ok then return 0 end " +
                     "local v = redis.call('GET', KEYS[1]); " +
@@ -31,7 +32,8 @@ public class RedisIdempotencyStore implements IdempotencyStore {
             Long.class
     );
 
-    private static final DefaultRedisScript<Long> MARK_DONE_SCRIPT = new DefaultRedisScript<>(
+    private static final LsfRedisScript<Long> MARK_DONE_SCRIPT = LsfRedisScript.of(
+            "lsf.idempotency.mark-done",
             "local v = redis.call('GET', KEYS[1]); " +
                     "if v == ARGV[1] then " +
                     "  redis.call('SET', KEYS[1], ARGV[2], 'PX', ARGV[3]); " +
@@ -41,13 +43,28 @@ public class RedisIdempotencyStore implements IdempotencyStore {
             Long.class
     );
 
-    private static final DefaultRedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+    private static final LsfRedisScript<Long> RELEASE_SCRIPT = LsfRedisScript.of(
+            "lsf.idempotency.release",
             "local v = redis.call('GET', KEYS[1]); " +
                     "if v == ARGV[1] then return redis.call('DEL', KEYS[1]) end " +
                     "return 0",
             Long.class
     );
 
+    public RedisIdempotencyStore(StringRedisTemplate redis, Duration doneTtl, Duration processingTtl, String keyPrefix) {
+        this(redis, doneTtl, processingTtl, keyPrefix, new RedisScriptRegistry(redis));
+    }
+
+    public RedisIdempotencyStore(StringRedisTemplate redis, Duration doneTtl, Duration processingTtl, String keyPrefix,
+                                 RedisScriptRegistry scripts) {
+        this.redis = redis;
+        this.doneTtl = doneTtl;
+        this.processingTtl = processingTtl;
+        this.keyPrefix = keyPrefix;
+        this.scripts = scripts;
+        scripts.register(TRY_BEGIN_SCRIPT, MARK_DONE_SCRIPT, RELEASE_SCRIPT);
+    }
+
     private String key(String eventId) {
         // normalizePrefix để tránh dính key
         return normalizePrefix(keyPrefix) + eventId;
@@ -85,7 +102,7 @@ public class RedisIdempotencyStore implements IdempotencyStore {
         String token = java.util.UUID.randomUUID().toString();
         String processingValue = PROCESSING_PREFIX + token;
 
-        Long res = redis.execute(
+        Long res = scripts.execute(
                 TRY_BEGIN_SCRIPT,
                 List.of(k),
                 processingValue,
@@ -106,7 +123,7 @@ public class RedisIdempotencyStore implements IdempotencyStore {
         String k = key(eventId);
         String processingValue = PROCESSING_PREFIX + token;
 
-        redis.execute(
+        scripts.execute(
                 MARK_DONE_SCRIPT,
                 List.of(k),
                 processingValue,
@@ -120,7 +137,7 @@ public class RedisIdempotencyStore implements IdempotencyStore {
         String k = key(eventId);
         String processingValue = PROCESSING_PREFIX + token;
 
-        redis.execute(
+        scripts.execute(
                 RELEASE_SCRIPT,
                 List.of(k),
                 processingValue
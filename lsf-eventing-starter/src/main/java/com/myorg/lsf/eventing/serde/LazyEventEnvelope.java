@@ -0,0 +1,148 @@
+package com.myorg.lsf.eventing.serde;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.myorg.lsf.contracts.core.envelope.ErrorInfo;
+import com.myorg.lsf.contracts.core.envelope.EventEnvelope;
+import org.apache.kafka.common.errors.SerializationException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * EventEnvelope đọc bởi {@link LsfEnvelopeDeserializer}, parse theo nhu cầu:
+ *
+ * - từ Kafka: cả value chưa được parse; lần đọc field đầu tiên mới parse metadata. Record bị lọc
+ *   theo header (eventType không có handler, eventId trùng) không bao giờ bị parse.
+ * - payload giữ nguyên dạng byte (slice của record value):
+ *   {@link #readPayload(ObjectReader)} bind thẳng vào class payload của handler, không dựng JsonNode;
+ *   {@link #getPayload()} vẫn chạy, cây JsonNode chỉ được dựng ở lần gọi đầu tiên rồi giữ lại.
+ *
+ * Không thread-safe, giống EventEnvelope: mỗi record do 1 thread xử lý.
+ */
+public class LazyEventEnvelope extends EventEnvelope {
+
+    private final ObjectMapper mapper;
+
+    // value chưa parse (null khi metadata đã được đọc)
+    private LsfEnvelopeDeserializer deserializer;
+    private byte[] unparsed;
+
+    // header lsf-event-type / lsf-event-id của record, đọc được mà không cần parse
+    private String eventTypeHint;
+    private String eventIdHint;
+
+    // null khi payload đã là JsonNode (đã materialize hoặc setPayload)
+    private byte[] raw;
+    private int rawOffset;
+    private int rawLength;
+
+    public LazyEventEnvelope(ObjectMapper mapper) {
+        this.mapper = mapper;
+    }
+
+    static LazyEventEnvelope unparsed(LsfEnvelopeDeserializer deserializer, ObjectMapper mapper, byte[] data,
+                                      String eventTypeHint, String eventIdHint) {
+        LazyEventEnvelope env = new LazyEventEnvelope(mapper);
+        env.deserializer = deserializer;
+        env.unparsed = data;
+        env.eventTypeHint = eventTypeHint;
+        env.eventIdHint = eventIdHint;
+        return env;
+    }
+
+    void setRawPayload(byte[] raw, int offset, int length) {
+        super.setPayload(null);
+        this.raw = raw;
+        this.rawOffset = offset;
+        this.rawLength = length;
+    }
+
+    /** Header lsf-event-type của record (null nếu không có), không kích hoạt parse. */
+    public String eventTypeHint() {
+        return eventTypeHint;
+    }
+
+    /** Header lsf-event-id của record (null nếu không có), không kích hoạt parse. */
+    public String eventIdHint() {
+        return eventIdHint;
+    }
+
+    // không đặt tên isXxx/getXxx: Jackson sẽ coi là property khi serialize envelope (vd gửi DLQ)
+    public boolean metadataParsed() {
+        return unparsed == null;
+    }
+
+    public boolean hasRawPayload() {
+        parsed();
+        return raw != null;
+    }
+
+    /** Payload bind bằng {@code reader} (thường là reader cache sẵn cho class payload). */
+    public <T> T readPayload(ObjectReader reader) throws IOException {
+        parsed();
+        byte[] bytes = raw;
+        if (bytes != null) {
+            return reader.readValue(bytes, rawOffset, rawLength);
+        }
+        JsonNode node = super.getPayload();
+        return node == null ? null : reader.readValue(node);
+    }
+
+    @Override
+    public JsonNode getPayload() {
+        parsed();
+        byte[] bytes = raw;
+        if (bytes != null) {
+            try {
+                super.setPayload(mapper.readTree(bytes, rawOffset, rawLength));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot parse payload of event " + getEventId(), e);
+            }
+            raw = null;
+        }
+        return super.getPayload();
+    }
+
+    @Override
+    public void setPayload(JsonNode payload) {
+        parsed();
+        super.setPayload(payload);
+        this.raw = null;
+    }
+
+    private void parsed() {
+        byte[] data = unparsed;
+        if (data == null) return;
+        unparsed = null; // setter bên dưới không parse lại
+        try {
+            deserializer.readInto(data, this);
+        } catch (IOException | RuntimeException e) {
+            unparsed = data; // lần đọc sau báo lỗi lại, không trả về field dở dang
+            throw new SerializationException("Cannot read EventEnvelope eventId=" + eventIdHint, e);
+        }
+    }
+
+    // ---- field metadata: parse khi đọc/ghi lần đầu ----
+
+    @Override public String getEventId() { parsed(); return super.getEventId(); }
+    @Override public String getEventType() { parsed(); return super.getEventType(); }
+    @Override public int getVersion() { parsed(); return super.getVersion(); }
+    @Override public String getAggregateId() { parsed(); return super.getAggregateId(); }
+    @Override public String getCorrelationId() { parsed(); return super.getCorrelationId(); }
+    @Override public String getCausationId() { parsed(); return super.getCausationId(); }
+    @Override public long getOccurredAtMs() { parsed(); return super.getOccurredAtMs(); }
+    @Override public String getProducer() { parsed(); return super.getProducer(); }
+    @Override public ErrorInfo getError() { parsed(); return super.getError(); }
+
+    @Override public void setEventId(String eventId) { parsed(); super.setEventId(eventId); }
+    @Override public void setEventType(String eventType) { parsed(); super.setEventType(eventType); }
+    @Override public void setVersion(int version) { parsed(); super.setVersion(version); }
+    @Override public void setAggregateId(String aggregateId) { parsed(); super.setAggregateId(aggregateId); }
+    @Override public void setCorrelationId(String correlationId) { parsed(); super.setCorrelationId(correlationId); }
+    @Override public void setCausationId(String causationId) { parsed(); super.setCausationId(causationId); }
+    @Override public void setOccurredAtMs(long occurredAtMs) { parsed(); super.setOccurredAtMs(occurredAtMs); }
+    @Override public void setProducer(String producer) { parsed(); super.setProducer(producer); }
+    @Override public void setError(ErrorInfo error) { parsed(); super.setError(error); }
+}
@@ -0,0 +1,119 @@
+package com.myorg.lsf.eventing.serde;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.myorg.lsf.contracts.core.conventions.CoreHeaders;
+import com.myorg.lsf.contracts.core.envelope.ErrorInfo;
+import com.myorg.lsf.contracts.core.envelope.EventEnvelope;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Deserializer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Kafka value deserializer đọc thẳng EventEnvelope bằng streaming parser (1 lượt, không dựng JsonNode):
+ * metadata được đọc ra field, payload chỉ được đánh dấu vị trí trong mảng byte (xem {@link LazyEventEnvelope}).
+ * Value từ Kafka chỉ được parse khi envelope được đọc lần đầu; header {@code lsf-event-type}/{@code lsf-event-id}
+ * đi kèm để listener lọc record mà không cần parse.
+ *
+ * Nhận cả JSON thuần lẫn wire format của Confluent JSON Schema serializer
+ * (magic byte 0 + 4 byte schema id + JSON); schema không được kiểm tra lại, giống mặc định
+ * {@code json.fail.invalid.schema=false} của KafkaJsonSchemaDeserializer.
+ */
+public class LsfEnvelopeDeserializer implements Deserializer<EventEnvelope> {
+
+    private static final byte MAGIC_BYTE = 0x0;
+    private static final int SCHEMA_HEADER_SIZE = 1 + 4;
+
+    private final ObjectMapper mapper;
+
+    /** Dùng khi Kafka tự khởi tạo class từ config {@code value.deserializer}. */
+    public LsfEnvelopeDeserializer() {
+        this(new ObjectMapper().findAndRegisterModules());
+    }
+
+    public LsfEnvelopeDeserializer(ObjectMapper mapper) {
+        this.mapper = mapper;
+    }
+
+    @Override
+    public EventEnvelope deserialize(String topic, byte[] data) {
+        return deserialize(topic, null, data);
+    }
+
+    /** Chưa parse: lỗi JSON (nếu có) nổ ra ở lần đọc envelope đầu tiên, dưới dạng {@link SerializationException}. */
+    @Override
+    public EventEnvelope deserialize(String topic, Headers headers, byte[] data) {
+        if (data == null || data.length == 0) return null; // tombstone
+        return LazyEventEnvelope.unparsed(this, mapper, data,
+                header(headers, CoreHeaders.EVENT_TYPE), header(headers, CoreHeaders.EVENT_ID));
+    }
+
+    /** Đọc ngay 1 envelope (JSON thuần hoặc Confluent wire format); payload giữ nguyên dạng byte. */
+    public LazyEventEnvelope read(byte[] data) throws IOException {
+        LazyEventEnvelope env = new LazyEventEnvelope(mapper);
+        readInto(data, env);
+        return env;
+    }
+
+    void readInto(byte[] data, LazyEventEnvelope env) throws IOException {
+        int start = data.length > SCHEMA_HEADER_SIZE && data[0] == MAGIC_BYTE ? SCHEMA_HEADER_SIZE : 0;
+
+        try (JsonParser p = mapper.getFactory().createParser(data, start, data.length - start)) {
+            if (p.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("EventEnvelope must be a JSON object, got " + p.currentToken());
+            }
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String field = p.currentName();
+                JsonToken value = p.nextToken();
+                switch (field) {
+                    case "eventId" -> env.setEventId(text(p, value));
+                    case "eventType" -> env.setEventType(text(p, value));
+                    case "version" -> env.setVersion(value == JsonToken.VALUE_NULL ? 0 : p.getValueAsInt());
+                    case "aggregateId" -> env.setAggregateId(text(p, value));
+                    case "correlationId" -> env.setCorrelationId(text(p, value));
+                    case "causationId" -> env.setCausationId(text(p, value));
+                    case "occurredAtMs" -> env.setOccurredAtMs(value == JsonToken.VALUE_NULL ? 0L : p.getValueAsLong());
+                    case "producer" -> env.setProducer(text(p, value));
+                    case "payload" -> payload(p, value, data, start, env);
+                    case "error" -> env.setError(value == JsonToken.VALUE_NULL ? null : mapper.readValue(p, ErrorInfo.class));
+                    default -> p.skipChildren(); // field lạ: bỏ qua
+                }
+            }
+        }
+    }
+
+    static String header(Headers headers, String name) {
+        if (headers == null) return null;
+        Header h = headers.lastHeader(name);
+        return h == null || h.value() == null ? null : new String(h.value(), StandardCharsets.UTF_8);
+    }
+
+    private void payload(JsonParser p, JsonToken value, byte[] data, int start, LazyEventEnvelope env) throws IOException {
+        if (value == JsonToken.START_OBJECT || value == JsonToken.START_ARRAY) {
+            // offset của parser tính từ đầu vùng đọc (sau schema header)
+            int from = start + (int) p.currentTokenLocation().getByteOffset();
+            p.skipChildren();
+            int to = start + (int) p.currentLocation().getByteOffset();
+            env.setRawPayload(data, from, to - from);
+        } else if (value == JsonToken.VALUE_NULL) {
+            env.setPayload(null);
+        } else {
+            // payload scalar (hiếm): đọc luôn thành node
+            env.setPayload(mapper.readTree(p));
+        }
+    }
+
+    private static String text(JsonParser p, JsonToken value) throws IOException {
+        if (value == JsonToken.VALUE_NULL) return null;
+        if (value.isStructStart()) {
+            p.skipChildren();
+            return null;
+        }
+        return p.getText();
+    }
+}
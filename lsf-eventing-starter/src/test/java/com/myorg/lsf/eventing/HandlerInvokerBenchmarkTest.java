@@ -0,0 +1,110 @@
+package com.myorg.lsf.eventing;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.myorg.lsf.contracts.core.envelope.EventEnvelope;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+
+import java.lang.reflect.Method;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compiled {@link HandlerMethodInvoker} vs the former reflective path ({@code Method.invoke},
+ * arity branch and exception wrapping on every call), on the bare handler call and on the
+ * whole {@code invoke(envelope)} including payload conversion.
+ *
+ * Run with {@code RUN_EVENTING_BENCHMARKS=true mvn -pl lsf-eventing-starter test
+ * -Dtest=HandlerInvokerBenchmarkTest}.
+ */
+@EnabledIfEnvironmentVariable(named = "RUN_EVENTING_BENCHMARKS", matches = "true")
+class HandlerInvokerBenchmarkTest {
+
+    private static final int WARMUP = 2_000_000;
+    private static final int MEASURE = 10_000_000;
+    private static final int MEASURE_WITH_PAYLOAD = 1_000_000;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    void reportNanosPerCall() throws Exception {
+        CountingHandler handler = new CountingHandler();
+        Method method = CountingHandler.class.getMethod("handle", EventEnvelope.class, Payload.class);
+        HandlerMethodInvoker compiled = new HandlerMethodInvoker(handler, method, Payload.class, mapper);
+        ReflectiveInvoker reflective = new ReflectiveInvoker(handler, method, Payload.class, mapper);
+
+        EventEnvelope env = EventEnvelope.builder().eventId("E-1").eventType("bench.v1")
+                .payload(mapper.readTree("{\"id\":\"A-1\",\"qty\":3}")).build();
+        Payload payload = mapper.treeToValue(env.getPayload(), Payload.class);
+
+        HandlerMethodInvoker.EnvelopeCall call = compiled.getEnvelopeCall();
+        Call direct = () -> call.call(env, payload);
+        Call viaReflection = () -> reflective.call(env, payload);
+
+        System.out.printf("%-28s %10s%n", "path", "ns/op");
+        measure(direct, WARMUP);
+        measure(viaReflection, WARMUP);
+        System.out.printf("%-28s %10.1f%n", "call: compiled", measure(direct, MEASURE));
+        System.out.printf("%-28s %10.1f%n", "call: Method.invoke", measure(viaReflection, MEASURE));
+
+        Call fullCompiled = () -> compiled.invoke(env);
+        Call fullReflective = () -> reflective.invoke(env);
+        for (int round = 0; round < 3; round++) {
+            measure(fullCompiled, MEASURE_WITH_PAYLOAD);
+            measure(fullReflective, MEASURE_WITH_PAYLOAD);
+        }
+        System.out.printf("%-28s %10.1f%n", "invoke(env): compiled", measure(fullCompiled, MEASURE_WITH_PAYLOAD));
+        System.out.printf("%-28s %10.1f%n", "invoke(env): Method.invoke", measure(fullReflective, MEASURE_WITH_PAYLOAD));
+
+        assertTrue(handler.count > 0);
+    }
+
+    private static double measure(Call call, int iterations) throws Exception {
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            call.run();
+        }
+        return (System.nanoTime() - start) / (double) iterations;
+    }
+
+    @FunctionalInterface
+    interface Call {
+        void run() throws Exception;
+    }
+
+    /** The invoker as it was before the handler methods were compiled. */
+    private record ReflectiveInvoker(Object target, Method method, Class<?> payloadClass, ObjectMapper mapper) {
+        void invoke(EventEnvelope env) {
+            try {
+                call(env, mapper.treeToValue(env.getPayload(), payloadClass));
+            } catch (Exception e) {
+                throw new RuntimeException("Failed to invoke handler: " + method, e);
+            }
+        }
+
+        void call(EventEnvelope env, Object payload) {
+            try {
+                if (method.getParameterCount() == 1) {
+                    method.invoke(target, payload);
+                    return;
+                }
+                method.invoke(target, env, payload);
+            } catch (Exception e) {
+                throw new RuntimeException("Failed to invoke handler: " + method, e);
+            }
+        }
+    }
+
+    public static class CountingHandler {
+        long count;
+
+        public void handle(EventEnvelope env, Payload payload) {
+            count += payload.qty;
+        }
+    }
+
+    public static class Payload {
+        public String id;
+        public int qty;
+    }
+}
@@ -0,0 +1,117 @@
+package com.myorg.lsf.eventing;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.myorg.lsf.contracts.core.envelope.EventEnvelope;
+import com.myorg.lsf.eventing.exception.LsfRetryableException;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.aop.support.AopUtils;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class HandlerMethodInvokerTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    void shouldCallPayloadOnlyAndEnvelopeHandlers() throws Exception {
+        DemoHandler handler = new DemoHandler();
+        EventEnvelope env = envelope("demo.created", "{\"id\":\"A-1\"}");
+
+        HandlerMethodInvoker payloadOnly = invoker(handler, "onPayload", DemoPayload.class);
+        HandlerMethodInvoker withEnvelope = invoker(handler, "onEnvelope", EventEnvelope.class, DemoPayload.class);
+        payloadOnly.invoke(env);
+        withEnvelope.invoke(env);
+
+        assertThat(handler.seen).containsExactly("payload:A-1", "envelope:demo.created:A-1");
+        // lambda sinh bởi LambdaMetafactory nằm trong nest của handler, không phải fallback MethodHandle
+        assertThat(payloadOnly.getPayloadCall().getClass().getNestHost()).isEqualTo(DemoHandler.class.getNestHost());
+        assertThat(withEnvelope.getEnvelopeCall().getClass().getNestHost()).isEqualTo(DemoHandler.class.getNestHost());
+    }
+
+    @Test
+    void shouldRethrowHandlerRuntimeExceptionAsIsAndWrapCheckedOnce() throws Exception {
+        DemoHandler handler = new DemoHandler();
+        EventEnvelope env = envelope("demo.created", "{\"id\":\"A-1\"}");
+
+        assertThatThrownBy(() -> invoker(handler, "retryable", DemoPayload.class).invoke(env))
+                .isInstanceOf(LsfRetryableException.class);
+        assertThatThrownBy(() -> invoker(handler, "checked", DemoPayload.class).invoke(env))
+                .isExactlyInstanceOf(RuntimeException.class)
+                .hasCauseInstanceOf(IOException.class);
+    }
+
+    @Test
+    void shouldRejectUnsupportedSignatureAtRegistration() throws Exception {
+        DemoHandler handler = new DemoHandler();
+        Method method = DemoHandler.class.getDeclaredMethod("twoPayloads", DemoPayload.class, DemoPayload.class);
+
+        assertThatThrownBy(() -> new HandlerMethodInvoker(handler, method, DemoPayload.class, mapper))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void shouldGoThroughProxyAdvice() throws Exception {
+        DemoHandler handler = new DemoHandler();
+        List<String> advised = new ArrayList<>();
+        ProxyFactory pf = new ProxyFactory(handler);
+        pf.setProxyTargetClass(true);
+        pf.addAdvice((MethodInterceptor) invocation -> {
+            advised.add(invocation.getMethod().getName());
+            return invocation.proceed();
+        });
+        Object proxy = pf.getProxy();
+        Method method = AopUtils.selectInvocableMethod(
+                DemoHandler.class.getMethod("onPayload", DemoPayload.class), proxy.getClass());
+
+        new HandlerMethodInvoker(proxy, method, DemoPayload.class, mapper).invoke(envelope("demo.created", "{\"id\":\"P-1\"}"));
+
+        assertThat(advised).containsExactly("onPayload");
+        assertThat(handler.seen).containsExactly("payload:P-1");
+    }
+
+    private HandlerMethodInvoker invoker(Object target, String name, Class<?>... params) throws Exception {
+        Method method = target.getClass().getDeclaredMethod(name, params);
+        return new HandlerMethodInvoker(target, method, DemoPayload.class, mapper);
+    }
+
+    private EventEnvelope envelope(String type, String payloadJson) throws Exception {
+        return EventEnvelope.builder().eventId("E-1").eventType(type).payload(mapper.readTree(payloadJson)).build();
+    }
+
+    // package-private: handler không cần public
+    static class DemoHandler {
+        final List<String> seen = new ArrayList<>();
+
+        public void onPayload(DemoPayload p) {
+            seen.add("payload:" + p.id);
+        }
+
+        String onEnvelope(EventEnvelope env, DemoPayload p) {
+            seen.add("envelope:" + env.getEventType() + ":" + p.id);
+            return "ignored";
+        }
+
+        void retryable(DemoPayload p) {
+            throw new LsfRetryableException("db busy");
+        }
+
+        void checked(DemoPayload p) throws IOException {
+            throw new IOException("io");
+        }
+
+        void twoPayloads(DemoPayload a, DemoPayload b) {
+        }
+    }
+
+    static class DemoPayload {
+        public String id;
+    }
+}
@@ -0,0 +1,148 @@
+package com.myorg.lsf.eventing.autoconfig;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.myorg.lsf.contracts.core.conventions.CoreHeaders;
+import com.myorg.lsf.contracts.core.envelope.EventEnvelope;
+import com.myorg.lsf.eventing.DefaultLsfDispatcher;
+import com.myorg.lsf.eventing.HandlerMethodInvoker;
+import com.myorg.lsf.eventing.HandlerRegistry;
+import com.myorg.lsf.eventing.IdempotentLsfDispatcher;
+import com.myorg.lsf.eventing.JacksonPayloadConverter;
+import com.myorg.lsf.eventing.LsfDispatcher;
+import com.myorg.lsf.eventing.PreDispatchFilter;
+import com.myorg.lsf.eventing.idempotency.IdempotencyStore;
+import com.myorg.lsf.eventing.idempotency.InMemoryIdempotencyStore;
+import com.myorg.lsf.eventing.serde.LazyEventEnvelope;
+import com.myorg.lsf.eventing.serde.LsfEnvelopeDeserializer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LsfEnvelopeListenerTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final LsfEnvelopeDeserializer deserializer = new LsfEnvelopeDeserializer(mapper);
+    private final CountingStore store = new CountingStore();
+    private final List<String> skipped = new ArrayList<>();
+    private final List<String> handled = new ArrayList<>();
+
+    @AfterEach
+    void closeStore() {
+        store.close();
+    }
+
+    @Test
+    void shouldDropUnhandledTypeWithoutParsingValue() throws Exception {
+        LsfEnvelopeListener listener = listener(false);
+        ConsumerRecord<String, Object> other = record("E-1", "other.type", "{\"id\":\"X\"}");
+        ConsumerRecord<String, Object> mine = record("E-2", "demo.created", "{\"id\":\"A-1\"}");
+
+        listener.onMessage(other);
+        listener.onMessage(mine);
+
+        assertThat(((LazyEventEnvelope) other.value()).metadataParsed()).isFalse();
+        assertThat(skipped).containsExactly("other.type:unhandled_type");
+        assertThat(handled).containsExactly("A-1");
+    }
+
+    @Test
+    void shouldFilterBatchValuesByHeaderHints() throws Exception {
+        LsfEnvelopeListener listener = listener(false);
+        ConsumerRecord<String, Object> other = record("E-1", "other.type", "{\"id\":\"X\"}");
+        ConsumerRecord<String, Object> mine = record("E-2", "demo.created", "{\"id\":\"A-1\"}");
+
+        // batch listener với tham số Object nhận List các value
+        listener.onMessage(List.of(other.value(), mine.value()));
+
+        assertThat(((LazyEventEnvelope) other.value()).metadataParsed()).isFalse();
+        assertThat(handled).containsExactly("A-1");
+    }
+
+    @Test
+    void shouldSkipDuplicateBeforeParsingAndAskStoreOncePerRecord() throws Exception {
+        LsfEnvelopeListener listener = listener(true);
+
+        listener.onMessage(record("E-1", "demo.created", "{\"id\":\"A-1\"}"));
+        ConsumerRecord<String, Object> again = record("E-1", "demo.created", "{\"id\":\"A-1\"}");
+        listener.onMessage(again);
+
+        assertThat(handled).containsExactly("A-1");
+        assertThat(((LazyEventEnvelope) again.value()).metadataParsed()).isFalse();
+        assertThat(skipped).containsExactly("demo.created:duplicate");
+        // lease lấy từ header được IdempotentLsfDispatcher dùng lại
+        assertThat(store.begins.get()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldReleaseHeaderLeaseWhenValueCannotBeRead() throws Exception {
+        LsfEnvelopeListener listener = listener(true);
+        RecordHeaders headers = headers("E-9", "demo.created");
+        Object broken = deserializer.deserialize("t", headers, "{\"eventId\":".getBytes(StandardCharsets.UTF_8));
+
+        assertThatThrownBy(() -> listener.onMessage(new ConsumerRecord<>("t", 0, 0L, 0L, null, 0, 0, "k", broken, headers, Optional.empty())))
+                .isInstanceOf(RuntimeException.class);
+
+        // không kẹt ở PROCESSING: record gửi lại vẫn được xử lý
+        listener.onMessage(record("E-9", "demo.created", "{\"id\":\"A-9\"}"));
+        assertThat(handled).containsExactly("A-9");
+    }
+
+    private LsfEnvelopeListener listener(boolean dedup) throws Exception {
+        HandlerRegistry registry = new HandlerRegistry();
+        registry.register("demo.created", new HandlerMethodInvoker(this,
+                LsfEnvelopeListenerTest.class.getDeclaredMethod("onDemo", DemoPayload.class), DemoPayload.class, mapper));
+
+        LsfDispatcher dispatcher = new DefaultLsfDispatcher(registry, true);
+        if (dedup) dispatcher = new IdempotentLsfDispatcher(dispatcher, store);
+        PreDispatchFilter filter = new PreDispatchFilter(registry, true, dedup ? store : null,
+                List.of((type, reason) -> skipped.add(type + ":" + reason)));
+        return new LsfEnvelopeListener(dispatcher, new JacksonPayloadConverter(mapper), filter);
+    }
+
+    private ConsumerRecord<String, Object> record(String eventId, String eventType, String payloadJson) {
+        String json = "{\"eventId\":\"" + eventId + "\",\"eventType\":\"" + eventType + "\",\"payload\":" + payloadJson + "}";
+        RecordHeaders headers = headers(eventId, eventType);
+        EventEnvelope value = deserializer.deserialize("t", headers, json.getBytes(StandardCharsets.UTF_8));
+        return new ConsumerRecord<>("t", 0, 0L, 0L, null, 0, 0, "k", value, headers, Optional.empty());
+    }
+
+    private static RecordHeaders headers(String eventId, String eventType) {
+        RecordHeaders headers = new RecordHeaders();
+        headers.add(CoreHeaders.EVENT_ID, eventId.getBytes(StandardCharsets.UTF_8));
+        headers.add(CoreHeaders.EVENT_TYPE, eventType.getBytes(StandardCharsets.UTF_8));
+        return headers;
+    }
+
+    void onDemo(DemoPayload p) {
+        handled.add(p.id);
+    }
+
+    static class DemoPayload {
+        public String id;
+    }
+
+    static class CountingStore extends InMemoryIdempotencyStore {
+        final AtomicInteger begins = new AtomicInteger();
+
+        CountingStore() {
+            super(Duration.ofHours(1), Duration.ofMinutes(1), 1000, Duration.ofMinutes(5));
+        }
+
+        @Override
+        public IdempotencyStore.Lease tryBeginProcessing(String eventId) {
+            begins.incrementAndGet();
+            return super.tryBeginProcessing(eventId);
+        }
+    }
+}
@@ -0,0 +1,292 @@
+package com.myorg.lsf.eventing.autoconfig;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.myorg.lsf.contracts.core.envelope.EventEnvelope;
+import com.myorg.lsf.eventing.DefaultLsfDispatcher;
+import com.myorg.lsf.eventing.HandlerMethodInvoker;
+import com.myorg.lsf.eventing.HandlerRegistry;
+import com.myorg.lsf.eventing.JacksonPayloadConverter;
+import com.myorg.lsf.eventing.LsfContextPropagator;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.MDC;
+import org.springframework.kafka.listener.BatchListenerFailedException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LsfParallelBatchListenerTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Map<String, List<String>> handledByGroup = new ConcurrentHashMap<>();
+    private final List<String> handled = new CopyOnWriteArrayList<>();
+    private final CountDownLatch bothKeysStarted = new CountDownLatch(2);
+    private final AtomicInteger concurrent = new AtomicInteger();
+    private final AtomicInteger maxConcurrent = new AtomicInteger();
+    private final List<String> contextSeen = new CopyOnWriteArrayList<>();
+    private final List<Boolean> onVirtualThread = new CopyOnWriteArrayList<>();
+    // đóng vai observation hiện tại (ThreadLocal của ObservationRegistry)
+    private final ThreadLocal<String> observation = new ThreadLocal<>();
+    private LsfParallelBatchListener listener;
+
+    @AfterEach
+    void close() {
+        if (listener != null) listener.close();
+    }
+
+    @Test
+    void shouldRunKeysConcurrentlyAndKeepOrderWithinKey() throws Exception {
+        listener = listener("key", false);
+        List<ConsumerRecord<Object, Object>> batch = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            String key = i % 2 == 0 ? "A" : "B";
+            // record đầu của A và B chờ nhau: chỉ qua được khi 2 key chạy song song
+            batch.add(record(i, key, null, new Demo(key + i, i < 2 ? "rendezvous" : null)));
+        }
+
+        listener.onBatch(batch);
+
+        assertThat(handled).hasSize(20);
+        assertThat(handledByGroup.get("A")).containsExactly("A0", "A2", "A4", "A6", "A8", "A10", "A12", "A14", "A16", "A18");
+        assertThat(handledByGroup.get("B")).containsExactly("B1", "B3", "B5", "B7", "B9", "B11", "B13", "B15", "B17", "B19");
+    }
+
+    @Test
+    void shouldReportEarliestFailedRecordAndStopItsKey() throws Exception {
+        listener = listener("key", true);
+        List<ConsumerRecord<Object, Object>> batch = List.of(
+                record(0, "A", null, new Demo("A0", null)),
+                record(1, "B", null, new Demo("B1", null)),
+                record(2, "C", null, new Demo("C2", "fail")),
+                record(3, "A", null, new Demo("A3", "fail")),
+                record(4, "C", null, new Demo("C4", null)));
+
+        assertThatThrownBy(() -> listener.onBatch(batch))
+                .isInstanceOfSatisfying(BatchListenerFailedException.class, e -> {
+                    assertThat(e.getRecord()).isSameAs(batch.get(2));
+                    assertThat(e.getCause()).hasMessageContaining("C2");
+                });
+        // record trước record lỗi đều đã chạy (sẽ được commit), C4 phải chờ C2
+        assertThat(handled).contains("A0", "B1").doesNotContain("C4");
+    }
+
+    @Test
+    void shouldGroupByAggregateId() throws Exception {
+        listener = listener("aggregate-id", true);
+        List<ConsumerRecord<Object, Object>> batch = List.of(
+                // key khác nhau, cùng aggregate: vẫn tuần tự
+                record(0, "k1", "ORD-1", new Demo("first", "slow")),
+                record(1, "k2", "ORD-1", new Demo("second", null)),
+                record(2, "k3", "ORD-2", new Demo("other", null)));
+
+        listener.onBatch(batch);
+
+        assertThat(handledByGroup.get("ORD-1")).containsExactly("first", "second");
+        assertThat(handled).contains("other");
+    }
+
+    @Test
+    void shouldCapInFlightPerHandlerAndPropagateContext() throws Exception {
+        InFlightLimiter limiter = new InFlightLimiter(0, Map.of("demo", 2));
+        listener = listener("none", true, 50, limiter, List.of(task -> {
+            String captured = observation.get(); // chụp trên thread container
+            return () -> {
+                observation.set(captured);
+                try {
+                    task.run();
+                } finally {
+                    observation.remove();
+                }
+            };
+        }));
+        List<ConsumerRecord<Object, Object>> batch = new ArrayList<>();
+        for (int i = 0; i < 12; i++) batch.add(record(i, "K", null, new Demo("K" + i, "slow")));
+
+        observation.set("parent-span");
+        MDC.put("topic", "orders");
+        try {
+            listener.onBatch(batch);
+        } finally {
+            observation.remove();
+            MDC.remove("topic");
+        }
+
+        assertThat(handled).hasSize(12);
+        assertThat(maxConcurrent.get()).isEqualTo(2);
+        assertThat(contextSeen).containsOnly("orders/parent-span");
+        assertThat(limiter.inFlight()).isZero();
+    }
+
+    @Test
+    void shouldNotCapVirtualThreadsByMaxConcurrency() throws Exception {
+        listener = listener("none", true, 2, new InFlightLimiter(8, Map.of()), List.of());
+        List<ConsumerRecord<Object, Object>> batch = new ArrayList<>();
+        for (int i = 0; i < 16; i++) batch.add(record(i, "K", null, new Demo("K" + i, "slow")));
+
+        listener.onBatch(batch);
+
+        assertThat(handled).hasSize(16);
+        // max-concurrency=2 chỉ dành cho pool cố định, max-in-flight=8 mới là giới hạn
+        assertThat(maxConcurrent.get()).isGreaterThan(2).isLessThanOrEqualTo(8);
+    }
+
+    @Test
+    void shouldRunSingleGroupBatchOnVirtualThread() throws Exception {
+        listener = listener("key", true);
+
+        listener.onBatch(List.of(record(0, "A", null, new Demo("A0", null)), record(1, "A", null, new Demo("A1", null))));
+
+        assertThat(handledByGroup.get("A")).containsExactly("A0", "A1");
+        assertThat(onVirtualThread).containsOnly(true);
+    }
+
+    @Test
+    void shouldPauseWaitingPartitionAndResumeAtHalf() throws Exception {
+        InFlightLimiter limiter = new InFlightLimiter(4, Map.of());
+        List<String> calls = new CopyOnWriteArrayList<>();
+        limiter.attach(recording(calls));
+        TopicPartition hot = new TopicPartition("t", 1);
+
+        for (int i = 0; i < 4; i++) limiter.acquire(null, new TopicPartition("t", 0));
+        assertThat(calls).isEmpty();
+
+        // hết permit: partition của record phải chờ bị pause ngay, không đợi hết batch
+        CompletableFuture<Void> waiting = CompletableFuture.runAsync(() -> {
+            try {
+                limiter.acquire(null, hot);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (calls.isEmpty() && System.nanoTime() < deadline) Thread.sleep(5);
+        assertThat(calls).containsExactly("pause t-1");
+        assertThat(limiter.pausedPartitions()).containsExactly(hot);
+
+        limiter.release(null); // record chờ lấy permit, vẫn 4
+        waiting.get(5, TimeUnit.SECONDS);
+        limiter.release(null); // 3
+        assertThat(calls).containsExactly("pause t-1");
+        limiter.release(null); // 2 = một nửa
+        assertThat(calls).containsExactly("pause t-1", "resume t-1");
+        assertThat(limiter.pausedPartitions()).isEmpty();
+    }
+
+    @Test
+    void shouldPausePartitionsWhileContainerThreadsShareTheLimit() throws Exception {
+        InFlightLimiter limiter = new InFlightLimiter(2, Map.of());
+        List<String> calls = new CopyOnWriteArrayList<>();
+        limiter.attach(recording(calls));
+        listener = listener("none", true, 4, limiter, List.of());
+        List<ConsumerRecord<Object, Object>> p0 = new ArrayList<>();
+        List<ConsumerRecord<Object, Object>> p1 = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            p0.add(record(0, i, "K", null, new Demo("P0-" + i, "slow")));
+            p1.add(record(1, i, "K", null, new Demo("P1-" + i, "slow")));
+        }
+
+        // 2 thread container (concurrency=2) dùng chung 1 limiter
+        CompletableFuture<Void> first = CompletableFuture.runAsync(() -> listener.onBatch(p0));
+        CompletableFuture<Void> second = CompletableFuture.runAsync(() -> listener.onBatch(p1));
+        CompletableFuture.allOf(first, second).get(10, TimeUnit.SECONDS);
+
+        assertThat(handled).hasSize(8);
+        assertThat(maxConcurrent.get()).isLessThanOrEqualTo(2);
+        assertThat(calls).anyMatch(c -> c.startsWith("pause"));
+        assertThat(calls.stream().filter(c -> c.startsWith("resume")).count())
+                .isEqualTo(calls.stream().filter(c -> c.startsWith("pause")).count());
+        assertThat(limiter.pausedPartitions()).isEmpty();
+        assertThat(limiter.inFlight()).isZero();
+    }
+
+    @Test
+    void shouldRejectUnknownGroupBy() {
+        LsfEnvelopeListener perRecord = new LsfEnvelopeListener(null, null);
+        assertThatThrownBy(() -> new LsfParallelBatchListener(perRecord, "partition", 4, false))
+                .isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> new LsfParallelBatchListener(perRecord, "key", 0, false))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    private static InFlightLimiter.Pausable recording(List<String> calls) {
+        return new InFlightLimiter.Pausable() {
+            @Override
+            public void pause(TopicPartition partition) {
+                calls.add("pause " + partition);
+            }
+
+            @Override
+            public void resume(TopicPartition partition) {
+                calls.add("resume " + partition);
+            }
+        };
+    }
+
+    private LsfParallelBatchListener listener(String groupBy, boolean virtualThreads) throws Exception {
+        return listener(groupBy, virtualThreads, 4, null, List.of());
+    }
+
+    private LsfParallelBatchListener listener(String groupBy, boolean virtualThreads, int maxConcurrency,
+                                              InFlightLimiter limiter, List<LsfContextPropagator> propagators) throws Exception {
+        HandlerRegistry registry = new HandlerRegistry();
+        registry.register("demo", new HandlerMethodInvoker(this,
+                LsfParallelBatchListenerTest.class.getDeclaredMethod("onDemo", EventEnvelope.class, Demo.class), Demo.class, mapper));
+        LsfEnvelopeListener perRecord = new LsfEnvelopeListener(new DefaultLsfDispatcher(registry, true), new JacksonPayloadConverter(mapper));
+        return new LsfParallelBatchListener(perRecord, groupBy, maxConcurrency, virtualThreads, limiter, propagators);
+    }
+
+    private ConsumerRecord<Object, Object> record(long offset, String key, String aggregateId, Demo payload) {
+        return record(0, offset, key, aggregateId, payload);
+    }
+
+    private ConsumerRecord<Object, Object> record(int partition, long offset, String key, String aggregateId, Demo payload) {
+        EventEnvelope env = EventEnvelope.builder().eventId("E-" + partition + "-" + offset).eventType("demo")
+                .aggregateId(aggregateId).payload(mapper.valueToTree(payload)).build();
+        return new ConsumerRecord<>("t", partition, offset, key, env);
+    }
+
+    void onDemo(EventEnvelope env, Demo d) throws Exception {
+        if ("rendezvous".equals(d.mode)) {
+            bothKeysStarted.countDown();
+            assertThat(bothKeysStarted.await(5, TimeUnit.SECONDS)).as("keys run concurrently").isTrue();
+        }
+        int running = concurrent.incrementAndGet();
+        maxConcurrent.accumulateAndGet(running, Math::max);
+        contextSeen.add(MDC.get("topic") + "/" + observation.get());
+        onVirtualThread.add(Thread.currentThread().isVirtual());
+        try {
+            if ("slow".equals(d.mode)) Thread.sleep(50);
+        } finally {
+            concurrent.decrementAndGet();
+        }
+        if ("fail".equals(d.mode)) throw new IllegalStateException("boom " + d.id);
+        String group = env.getAggregateId() != null ? env.getAggregateId() : d.id.substring(0, 1);
+        handledByGroup.computeIfAbsent(group, g -> new CopyOnWriteArrayList<>()).add(d.id);
+        handled.add(d.id);
+    }
+
+    public static class Demo {
+        public String id;
+        public String mode;
+
+        public Demo() {
+        }
+
+        Demo(String id, String mode) {
+            this.id = id;
+            this.mode = mode;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.myorg.lsf.eventing.autoconfig;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.myorg.lsf.contracts.core.envelope.EventEnvelope;
+import com.myorg.lsf.eventing.DefaultLsfDispatcher;
+import com.myorg.lsf.eventing.HandlerMethodInvoker;
+import com.myorg.lsf.eventing.HandlerRegistry;
+import com.myorg.lsf.eventing.JacksonPayloadConverter;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * I/O-bound handlers (each record blocks {@code IO_MS}, like a JDBC / Redis / HTTP call) on one
+ * poll of {@code RECORDS} records over {@code KEYS} keys: the current sequential batch listener
+ * vs key-ordered dispatch on a 16-thread pool vs virtual threads (per key and per record).
+ * Reports ms per batch and records/s.
+ *
+ * Run with {@code RUN_EVENTING_BENCHMARKS=true mvn -pl lsf-eventing-starter test
+ * -Dtest=VirtualThreadDispatchBenchmarkTest}.
+ */
+@EnabledIfEnvironmentVariable(named = "RUN_EVENTING_BENCHMARKS", matches = "true")
+class VirtualThreadDispatchBenchmarkTest {
+
+    private static final int RECORDS = 1_000;
+    private static final int KEYS = 200;
+    private static final long IO_MS = 5;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final AtomicLong handled = new AtomicLong();
+
+    @Test
+    void reportBatchLatencyAndThroughput() throws Exception {
+        List<ConsumerRecord<Object, Object>> batch = new ArrayList<>();
+        for (int i = 0; i < RECORDS; i++) {
+            EventEnvelope env = EventEnvelope.builder().eventId("E-" + i).eventType("io.bound")
+                    .payload(mapper.valueToTree(Map.of("id", i))).build();
+            batch.add(new ConsumerRecord<>("t", 0, i, "K-" + (i % KEYS), env));
+        }
+        List<Object> values = batch.stream().map(ConsumerRecord::value).toList();
+
+        LsfEnvelopeListener sequential = perRecord();
+        try (LsfParallelBatchListener pool = new LsfParallelBatchListener(perRecord(), "key", 16, false);
+             LsfParallelBatchListener virtualPerKey = new LsfParallelBatchListener(perRecord(), "key", KEYS, true);
+             LsfParallelBatchListener virtualPerRecord = new LsfParallelBatchListener(perRecord(), "none", RECORDS, true,
+                     new InFlightLimiter(500, Map.of()), List.of())) {
+
+            System.out.printf("%d records, %d keys, %d ms I/O per record%n", RECORDS, KEYS, IO_MS);
+            System.out.printf("%-36s %10s %12s%n", "mode", "ms/batch", "records/s");
+            report("sequential (current)", () -> sequential.onMessage(values));
+            report("key-ordered, 16 platform threads", () -> pool.onBatch(batch));
+            report("key-ordered, virtual threads", () -> virtualPerKey.onBatch(batch));
+            report("per record, virtual, in-flight 500", () -> virtualPerRecord.onBatch(batch));
+        }
+        assertEquals(0, handled.get() % RECORDS);
+    }
+
+    private void report(String mode, Runnable batch) {
+        batch.run(); // warm-up
+        int rounds = 3;
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) batch.run();
+        double ms = (System.nanoTime() - start) / 1e6 / rounds;
+        System.out.printf("%-36s %10.1f %12.0f%n", mode, ms, RECORDS / (ms / 1000));
+    }
+
+    private LsfEnvelopeListener perRecord() throws Exception {
+        HandlerRegistry registry = new HandlerRegistry();
+        registry.register("io.bound", new HandlerMethodInvoker(this,
+                VirtualThreadDispatchBenchmarkTest.class.getDeclaredMethod("onEvent", Map.class), Map.class, mapper));
+        return new LsfEnvelopeListener(new DefaultLsfDispatcher(registry, true), new JacksonPayloadConverter(mapper));
+    }
+
+    void onEvent(Map<?, ?> payload) throws InterruptedException {
+        Thread.sleep(IO_MS);
+        handled.incrementAndGet();
+    }
+}
@@ -0,0 +1,99 @@
+package com.myorg.lsf.eventing.serde;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.myorg.lsf.contracts.core.envelope.EventEnvelope;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Record value -> handler payload: the former path (envelope parsed into a JsonNode tree, then
+ * {@code treeToValue}) vs {@link LsfEnvelopeDeserializer} + cached {@link ObjectReader} on the raw
+ * payload bytes. Reports ns and allocated bytes per event.
+ *
+ * Run with {@code RUN_EVENTING_BENCHMARKS=true mvn -pl lsf-eventing-starter test
+ * -Dtest=EnvelopeDeserializeBenchmarkTest}.
+ */
+@EnabledIfEnvironmentVariable(named = "RUN_EVENTING_BENCHMARKS", matches = "true")
+class EnvelopeDeserializeBenchmarkTest {
+
+    private static final int WARMUP = 300_000;
+    private static final int MEASURE = 1_000_000;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    void reportNanosAndBytesPerEvent() throws Exception {
+        byte[] value = ("{\"eventId\":\"0b9d6f1e-2f7c-4c7a-9a56-3f0f5d1f2c11\",\"eventType\":\"order.placed.v1\",\"version\":1,"
+                + "\"aggregateId\":\"ORD-42\",\"correlationId\":\"ORD-42\",\"causationId\":null,"
+                + "\"occurredAtMs\":1700000000000,\"producer\":\"order-service\",\"payload\":{\"orderId\":\"ORD-42\","
+                + "\"customerId\":\"C-7\",\"total\":129.5,\"lines\":[{\"sku\":\"SKU-1\",\"qty\":2,\"price\":19.5},"
+                + "{\"sku\":\"SKU-2\",\"qty\":1,\"price\":90.5}]},\"error\":null}").getBytes(StandardCharsets.UTF_8);
+
+        ObjectReader reader = mapper.readerFor(Order.class);
+        LsfEnvelopeDeserializer deserializer = new LsfEnvelopeDeserializer(mapper);
+
+        Path tree = () -> {
+            EventEnvelope env = mapper.readValue(value, EventEnvelope.class);
+            return mapper.treeToValue(env.getPayload(), Order.class);
+        };
+        Path streaming = () -> deserializer.read(value).readPayload(reader);
+
+        assertEquals(tree.run().lines.size(), streaming.run().lines.size());
+
+        for (int round = 0; round < 3; round++) {
+            measure(tree, WARMUP);
+            measure(streaming, WARMUP);
+        }
+        System.out.printf("%-22s %10s %12s%n", "path", "ns/event", "bytes/event");
+        report("JsonNode tree", tree);
+        report("streaming + reader", streaming);
+    }
+
+    private static void report(String name, Path path) throws Exception {
+        long allocBefore = allocatedBytes();
+        double ns = measure(path, MEASURE);
+        long bytes = (allocatedBytes() - allocBefore) / MEASURE;
+        System.out.printf("%-22s %10.1f %12d%n", name, ns, bytes);
+    }
+
+    private static double measure(Path path, int iterations) throws Exception {
+        long sink = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += path.run().lines.size();
+        }
+        double ns = (System.nanoTime() - start) / (double) iterations;
+        if (sink == 42) System.out.print("");
+        return ns;
+    }
+
+    private static long allocatedBytes() {
+        var bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    @FunctionalInterface
+    interface Path {
+        Order run() throws Exception;
+    }
+
+    public static class Order {
+        public String orderId;
+        public String customerId;
+        public double total;
+        public List<Line> lines;
+    }
+
+    public static class Line {
+        public String sku;
+        public int qty;
+        public double price;
+    }
+}
@@ -0,0 +1,117 @@
+package com.myorg.lsf.eventing.serde;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.myorg.lsf.contracts.core.conventions.CoreHeaders;
+import com.myorg.lsf.contracts.core.envelope.EventEnvelope;
+import com.myorg.lsf.eventing.HandlerMethodInvoker;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LsfEnvelopeDeserializerTest {
+
+    private static final String JSON = "{\"eventId\":\"E-1\",\"eventType\":\"demo.created\",\"version\":2,"
+            + "\"aggregateId\":\"A-1\",\"correlationId\":\"C-1\",\"causationId\":null,\"occurredAtMs\":1700000000000,"
+            + "\"producer\":\"svc\",\"extra\":{\"ignored\":[1,2]},"
+            + "\"payload\":{\"id\":\"P-1\",\"tags\":[\"a\",\"b\"],\"nested\":{\"x\":1}},"
+            + "\"error\":{\"code\":\"E\",\"message\":\"m\",\"detail\":null}}";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final LsfEnvelopeDeserializer deserializer = new LsfEnvelopeDeserializer(mapper);
+
+    @Test
+    void shouldReadMetadataAndKeepPayloadAsBytes() throws Exception {
+        RecordHeaders headers = new RecordHeaders();
+        headers.add(CoreHeaders.EVENT_TYPE, "demo.created".getBytes(StandardCharsets.UTF_8));
+        EventEnvelope env = deserializer.deserialize("t", headers, JSON.getBytes(StandardCharsets.UTF_8));
+
+        assertThat(env).isInstanceOf(LazyEventEnvelope.class);
+        LazyEventEnvelope lazy = (LazyEventEnvelope) env;
+        // header đọc được, value chưa bị parse
+        assertThat(lazy.eventTypeHint()).isEqualTo("demo.created");
+        assertThat(lazy.eventIdHint()).isNull();
+        assertThat(lazy.metadataParsed()).isFalse();
+
+        assertThat(lazy.hasRawPayload()).isTrue();
+        assertThat(lazy.metadataParsed()).isTrue();
+        assertThat(env.getEventId()).isEqualTo("E-1");
+        assertThat(env.getEventType()).isEqualTo("demo.created");
+        assertThat(env.getVersion()).isEqualTo(2);
+        assertThat(env.getAggregateId()).isEqualTo("A-1");
+        assertThat(env.getCorrelationId()).isEqualTo("C-1");
+        assertThat(env.getCausationId()).isNull();
+        assertThat(env.getOccurredAtMs()).isEqualTo(1700000000000L);
+        assertThat(env.getProducer()).isEqualTo("svc");
+        assertThat(env.getError().getCode()).isEqualTo("E");
+
+        // cùng kết quả với đường cũ (parse cả envelope thành cây)
+        EventEnvelope viaTree = mapper.readValue(JSON.replace("\"extra\":{\"ignored\":[1,2]},", ""), EventEnvelope.class);
+        assertThat(env.getPayload()).isEqualTo(viaTree.getPayload());
+        assertThat(((LazyEventEnvelope) env).hasRawPayload()).isFalse();
+        assertThat(env).isEqualTo(viaTree);
+    }
+
+    @Test
+    void shouldSkipConfluentSchemaHeader() {
+        byte[] json = JSON.getBytes(StandardCharsets.UTF_8);
+        byte[] framed = new byte[json.length + 5];
+        framed[0] = 0;
+        framed[4] = 42; // schema id
+        System.arraycopy(json, 0, framed, 5, json.length);
+
+        EventEnvelope env = deserializer.deserialize("t", framed);
+
+        assertThat(env.getEventId()).isEqualTo("E-1");
+        assertThat(env.getPayload().get("nested").get("x").asInt()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldBindRawPayloadStraightIntoHandler() throws Exception {
+        DemoHandler handler = new DemoHandler();
+        Method method = DemoHandler.class.getDeclaredMethod("on", DemoPayload.class);
+        HandlerMethodInvoker invoker = new HandlerMethodInvoker(handler, method, DemoPayload.class, mapper);
+
+        LazyEventEnvelope env = deserializer.read(JSON.getBytes(StandardCharsets.UTF_8));
+        invoker.invoke(env);
+
+        assertThat(handler.seen).containsExactly("P-1:[a, b]");
+        assertThat(env.hasRawPayload()).isTrue(); // không dựng JsonNode
+    }
+
+    @Test
+    void shouldHandleNullPayloadTombstoneAndGarbage() {
+        EventEnvelope env = deserializer.deserialize("t",
+                "{\"eventId\":\"E-2\",\"payload\":null}".getBytes(StandardCharsets.UTF_8));
+        assertThat(env.getPayload()).isNull();
+        assertThat(deserializer.deserialize("t", null)).isNull();
+
+        // lỗi JSON nổ ra ở lần đọc đầu tiên, và lần sau vẫn báo lỗi
+        EventEnvelope notObject = deserializer.deserialize("t", "[1]".getBytes(StandardCharsets.UTF_8));
+        assertThatThrownBy(notObject::getEventType).isInstanceOf(SerializationException.class);
+        EventEnvelope truncated = deserializer.deserialize("t", "{\"eventId\":\"E-3\",\"payload\":{".getBytes(StandardCharsets.UTF_8));
+        assertThatThrownBy(truncated::getEventType).isInstanceOf(SerializationException.class);
+        assertThatThrownBy(truncated::getEventId).isInstanceOf(SerializationException.class);
+    }
+
+    static class DemoHandler {
+        final List<String> seen = new ArrayList<>();
+
+        void on(DemoPayload p) {
+            seen.add(p.id + ":" + p.tags);
+        }
+    }
+
+    static class DemoPayload {
+        public String id;
+        public List<String> tags;
+        public Object nested;
+    }
+}
@@ -1,12 +1,16 @@
 package com.myorg.lsf.observability;
 
 import com.myorg.lsf.contracts.core.envelope.EventEnvelope;
+import com.myorg.lsf.eventing.PreDispatchFilter;
 import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.MDC;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 @RequiredArgsConstructor
 public class LsfMetrics {
 
@@ -21,6 +25,7 @@ public class LsfMetrics {
     private Counter cDlq;
     private Counter cDuplicate;
     private Counter cInFlight;
+    private final Map<String, Counter> cSkipped = new ConcurrentHashMap<>();
 
     /** Call once on startup. */
     public void preRegisterBaseMeters() {
@@ -35,6 +40,11 @@ public class LsfMetrics {
         Counter.builder("lsf.kafka.retry").tag("service", serviceName).register(registry);
         Counter.builder("lsf.kafka.dlq").tag("service", serviceName).register(registry);
 
+        // record bị bỏ theo header trước khi đọc value (PreDispatchFilter)
+        for (String reason : new String[]{PreDispatchFilter.UNHANDLED_TYPE, PreDispatchFilter.DUPLICATE, PreDispatchFilter.IN_FLIGHT}) {
+            cSkipped.put(reason, skippedCounter(reason));
+        }
+
         // Ensure timer name exists
         Timer.builder("lsf.event.processing").tag("service", serviceName).register(registry);
     }
@@ -65,6 +75,24 @@ public class LsfMetrics {
     public void incDuplicate()      { if (cDuplicate != null) cDuplicate.increment(); }
     public void incInFlight()       { if (cInFlight != null) cInFlight.increment(); }
 
+    public void incSkipped(String reason) {
+        cSkipped.computeIfAbsent(reason, this::skippedCounter).increment();
+    }
+
+    /** Record dropped before dispatch: {@code lsf.event.skipped}, plus the dispatcher's own counter for the same outcome. */
+    public void recordSkipped(String reason) {
+        incSkipped(reason);
+        switch (reason) {
+            case PreDispatchFilter.DUPLICATE -> incDuplicate();
+            case PreDispatchFilter.IN_FLIGHT -> incInFlight();
+            default -> { }
+        }
+    }
+
+    private Counter skippedCounter(String reason) {
+        return Counter.builder("lsf.event.skipped").tag("service", serviceName).tag("reason", reason).register(registry);
+    }
+
     /** These two should be called by Kafka error handler when retry/dlq happens. */
     public void incRetry() {
         if (cRetry != null) cRetry.increment();
@@ -1,6 +1,7 @@
 package com.myorg.lsf.observability;
 
 import com.myorg.lsf.eventing.LsfDispatcher;
+import com.myorg.lsf.eventing.LsfSkippedRecordListener;
 import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.config.BeanPostProcessor;
@@ -53,6 +54,21 @@ public class LsfObservabilityAutoConfiguration {
         };
     }
 
+    /**
+     * Count records dropped by the eventing header filter before dispatch ({@code lsf.event.skipped{reason}}).
+     * Duplicates / in-flight records also go to {@code lsf.event.duplicate} / {@code lsf.event.in_flight},
+     * which ObservingLsfDispatcher no longer sees for them.
+     */
+    @Bean
+    public LsfSkippedRecordListener lsfSkippedRecordMetrics(LsfObservabilityProperties props,
+                                                            ObjectProvider<LsfMetrics> metricsProvider) {
+        return (eventType, reason) -> {
+            if (!props.isEnabled() || !props.isMetricsEnabled()) return;
+            LsfMetrics m = metricsProvider.getIfAvailable();
+            if (m != null) m.recordSkipped(reason);
+        };
+    }
+
     @Bean
     public static BeanPostProcessor observingDispatcherBpp(
             LsfObservabilityProperties props,
@@ -0,0 +1,86 @@
+package com.myorg.lsf.observability;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.myorg.lsf.contracts.core.conventions.CoreHeaders;
+import com.myorg.lsf.eventing.DefaultLsfDispatcher;
+import com.myorg.lsf.eventing.HandlerMethodInvoker;
+import com.myorg.lsf.eventing.HandlerRegistry;
+import com.myorg.lsf.eventing.IdempotentLsfDispatcher;
+import com.myorg.lsf.eventing.JacksonPayloadConverter;
+import com.myorg.lsf.eventing.LsfDispatcher;
+import com.myorg.lsf.eventing.PreDispatchFilter;
+import com.myorg.lsf.eventing.autoconfig.LsfEnvelopeListener;
+import com.myorg.lsf.eventing.idempotency.InMemoryIdempotencyStore;
+import com.myorg.lsf.eventing.serde.LsfEnvelopeDeserializer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LsfSkippedRecordMetricsTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final InMemoryIdempotencyStore store =
+            new InMemoryIdempotencyStore(Duration.ofHours(1), Duration.ofMinutes(1), 1000, Duration.ofMinutes(5));
+    private final List<String> handled = new ArrayList<>();
+
+    @AfterEach
+    void closeStore() {
+        store.close();
+    }
+
+    @Test
+    void duplicateDroppedByHeaderFilterShouldStillCountAsDuplicate() throws Exception {
+        LsfObservabilityProperties props = new LsfObservabilityProperties();
+        LsfMetrics metrics = new LsfMetrics(registry, "test", props);
+        metrics.preRegisterBaseMeters();
+
+        HandlerRegistry handlers = new HandlerRegistry();
+        handlers.register("demo.created", new HandlerMethodInvoker(this,
+                LsfSkippedRecordMetricsTest.class.getDeclaredMethod("onDemo", DemoPayload.class), DemoPayload.class, mapper));
+        LsfDispatcher dispatcher = new ObservingLsfDispatcher(
+                new IdempotentLsfDispatcher(new DefaultLsfDispatcher(handlers, true), store), props, metrics, null);
+        PreDispatchFilter filter = new PreDispatchFilter(handlers, true, store, List.of(
+                new LsfObservabilityAutoConfiguration().lsfSkippedRecordMetrics(props,
+                        new StaticListableBeanFactory(Map.of("lsfMetrics", metrics)).getBeanProvider(LsfMetrics.class))));
+        LsfEnvelopeListener listener = new LsfEnvelopeListener(dispatcher, new JacksonPayloadConverter(mapper), filter);
+
+        listener.onMessage(record("E-1", "{\"id\":\"A-1\"}"));
+        listener.onMessage(record("E-1", "{\"id\":\"A-1\"}"));
+
+        assertThat(handled).containsExactly("A-1");
+        // bản trùng bị bỏ trước dispatcher chain nhưng vẫn vào counter cũ
+        assertThat(registry.get("lsf.event.duplicate").counter().count()).isEqualTo(1.0);
+        assertThat(registry.get("lsf.event.handled.success").counter().count()).isEqualTo(1.0);
+        assertThat(registry.get("lsf.event.skipped").tag("reason", "duplicate").counter().count()).isEqualTo(1.0);
+    }
+
+    private ConsumerRecord<String, Object> record(String eventId, String payloadJson) {
+        String json = "{\"eventId\":\"" + eventId + "\",\"eventType\":\"demo.created\",\"payload\":" + payloadJson + "}";
+        RecordHeaders headers = new RecordHeaders();
+        headers.add(CoreHeaders.EVENT_ID, eventId.getBytes(StandardCharsets.UTF_8));
+        headers.add(CoreHeaders.EVENT_TYPE, "demo.created".getBytes(StandardCharsets.UTF_8));
+        Object value = new LsfEnvelopeDeserializer(mapper).deserialize("t", headers, json.getBytes(StandardCharsets.UTF_8));
+        return new ConsumerRecord<>("t", 0, 0L, 0L, null, 0, 0, "k", value, headers, Optional.empty());
+    }
+
+    void onDemo(DemoPayload p) {
+        handled.add(p.id);
+    }
+
+    static class DemoPayload {
+        public String id;
+    }
+}
@@ -0,0 +1,11 @@
+package com.myorg.lsf.quota.api;
+
+/**
+ * How {@link QuotaService#reserveAll} treats a batch where some items do not fit.
+ */
+public enum QuotaBatchMode {
+    /** Either every item is held (or already was) or no new hold is written. */
+    ALL_OR_NOTHING,
+    /** Each item is decided on its own, in order, as if reserved one by one. */
+    BEST_EFFORT
+}
@@ -0,0 +1,70 @@
+package com.myorg.lsf.quota.api;
+
+import lombok.Builder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Outcome of a group operation: several quota keys held under one requestId.
+ * {@code results} follows the order of {@code quotaKeys}.
+ *
+ * {@code blockingKeys} lists, for a REJECTED reserve, the keys that did not have room
+ * for their own amount (seat, lab slot, credit cap...); it is empty otherwise.
+ */
+@Builder
+public record QuotaGroupResult(
+        QuotaDecision decision,
+        String requestId,
+        List<String> quotaKeys,
+        List<QuotaResult> results,
+        List<String> blockingKeys
+) {
+    public QuotaResult result(String quotaKey) {
+        int i = quotaKeys.indexOf(quotaKey);
+        return (i >= 0) ? results.get(i) : null;
+    }
+
+    /** ACCEPTED when every key is held, DUPLICATE when the whole group already was, else REJECTED. */
+    public static QuotaGroupResult ofReserve(List<QuotaRequest> requests, List<QuotaResult> results) {
+        List<String> keys = new ArrayList<>(requests.size());
+        List<String> blocking = new ArrayList<>();
+        boolean rejected = false;
+        boolean allDuplicate = true;
+        for (int i = 0; i < requests.size(); i++) {
+            QuotaRequest req = requests.get(i);
+            QuotaResult r = results.get(i);
+            keys.add(req.quotaKey());
+            if (r.decision() == QuotaDecision.REJECTED) {
+                rejected = true;
+                if (r.used() + Math.max(1, req.amount()) > r.limit()) blocking.add(req.quotaKey());
+            }
+            if (r.decision() != QuotaDecision.DUPLICATE) allDuplicate = false;
+        }
+        QuotaDecision decision = rejected ? QuotaDecision.REJECTED
+                : allDuplicate ? QuotaDecision.DUPLICATE : QuotaDecision.ACCEPTED;
+        return new QuotaGroupResult(decision, requests.get(0).requestId(), List.copyOf(keys), List.copyOf(results),
+                List.copyOf(blocking));
+    }
+
+    /** NOT_FOUND when any key had nothing to confirm (then nothing was confirmed). */
+    public static QuotaGroupResult ofConfirm(List<String> quotaKeys, String requestId, List<QuotaResult> results) {
+        boolean allDuplicate = true;
+        QuotaDecision decision = null;
+        for (QuotaResult r : results) {
+            if (r.decision() == QuotaDecision.NOT_FOUND) decision = QuotaDecision.NOT_FOUND;
+            if (r.decision() != QuotaDecision.DUPLICATE) allDuplicate = false;
+        }
+        if (decision == null) decision = allDuplicate ? QuotaDecision.DUPLICATE : QuotaDecision.ACCEPTED;
+        return new QuotaGroupResult(decision, requestId, List.copyOf(quotaKeys), List.copyOf(results), List.of());
+    }
+
+    /** ACCEPTED when at least one key released something. */
+    public static QuotaGroupResult ofRelease(List<String> quotaKeys, String requestId, List<QuotaResult> results) {
+        QuotaDecision decision = QuotaDecision.NOT_FOUND;
+        for (QuotaResult r : results) {
+            if (r.decision() == QuotaDecision.ACCEPTED) decision = QuotaDecision.ACCEPTED;
+        }
+        return new QuotaGroupResult(decision, requestId, List.copyOf(quotaKeys), List.copyOf(results), List.of());
+    }
+}
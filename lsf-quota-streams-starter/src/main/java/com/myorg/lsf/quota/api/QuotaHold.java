@@ -0,0 +1,12 @@
+package com.myorg.lsf.quota.api;
+
+/**
+ * A hold to confirm or release in {@link QuotaService#confirmAll} / {@link QuotaService#releaseAll}.
+ * {@code shards} is the value the hold was reserved with (0/1 = key not sharded).
+ */
+public record QuotaHold(String quotaKey, String requestId, int shards) {
+
+    public static QuotaHold of(String quotaKey, String requestId) {
+        return new QuotaHold(quotaKey, requestId, 0);
+    }
+}
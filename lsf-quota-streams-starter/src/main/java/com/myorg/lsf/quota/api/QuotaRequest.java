@@ -13,7 +13,9 @@ public record QuotaRequest (
     String requestId,
     int amount,
     int limit,
-    Duration hold
+    Duration hold,
+    // > 1: hot key chia thành N sub-bucket quotaKey#0..N-1 (chỉ Redis backend dùng), 0/1 = không chia
+    int shards
 ){
 
 }
@@ -1,7 +1,43 @@
 package com.myorg.lsf.quota.api;
 
+import java.util.List;
+import java.util.Map;
+
 public interface QuotaReservationFacade {
     QuotaResult reserve(String quotaKey, String requestId, int amount);
+
+    /**
+     * Same reserve as {@link #reserve}, reporting every level it touched: with
+     * {@code lsf.quota.hierarchy.enabled} the key and each ancestor that has a policy,
+     * leaf first. {@code blockingKeys} names the levels that had no room.
+     */
+    QuotaGroupResult reserveHierarchy(String quotaKey, String requestId, int amount);
+
     QuotaResult confirm(String quotaKey, String requestId);
     QuotaResult release(String quotaKey, String requestId);
-}
\ No newline at end of file
+
+    default List<QuotaResult> reserveAll(List<QuotaRequest> requests) {
+        return reserveAll(requests, QuotaBatchMode.ALL_OR_NOTHING);
+    }
+
+    /**
+     * Batch reserve; only quotaKey, requestId and amount of each request are used,
+     * limit and hold come from the policy of the key.
+     */
+    List<QuotaResult> reserveAll(List<QuotaRequest> requests, QuotaBatchMode mode);
+
+    /**
+     * Holds every key of {@code amountByKey} under one requestId, or none of them.
+     * Limits and holds come from each key's policy; iteration order of the map is the
+     * order of the results.
+     */
+    QuotaGroupResult reserveGroup(Map<String, Integer> amountByKey, String requestId);
+    QuotaGroupResult confirmGroup(List<String> quotaKeys, String requestId);
+    QuotaGroupResult releaseGroup(List<String> quotaKeys, String requestId);
+
+    /**
+     * Rate-limit check on a key whose policy has a {@code rateLimit}; algorithm, limit,
+     * window and burst come from the policy.
+     */
+    RateLimitResult tryAcquire(String quotaKey, int permits);
+}
@@ -1,7 +1,158 @@
 package com.myorg.lsf.quota.api;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
 public interface QuotaService {
     QuotaResult reserve(QuotaRequest req);
     QuotaResult confirm(String quotaKey, String requestId);
     QuotaResult release(String quotaKey, String requestId);
+
+    /**
+     * Confirm on a key reserved with {@link QuotaRequest#shards()} &gt; 1; the backend has to
+     * find the sub-bucket that owns the hold. Backends that do not shard ignore {@code shards}.
+     */
+    default QuotaResult confirm(String quotaKey, String requestId, int shards) {
+        return confirm(quotaKey, requestId);
+    }
+
+    default QuotaResult release(String quotaKey, String requestId, int shards) {
+        return release(quotaKey, requestId);
+    }
+
+    default List<QuotaResult> reserveAll(List<QuotaRequest> requests) {
+        return reserveAll(requests, QuotaBatchMode.ALL_OR_NOTHING);
+    }
+
+    /**
+     * Reserves several items, returning one result per request in the same order.
+     *
+     * With {@link QuotaBatchMode#ALL_OR_NOTHING}, when any item would be rejected no
+     * new hold is kept: duplicates come back as DUPLICATE and every other item as REJECTED.
+     *
+     * Backends override this to run the batch in one round trip / one critical section;
+     * this default reserves sequentially and compensates with {@link #release}.
+     */
+    default List<QuotaResult> reserveAll(List<QuotaRequest> requests, QuotaBatchMode mode) {
+        List<QuotaResult> results = new ArrayList<>(requests.size());
+        boolean failed = false;
+        for (QuotaRequest req : requests) {
+            QuotaResult r = reserve(req);
+            results.add(r);
+            if (r.decision() == QuotaDecision.REJECTED && mode == QuotaBatchMode.ALL_OR_NOTHING) {
+                failed = true;
+                break;
+            }
+        }
+        if (!failed) return results;
+
+        for (int i = 0; i < requests.size(); i++) {
+            QuotaRequest req = requests.get(i);
+            QuotaResult r = (i < results.size()) ? results.get(i) : null;
+            if (r != null && r.decision() == QuotaDecision.DUPLICATE) continue;
+            if (r != null && r.decision() == QuotaDecision.ACCEPTED) release(req.quotaKey(), req.requestId(), req.shards());
+            QuotaResult rejected = QuotaResult.builder()
+                    .decision(QuotaDecision.REJECTED)
+                    .state(null)
+                    .used(r != null ? r.used() : 0)
+                    .limit(req.limit())
+                    .holdUntilEpochMs(0)
+                    .build();
+            if (i < results.size()) results.set(i, rejected);
+            else results.add(rejected);
+        }
+        return results;
+    }
+
+    /**
+     * Confirms independent holds (any keys, any requestIds), one result per hold in the same
+     * order; each is decided as {@link #confirm(String, String, int)} would.
+     *
+     * Backends override this to save round trips (Redis: one pipeline); this default
+     * confirms one by one.
+     */
+    default List<QuotaResult> confirmAll(List<QuotaHold> holds) {
+        List<QuotaResult> results = new ArrayList<>(holds.size());
+        for (QuotaHold hold : holds) {
+            results.add(confirm(hold.quotaKey(), hold.requestId(), hold.shards()));
+        }
+        return results;
+    }
+
+    /** Releases independent holds, as {@link #confirmAll} does for confirm. */
+    default List<QuotaResult> releaseAll(List<QuotaHold> holds) {
+        List<QuotaResult> results = new ArrayList<>(holds.size());
+        for (QuotaHold hold : holds) {
+            results.add(release(hold.quotaKey(), hold.requestId(), hold.shards()));
+        }
+        return results;
+    }
+
+    /**
+     * Takes {@code req.permits()} from the rate limit of {@code req.quotaKey()} if available now.
+     * Independent of the holds: a rate-limited key has no used/limit inventory.
+     *
+     * Implemented by the memory and Redis backends (Redis: one script call). The startup
+     * validation rejects rate-limit policies for the other backends.
+     *
+     * @throws UnsupportedOperationException when the backend has no rate limiting (the default)
+     */
+    default RateLimitResult tryAcquire(RateLimitRequest req) {
+        throw new UnsupportedOperationException("rate limiting is not supported by " + getClass().getSimpleName());
+    }
+
+    /**
+     * Reserves several quota keys under one shared requestId, all or nothing
+     * (e.g. section seat + lab slot + per-term credit cap).
+     *
+     * Runs as {@link #reserveAll} in ALL_OR_NOTHING mode, so it is atomic wherever that is:
+     * one Lua call for Redis (the keys must share a hash slot on Redis Cluster), one
+     * critical section for the memory backends.
+     */
+    default QuotaGroupResult reserveGroup(List<QuotaRequest> requests) {
+        requireGroup(requests);
+        return QuotaGroupResult.ofReserve(requests, reserveAll(requests, QuotaBatchMode.ALL_OR_NOTHING));
+    }
+
+    /**
+     * Confirms the holds of a group. Backends override this to confirm all keys or none;
+     * this default confirms key by key.
+     */
+    default QuotaGroupResult confirmGroup(List<String> quotaKeys, String requestId) {
+        List<QuotaResult> results = new ArrayList<>(quotaKeys.size());
+        for (String quotaKey : quotaKeys) {
+            results.add(confirm(quotaKey, requestId));
+        }
+        return QuotaGroupResult.ofConfirm(quotaKeys, requestId, results);
+    }
+
+    /** Releases whatever the group still holds on each key. */
+    default QuotaGroupResult releaseGroup(List<String> quotaKeys, String requestId) {
+        List<QuotaResult> results = new ArrayList<>(quotaKeys.size());
+        for (String quotaKey : quotaKeys) {
+            results.add(release(quotaKey, requestId));
+        }
+        return QuotaGroupResult.ofRelease(quotaKeys, requestId, results);
+    }
+
+    private static void requireGroup(List<QuotaRequest> requests) {
+        if (requests == null || requests.isEmpty()) {
+            throw new IllegalArgumentException("group must contain at least one request");
+        }
+        String requestId = requests.get(0).requestId();
+        if (requestId == null || requestId.isBlank()) {
+            throw new IllegalArgumentException("requestId must not be blank");
+        }
+        Set<String> keys = new HashSet<>();
+        for (QuotaRequest req : requests) {
+            if (!requestId.equals(req.requestId())) {
+                throw new IllegalArgumentException("all requests of a group must share one requestId");
+            }
+            if (!keys.add(req.quotaKey())) {
+                throw new IllegalArgumentException("duplicate quotaKey in group: " + req.quotaKey());
+            }
+        }
+    }
 }
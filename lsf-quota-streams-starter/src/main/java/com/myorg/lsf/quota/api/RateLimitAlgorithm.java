@@ -0,0 +1,8 @@
+package com.myorg.lsf.quota.api;
+
+public enum RateLimitAlgorithm {
+    // bucket chứa tối đa burst token, nạp lại limit token mỗi window; cho phép dồn cục tới burst
+    TOKEN_BUCKET,
+    // đếm theo window cố định, ước lượng window trượt = prev * phần còn lại + current
+    SLIDING_WINDOW
+}
@@ -0,0 +1,25 @@
+package com.myorg.lsf.quota.api;
+
+import lombok.Builder;
+
+import java.time.Duration;
+
+/**
+ * One rate-limit check: take {@code permits} from {@code quotaKey} if the policy allows it now.
+ * Unlike {@link QuotaRequest} nothing is held, so there is no requestId to confirm or release.
+ */
+@Builder
+public record RateLimitRequest(
+        String quotaKey,
+        int permits,
+        RateLimitAlgorithm algorithm,
+        // số permit mỗi window (TOKEN_BUCKET: tốc độ nạp lại)
+        int limit,
+        Duration window,
+        // TOKEN_BUCKET: sức chứa của bucket; <= 0 = limit. SLIDING_WINDOW bỏ qua
+        int burst
+) {
+    public int capacity() {
+        return (algorithm == RateLimitAlgorithm.TOKEN_BUCKET && burst > 0) ? burst : limit;
+    }
+}
@@ -0,0 +1,18 @@
+package com.myorg.lsf.quota.api;
+
+import lombok.Builder;
+
+@Builder
+public record RateLimitResult(
+        // ACCEPTED hoặc REJECTED
+        QuotaDecision decision,
+        // số permit còn lấy được ngay sau lần gọi này
+        int remaining,
+        int limit,
+        // REJECTED: chờ bao lâu thì đủ permit; -1 = permits lớn hơn sức chứa, không bao giờ đủ
+        long retryAfterMs
+) {
+    public boolean allowed() {
+        return decision == QuotaDecision.ACCEPTED;
+    }
+}
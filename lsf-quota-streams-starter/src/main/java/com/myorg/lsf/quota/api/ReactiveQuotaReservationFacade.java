@@ -0,0 +1,10 @@
+package com.myorg.lsf.quota.api;
+
+import reactor.core.publisher.Mono;
+
+/** Non-blocking counterpart of {@link QuotaReservationFacade}: limit and hold come from the policy of the key. */
+public interface ReactiveQuotaReservationFacade {
+    Mono<QuotaResult> reserve(String quotaKey, String requestId, int amount);
+    Mono<QuotaResult> confirm(String quotaKey, String requestId);
+    Mono<QuotaResult> release(String quotaKey, String requestId);
+}
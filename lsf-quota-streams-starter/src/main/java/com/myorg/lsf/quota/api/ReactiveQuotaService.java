@@ -0,0 +1,30 @@
+package com.myorg.lsf.quota.api;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Non-blocking counterpart of {@link QuotaService}: nothing runs before subscription and no
+ * thread waits on Redis, so WebFlux / virtual-thread callers can keep many quota operations
+ * in flight over a few multiplexed connections.
+ *
+ * Same decisions as the blocking store (same scripts); hot keys with
+ * {@link QuotaRequest#shards()} &gt; 1 are only served by {@link QuotaService}.
+ */
+public interface ReactiveQuotaService {
+    Mono<QuotaResult> reserve(QuotaRequest req);
+    Mono<QuotaResult> confirm(String quotaKey, String requestId);
+    Mono<QuotaResult> release(String quotaKey, String requestId);
+
+    /**
+     * Confirm on a key reserved with {@link QuotaRequest#shards()} &gt; 1, as
+     * {@link QuotaService#confirm(String, String, int)}. Backends that cannot find the sub-bucket
+     * fail with {@link IllegalArgumentException} rather than answer NOT_FOUND.
+     */
+    default Mono<QuotaResult> confirm(String quotaKey, String requestId, int shards) {
+        return confirm(quotaKey, requestId);
+    }
+
+    default Mono<QuotaResult> release(String quotaKey, String requestId, int shards) {
+        return release(quotaKey, requestId);
+    }
+}
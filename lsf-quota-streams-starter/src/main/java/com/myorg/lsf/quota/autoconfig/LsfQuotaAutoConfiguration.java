@@ -1,30 +1,58 @@
 package com.myorg.lsf.quota.autoconfig;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.myorg.lsf.quota.api.QuotaReservationFacade;
 import com.myorg.lsf.quota.api.QuotaService;
+import com.myorg.lsf.quota.api.ReactiveQuotaReservationFacade;
+import com.myorg.lsf.quota.api.ReactiveQuotaService;
+import com.myorg.lsf.quota.command.QuotaCommandListener;
+import com.myorg.lsf.quota.command.QuotaCommandProcessor;
 import com.myorg.lsf.quota.config.LsfQuotaProperties;
 import com.myorg.lsf.quota.config.QuotaConfigurationValidator;
+import com.myorg.lsf.quota.impl.BlockingReactiveQuotaReservationFacade;
+import com.myorg.lsf.quota.impl.BlockingReactiveQuotaService;
 import com.myorg.lsf.quota.impl.QuotaReservationFacadeImpl;
+import com.myorg.lsf.quota.impl.ReactiveQuotaReservationFacadeImpl;
+import com.myorg.lsf.quota.impl.memory.ConcurrentMemoryQuotaService;
 import com.myorg.lsf.quota.impl.memory.MemoryQuotaService;
+import com.myorg.lsf.quota.impl.memory.MemoryQuotaSweeper;
+import com.myorg.lsf.quota.impl.redis.ReactiveRedisQuotaService;
 import com.myorg.lsf.quota.impl.redis.RedisQuotaService;
+import com.myorg.lsf.quota.impl.redis.RedisQuotaSweeper;
+import com.myorg.lsf.quota.impl.redis.RedisSoldOutCache;
+import com.myorg.lsf.quota.impl.redis.RedisSoldOutSubscriber;
+import com.myorg.lsf.quota.impl.streams.StreamsQuotaService;
 import com.myorg.lsf.quota.obs.QuotaMetrics;
 import com.myorg.lsf.quota.policy.CachingQuotaPolicyProvider;
+import com.myorg.lsf.quota.policy.JdbcQuotaPolicyPoller;
 import com.myorg.lsf.quota.policy.JdbcQuotaPolicyProvider;
 import com.myorg.lsf.quota.policy.QuotaPolicyProvider;
 import com.myorg.lsf.quota.policy.StaticQuotaPolicyProvider;
 import com.myorg.lsf.quota.policy.cache.MemoryPolicyCache;
 import com.myorg.lsf.quota.policy.cache.RedisPolicyCache;
+import com.myorg.lsf.redis.script.MicrometerRedisScriptMetrics;
+import com.myorg.lsf.redis.script.RedisScriptRegistry;
 import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
 import org.springframework.core.env.Environment;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.util.ClassUtils;
+import reactor.core.scheduler.Schedulers;
 
 import java.time.Clock;
 import java.time.Duration;
@@ -46,19 +74,14 @@ public class LsfQuotaAutoConfiguration {
             LsfQuotaProperties props,
             ObjectProvider<StringRedisTemplate> redisProvider,
             ObjectProvider<MeterRegistry> meterRegistryProvider,
+            ObjectProvider<RedisScriptRegistry> scriptRegistryProvider,
             Environment env,
             @Qualifier("lsfQuotaClock") Clock clock
     ) {
         QuotaConfigurationValidator.validate(props);
 
-        String app = env.getProperty("spring.application.name", "unknown-service");
-        String backend = props.getStore().name().toLowerCase();
-
-        QuotaMetrics metrics = null;
         MeterRegistry r = meterRegistryProvider.getIfAvailable();
-        if (props.isMetricsEnabled() && r != null) {
-            metrics = new QuotaMetrics(r, app, backend);
-        }
+        QuotaMetrics metrics = quotaMetrics(props, r, env);
 
         return switch (props.getStore()) {
             case REDIS -> {
@@ -66,12 +89,25 @@ public class LsfQuotaAutoConfiguration {
                 if (redis == null) {
                     throw new IllegalStateException("lsf.quota.store=redis but no StringRedisTemplate found. Add spring-boot-starter-data-redis.");
                 }
-                yield new RedisQuotaService(redis, props, metrics, clock);
+                yield new RedisQuotaService(redis, props, metrics, clock, soldOutCache(props, metrics, clock),
+                        scriptRegistry(scriptRegistryProvider, redis, r));
             }
             case MEMORY -> new MemoryQuotaService(props, metrics, clock);
+            case MEMORY_CONCURRENT -> new ConcurrentMemoryQuotaService(props, metrics, clock);
+            case STREAMS -> {
+                if (!ClassUtils.isPresent("org.apache.kafka.streams.KafkaStreams", getClass().getClassLoader())) {
+                    throw new IllegalStateException("lsf.quota.store=streams but kafka-streams is not on the classpath. Add org.apache.kafka:kafka-streams.");
+                }
+                String bootstrap = props.getStreams().getBootstrapServers();
+                if (bootstrap == null || bootstrap.isBlank()) {
+                    bootstrap = env.getProperty("spring.kafka.bootstrap-servers", "localhost:9092");
+                }
+                yield StreamsQuotaService.create(props, metrics, bootstrap);
+            }
             case AUTO -> {
                 StringRedisTemplate redis = redisProvider.getIfAvailable();
-                if (redis != null) yield new RedisQuotaService(redis, props, metrics, clock);
+                if (redis != null) yield new RedisQuotaService(redis, props, metrics, clock, soldOutCache(props, metrics, clock),
+                        scriptRegistry(scriptRegistryProvider, redis, r));
                 yield new MemoryQuotaService(props, metrics, clock);
             }
         };
@@ -79,8 +115,49 @@ public class LsfQuotaAutoConfiguration {
 
     @Bean
     @ConditionalOnMissingBean
-    public QuotaReservationFacade quotaReservationFacade(QuotaService quotaService, QuotaPolicyProvider policyProvider) {
-        return new QuotaReservationFacadeImpl(quotaService, policyProvider);
+    @ConditionalOnProperty(prefix = "lsf.quota.memory", name = "sweeper-enabled", havingValue = "true", matchIfMissing = true)
+    public MemoryQuotaSweeper lsfQuotaMemorySweeper(QuotaService quotaService) {
+        return new MemoryQuotaSweeper(quotaService);
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "lsf.quota.redis", name = "sweeper-enabled", havingValue = "true", matchIfMissing = true)
+    public RedisQuotaSweeper lsfQuotaRedisSweeper(QuotaService quotaService) {
+        return new RedisQuotaSweeper(quotaService);
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "lsf.quota.redis.sold-out-cache", name = "enabled", havingValue = "true")
+    public RedisSoldOutSubscriber lsfQuotaSoldOutSubscriber(QuotaService quotaService) {
+        return new RedisSoldOutSubscriber(quotaService);
+    }
+
+    // cùng tên + tag thì Micrometer trả lại meter đã đăng ký: quotaService và policy cache dùng chung
+    private static QuotaMetrics quotaMetrics(LsfQuotaProperties props, MeterRegistry r, Environment env) {
+        if (!props.isMetricsEnabled() || r == null) return null;
+        String app = env.getProperty("spring.application.name", "unknown-service");
+        return new QuotaMetrics(r, app, props.getStore().name().toLowerCase());
+    }
+
+    // registry dùng chung của lsf-redis-core; không có bean (app tự tạo template sau) thì tạo riêng, load lúc gọi đầu
+    private static RedisScriptRegistry scriptRegistry(ObjectProvider<RedisScriptRegistry> provider, StringRedisTemplate redis,
+                                                      MeterRegistry meterRegistry) {
+        return provider.getIfAvailable(() -> new RedisScriptRegistry(redis,
+                meterRegistry != null ? new MicrometerRedisScriptMetrics(meterRegistry) : null));
+    }
+
+    private static RedisSoldOutCache soldOutCache(LsfQuotaProperties props, QuotaMetrics metrics, Clock clock) {
+        return props.getRedis().getSoldOutCache().isEnabled() ? new RedisSoldOutCache(props, metrics, clock) : null;
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    public QuotaReservationFacade quotaReservationFacade(QuotaService quotaService, QuotaPolicyProvider policyProvider,
+                                                         LsfQuotaProperties props) {
+        String separator = props.getHierarchy().isEnabled() ? props.getHierarchy().getSeparator() : null;
+        return new QuotaReservationFacadeImpl(quotaService, policyProvider, separator);
     }
 
     @Bean(name = "lsfQuotaPolicyProviderBase")
@@ -96,12 +173,12 @@ public class LsfQuotaAutoConfiguration {
             case JDBC -> {
                 JdbcTemplate jdbc = jdbcProvider.getIfAvailable();
                 if (jdbc == null) throw new IllegalStateException("lsf.quota.provider.mode=JDBC but no JdbcTemplate found. Add spring-boot-starter-jdbc.");
-                yield new JdbcQuotaPolicyProvider(jdbc, props);
+                yield jdbcPolicyProvider(jdbc, props);
             }
             case STATIC -> new StaticQuotaPolicyProvider(props);
             case AUTO -> {
                 JdbcTemplate jdbc = jdbcProvider.getIfAvailable();
-                if (jdbc != null) yield new JdbcQuotaPolicyProvider(jdbc, props);
+                if (jdbc != null) yield jdbcPolicyProvider(jdbc, props);
                 yield new StaticQuotaPolicyProvider(props);
             }
         };
@@ -113,6 +190,8 @@ public class LsfQuotaAutoConfiguration {
             LsfQuotaProperties props,
             @Qualifier("lsfQuotaPolicyProviderBase") QuotaPolicyProvider base,
             ObjectProvider<StringRedisTemplate> redisProvider,
+            ObjectProvider<MeterRegistry> meterRegistryProvider,
+            Environment env,
             @Qualifier("lsfQuotaClock") Clock clock
     ) {
         QuotaConfigurationValidator.validate(props);
@@ -129,7 +208,8 @@ public class LsfQuotaAutoConfiguration {
 
         if (mode == LsfQuotaProperties.PolicyProvider.CacheMode.MEMORY
                 || mode == LsfQuotaProperties.PolicyProvider.CacheMode.MEMORY_REDIS) {
-            mem = new MemoryPolicyCache(clock, ttl, cacheCfg.getLocalMaxSize());
+            mem = new MemoryPolicyCache(clock, ttl, cacheCfg.getRefreshAheadRatio(), cacheCfg.getLocalMaxSize(),
+                    null, quotaMetrics(props, meterRegistryProvider.getIfAvailable(), env));
         }
 
         if (mode == LsfQuotaProperties.PolicyProvider.CacheMode.REDIS
@@ -141,6 +221,139 @@ public class LsfQuotaAutoConfiguration {
             redis = new RedisPolicyCache(rt, cacheCfg.getRedisPrefix(), ttl);
         }
 
-        return new CachingQuotaPolicyProvider(base, mem, redis);
+        CachingQuotaPolicyProvider caching = new CachingQuotaPolicyProvider(base, mem, redis);
+        // preload: thay đổi poll được từ DB ghi đè luôn vào cache thay vì chờ TTL
+        if (base instanceof JdbcQuotaPolicyProvider jdbc) jdbc.setChangeListener(caching);
+        return caching;
     }
-}
\ No newline at end of file
+
+    // preload chạy trước khi nhận request; DB chưa lên thì tra từng key, poller nạp lại sau
+    private static JdbcQuotaPolicyProvider jdbcPolicyProvider(JdbcTemplate jdbc, LsfQuotaProperties props) {
+        JdbcQuotaPolicyProvider provider = new JdbcQuotaPolicyProvider(jdbc, props);
+        if (props.getProvider().getJdbc().getPreload().isEnabled()) provider.warmUp();
+        return provider;
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "lsf.quota.provider.jdbc.preload", name = "enabled", havingValue = "true")
+    public JdbcQuotaPolicyPoller lsfQuotaPolicyPoller(@Qualifier("lsfQuotaPolicyProviderBase") QuotaPolicyProvider base) {
+        return new JdbcQuotaPolicyPoller(base);
+    }
+
+    /**
+     * Non-blocking API, only when Reactor is on the classpath (it comes with Lettuce).
+     * The Redis store runs on ReactiveStringRedisTemplate when the application has one.
+     */
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnClass(name = "reactor.core.publisher.Mono")
+    static class ReactiveQuotaConfig {
+
+        @Bean
+        @ConditionalOnMissingBean
+        public ReactiveQuotaService reactiveQuotaService(
+                QuotaService quotaService,
+                ObjectProvider<ReactiveStringRedisTemplate> reactiveRedisProvider
+        ) {
+            if (quotaService instanceof RedisQuotaService store) {
+                ReactiveStringRedisTemplate reactive = reactiveRedisProvider.getIfAvailable();
+                if (reactive != null) return new ReactiveRedisQuotaService(reactive, store);
+                return new BlockingReactiveQuotaService(quotaService, Schedulers.boundedElastic());
+            }
+            return new BlockingReactiveQuotaService(quotaService, null);
+        }
+
+        @Bean
+        @ConditionalOnMissingBean
+        public ReactiveQuotaReservationFacade reactiveQuotaReservationFacade(
+                LsfQuotaProperties props,
+                ReactiveQuotaService reactiveQuotaService,
+                QuotaPolicyProvider policyProvider,
+                QuotaService quotaService,
+                QuotaReservationFacade quotaReservationFacade
+        ) {
+            var provider = props.getProvider();
+            // chỉ policy tĩnh + cache trong heap là không bao giờ chạm I/O
+            boolean inProcess = provider.getMode() == LsfQuotaProperties.PolicyProvider.Mode.STATIC
+                    && (provider.getCache().getMode() == LsfQuotaProperties.PolicyProvider.CacheMode.NONE
+                    || provider.getCache().getMode() == LsfQuotaProperties.PolicyProvider.CacheMode.MEMORY);
+            if (props.getHierarchy().isEnabled()) {
+                // các cấp cha đi qua reserveAll / confirmAll của facade blocking: cùng hold với caller blocking
+                boolean inMemory = quotaService instanceof MemoryQuotaService || quotaService instanceof ConcurrentMemoryQuotaService;
+                return new BlockingReactiveQuotaReservationFacade(quotaReservationFacade,
+                        inProcess && inMemory ? null : Schedulers.boundedElastic());
+            }
+            return new ReactiveQuotaReservationFacadeImpl(reactiveQuotaService, policyProvider,
+                    inProcess ? null : Schedulers.boundedElastic());
+        }
+    }
+
+    /**
+     * Quota command consumer (lsf.quota.commands.enabled=true): uses the application's Kafka
+     * ConsumerFactory / KafkaTemplate, so serializers and bootstrap servers stay in one place.
+     */
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnClass(name = "org.springframework.kafka.core.KafkaTemplate")
+    @ConditionalOnProperty(prefix = "lsf.quota.commands", name = "enabled", havingValue = "true")
+    static class CommandConfig {
+
+        @Bean
+        @ConditionalOnMissingBean
+        public QuotaCommandProcessor quotaCommandProcessor(
+                QuotaService quotaService,
+                QuotaPolicyProvider policyProvider,
+                ObjectProvider<ObjectMapper> mapperProvider,
+                Environment env
+        ) {
+            return new QuotaCommandProcessor(quotaService, policyProvider, mapperProvider.getIfAvailable(ObjectMapper::new),
+                    env.getProperty("spring.application.name", "unknown-service"));
+        }
+
+        @Bean(name = "lsfQuotaCommandContainer")
+        @ConditionalOnMissingBean(name = "lsfQuotaCommandContainer")
+        @SuppressWarnings("unchecked")
+        public ConcurrentMessageListenerContainer<String, Object> lsfQuotaCommandContainer(
+                LsfQuotaProperties props,
+                QuotaCommandProcessor processor,
+                ObjectProvider<ConsumerFactory<?, ?>> consumerFactoryProvider,
+                ObjectProvider<KafkaTemplate<?, ?>> kafkaTemplateProvider,
+                ObjectProvider<ObjectMapper> mapperProvider
+        ) {
+            QuotaConfigurationValidator.validate(props);
+            var cfg = props.getCommands();
+            ConsumerFactory<?, ?> consumerFactory = consumerFactoryProvider.getIfAvailable();
+            if (consumerFactory == null) {
+                throw new IllegalStateException("lsf.quota.commands.enabled=true but no Kafka ConsumerFactory found. Add spring-kafka and configure spring.kafka.*");
+            }
+            KafkaTemplate<?, ?> kafkaTemplate = kafkaTemplateProvider.getIfAvailable();
+            if (kafkaTemplate == null) {
+                throw new IllegalStateException("lsf.quota.commands.enabled=true but no KafkaTemplate found. Add spring-kafka and configure spring.kafka.*");
+            }
+
+            ContainerProperties containerProps = new ContainerProperties(cfg.getTopic());
+            containerProps.setGroupId(cfg.getGroupId());
+            containerProps.setMessageListener(new QuotaCommandListener(processor, (KafkaTemplate<String, Object>) kafkaTemplate,
+                    mapperProvider.getIfAvailable(ObjectMapper::new), cfg.getResultTopic(), cfg.getPublishTimeoutMs()));
+
+            var container = new ConcurrentMessageListenerContainer<>((ConsumerFactory<String, Object>) consumerFactory, containerProps);
+            container.setConcurrency(cfg.getConcurrency());
+            container.setBeanName("lsfQuotaCommandContainer");
+            return container;
+        }
+    }
+
+    @Configuration
+    @EnableScheduling
+    @ConditionalOnProperty(prefix = "lsf.quota.memory", name = "sweeper-enabled", havingValue = "true", matchIfMissing = true)
+    static class SweeperSchedulingConfig {}
+
+    @Configuration
+    @EnableScheduling
+    @ConditionalOnProperty(prefix = "lsf.quota.redis", name = "sweeper-enabled", havingValue = "true", matchIfMissing = true)
+    static class RedisSweeperSchedulingConfig {}
+
+    @Configuration
+    @EnableScheduling
+    @ConditionalOnProperty(prefix = "lsf.quota.provider.jdbc.preload", name = "enabled", havingValue = "true")
+    static class PolicyPollerSchedulingConfig {}
+}
@@ -0,0 +1,109 @@
+package com.myorg.lsf.quota.command;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.myorg.lsf.contracts.core.conventions.CoreHeaders;
+import com.myorg.lsf.contracts.core.envelope.EventEnvelope;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.internals.RecordHeader;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.BatchMessageListener;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Batch listener of the quota command topic: one poll = one {@link QuotaCommandProcessor#process} call.
+ *
+ * The topic is keyed by resourceId (the quotaKey), so a key belongs to one partition and is only
+ * ever applied by one consumer thread, in order; throughput scales with the partition count.
+ * Results are sent before the poll is acknowledged. If anything fails the batch is redelivered;
+ * commands are idempotent on workflowId, so a replay only re-sends the same results.
+ */
+@Slf4j
+public class QuotaCommandListener implements BatchMessageListener<String, Object> {
+
+    private final QuotaCommandProcessor processor;
+    private final KafkaTemplate<String, Object> kafkaTemplate;
+    private final ObjectMapper mapper;
+    private final String resultTopic;
+    private final long publishTimeoutMs;
+
+    public QuotaCommandListener(QuotaCommandProcessor processor, KafkaTemplate<String, Object> kafkaTemplate,
+                                ObjectMapper mapper, String resultTopic, long publishTimeoutMs) {
+        this.processor = processor;
+        this.kafkaTemplate = kafkaTemplate;
+        this.mapper = mapper;
+        this.resultTopic = resultTopic;
+        this.publishTimeoutMs = publishTimeoutMs;
+    }
+
+    @Override
+    public void onMessage(List<ConsumerRecord<String, Object>> records) {
+        List<EventEnvelope> commands = new ArrayList<>(records.size());
+        for (ConsumerRecord<String, Object> record : records) {
+            EventEnvelope env = toEnvelope(record);
+            if (env != null) commands.add(env);
+        }
+        if (commands.isEmpty()) return;
+
+        List<EventEnvelope> results = processor.process(commands);
+        List<CompletableFuture<?>> sent = new ArrayList<>(results.size());
+        for (EventEnvelope result : results) {
+            sent.add(kafkaTemplate.send(toRecord(result)));
+        }
+        await(sent);
+        log.debug("quota.command batch records={} commands={} results={}", records.size(), commands.size(), results.size());
+    }
+
+    private ProducerRecord<String, Object> toRecord(EventEnvelope env) {
+        ProducerRecord<String, Object> record = new ProducerRecord<>(resultTopic, env.getAggregateId(), env);
+        record.headers().add(new RecordHeader(CoreHeaders.EVENT_ID, env.getEventId().getBytes(StandardCharsets.UTF_8)));
+        record.headers().add(new RecordHeader(CoreHeaders.EVENT_TYPE, env.getEventType().getBytes(StandardCharsets.UTF_8)));
+        if (env.getCorrelationId() != null) {
+            record.headers().add(new RecordHeader(CoreHeaders.CORRELATION_ID, env.getCorrelationId().getBytes(StandardCharsets.UTF_8)));
+        }
+        if (env.getCausationId() != null) {
+            record.headers().add(new RecordHeader(CoreHeaders.CAUSATION_ID, env.getCausationId().getBytes(StandardCharsets.UTF_8)));
+        }
+        return record;
+    }
+
+    private void await(List<CompletableFuture<?>> sent) {
+        try {
+            CompletableFuture.allOf(sent.toArray(CompletableFuture[]::new)).get(publishTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while publishing quota results", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to publish quota results to " + resultTopic, e.getCause());
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("Timed out after " + publishTimeoutMs + " ms publishing quota results to " + resultTopic, e);
+        }
+    }
+
+    // value tuỳ deserializer của ứng dụng: envelope, JSON string/bytes, JsonNode hoặc Map
+    private EventEnvelope toEnvelope(ConsumerRecord<String, Object> record) {
+        Object value = record.value();
+        try {
+            if (value == null) return null;
+            if (value instanceof EventEnvelope env) return env;
+            if (value instanceof String json) return mapper.readValue(json, EventEnvelope.class);
+            if (value instanceof byte[] bytes) return mapper.readValue(bytes, EventEnvelope.class);
+            if (value instanceof JsonNode node) return mapper.treeToValue(node, EventEnvelope.class);
+            return mapper.convertValue(value, EventEnvelope.class);
+        } catch (Exception e) {
+            // lệnh hỏng không được chặn cả partition
+            log.warn("quota.command skipped unreadable record topic={} partition={} offset={}: {}",
+                    record.topic(), record.partition(), record.offset(), e.toString());
+            return null;
+        }
+    }
+}
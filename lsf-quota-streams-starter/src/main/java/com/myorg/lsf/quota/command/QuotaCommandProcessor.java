@@ -0,0 +1,210 @@
+package com.myorg.lsf.quota.command;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.myorg.lsf.contracts.core.envelope.EnvelopeBuilder;
+import com.myorg.lsf.contracts.core.envelope.EventEnvelope;
+import com.myorg.lsf.contracts.quota.ConfirmReservationCommand;
+import com.myorg.lsf.contracts.quota.QuotaEventTypes;
+import com.myorg.lsf.contracts.quota.QuotaReserveResult;
+import com.myorg.lsf.contracts.quota.ReleaseReservationCommand;
+import com.myorg.lsf.contracts.quota.ReserveQuotaCommand;
+import com.myorg.lsf.quota.api.QuotaBatchMode;
+import com.myorg.lsf.quota.api.QuotaDecision;
+import com.myorg.lsf.quota.api.QuotaHold;
+import com.myorg.lsf.quota.api.QuotaRequest;
+import com.myorg.lsf.quota.api.QuotaResult;
+import com.myorg.lsf.quota.api.QuotaService;
+import com.myorg.lsf.quota.policy.QuotaPolicy;
+import com.myorg.lsf.quota.policy.QuotaPolicyProvider;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Applies quota commands (reserve / confirm / release) to {@link QuotaService} and builds the
+ * {@code quota.reserve.result.v1} envelopes to publish. Kafka-free, see {@link QuotaCommandListener}.
+ *
+ * Commands are applied in runs of consecutive commands of the same type: one run is one
+ * {@code reserveAll} / {@code confirmAll} / {@code releaseAll}, i.e. one Redis round trip, and
+ * a reserve followed by its release in the same poll still happen in that order.
+ * quotaKey = resourceId, requestId = workflowId, so a redelivered command is answered
+ * DUPLICATE by the store and reported as success again.
+ */
+@Slf4j
+public class QuotaCommandProcessor {
+
+    public static final String REASON_QUOTA_EXCEEDED = "QUOTA_EXCEEDED";
+    public static final String REASON_POLICY_NOT_FOUND = "POLICY_NOT_FOUND";
+    public static final String REASON_INVALID_COMMAND = "INVALID_COMMAND";
+
+    private final QuotaService quotaService;
+    private final QuotaPolicyProvider policyProvider;
+    private final ObjectMapper mapper;
+    private final String producerName;
+
+    public QuotaCommandProcessor(QuotaService quotaService, QuotaPolicyProvider policyProvider,
+                                 ObjectMapper mapper, String producerName) {
+        this.quotaService = quotaService;
+        this.policyProvider = policyProvider;
+        this.mapper = mapper;
+        this.producerName = producerName;
+    }
+
+    /** Results of the reserve commands, in command order; confirm/release produce none. */
+    public List<EventEnvelope> process(List<EventEnvelope> commands) {
+        List<EventEnvelope> results = new ArrayList<>();
+        int start = 0;
+        while (start < commands.size()) {
+            String type = commands.get(start).getEventType();
+            int end = start + 1;
+            while (end < commands.size() && sameType(type, commands.get(end).getEventType())) {
+                end++;
+            }
+            List<EventEnvelope> run = commands.subList(start, end);
+            if (QuotaEventTypes.RESERVE_COMMAND_V1.equals(type)) {
+                reserve(run, results);
+            } else if (QuotaEventTypes.CONFIRM_COMMAND_V1.equals(type)) {
+                confirm(run);
+            } else if (QuotaEventTypes.RELEASE_COMMAND_V1.equals(type)) {
+                release(run);
+            } else {
+                run.forEach(env -> log.warn("quota.command skipped unknown eventType={} eventId={}", type, env.getEventId()));
+            }
+            start = end;
+        }
+        return results;
+    }
+
+    private void reserve(List<EventEnvelope> run, List<EventEnvelope> out) {
+        Map<String, Optional<QuotaPolicy>> policies = new HashMap<>();
+        QuotaReserveResult[] results = new QuotaReserveResult[run.size()];
+        List<QuotaRequest> requests = new ArrayList<>(run.size());
+        List<Integer> slots = new ArrayList<>(run.size());
+
+        for (int i = 0; i < run.size(); i++) {
+            ReserveQuotaCommand cmd = payload(run.get(i), ReserveQuotaCommand.class);
+            if (cmd == null || isBlank(cmd.getWorkflowId()) || isBlank(cmd.getResourceId()) || cmd.getQuantity() <= 0) {
+                results[i] = failed(cmd, REASON_INVALID_COMMAND);
+                continue;
+            }
+            Optional<QuotaPolicy> policy = policies.computeIfAbsent(cmd.getResourceId(), policyProvider::findPolicy);
+            if (policy.isEmpty()) {
+                results[i] = failed(cmd, REASON_POLICY_NOT_FOUND);
+                continue;
+            }
+            requests.add(QuotaRequest.builder()
+                    .quotaKey(cmd.getResourceId())
+                    .requestId(cmd.getWorkflowId())
+                    .amount(cmd.getQuantity())
+                    .limit(policy.get().limit())
+                    .hold(policy.get().hold())
+                    .shards(policy.get().shards())
+                    .build());
+            slots.add(i);
+        }
+
+        if (!requests.isEmpty()) {
+            // mỗi lệnh độc lập: một lệnh bị từ chối không kéo các lệnh khác theo
+            List<QuotaResult> decided = quotaService.reserveAll(requests, QuotaBatchMode.BEST_EFFORT);
+            for (int j = 0; j < requests.size(); j++) {
+                QuotaRequest req = requests.get(j);
+                boolean ok = decided.get(j).decision() != QuotaDecision.REJECTED;
+                results[slots.get(j)] = QuotaReserveResult.builder()
+                        .workflowId(req.requestId())
+                        .resourceId(req.quotaKey())
+                        .quantity(req.amount())
+                        .success(ok)
+                        .reason(ok ? null : REASON_QUOTA_EXCEEDED)
+                        .build();
+            }
+        }
+
+        for (int i = 0; i < run.size(); i++) {
+            EventEnvelope cmd = run.get(i);
+            QuotaReserveResult result = results[i];
+            String correlationId = isBlank(cmd.getCorrelationId()) ? result.getWorkflowId() : cmd.getCorrelationId();
+            out.add(EnvelopeBuilder.wrap(mapper, QuotaEventTypes.RESERVE_RESULT_V1, 1, result.getWorkflowId(),
+                    correlationId, cmd.getEventId(), producerName, result));
+        }
+    }
+
+    private void confirm(List<EventEnvelope> run) {
+        List<QuotaHold> holds = new ArrayList<>(run.size());
+        Map<String, Integer> shards = new HashMap<>();
+        for (EventEnvelope env : run) {
+            ConfirmReservationCommand cmd = payload(env, ConfirmReservationCommand.class);
+            if (cmd == null || isBlank(cmd.getWorkflowId()) || isBlank(cmd.getResourceId())) {
+                log.warn("quota.command skipped invalid confirm eventId={}", env.getEventId());
+                continue;
+            }
+            holds.add(new QuotaHold(cmd.getResourceId(), cmd.getWorkflowId(), shardsOf(cmd.getResourceId(), shards)));
+        }
+        if (holds.isEmpty()) return;
+        List<QuotaResult> results = quotaService.confirmAll(holds);
+        logRejected("confirm", holds, results);
+    }
+
+    private void release(List<EventEnvelope> run) {
+        List<QuotaHold> holds = new ArrayList<>(run.size());
+        Map<String, Integer> shards = new HashMap<>();
+        for (EventEnvelope env : run) {
+            ReleaseReservationCommand cmd = payload(env, ReleaseReservationCommand.class);
+            if (cmd == null || isBlank(cmd.getWorkflowId()) || isBlank(cmd.getResourceId())) {
+                log.warn("quota.command skipped invalid release eventId={}", env.getEventId());
+                continue;
+            }
+            holds.add(new QuotaHold(cmd.getResourceId(), cmd.getWorkflowId(), shardsOf(cmd.getResourceId(), shards)));
+        }
+        if (holds.isEmpty()) return;
+        List<QuotaResult> results = quotaService.releaseAll(holds);
+        logRejected("release", holds, results);
+    }
+
+    /** A sharded hot key keeps its holds in sub-buckets: confirm/release need the count to find them. */
+    private int shardsOf(String quotaKey, Map<String, Integer> seen) {
+        return seen.computeIfAbsent(quotaKey, key -> policyProvider.findPolicy(key).map(QuotaPolicy::shards).orElse(0));
+    }
+
+    // hold không còn (hết hạn / chưa từng reserve) hoặc đã confirm: không có gì để gửi lại
+    private static void logRejected(String op, List<QuotaHold> holds, List<QuotaResult> results) {
+        for (int i = 0; i < holds.size(); i++) {
+            QuotaDecision decision = results.get(i).decision();
+            if (decision == QuotaDecision.REJECTED || decision == QuotaDecision.NOT_FOUND) {
+                log.warn("quota.command {} {} key={} requestId={} state={}",
+                        op, decision, holds.get(i).quotaKey(), holds.get(i).requestId(), results.get(i).state());
+            }
+        }
+    }
+
+    private <T> T payload(EventEnvelope env, Class<T> type) {
+        if (env.getPayload() == null || env.getPayload().isNull()) return null;
+        try {
+            return mapper.treeToValue(env.getPayload(), type);
+        } catch (Exception e) {
+            log.warn("quota.command unreadable payload eventType={} eventId={}: {}", env.getEventType(), env.getEventId(), e.toString());
+            return null;
+        }
+    }
+
+    private static QuotaReserveResult failed(ReserveQuotaCommand cmd, String reason) {
+        return QuotaReserveResult.builder()
+                .workflowId(cmd == null ? null : cmd.getWorkflowId())
+                .resourceId(cmd == null ? null : cmd.getResourceId())
+                .quantity(cmd == null ? 0 : cmd.getQuantity())
+                .success(false)
+                .reason(reason)
+                .build();
+    }
+
+    private static boolean sameType(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private static boolean isBlank(String s) {
+        return s == null || s.isBlank();
+    }
+}
@@ -1,5 +1,6 @@
 package com.myorg.lsf.quota.config;
 
+import com.myorg.lsf.quota.api.RateLimitAlgorithm;
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
@@ -13,7 +14,9 @@ public class LsfQuotaProperties {
     /**
      * auto: nếu có RedisConnectionFactory -> redis, không có -> memory
      * redis: bắt buộc dùng redis
-     * memory: dùng in-memory (dev/test)
+     * memory: dùng in-memory (dev/test), một lock chung cho mọi key
+     * memory_concurrent: in-memory, lock theo từng quota key (single-node throughput)
+     * streams: state store Kafka Streams (RocksDB + changelog), cần kafka-streams
      */
     private Store store = Store.AUTO;
     private String keyPrefix = "lsf:quota:";
@@ -25,15 +28,194 @@ public class LsfQuotaProperties {
     private boolean allowReleaseConfirmed = false;
     /** Metrics on/off */
     private boolean metricsEnabled = true;
-    public enum Store { AUTO, REDIS, MEMORY }
+    public enum Store { AUTO, REDIS, MEMORY, MEMORY_CONCURRENT, STREAMS }
 
     private List<PolicyItem> policies = new ArrayList<>();
 
+    /** Tuning cho in-memory backends (memory / memory_concurrent) */
+    private Memory memory = new Memory();
+
+    @Data
+    public static class Memory {
+        /** Background sweeper thu hồi hold hết hạn trên các key không còn request nào */
+        private boolean sweeperEnabled = true;
+        /** Chu kỳ chạy sweeper (milliseconds) */
+        private long sweepIntervalMs = 1000;
+        /**
+         * Trần số bucket giữ trong heap. Vượt trần thì sweeper bỏ bớt các bucket rỗng
+         * (không hold, không confirmed) ít dùng nhất. 0 = không giới hạn.
+         * Bucket idle quá keep-alive-seconds luôn bị bỏ, giống TTL bên Redis.
+         */
+        private int maxBuckets = 100_000;
+        /**
+         * STANDARD: HashMap + object cho mỗi hold
+         * COMPACT: open-addressing + mảng primitive, ~58 byte/hold thay vì ~80, ~21 byte/confirmed thay vì ~43 (không tính chuỗi requestId)
+         */
+        private BucketLayout bucketLayout = BucketLayout.STANDARD;
+
+        public enum BucketLayout { STANDARD, COMPACT }
+    }
+
+    /** Tuning cho Redis backend */
+    private Redis redis = new Redis();
+
+    @Data
+    public static class Redis {
+        /**
+         * Số hold hết hạn tối đa mà mỗi Lua script tự dọn trước khi xử lý request.
+         * Giữ script ngắn khi có cả nghìn hold hết hạn cùng lúc; phần còn lại do sweeper dọn.
+         */
+        private int inlinePurgeLimit = 64;
+        /** Background sweeper dọn hold hết hạn theo index các quota key đang có hold */
+        private boolean sweeperEnabled = true;
+        /** Chu kỳ chạy sweeper (milliseconds) */
+        private long sweepIntervalMs = 1000;
+        /** Số quota key tối đa mỗi lượt sweep */
+        private int sweepKeysPerRun = 500;
+        /** Số hold hết hạn tối đa dọn trên một key trong một lượt (mỗi key là một script riêng) */
+        private int sweepHoldsPerKey = 1000;
+        /**
+         * SPLIT: 4 key cho mỗi quota key (:c, :res, :conf, :z), PEXPIRE cả 4 ở mọi lệnh
+         * HASH: counter + hold + confirmed chung 1 hash (:h) + ZSET hết hạn (:z), chỉ gia hạn TTL khi còn dưới một nửa keep-alive
+         */
+        private Layout layout = Layout.SPLIT;
+        /**
+         * Chỉ dùng với layout HASH: key còn ở layout SPLIT được chuyển sang hash ngay lần đầu bị chạm (trong cùng script).
+         * Tắt khi chắc chắn không còn key cũ để bỏ 3 key phụ khỏi mỗi lệnh.
+         */
+        private boolean migrateLegacyKeys = true;
+        /**
+         * Redis Cluster: bọc quota key trong hash tag ({@code prefix{quotaKey}:c}) để mọi key của một script cùng slot.
+         * Quota key đã có hash tag (vd {@code {term:2026A}section:CT101}) được giữ nguyên để cả group chung slot.
+         * Đổi option này là đổi tên key: chỉ bật trên keyspace mới hoặc cùng lúc đổi key-prefix.
+         */
+        private boolean hashTags = false;
+        /** Chỉ dùng khi hash-tags=true: index hold tách theo slot, mỗi lượt sweep quét xoay vòng N slot (trên 16384) */
+        private int sweepSlotsPerRun = 4096;
+        /**
+         * Hot key chia sub-bucket (policy shards &gt; 1): sub-bucket "nhà" của requestId hết chỗ thì thử thêm tối đa N
+         * sub-bucket kế tiếp. Mỗi lần thử là 1 round trip, nên giữ nhỏ; 0 = chỉ dùng sub-bucket nhà.
+         */
+        private int shardFallbackProbes = 2;
+        /** Nhớ trong process các quota key đã bán hết để reject ngay, không chạy script */
+        private SoldOutCache soldOutCache = new SoldOutCache();
+
+        public enum Layout { SPLIT, HASH }
+
+        @Data
+        public static class SoldOutCache {
+            private boolean enabled = false;
+            /**
+             * Thời gian tối đa một key được coi là hết hàng mà không hỏi lại Redis.
+             * Release / sweeper báo qua pub/sub nên thường được xóa sớm hơn; TTL chặn trường hợp
+             * hold hết hạn được dọn ngay trong script (không ai publish).
+             */
+            private long ttlMs = 500;
+            /** Số key tối đa nhớ trong heap */
+            private int maxKeys = 10_000;
+            /**
+             * Số hold tối đa (do instance này accept) được nhớ tới holdUntil để retry của chúng
+             * bỏ qua cache và vẫn nhận DUPLICATE từ Redis
+             */
+            private int maxHolds = 100_000;
+            /** Kênh pub/sub báo key vừa có chỗ trống; để trống = "<key-prefix>_freed" */
+            private String channel;
+        }
+    }
+
+    private Streams streams = new Streams();
+
+    @Data
+    public static class Streams {
+        /** application.id của Kafka Streams; cũng là tiền tố của các changelog topic */
+        private String applicationId = "lsf-quota";
+        /** Để trống = spring.kafka.bootstrap-servers */
+        private String bootstrapServers;
+        /**
+         * Topic lệnh nội bộ, key = quotaKey. Số partition là số phần quota có thể chạy song song,
+         * đổi sau khi đã có dữ liệu sẽ chuyển key sang partition khác => tạo đủ ngay từ đầu
+         */
+        private String opsTopic = "lsf-quota-ops";
+        /**
+         * Topic trả kết quả cho instance gửi lệnh. Với reply-topic-per-instance (mặc định) đây là tiền tố:
+         * mỗi instance đọc {@code <reply-topic>-<instance-id>} của riêng mình, nên lượng reply phải đọc
+         * không tăng theo số instance
+         */
+        private String replyTopic = "lsf-quota-replies";
+        private boolean replyTopicPerInstance = true;
+        /** Để trống = UUID ngẫu nhiên mỗi lần khởi động (reply topic bị xoá khi đóng service) */
+        private String instanceId;
+        /** Tạo ops topic và reply topic nếu chưa có; false = phải tạo trước, thiếu topic thì khởi động lỗi */
+        private boolean createTopics = true;
+        /** Số partition khi tạo ops topic */
+        private int opsPartitions = 12;
+        /** Replication khi tạo topic; <= 0 = mặc định của broker */
+        private int replicationFactor = -1;
+        /** Chờ kết quả tối đa; quá hạn thì lệnh vẫn có thể đã được áp dụng (gửi lại cùng requestId là an toàn) */
+        private long requestTimeoutMs = 5000;
+        /** Chu kỳ punctuator dọn hold hết hạn / key idle (wall-clock) */
+        private long punctuateIntervalMs = 1000;
+        /** Số quota key tối đa mỗi lần punctuate */
+        private int sweepKeysPerRun = 500;
+        private int numStreamThreads = 1;
+        /**
+         * exactly_once_v2: store, changelog và reply cùng một transaction (cần >= 3 broker theo mặc định
+         * của transaction log). at_least_once chỉ nên dùng cho dev: crash giữa reserve → release có thể
+         * làm lệnh reserve được áp lại sau khi restore.
+         */
+        private String processingGuarantee = "exactly_once_v2";
+        /** Thư mục RocksDB; để trống = mặc định của Kafka Streams */
+        private String stateDir;
+    }
+
+    /**
+     * Quota phân cấp: reserve trên shopA:flashsale_sku:X trừ luôn vào shopA:flashsale_sku và shopA
+     * (những cấp có policy tồn kho), tất cả trong một lần gọi backend.
+     */
+    private Hierarchy hierarchy = new Hierarchy();
+
+    @Data
+    public static class Hierarchy {
+        private boolean enabled = false;
+        /** Ký tự tách cấp trong quotaKey, giống QuotaKeys.of(tenant, type, id) */
+        private String separator = ":";
+    }
+
+    /** Consumer của ReserveQuotaCommand / ConfirmReservationCommand / ReleaseReservationCommand trên Kafka */
+    private Commands commands = new Commands();
+
+    @Data
+    public static class Commands {
+        /** Cần spring-kafka cùng ConsumerFactory + KafkaTemplate của ứng dụng */
+        private boolean enabled = false;
+        /** Topic lệnh; producer nên dùng resourceId (quotaKey) làm record key để một key chỉ thuộc một partition */
+        private String topic = "quota-commands";
+        /** Topic nhận quota.reserve.result.v1, record key = workflowId */
+        private String resultTopic = "quota-results";
+        private String groupId = "lsf-quota";
+        /** Số consumer thread; không có tác dụng khi lớn hơn số partition của topic */
+        private int concurrency = 1;
+        /** Chờ tối đa bao lâu để Kafka xác nhận kết quả của một poll trước khi commit offset */
+        private long publishTimeoutMs = 10_000;
+    }
+
     @Data
     public static class PolicyItem {
         private String key;          // full quotaKey string, keep ':'
         private int limit;
         private Integer holdSeconds;
+        private Integer shards;      // null = không chia sub-bucket
+        private RateLimit rateLimit; // != null: key là rate limit, limit/hold-seconds/shards ở trên bỏ qua
+    }
+
+    @Data
+    public static class RateLimit {
+        private RateLimitAlgorithm algorithm = RateLimitAlgorithm.TOKEN_BUCKET;
+        /** Số permit mỗi window; TOKEN_BUCKET: tốc độ nạp lại */
+        private int limit;
+        private long windowMs = 1000;
+        /** TOKEN_BUCKET: sức chứa, cho phép dồn cục; null = limit */
+        private Integer burst;
     }
 
     //Policy Provider (DB/Static/Auto) + Cache
@@ -59,6 +241,25 @@ public class LsfQuotaProperties {
              */
             private String table = "quota_policy";
             private boolean enabledOnly = true;
+            /** Cột số sub-bucket (INT NULL) cho hot key; để trống nếu bảng không có cột này */
+            private String shardsColumn;
+
+            private Preload preload = new Preload();
+        }
+
+        /**
+         * Nạp cả bảng theo trang lúc start, sau đó chỉ đọc các row có {@code updated_at} mới;
+         * request không còn query DB, key không có trong bảng trả về empty ngay.
+         * Xoá row không được phát hiện: tắt policy bằng enabled=0.
+         */
+        @Data
+        public static class Preload {
+            private boolean enabled = false;
+            private int pageSize = 1000;
+            private long pollIntervalMs = 5000;
+            /** Đọc lại khoảng này trước watermark: transaction commit trễ vẫn không bị sót */
+            private long pollOverlapMs = 5000;
+            private String updatedAtColumn = "updated_at";
         }
 
         @Data
@@ -77,6 +278,12 @@ public class LsfQuotaProperties {
             /** Max entries for local cache */
             private int localMaxSize = 10_000;
 
+            /**
+             * A local hit older than this fraction of the TTL is served and reloaded in the
+             * background, so hot keys never miss. 0 disables refresh-ahead.
+             */
+            private double refreshAheadRatio = 0.8;
+
             /** Redis key prefix for policy cache */
             private String redisPrefix = "lsf:quota:policy:";
         }
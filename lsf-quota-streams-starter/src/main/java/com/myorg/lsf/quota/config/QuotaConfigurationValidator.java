@@ -11,6 +11,9 @@ import java.util.Objects;
  */
 public final class QuotaConfigurationValidator {
 
+    private static final int MAX_PURGE_BATCH = 5000;
+    private static final int CLUSTER_SLOTS = 16384;
+
     private QuotaConfigurationValidator() {
     }
 
@@ -21,6 +24,53 @@ public final class QuotaConfigurationValidator {
         requirePositive(props.getKeepAliveSeconds(), "lsf.quota.keep-alive-seconds must be > 0");
         requireNonBlank(props.getKeyPrefix(), "lsf.quota.key-prefix must not be blank");
 
+        if (props.getMemory() == null) {
+            throw new IllegalStateException("lsf.quota.memory must not be null");
+        }
+        if (props.getMemory().getSweepIntervalMs() <= 0) {
+            throw new IllegalStateException("lsf.quota.memory.sweep-interval-ms must be > 0");
+        }
+        if (props.getMemory().getBucketLayout() == null) {
+            throw new IllegalStateException("lsf.quota.memory.bucket-layout must not be null");
+        }
+        if (props.getMemory().getMaxBuckets() < 0) {
+            throw new IllegalStateException("lsf.quota.memory.max-buckets must be >= 0");
+        }
+
+        var redis = props.getRedis();
+        if (redis == null) {
+            throw new IllegalStateException("lsf.quota.redis must not be null");
+        }
+        // purge() passes the expired ids to ZREM via unpack(): keep it well inside the Lua stack
+        requireRange(redis.getInlinePurgeLimit(), 1, MAX_PURGE_BATCH, "lsf.quota.redis.inline-purge-limit");
+        requireRange(redis.getSweepHoldsPerKey(), 1, MAX_PURGE_BATCH, "lsf.quota.redis.sweep-holds-per-key");
+        requirePositive(redis.getSweepKeysPerRun(), "lsf.quota.redis.sweep-keys-per-run must be > 0");
+        if (redis.getSweepIntervalMs() <= 0) {
+            throw new IllegalStateException("lsf.quota.redis.sweep-interval-ms must be > 0");
+        }
+        if (redis.getShardFallbackProbes() < 0) {
+            throw new IllegalStateException("lsf.quota.redis.shard-fallback-probes must be >= 0");
+        }
+        if (redis.getSoldOutCache() == null) {
+            throw new IllegalStateException("lsf.quota.redis.sold-out-cache must not be null");
+        }
+        if (redis.getSoldOutCache().isEnabled()) {
+            if (redis.getSoldOutCache().getTtlMs() <= 0) {
+                throw new IllegalStateException("lsf.quota.redis.sold-out-cache.ttl-ms must be > 0");
+            }
+            requirePositive(redis.getSoldOutCache().getMaxKeys(), "lsf.quota.redis.sold-out-cache.max-keys must be > 0");
+        }
+        if (redis.getLayout() == null) {
+            throw new IllegalStateException("lsf.quota.redis.layout must not be null");
+        }
+        if (redis.isHashTags()) {
+            // một '{' trong prefix sẽ thành hash tag của mọi key => dồn hết vào 1 slot
+            if (props.getKeyPrefix().indexOf('{') >= 0 || props.getKeyPrefix().indexOf('}') >= 0) {
+                throw new IllegalStateException("lsf.quota.key-prefix must not contain '{' or '}' when lsf.quota.redis.hash-tags=true");
+            }
+            requireRange(redis.getSweepSlotsPerRun(), 1, CLUSTER_SLOTS, "lsf.quota.redis.sweep-slots-per-run");
+        }
+
         var provider = props.getProvider();
         if (provider == null) {
             throw new IllegalStateException("lsf.quota.provider must not be null");
@@ -30,24 +80,132 @@ public final class QuotaConfigurationValidator {
             throw new IllegalStateException("lsf.quota.provider.jdbc must not be null");
         }
         requireNonBlank(provider.getJdbc().getTable(), "lsf.quota.provider.jdbc.table must not be blank");
+        var preload = provider.getJdbc().getPreload();
+        if (preload == null) {
+            throw new IllegalStateException("lsf.quota.provider.jdbc.preload must not be null");
+        }
+        if (preload.isEnabled()) {
+            requirePositive(preload.getPageSize(), "lsf.quota.provider.jdbc.preload.page-size must be > 0");
+            if (preload.getPollIntervalMs() <= 0) {
+                throw new IllegalStateException("lsf.quota.provider.jdbc.preload.poll-interval-ms must be > 0");
+            }
+            if (preload.getPollOverlapMs() < 0) {
+                throw new IllegalStateException("lsf.quota.provider.jdbc.preload.poll-overlap-ms must be >= 0");
+            }
+            requireNonBlank(preload.getUpdatedAtColumn(), "lsf.quota.provider.jdbc.preload.updated-at-column must not be blank");
+        }
 
         if (provider.getCache() == null) {
             throw new IllegalStateException("lsf.quota.provider.cache must not be null");
         }
         requirePositive(provider.getCache().getTtlSeconds(), "lsf.quota.provider.cache.ttl-seconds must be > 0");
         requirePositive(provider.getCache().getLocalMaxSize(), "lsf.quota.provider.cache.local-max-size must be > 0");
+        double refreshAhead = provider.getCache().getRefreshAheadRatio();
+        if (refreshAhead < 0 || refreshAhead >= 1) {
+            throw new IllegalStateException("lsf.quota.provider.cache.refresh-ahead-ratio must be >= 0 and < 1");
+        }
         requireNonBlank(provider.getCache().getRedisPrefix(), "lsf.quota.provider.cache.redis-prefix must not be blank");
 
+        var streams = props.getStreams();
+        if (streams == null) {
+            throw new IllegalStateException("lsf.quota.streams must not be null");
+        }
+        if (props.getStore() == LsfQuotaProperties.Store.STREAMS) {
+            requireNonBlank(streams.getApplicationId(), "lsf.quota.streams.application-id must not be blank");
+            requireNonBlank(streams.getOpsTopic(), "lsf.quota.streams.ops-topic must not be blank");
+            requireNonBlank(streams.getReplyTopic(), "lsf.quota.streams.reply-topic must not be blank");
+            if (streams.getOpsTopic().equals(streams.getReplyTopic())) {
+                throw new IllegalStateException("lsf.quota.streams.reply-topic must differ from lsf.quota.streams.ops-topic");
+            }
+            if (streams.getRequestTimeoutMs() <= 0) {
+                throw new IllegalStateException("lsf.quota.streams.request-timeout-ms must be > 0");
+            }
+            if (streams.getPunctuateIntervalMs() <= 0) {
+                throw new IllegalStateException("lsf.quota.streams.punctuate-interval-ms must be > 0");
+            }
+            requirePositive(streams.getSweepKeysPerRun(), "lsf.quota.streams.sweep-keys-per-run must be > 0");
+            requirePositive(streams.getNumStreamThreads(), "lsf.quota.streams.num-stream-threads must be > 0");
+            requirePositive(streams.getOpsPartitions(), "lsf.quota.streams.ops-partitions must be > 0");
+            if (!"exactly_once_v2".equals(streams.getProcessingGuarantee()) && !"at_least_once".equals(streams.getProcessingGuarantee())) {
+                throw new IllegalStateException("lsf.quota.streams.processing-guarantee must be exactly_once_v2 or at_least_once");
+            }
+        }
+
+        var hierarchy = props.getHierarchy();
+        if (hierarchy == null) {
+            throw new IllegalStateException("lsf.quota.hierarchy must not be null");
+        }
+        if (hierarchy.isEnabled() && (hierarchy.getSeparator() == null || hierarchy.getSeparator().isEmpty())) {
+            throw new IllegalStateException("lsf.quota.hierarchy.separator must not be empty");
+        }
+
+        var commands = props.getCommands();
+        if (commands == null) {
+            throw new IllegalStateException("lsf.quota.commands must not be null");
+        }
+        if (commands.isEnabled()) {
+            requireNonBlank(commands.getTopic(), "lsf.quota.commands.topic must not be blank");
+            requireNonBlank(commands.getResultTopic(), "lsf.quota.commands.result-topic must not be blank");
+            requireNonBlank(commands.getGroupId(), "lsf.quota.commands.group-id must not be blank");
+            requirePositive(commands.getConcurrency(), "lsf.quota.commands.concurrency must be > 0");
+            if (commands.getPublishTimeoutMs() <= 0) {
+                throw new IllegalStateException("lsf.quota.commands.publish-timeout-ms must be > 0");
+            }
+            if (commands.getTopic().equals(commands.getResultTopic())) {
+                throw new IllegalStateException("lsf.quota.commands.result-topic must differ from lsf.quota.commands.topic");
+            }
+        }
+
         for (int i = 0; i < props.getPolicies().size(); i++) {
             var item = props.getPolicies().get(i);
             if (item == null) {
                 throw new IllegalStateException("lsf.quota.policies[" + i + "] must not be null");
             }
             requireNonBlank(item.getKey(), "lsf.quota.policies[" + i + "].key must not be blank");
+            validateKeyPattern(item.getKey(), "lsf.quota.policies[" + i + "].key");
+            if (item.getRateLimit() != null) {
+                // báo lúc khởi động thay vì mọi tryAcquire ném UnsupportedOperationException khi chạy
+                if (props.getStore() == LsfQuotaProperties.Store.STREAMS) {
+                    throw new IllegalStateException("lsf.quota.policies[" + i + "].rate-limit is not supported by lsf.quota.store=streams");
+                }
+                validateRateLimit(item, "lsf.quota.policies[" + i + "]");
+                continue;
+            }
             requirePositive(item.getLimit(), "lsf.quota.policies[" + i + "].limit must be > 0");
             if (item.getHoldSeconds() != null && item.getHoldSeconds() <= 0) {
                 throw new IllegalStateException("lsf.quota.policies[" + i + "].hold-seconds must be > 0 when provided");
             }
+            if (item.getShards() != null && (item.getShards() < 0 || item.getShards() > item.getLimit())) {
+                throw new IllegalStateException("lsf.quota.policies[" + i + "].shards must be between 0 and limit when provided");
+            }
+        }
+    }
+
+    private static void validateRateLimit(LsfQuotaProperties.PolicyItem item, String path) {
+        var rate = item.getRateLimit();
+        if (rate.getAlgorithm() == null) {
+            throw new IllegalStateException(path + ".rate-limit.algorithm must not be null");
+        }
+        requirePositive(rate.getLimit(), path + ".rate-limit.limit must be > 0");
+        if (rate.getWindowMs() <= 0) {
+            throw new IllegalStateException(path + ".rate-limit.window-ms must be > 0");
+        }
+        if (rate.getBurst() != null && rate.getBurst() <= 0) {
+            throw new IllegalStateException(path + ".rate-limit.burst must be > 0 when provided");
+        }
+        if (item.getShards() != null && item.getShards() > 1) {
+            throw new IllegalStateException(path + ".shards is not supported for a rate-limit policy");
+        }
+    }
+
+    // '*' = đúng một segment, '**' = mọi segment còn lại (chỉ ở cuối); không trộn '*' với chữ trong segment
+    private static void validateKeyPattern(String key, String name) {
+        String[] segments = key.split(":", -1);
+        for (int i = 0; i < segments.length; i++) {
+            String segment = segments[i];
+            if (!segment.contains("*") || segment.equals("*")) continue;
+            if (segment.equals("**") && i == segments.length - 1) continue;
+            throw new IllegalStateException(name + " may only use '*' as a whole segment and '**' as the last one: " + key);
         }
     }
 
@@ -57,6 +215,12 @@ public final class QuotaConfigurationValidator {
         }
     }
 
+    private static void requireRange(int value, int min, int max, String name) {
+        if (value < min || value > max) {
+            throw new IllegalStateException(name + " must be between " + min + " and " + max);
+        }
+    }
+
     private static void requireNonBlank(String value, String message) {
         if (value == null || value.isBlank()) {
             throw new IllegalStateException(message);
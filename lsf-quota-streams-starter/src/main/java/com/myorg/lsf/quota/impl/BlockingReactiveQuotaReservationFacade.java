@@ -0,0 +1,47 @@
+package com.myorg.lsf.quota.impl;
+
+import com.myorg.lsf.quota.api.QuotaReservationFacade;
+import com.myorg.lsf.quota.api.QuotaResult;
+import com.myorg.lsf.quota.api.ReactiveQuotaReservationFacade;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.util.concurrent.Callable;
+
+/**
+ * {@link ReactiveQuotaReservationFacade} over the blocking {@link QuotaReservationFacade}, used
+ * when {@code lsf.quota.hierarchy} is enabled: reserve / confirm / release go through the same
+ * parent levels ({@code reserveAll} / {@code confirmAll} / {@code releaseAll}) as blocking
+ * callers, so holds taken by either API are confirmed or released on every level.
+ * The call runs on {@code offload} when the store or the policy lookup may block.
+ */
+public class BlockingReactiveQuotaReservationFacade implements ReactiveQuotaReservationFacade {
+
+    private final QuotaReservationFacade facade;
+    private final Scheduler offload; // nullable
+
+    public BlockingReactiveQuotaReservationFacade(QuotaReservationFacade facade, Scheduler offload) {
+        this.facade = facade;
+        this.offload = offload;
+    }
+
+    @Override
+    public Mono<QuotaResult> reserve(String quotaKey, String requestId, int amount) {
+        return call(() -> facade.reserve(quotaKey, requestId, amount));
+    }
+
+    @Override
+    public Mono<QuotaResult> confirm(String quotaKey, String requestId) {
+        return call(() -> facade.confirm(quotaKey, requestId));
+    }
+
+    @Override
+    public Mono<QuotaResult> release(String quotaKey, String requestId) {
+        return call(() -> facade.release(quotaKey, requestId));
+    }
+
+    private Mono<QuotaResult> call(Callable<QuotaResult> op) {
+        Mono<QuotaResult> mono = Mono.fromCallable(op);
+        return (offload != null) ? mono.subscribeOn(offload) : mono;
+    }
+}
@@ -0,0 +1,57 @@
+package com.myorg.lsf.quota.impl;
+
+import com.myorg.lsf.quota.api.QuotaRequest;
+import com.myorg.lsf.quota.api.QuotaResult;
+import com.myorg.lsf.quota.api.QuotaService;
+import com.myorg.lsf.quota.api.ReactiveQuotaService;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.util.concurrent.Callable;
+
+/**
+ * {@link ReactiveQuotaService} over a blocking {@link QuotaService}, used when no reactive
+ * Redis driver is available (memory stores, or Redis without a ReactiveStringRedisTemplate).
+ * In-memory stores never wait on I/O and run on the subscriber thread; a blocking Redis
+ * store is moved to {@code offload} so it never parks an event-loop thread.
+ */
+public class BlockingReactiveQuotaService implements ReactiveQuotaService {
+
+    private final QuotaService quotaService;
+    private final Scheduler offload; // nullable
+
+    public BlockingReactiveQuotaService(QuotaService quotaService, Scheduler offload) {
+        this.quotaService = quotaService;
+        this.offload = offload;
+    }
+
+    @Override
+    public Mono<QuotaResult> reserve(QuotaRequest req) {
+        return call(() -> quotaService.reserve(req));
+    }
+
+    @Override
+    public Mono<QuotaResult> confirm(String quotaKey, String requestId) {
+        return call(() -> quotaService.confirm(quotaKey, requestId));
+    }
+
+    @Override
+    public Mono<QuotaResult> release(String quotaKey, String requestId) {
+        return call(() -> quotaService.release(quotaKey, requestId));
+    }
+
+    @Override
+    public Mono<QuotaResult> confirm(String quotaKey, String requestId, int shards) {
+        return call(() -> quotaService.confirm(quotaKey, requestId, shards));
+    }
+
+    @Override
+    public Mono<QuotaResult> release(String quotaKey, String requestId, int shards) {
+        return call(() -> quotaService.release(quotaKey, requestId, shards));
+    }
+
+    private Mono<QuotaResult> call(Callable<QuotaResult> op) {
+        Mono<QuotaResult> mono = Mono.fromCallable(op);
+        return (offload != null) ? mono.subscribeOn(offload) : mono;
+    }
+}
@@ -1,21 +1,53 @@
 package com.myorg.lsf.quota.impl;
 
+import com.myorg.lsf.quota.api.QuotaBatchMode;
+import com.myorg.lsf.quota.api.QuotaGroupResult;
+import com.myorg.lsf.quota.api.QuotaHold;
 import com.myorg.lsf.quota.api.QuotaReservationFacade;
 import com.myorg.lsf.quota.api.QuotaResult;
 import com.myorg.lsf.quota.api.QuotaService;
 import com.myorg.lsf.quota.api.QuotaRequest;
 import com.myorg.lsf.quota.api.QuotaPolicyNotFoundException;
+import com.myorg.lsf.quota.api.RateLimitRequest;
+import com.myorg.lsf.quota.api.RateLimitResult;
+import com.myorg.lsf.quota.key.QuotaKeys;
 import com.myorg.lsf.quota.policy.QuotaPolicy;
 import com.myorg.lsf.quota.policy.QuotaPolicyProvider;
-import lombok.RequiredArgsConstructor;
+import com.myorg.lsf.quota.policy.RateLimitPolicy;
 import lombok.extern.slf4j.Slf4j;
 
-@RequiredArgsConstructor
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Resolves policies and calls {@link QuotaService}.
+ *
+ * With a hierarchy separator, every reserve also takes the same amount from each ancestor key
+ * that has an inventory policy ({@code shopA:flashsale_sku:X} -> {@code shopA:flashsale_sku},
+ * {@code shopA}). All levels go to one {@code reserveAll(ALL_OR_NOTHING)}, i.e. one Lua script /
+ * one critical section. An ancestor holds under {@code requestId@leafKey}, so two SKUs of
+ * the same cart do not collide on the tenant key; confirm / release follow the same levels.
+ */
 @Slf4j
 public class QuotaReservationFacadeImpl implements QuotaReservationFacade {
 
     private final QuotaService quotaService;
     private final QuotaPolicyProvider policyProvider;
+    private final String separator; // null = key phẳng, không có hierarchy
+
+    public QuotaReservationFacadeImpl(QuotaService quotaService, QuotaPolicyProvider policyProvider) {
+        this(quotaService, policyProvider, null);
+    }
+
+    public QuotaReservationFacadeImpl(QuotaService quotaService, QuotaPolicyProvider policyProvider, String hierarchySeparator) {
+        this.quotaService = quotaService;
+        this.policyProvider = policyProvider;
+        this.separator = hierarchySeparator;
+    }
 
     @Override
     public QuotaResult reserve(String quotaKey, String requestId, int amount) {
@@ -25,19 +57,94 @@ public class QuotaReservationFacadeImpl implements QuotaReservationFacade {
             throw new IllegalArgumentException("amount must be > 0");
         }
 
-        QuotaPolicy policy = policyProvider.findPolicy(quotaKey)
-                .orElseThrow(() -> new QuotaPolicyNotFoundException(quotaKey));
+        QuotaResult result = reserveLevels(quotaKey, requestId, amount).results().get(0);
+        log.debug("quota.reserve key={} requestId={} amount={} decision={} used={} limit={} holdUntil={}",
+                quotaKey, requestId, amount, result.decision(), result.used(), result.limit(), result.holdUntilEpochMs());
+        return result;
+    }
+
+    @Override
+    public QuotaGroupResult reserveHierarchy(String quotaKey, String requestId, int amount) {
+        requireNonBlank(quotaKey, "quotaKey must not be blank");
+        requireNonBlank(requestId, "requestId must not be blank");
+        if (amount <= 0) {
+            throw new IllegalArgumentException("amount must be > 0");
+        }
+
+        QuotaGroupResult result = reserveLevels(quotaKey, requestId, amount);
+        log.debug("quota.reserveHierarchy key={} requestId={} amount={} levels={} decision={} blocking={}",
+                quotaKey, requestId, amount, result.quotaKeys(), result.decision(), result.blockingKeys());
+        return result;
+    }
+
+    @Override
+    public List<QuotaResult> reserveAll(List<QuotaRequest> requests, QuotaBatchMode mode) {
+        if (requests == null) {
+            throw new IllegalArgumentException("requests must not be null");
+        }
+        if (mode == null) {
+            throw new IllegalArgumentException("mode must not be null");
+        }
+
+        List<QuotaRequest> resolved = resolve(requests);
+        List<QuotaResult> results = reserveAllLevels(resolved, mode);
+        if (log.isDebugEnabled()) {
+            for (int i = 0; i < resolved.size(); i++) {
+                QuotaRequest req = resolved.get(i);
+                QuotaResult result = results.get(i);
+                log.debug("quota.reserveAll mode={} key={} requestId={} amount={} decision={} used={} limit={} holdUntil={}",
+                        mode, req.quotaKey(), req.requestId(), req.amount(), result.decision(), result.used(),
+                        result.limit(), result.holdUntilEpochMs());
+            }
+        }
+        return results;
+    }
 
-        QuotaResult result = quotaService.reserve(QuotaRequest.builder()
+    @Override
+    public QuotaGroupResult reserveGroup(Map<String, Integer> amountByKey, String requestId) {
+        requireNonBlank(requestId, "requestId must not be blank");
+        if (amountByKey == null || amountByKey.isEmpty()) {
+            throw new IllegalArgumentException("amountByKey must not be empty");
+        }
+        List<QuotaRequest> requests = new ArrayList<>(amountByKey.size());
+        amountByKey.forEach((quotaKey, amount) -> requests.add(QuotaRequest.builder()
                 .quotaKey(quotaKey)
                 .requestId(requestId)
-                .amount(amount)
-                .limit(policy.limit())
-                .hold(policy.hold())
-                .build());
+                .amount(amount == null ? 0 : amount)
+                .build()));
 
-        log.debug("quota.reserve key={} requestId={} amount={} decision={} used={} limit={} holdUntil={}",
-                quotaKey, requestId, amount, result.decision(), result.used(), result.limit(), result.holdUntilEpochMs());
+        List<QuotaRequest> resolved = resolve(requests);
+        List<QuotaRequest> levels = withParents(resolved);
+        // cấp cha giữ dưới requestId@leafKey nên không còn là group một requestId: all-or-nothing qua reserveAll
+        QuotaGroupResult result = (levels.size() == resolved.size())
+                ? quotaService.reserveGroup(resolved)
+                : QuotaGroupResult.ofReserve(levels, quotaService.reserveAll(levels, QuotaBatchMode.ALL_OR_NOTHING));
+        log.debug("quota.reserveGroup requestId={} keys={} decision={} blocking={}",
+                requestId, result.quotaKeys(), result.decision(), result.blockingKeys());
+        return result;
+    }
+
+    @Override
+    public QuotaGroupResult confirmGroup(List<String> quotaKeys, String requestId) {
+        requireGroupKeys(quotaKeys, requestId);
+
+        List<QuotaHold> holds = holdsOf(quotaKeys, requestId);
+        QuotaGroupResult result = (holds.size() == quotaKeys.size())
+                ? quotaService.confirmGroup(quotaKeys, requestId)
+                : QuotaGroupResult.ofConfirm(keysOf(holds), requestId, quotaService.confirmAll(holds));
+        log.debug("quota.confirmGroup requestId={} keys={} decision={}", requestId, quotaKeys, result.decision());
+        return result;
+    }
+
+    @Override
+    public QuotaGroupResult releaseGroup(List<String> quotaKeys, String requestId) {
+        requireGroupKeys(quotaKeys, requestId);
+
+        List<QuotaHold> holds = holdsOf(quotaKeys, requestId);
+        QuotaGroupResult result = (holds.size() == quotaKeys.size())
+                ? quotaService.releaseGroup(quotaKeys, requestId)
+                : QuotaGroupResult.ofRelease(keysOf(holds), requestId, quotaService.releaseAll(holds));
+        log.debug("quota.releaseGroup requestId={} keys={} decision={}", requestId, quotaKeys, result.decision());
         return result;
     }
 
@@ -46,7 +153,10 @@ public class QuotaReservationFacadeImpl implements QuotaReservationFacade {
         requireNonBlank(quotaKey, "quotaKey must not be blank");
         requireNonBlank(requestId, "requestId must not be blank");
 
-        QuotaResult result = quotaService.confirm(quotaKey, requestId);
+        List<QuotaHold> holds = holdsOf(List.of(quotaKey), requestId);
+        QuotaResult result = (holds.size() == 1)
+                ? quotaService.confirm(quotaKey, requestId, holds.get(0).shards())
+                : quotaService.confirmAll(holds).get(0);
         log.debug("quota.confirm key={} requestId={} decision={} used={} state={}",
                 quotaKey, requestId, result.decision(), result.used(), result.state());
         return result;
@@ -57,12 +167,184 @@ public class QuotaReservationFacadeImpl implements QuotaReservationFacade {
         requireNonBlank(quotaKey, "quotaKey must not be blank");
         requireNonBlank(requestId, "requestId must not be blank");
 
-        QuotaResult result = quotaService.release(quotaKey, requestId);
+        List<QuotaHold> holds = holdsOf(List.of(quotaKey), requestId);
+        QuotaResult result = (holds.size() == 1)
+                ? quotaService.release(quotaKey, requestId, holds.get(0).shards())
+                : quotaService.releaseAll(holds).get(0);
         log.debug("quota.release key={} requestId={} decision={} used={} state={}",
                 quotaKey, requestId, result.decision(), result.used(), result.state());
         return result;
     }
 
+    @Override
+    public RateLimitResult tryAcquire(String quotaKey, int permits) {
+        requireNonBlank(quotaKey, "quotaKey must not be blank");
+        if (permits <= 0) {
+            throw new IllegalArgumentException("permits must be > 0");
+        }
+
+        QuotaPolicy policy = policyProvider.findPolicy(quotaKey)
+                .orElseThrow(() -> new QuotaPolicyNotFoundException(quotaKey));
+        if (!policy.isRateLimit()) {
+            throw new IllegalArgumentException("quota key has no rate-limit policy: " + quotaKey);
+        }
+        RateLimitPolicy rate = policy.rateLimit();
+
+        RateLimitResult result = quotaService.tryAcquire(RateLimitRequest.builder()
+                .quotaKey(quotaKey)
+                .permits(permits)
+                .algorithm(rate.algorithm())
+                .limit(rate.limit())
+                .window(rate.window())
+                .burst(rate.burst())
+                .build());
+        log.debug("quota.tryAcquire key={} permits={} algorithm={} decision={} remaining={} retryAfterMs={}",
+                quotaKey, permits, rate.algorithm(), result.decision(), result.remaining(), result.retryAfterMs());
+        return result;
+    }
+
+    /** Validates each item and applies its policy; one policy lookup per distinct key. */
+    private List<QuotaRequest> resolve(List<QuotaRequest> requests) {
+        Map<String, QuotaPolicy> policies = new HashMap<>();
+        List<QuotaRequest> resolved = new ArrayList<>(requests.size());
+        for (QuotaRequest req : requests) {
+            requireNonBlank(req.quotaKey(), "quotaKey must not be blank");
+            requireNonBlank(req.requestId(), "requestId must not be blank");
+            if (req.amount() <= 0) {
+                throw new IllegalArgumentException("amount must be > 0");
+            }
+            QuotaPolicy policy = policies.computeIfAbsent(req.quotaKey(), key -> policyProvider.findPolicy(key)
+                    .orElseThrow(() -> new QuotaPolicyNotFoundException(key)));
+            requireInventory(req.quotaKey(), policy);
+            resolved.add(QuotaRequest.builder()
+                    .quotaKey(req.quotaKey())
+                    .requestId(req.requestId())
+                    .amount(req.amount())
+                    .limit(policy.limit())
+                    .hold(policy.hold())
+                    .shards(policy.shards())
+                    .build());
+        }
+        return resolved;
+    }
+
+    /** Leaf first, then its ancestors; one backend call for all levels. */
+    private QuotaGroupResult reserveLevels(String quotaKey, String requestId, int amount) {
+        QuotaRequest leaf = resolve(List.of(QuotaRequest.builder()
+                .quotaKey(quotaKey)
+                .requestId(requestId)
+                .amount(amount)
+                .build())).get(0);
+        List<QuotaRequest> levels = withParents(List.of(leaf));
+        List<QuotaResult> results = (levels.size() == 1)
+                ? List.of(quotaService.reserve(leaf))
+                : quotaService.reserveAll(levels, QuotaBatchMode.ALL_OR_NOTHING);
+        return QuotaGroupResult.ofReserve(levels, results);
+    }
+
+    private List<QuotaResult> reserveAllLevels(List<QuotaRequest> resolved, QuotaBatchMode mode) {
+        List<QuotaRequest> levels = withParents(resolved);
+        if (levels.size() == resolved.size()) return quotaService.reserveAll(resolved, mode);
+
+        if (mode == QuotaBatchMode.ALL_OR_NOTHING) {
+            // cả batch một lần; withParents giữ thứ tự nên leaf của item i là phần tử đầu trong các cấp của nó
+            List<QuotaResult> all = quotaService.reserveAll(levels, QuotaBatchMode.ALL_OR_NOTHING);
+            List<QuotaResult> results = new ArrayList<>(resolved.size());
+            int item = 0;
+            for (int i = 0; i < levels.size() && item < resolved.size(); i++) {
+                if (levels.get(i) == resolved.get(item)) {
+                    results.add(all.get(i));
+                    item++;
+                }
+            }
+            return results;
+        }
+        // BEST_EFFORT: mỗi item cùng các cấp cha của nó là một đơn vị all-or-nothing riêng
+        List<QuotaResult> results = new ArrayList<>(resolved.size());
+        for (QuotaRequest req : resolved) {
+            List<QuotaRequest> own = withParents(List.of(req));
+            results.add(own.size() == 1
+                    ? quotaService.reserve(req)
+                    : quotaService.reserveAll(own, QuotaBatchMode.ALL_OR_NOTHING).get(0));
+        }
+        return results;
+    }
+
+    /** Each resolved request followed by one request per ancestor with an inventory policy, same amount and hold. */
+    private List<QuotaRequest> withParents(List<QuotaRequest> resolved) {
+        if (separator == null) return resolved;
+        Map<String, Optional<QuotaPolicy>> policies = new HashMap<>();
+        List<QuotaRequest> levels = new ArrayList<>(resolved.size());
+        for (QuotaRequest leaf : resolved) {
+            levels.add(leaf);
+            for (String parent : QuotaKeys.parents(leaf.quotaKey(), separator)) {
+                QuotaPolicy policy = inventoryPolicy(parent, policies);
+                if (policy == null) continue;
+                // hold của cấp cha hết hạn cùng lúc với leaf
+                levels.add(QuotaRequest.builder()
+                        .quotaKey(parent)
+                        .requestId(parentRequestId(leaf.requestId(), leaf.quotaKey()))
+                        .amount(leaf.amount())
+                        .limit(policy.limit())
+                        .hold(leaf.hold())
+                        .shards(policy.shards())
+                        .build());
+            }
+        }
+        return levels;
+    }
+
+    /**
+     * Holds of {@code quotaKeys} and of their ancestors. A sharded hot key keeps its holds in
+     * sub-buckets: confirm/release need the count to find them.
+     */
+    private List<QuotaHold> holdsOf(List<String> quotaKeys, String requestId) {
+        Map<String, Optional<QuotaPolicy>> policies = new HashMap<>();
+        List<QuotaHold> holds = new ArrayList<>(quotaKeys.size());
+        for (String quotaKey : quotaKeys) {
+            int shards = policies.computeIfAbsent(quotaKey, policyProvider::findPolicy).map(QuotaPolicy::shards).orElse(0);
+            holds.add(new QuotaHold(quotaKey, requestId, shards));
+            if (separator == null) continue;
+            for (String parent : QuotaKeys.parents(quotaKey, separator)) {
+                QuotaPolicy policy = inventoryPolicy(parent, policies);
+                if (policy != null) holds.add(new QuotaHold(parent, parentRequestId(requestId, quotaKey), policy.shards()));
+            }
+        }
+        return holds;
+    }
+
+    private QuotaPolicy inventoryPolicy(String quotaKey, Map<String, Optional<QuotaPolicy>> policies) {
+        return policies.computeIfAbsent(quotaKey, policyProvider::findPolicy)
+                .filter(p -> !p.isRateLimit())
+                .orElse(null);
+    }
+
+    static String parentRequestId(String requestId, String leafKey) {
+        return requestId + "@" + leafKey;
+    }
+
+    private static List<String> keysOf(List<QuotaHold> holds) {
+        return holds.stream().map(QuotaHold::quotaKey).toList();
+    }
+
+    // key rate limit không có tồn kho để giữ chỗ
+    private static void requireInventory(String quotaKey, QuotaPolicy policy) {
+        if (policy.isRateLimit()) {
+            throw new IllegalArgumentException("quota key has a rate-limit policy, use tryAcquire: " + quotaKey);
+        }
+    }
+
+    private static void requireGroupKeys(List<String> quotaKeys, String requestId) {
+        requireNonBlank(requestId, "requestId must not be blank");
+        if (quotaKeys == null || quotaKeys.isEmpty()) {
+            throw new IllegalArgumentException("quotaKeys must not be empty");
+        }
+        if (new HashSet<>(quotaKeys).size() != quotaKeys.size()) {
+            throw new IllegalArgumentException("quotaKeys must not contain duplicates");
+        }
+        quotaKeys.forEach(key -> requireNonBlank(key, "quotaKey must not be blank"));
+    }
+
     private static void requireNonBlank(String value, String message) {
         if (value == null || value.isBlank()) {
             throw new IllegalArgumentException(message);
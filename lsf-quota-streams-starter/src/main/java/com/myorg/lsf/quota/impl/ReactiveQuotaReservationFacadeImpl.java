@@ -0,0 +1,95 @@
+package com.myorg.lsf.quota.impl;
+
+import com.myorg.lsf.quota.api.QuotaPolicyNotFoundException;
+import com.myorg.lsf.quota.api.QuotaRequest;
+import com.myorg.lsf.quota.api.QuotaResult;
+import com.myorg.lsf.quota.api.ReactiveQuotaReservationFacade;
+import com.myorg.lsf.quota.api.ReactiveQuotaService;
+import com.myorg.lsf.quota.policy.QuotaPolicy;
+import com.myorg.lsf.quota.policy.QuotaPolicyProvider;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Reactive {@link ReactiveQuotaReservationFacade}: same validation and policy rules as
+ * {@link QuotaReservationFacadeImpl}; confirm / release also look up the policy to pass its
+ * {@code shards} on, so a hold on a sharded key is searched where it was reserved.
+ * Keys are flat: with {@code lsf.quota.hierarchy} enabled the auto-configuration uses
+ * {@link BlockingReactiveQuotaReservationFacade} instead, so parent levels are not skipped.
+ *
+ * {@link QuotaPolicyProvider} is blocking (JDBC on a cache miss), so the lookup runs on
+ * {@code policyScheduler} when one is given; pass null when the provider never does I/O.
+ */
+@Slf4j
+public class ReactiveQuotaReservationFacadeImpl implements ReactiveQuotaReservationFacade {
+
+    private final ReactiveQuotaService quotaService;
+    private final QuotaPolicyProvider policyProvider;
+    private final Scheduler policyScheduler; // nullable
+
+    public ReactiveQuotaReservationFacadeImpl(ReactiveQuotaService quotaService, QuotaPolicyProvider policyProvider,
+                                              Scheduler policyScheduler) {
+        this.quotaService = quotaService;
+        this.policyProvider = policyProvider;
+        this.policyScheduler = policyScheduler;
+    }
+
+    @Override
+    public Mono<QuotaResult> reserve(String quotaKey, String requestId, int amount) {
+        if (isBlank(quotaKey)) return Mono.error(new IllegalArgumentException("quotaKey must not be blank"));
+        if (isBlank(requestId)) return Mono.error(new IllegalArgumentException("requestId must not be blank"));
+        if (amount <= 0) return Mono.error(new IllegalArgumentException("amount must be > 0"));
+
+        return lookup(() -> policyProvider.findPolicy(quotaKey)
+                .orElseThrow(() -> new QuotaPolicyNotFoundException(quotaKey)))
+                .flatMap(p -> quotaService.reserve(QuotaRequest.builder()
+                        .quotaKey(quotaKey)
+                        .requestId(requestId)
+                        .amount(amount)
+                        .limit(p.limit())
+                        .hold(p.hold())
+                        .shards(p.shards())
+                        .build()))
+                .doOnNext(result -> log.debug("quota.reserve key={} requestId={} amount={} decision={} used={} limit={} holdUntil={}",
+                        quotaKey, requestId, amount, result.decision(), result.used(), result.limit(), result.holdUntilEpochMs()));
+    }
+
+    @Override
+    public Mono<QuotaResult> confirm(String quotaKey, String requestId) {
+        if (isBlank(quotaKey)) return Mono.error(new IllegalArgumentException("quotaKey must not be blank"));
+        if (isBlank(requestId)) return Mono.error(new IllegalArgumentException("requestId must not be blank"));
+
+        return shardsOf(quotaKey)
+                .flatMap(shards -> quotaService.confirm(quotaKey, requestId, shards))
+                .doOnNext(result -> log.debug("quota.confirm key={} requestId={} decision={} used={} state={}",
+                        quotaKey, requestId, result.decision(), result.used(), result.state()));
+    }
+
+    @Override
+    public Mono<QuotaResult> release(String quotaKey, String requestId) {
+        if (isBlank(quotaKey)) return Mono.error(new IllegalArgumentException("quotaKey must not be blank"));
+        if (isBlank(requestId)) return Mono.error(new IllegalArgumentException("requestId must not be blank"));
+
+        return shardsOf(quotaKey)
+                .flatMap(shards -> quotaService.release(quotaKey, requestId, shards))
+                .doOnNext(result -> log.debug("quota.release key={} requestId={} decision={} used={} state={}",
+                        quotaKey, requestId, result.decision(), result.used(), result.state()));
+    }
+
+    // như QuotaReservationFacadeImpl#holdsOf: key không còn policy thì coi như không sharded
+    private Mono<Integer> shardsOf(String quotaKey) {
+        return lookup(() -> policyProvider.findPolicy(quotaKey).map(QuotaPolicy::shards).orElse(0));
+    }
+
+    private <T> Mono<T> lookup(Callable<T> find) {
+        Mono<T> mono = Mono.fromCallable(find);
+        return (policyScheduler != null) ? mono.subscribeOn(policyScheduler) : mono;
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.isBlank();
+    }
+}
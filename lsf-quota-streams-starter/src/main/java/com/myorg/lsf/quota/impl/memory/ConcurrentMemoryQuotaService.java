@@ -0,0 +1,166 @@
+package com.myorg.lsf.quota.impl.memory;
+
+import com.myorg.lsf.quota.api.QuotaBatchMode;
+import com.myorg.lsf.quota.api.QuotaGroupResult;
+import com.myorg.lsf.quota.api.QuotaRequest;
+import com.myorg.lsf.quota.api.QuotaResult;
+import com.myorg.lsf.quota.api.RateLimitRequest;
+import com.myorg.lsf.quota.api.RateLimitResult;
+import com.myorg.lsf.quota.config.LsfQuotaProperties;
+import com.myorg.lsf.quota.obs.QuotaMetrics;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * In-memory backend with per-bucket locking.
+ *
+ * Buckets live in a {@link ConcurrentHashMap}; each operation only locks the
+ * bucket of its own quota key, so unrelated keys proceed in parallel while
+ * used / reserved / confirmed of one key still change atomically.
+ * Batch and group operations lock the buckets they touch in key order, once each.
+ * Selected with {@code lsf.quota.store=memory_concurrent}.
+ */
+public class ConcurrentMemoryQuotaService implements SweepableQuotaService {
+    private final LsfQuotaProperties props;
+    private final QuotaMetrics metrics; // nullable
+    private final Clock clock;
+    private final Supplier<MemoryBucket> newBucket;
+    private final ConcurrentMap<String, MemoryBucket> buckets = new ConcurrentHashMap<>();
+    private final MemoryRateLimiter rateLimiter;
+
+    public ConcurrentMemoryQuotaService(LsfQuotaProperties props, QuotaMetrics metrics, Clock clock) {
+        this.props = props;
+        this.metrics = metrics;
+        this.clock = clock;
+        this.newBucket = MemoryBucket.factory(props.getMemory().getBucketLayout());
+        this.rateLimiter = new MemoryRateLimiter(metrics);
+        if (metrics != null) metrics.registerBucketGauge(buckets::size);
+    }
+
+    @Override
+    public QuotaResult reserve(QuotaRequest req) {
+        return withBucket(req.quotaKey(), true, b -> b.reserve(req, clock.millis(), props, metrics));
+    }
+
+    @Override
+    public QuotaResult confirm(String quotaKey, String requestId) {
+        return withBucket(quotaKey, false, b -> b.confirm(requestId, clock.millis(), metrics));
+    }
+
+    @Override
+    public QuotaResult release(String quotaKey, String requestId) {
+        return withBucket(quotaKey, false, b -> b.release(requestId, clock.millis(), props, metrics));
+    }
+
+    @Override
+    public List<QuotaResult> reserveAll(List<QuotaRequest> requests, QuotaBatchMode mode) {
+        if (requests.isEmpty()) return List.of();
+        List<String> keys = requests.stream().map(QuotaRequest::quotaKey).toList();
+        return withBuckets(keys, true, batch -> MemoryBatch.reserveAll(requests, batch, mode, clock.millis(), props, metrics));
+    }
+
+    @Override
+    public QuotaGroupResult confirmGroup(List<String> quotaKeys, String requestId) {
+        List<QuotaResult> results = withBuckets(quotaKeys, false,
+                batch -> MemoryBatch.confirmAll(quotaKeys, requestId, batch, clock.millis(), metrics));
+        return QuotaGroupResult.ofConfirm(quotaKeys, requestId, results);
+    }
+
+    @Override
+    public QuotaGroupResult releaseGroup(List<String> quotaKeys, String requestId) {
+        List<QuotaResult> results = withBuckets(quotaKeys, false,
+                batch -> MemoryBatch.releaseAll(quotaKeys, requestId, batch, clock.millis(), props, metrics));
+        return QuotaGroupResult.ofRelease(quotaKeys, requestId, results);
+    }
+
+    // rate limit có map + lock riêng theo key, không cần monitor của service
+    @Override
+    public RateLimitResult tryAcquire(RateLimitRequest req) {
+        return rateLimiter.tryAcquire(req, clock.millis());
+    }
+
+    @Override
+    public int purgeExpired() {
+        long now = clock.millis();
+        int purged = 0;
+        for (MemoryBucket b : buckets.values()) {
+            synchronized (b) {
+                purged += b.purgeExpired(now, metrics);
+            }
+        }
+        return purged;
+    }
+
+    @Override
+    public int evictIdle() {
+        long now = clock.millis();
+        long keepAliveMs = Duration.ofSeconds(props.getKeepAliveSeconds()).toMillis();
+        rateLimiter.evictIdle(now);
+        return MemoryBucketEvictor.evict(buckets, now, keepAliveMs, props.getMemory().getMaxBuckets(), metrics);
+    }
+
+    @Override
+    public int bucketCount() {
+        return buckets.size();
+    }
+
+    private QuotaResult withBucket(String quotaKey, boolean create, Function<MemoryBucket, QuotaResult> op) {
+        while (true) {
+            // get() first: the hot path for an existing key never touches the bin lock of computeIfAbsent
+            MemoryBucket b = buckets.get(quotaKey);
+            if (b == null) {
+                // confirm/release on an unknown key: answer NOT_FOUND without registering a bucket
+                if (!create) return op.apply(newBucket.get());
+                b = buckets.computeIfAbsent(quotaKey, k -> newBucket.get());
+            }
+            synchronized (b) {
+                // evicted between lookup and lock: retry on the bucket that replaced it
+                if (!b.retired) return op.apply(b);
+            }
+        }
+    }
+
+    /**
+     * Runs {@code op} while holding the monitor of every bucket of {@code quotaKeys}.
+     * Monitors are taken in sorted key order (once per key) so two batches sharing keys
+     * cannot deadlock; retried if one of the buckets got evicted meanwhile.
+     */
+    private <T> T withBuckets(List<String> quotaKeys, boolean create, Function<Map<String, MemoryBucket>, T> op) {
+        List<String> sorted = quotaKeys.stream().distinct().sorted().toList();
+        while (true) {
+            Map<String, MemoryBucket> batch = new HashMap<>();
+            for (String key : sorted) {
+                MemoryBucket b = buckets.get(key);
+                if (b == null) {
+                    // confirm/release: key chưa có thì dùng bucket tạm, không đăng ký vào map
+                    b = create ? buckets.computeIfAbsent(key, k -> newBucket.get()) : newBucket.get();
+                }
+                batch.put(key, b);
+            }
+            Optional<T> result = lockAll(sorted, 0, batch, op);
+            if (result != null) return result.orElse(null);
+        }
+    }
+
+    /** Nested monitors over keys[i..]; null when one of the buckets was evicted meanwhile. */
+    private <T> Optional<T> lockAll(List<String> keys, int i, Map<String, MemoryBucket> batch,
+                                    Function<Map<String, MemoryBucket>, T> op) {
+        if (i == keys.size()) {
+            return Optional.ofNullable(op.apply(batch));
+        }
+        MemoryBucket b = batch.get(keys.get(i));
+        synchronized (b) {
+            if (b.retired) return null;
+            return lockAll(keys, i + 1, batch, op);
+        }
+    }
+}
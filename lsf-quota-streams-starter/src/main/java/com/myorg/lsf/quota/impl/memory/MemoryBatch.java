@@ -0,0 +1,125 @@
+package com.myorg.lsf.quota.impl.memory;
+
+import com.myorg.lsf.quota.api.QuotaBatchMode;
+import com.myorg.lsf.quota.api.QuotaDecision;
+import com.myorg.lsf.quota.api.QuotaRequest;
+import com.myorg.lsf.quota.api.QuotaResult;
+import com.myorg.lsf.quota.api.QuotaState;
+import com.myorg.lsf.quota.config.LsfQuotaProperties;
+import com.myorg.lsf.quota.obs.QuotaMetrics;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Batch and group operations shared by the in-memory backends.
+ *
+ * Callers must already hold the lock of every bucket in {@code buckets}; this class
+ * only decides. ALL_OR_NOTHING is two-phase: a dry run that accumulates the amounts
+ * per bucket, then the normal per-item {@link MemoryBucket#reserve} only if every item fits.
+ * Group confirm works the same way: every key must hold the requestId before any is confirmed.
+ */
+final class MemoryBatch {
+
+    private MemoryBatch() {
+    }
+
+    static List<QuotaResult> reserveAll(List<QuotaRequest> requests, Map<String, MemoryBucket> buckets,
+                                        QuotaBatchMode mode, long now, LsfQuotaProperties props, QuotaMetrics metrics) {
+        if (mode == QuotaBatchMode.ALL_OR_NOTHING && !fitsAll(requests, buckets, now, metrics)) {
+            return rejectAll(requests, buckets, now, props, metrics);
+        }
+        List<QuotaResult> results = new ArrayList<>(requests.size());
+        for (QuotaRequest req : requests) {
+            results.add(buckets.get(req.quotaKey()).reserve(req, now, props, metrics));
+        }
+        return results;
+    }
+
+    private static boolean fitsAll(List<QuotaRequest> requests, Map<String, MemoryBucket> buckets,
+                                   long now, QuotaMetrics metrics) {
+        for (MemoryBucket b : buckets.values()) {
+            b.purgeExpired(now, metrics);
+        }
+        Map<MemoryBucket, Integer> pending = new IdentityHashMap<>();
+        Set<String> seen = new HashSet<>();
+        for (QuotaRequest req : requests) {
+            MemoryBucket b = buckets.get(req.quotaKey());
+            // cùng key + requestId lặp lại trong batch => lần sau là DUPLICATE, không cộng thêm
+            if (!seen.add(req.quotaKey() + '\u0000' + req.requestId())) continue;
+            if (isHeld(b, req.requestId())) continue;
+            int p = pending.merge(b, Math.max(1, req.amount()), Integer::sum);
+            if (b.used + p > req.limit()) return false;
+        }
+        return true;
+    }
+
+    private static List<QuotaResult> rejectAll(List<QuotaRequest> requests, Map<String, MemoryBucket> buckets,
+                                               long now, LsfQuotaProperties props, QuotaMetrics metrics) {
+        List<QuotaResult> results = new ArrayList<>(requests.size());
+        for (QuotaRequest req : requests) {
+            MemoryBucket b = buckets.get(req.quotaKey());
+            if (isHeld(b, req.requestId())) {
+                // already held/confirmed before the batch: reserve() only reports DUPLICATE
+                results.add(b.reserve(req, now, props, metrics));
+                continue;
+            }
+            b.lastAccessMs = now;
+            if (metrics != null) metrics.incReserveRejected();
+            results.add(QuotaResult.builder()
+                    .decision(QuotaDecision.REJECTED)
+                    .state(null)
+                    .used(b.used)
+                    .limit(req.limit())
+                    .holdUntilEpochMs(0)
+                    .build());
+        }
+        return results;
+    }
+
+    static List<QuotaResult> confirmAll(List<String> quotaKeys, String requestId, Map<String, MemoryBucket> buckets,
+                                        long now, QuotaMetrics metrics) {
+        boolean complete = true;
+        for (String key : quotaKeys) {
+            MemoryBucket b = buckets.get(key);
+            b.purgeExpired(now, metrics);
+            if (!isHeld(b, requestId)) complete = false;
+        }
+        List<QuotaResult> results = new ArrayList<>(quotaKeys.size());
+        for (String key : quotaKeys) {
+            MemoryBucket b = buckets.get(key);
+            if (complete || !isHeld(b, requestId) || b.confirmedAmount(requestId) != MemoryBucket.NONE) {
+                // NOT_FOUND / DUPLICATE do not change state, same answer as a single confirm
+                results.add(b.confirm(requestId, now, metrics));
+                continue;
+            }
+            // hold còn sống nhưng key khác của group đã mất => không confirm lẻ
+            b.lastAccessMs = now;
+            results.add(QuotaResult.builder()
+                    .decision(QuotaDecision.REJECTED)
+                    .state(QuotaState.RESERVED)
+                    .used(b.used)
+                    .limit(0)
+                    .holdUntilEpochMs(b.holdUntil(requestId))
+                    .build());
+        }
+        return results;
+    }
+
+    static List<QuotaResult> releaseAll(List<String> quotaKeys, String requestId, Map<String, MemoryBucket> buckets,
+                                        long now, LsfQuotaProperties props, QuotaMetrics metrics) {
+        List<QuotaResult> results = new ArrayList<>(quotaKeys.size());
+        for (String key : quotaKeys) {
+            results.add(buckets.get(key).release(requestId, now, props, metrics));
+        }
+        return results;
+    }
+
+    private static boolean isHeld(MemoryBucket b, String requestId) {
+        return b.confirmedAmount(requestId) != MemoryBucket.NONE || b.holdUntil(requestId) != MemoryBucket.NONE;
+    }
+}
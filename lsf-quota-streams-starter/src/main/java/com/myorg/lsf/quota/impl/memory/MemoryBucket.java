@@ -0,0 +1,228 @@
+package com.myorg.lsf.quota.impl.memory;
+
+import com.myorg.lsf.quota.api.QuotaDecision;
+import com.myorg.lsf.quota.api.QuotaRequest;
+import com.myorg.lsf.quota.api.QuotaResult;
+import com.myorg.lsf.quota.api.QuotaState;
+import com.myorg.lsf.quota.config.LsfQuotaProperties;
+import com.myorg.lsf.quota.obs.QuotaMetrics;
+
+import java.time.Duration;
+import java.util.function.Supplier;
+
+/**
+ * State of one quota key for the in-memory backends.
+ *
+ * The reserve / confirm / release decisions live here; how holds and confirmed
+ * amounts are stored is left to the layout subclass ({@link StandardMemoryBucket},
+ * {@link CompactMemoryBucket}).
+ *
+ * Not thread-safe: callers must hold the lock that guards this bucket
+ * (the service monitor in {@link MemoryQuotaService}, the bucket monitor
+ * in {@link ConcurrentMemoryQuotaService}).
+ */
+abstract class MemoryBucket {
+
+    /** Returned by lookups when the requestId is absent. */
+    static final int NONE = -1;
+
+    //tổng của tất cả những sp đang bị giữ chỗ + những sp đã bán thành công
+    int used = 0;
+    // lần cuối có reserve/confirm/release chạm vào key (sweeper không tính là activity)
+    volatile long lastAccessMs;
+    // true khi bucket đã bị evict khỏi map; thread nào lock trúng bucket này phải lấy lại bucket mới
+    boolean retired;
+
+    static Supplier<MemoryBucket> factory(LsfQuotaProperties.Memory.BucketLayout layout) {
+        return switch (layout) {
+            case STANDARD -> StandardMemoryBucket::new;
+            case COMPACT -> CompactMemoryBucket::new;
+        };
+    }
+
+    // ---- storage of one layout ----
+
+    /** @return expiresAtMs of the live hold, or {@link #NONE} */
+    abstract long holdUntil(String requestId);
+
+    abstract void addHold(String requestId, int amount, long expiresAtMs);
+
+    /** @return amount of the removed hold, or {@link #NONE} */
+    abstract int removeHold(String requestId);
+
+    abstract boolean hasHolds();
+
+    /** @return confirmed amount, or {@link #NONE} */
+    abstract int confirmedAmount(String requestId);
+
+    abstract void addConfirmed(String requestId, int amount);
+
+    abstract void removeConfirmed(String requestId);
+
+    /**
+     * Removes holds whose expiresAtMs is at or before {@code now} and subtracts
+     * them from {@link #used}. Must only visit expired holds.
+     *
+     * @return number of holds removed
+     */
+    abstract int expireHolds(long now);
+
+    // ---- decisions ----
+
+    QuotaResult reserve(QuotaRequest req, long now, LsfQuotaProperties props, QuotaMetrics metrics) {
+        lastAccessMs = now;
+        purgeExpired(now, metrics);
+
+        if (confirmedAmount(req.requestId()) != NONE) {
+            if (metrics != null) metrics.incReserveDuplicate();
+            return QuotaResult.builder()
+                    .decision(QuotaDecision.DUPLICATE)
+                    .state(QuotaState.CONFIRMED)
+                    //Trả về số lượng hàng hóa hiện tại đang bị khóa/sử dụng trong kho
+                    //=> giúp service khác khi gọi nó biết số lượng hiện tại của kho, hoặc hiển thị
+                    .used(used)
+                    .limit(req.limit())
+                    // trả về 0 như "hết hạn" giao dịch không có quyền giữ kho
+                    .holdUntilEpochMs(0)
+                    .build();
+        }
+        long existing = holdUntil(req.requestId());
+        if (existing != NONE) {
+            if (metrics != null) metrics.incReserveDuplicate();
+            return QuotaResult.builder()
+                    .decision(QuotaDecision.DUPLICATE)
+                    .state(QuotaState.RESERVED)
+                    .used(used)
+                    // limit do Client(service khác có thể là OrderService gửi)
+                    .limit(req.limit())
+                    .holdUntilEpochMs(existing)
+                    .build();
+        }
+        int amount = Math.max(1, req.amount());
+        int limit = req.limit();
+        if (used + amount > limit) {
+            if (metrics != null) metrics.incReserveRejected();
+            return QuotaResult.builder()
+                    .decision(QuotaDecision.REJECTED)
+                    .state(null)
+                    .used(used)
+                    .limit(limit)
+                    .holdUntilEpochMs(0)
+                    .build();
+        }
+
+        Duration hold = (req.hold() != null) ? req.hold() : Duration.ofSeconds(props.getDefaultHoldSeconds());
+        long exp = now + Math.max(1, hold.toMillis());
+        used += amount;
+        addHold(req.requestId(), amount, exp);
+        if (metrics != null) metrics.incReserveAccepted();
+        return QuotaResult.builder()
+                .decision(QuotaDecision.ACCEPTED)
+                .state(QuotaState.RESERVED)
+                .used(used)
+                .limit(limit)
+                .holdUntilEpochMs(exp)
+                .build();
+    }
+
+    QuotaResult confirm(String requestId, long now, QuotaMetrics metrics) {
+        lastAccessMs = now;
+        purgeExpired(now, metrics);
+
+        if (confirmedAmount(requestId) != NONE) {
+            if (metrics != null) metrics.incConfirmOk();
+            return QuotaResult.builder()
+                    .decision(QuotaDecision.DUPLICATE)
+                    .state(QuotaState.CONFIRMED)
+                    .used(used)
+                    .limit(0)
+                    .holdUntilEpochMs(0)
+                    .build();
+        }
+        // removeHold(requestId) sẽ lôi cái vé giữ chỗ từ trong danh sách chờ (reserved) ra ngoài
+        int amount = removeHold(requestId);
+        if (amount == NONE) {
+            if (metrics != null) metrics.incConfirmNotFound();
+            return QuotaResult.builder()
+                    .decision(QuotaDecision.NOT_FOUND)
+                    .state(null)
+                    .used(used)
+                    .limit(0)
+                    .holdUntilEpochMs(0)
+                    .build();
+        }
+
+        addConfirmed(requestId, amount);
+        if (metrics != null) metrics.incConfirmOk();
+        return QuotaResult.builder()
+                .decision(QuotaDecision.ACCEPTED)
+                .state(QuotaState.CONFIRMED)
+                .used(used)
+                .limit(0)
+                .holdUntilEpochMs(0)
+                .build();
+    }
+
+    QuotaResult release(String requestId, long now, LsfQuotaProperties props, QuotaMetrics metrics) {
+        lastAccessMs = now;
+        purgeExpired(now, metrics);
+
+        //Xả kho đang giữ chỗ (Release Pending)
+        int held = removeHold(requestId);
+        if (held != NONE) {
+            used -= held;
+            if (metrics != null) metrics.incReleaseOk();
+            return QuotaResult.builder()
+                    .decision(QuotaDecision.ACCEPTED)
+                    .state(null)
+                    .used(used)
+                    .limit(0)
+                    .holdUntilEpochMs(0)
+                    .build();
+        }
+
+        //Nhả hàng đã chốt đơn (Release Confirmed)
+        int confirmedAmt = confirmedAmount(requestId);
+        if (confirmedAmt != NONE && props.isAllowReleaseConfirmed()) {
+            removeConfirmed(requestId);
+            used -= confirmedAmt;
+            if (metrics != null) metrics.incReleaseOk();
+            return QuotaResult.builder()
+                    .decision(QuotaDecision.ACCEPTED)
+                    .state(null).used(used)
+                    .limit(0)
+                    .holdUntilEpochMs(0)
+                    .build();
+        }
+
+        if (metrics != null) metrics.incReleaseNotFound();
+        return QuotaResult.builder()
+                .decision(QuotaDecision.NOT_FOUND)
+                .state(null).used(used)
+                .limit(0)
+                .holdUntilEpochMs(0)
+                .build();
+    }
+
+    /**
+     * Drops holds whose expiresAtMs has passed. Both layouts keep an expiry
+     * index, so the cost is about O(expired · log n) rather than a full scan.
+     *
+     * @return number of holds reclaimed
+     */
+    int purgeExpired(long now, QuotaMetrics metrics) {
+        int purged = expireHolds(now);
+        if (purged > 0 && metrics != null) metrics.incExpired(purged);
+        return purged;
+    }
+
+    /** Nothing held or sold: dropping the bucket cannot change any future decision. */
+    boolean isEmpty() {
+        return used == 0;
+    }
+
+    /** Mirrors the Redis keep-alive TTL: no activity for keepAliveMs and no live holds. */
+    boolean isIdle(long now, long keepAliveMs) {
+        return !hasHolds() && now - lastAccessMs >= keepAliveMs;
+    }
+}
@@ -0,0 +1,70 @@
+package com.myorg.lsf.quota.impl.memory;
+
+import com.myorg.lsf.quota.obs.QuotaMetrics;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Keeps the bucket map of the in-memory backends bounded.
+ *
+ * Idle eviction mirrors the Redis keep-alive TTL (no activity and no live holds
+ * for keepAliveMs). When the map is still above {@code maxBuckets}, empty buckets
+ * are dropped least-recently-used first. Buckets that still hold or have sold
+ * capacity are never evicted by the cap, so eviction cannot cause oversell.
+ */
+final class MemoryBucketEvictor {
+
+    private MemoryBucketEvictor() {
+    }
+
+    static int evict(Map<String, MemoryBucket> buckets, long now, long keepAliveMs, int maxBuckets, QuotaMetrics metrics) {
+        // collect first, remove after: a plain HashMap must not be modified while iterating
+        List<Map.Entry<String, MemoryBucket>> idle = new ArrayList<>();
+        for (Map.Entry<String, MemoryBucket> e : buckets.entrySet()) {
+            MemoryBucket b = e.getValue();
+            synchronized (b) {
+                b.purgeExpired(now, metrics);
+                if (b.isIdle(now, keepAliveMs)) idle.add(e);
+            }
+        }
+        int evictedIdle = retireAll(buckets, idle, b -> b.isIdle(now, keepAliveMs), Integer.MAX_VALUE);
+        if (evictedIdle > 0 && metrics != null) metrics.incEvictedIdle(evictedIdle);
+
+        int evictedCapacity = 0;
+        int excess = buckets.size() - maxBuckets;
+        if (maxBuckets > 0 && excess > 0) {
+            List<Map.Entry<String, MemoryBucket>> candidates = new ArrayList<>();
+            for (Map.Entry<String, MemoryBucket> e : buckets.entrySet()) {
+                if (e.getValue().isEmpty()) candidates.add(e);
+            }
+            // lastAccessMs is volatile; a racing update only makes the order approximate
+            candidates.sort(Comparator.comparingLong(e -> e.getValue().lastAccessMs));
+            evictedCapacity = retireAll(buckets, candidates, MemoryBucket::isEmpty, excess);
+            if (evictedCapacity > 0 && metrics != null) metrics.incEvictedCapacity(evictedCapacity);
+        }
+        return evictedIdle + evictedCapacity;
+    }
+
+    private static int retireAll(Map<String, MemoryBucket> buckets,
+                                 List<Map.Entry<String, MemoryBucket>> victims,
+                                 Predicate<MemoryBucket> stillEvictable,
+                                 int max) {
+        int retired = 0;
+        for (Map.Entry<String, MemoryBucket> e : victims) {
+            if (retired >= max) break;
+            MemoryBucket b = e.getValue();
+            synchronized (b) {
+                // re-check under the bucket lock: a request may have touched it since the scan
+                if (b.retired || !stillEvictable.test(b)) continue;
+                b.retired = true;
+                buckets.remove(e.getKey(), b);
+                retired++;
+            }
+        }
+        return retired;
+    }
+}
@@ -3,19 +3,35 @@ package com.myorg.lsf.quota.impl.memory;
 import com.myorg.lsf.quota.api.*;
 import com.myorg.lsf.quota.config.LsfQuotaProperties;
 import com.myorg.lsf.quota.obs.QuotaMetrics;
-import lombok.RequiredArgsConstructor;
 
 import java.time.Clock;
 import java.time.Duration;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
 
-@RequiredArgsConstructor
-public class MemoryQuotaService implements QuotaService {
+/**
+ * Simplest in-memory backend: every key shares one monitor.
+ * Use {@link ConcurrentMemoryQuotaService} when unrelated keys must scale across cores.
+ */
+public class MemoryQuotaService implements SweepableQuotaService {
     private final LsfQuotaProperties props;
     private final QuotaMetrics metrics;
     private final Clock clock;
-    private final Map<String, Bucket> buckets = new HashMap<>();
+    private final Supplier<MemoryBucket> newBucket;
+    private final Map<String, MemoryBucket> buckets = new HashMap<>();
+    private final MemoryRateLimiter rateLimiter;
+
+    public MemoryQuotaService(LsfQuotaProperties props, QuotaMetrics metrics, Clock clock) {
+        this.props = props;
+        this.metrics = metrics;
+        this.clock = clock;
+        this.newBucket = MemoryBucket.factory(props.getMemory().getBucketLayout());
+        this.rateLimiter = new MemoryRateLimiter(metrics);
+        if (metrics != null) metrics.registerBucketGauge(this::bucketCount);
+    }
+
     //Vì class này dùng chung một biến Map<String, Bucket> buckets cho mọi luồng (thread) trong Spring Boot
     //synchronized biến hàm thành Khối nguyên tử (Atomic):
     // Chỉ có 1 luồng được chạy qua hàm này tại một thời điểm.
@@ -23,165 +39,81 @@ public class MemoryQuotaService implements QuotaService {
     public synchronized QuotaResult reserve(QuotaRequest req){
         long now = clock.millis();
         //lấy ra buket chứa tt tồn kho đang được req(quotaKey), nếu chưa có -> tạo cái mới
-        Bucket b = buckets.computeIfAbsent(req.quotaKey(), k -> new Bucket());
-        b.purgeExpired(now);
-
-        if(b.confirmed.containsKey(req.requestId())){
-            if(metrics != null) metrics.incReserveDuplicate();
-            return QuotaResult.builder()
-                    .decision(QuotaDecision.DUPLICATE)
-                    .state(QuotaState.CONFIRMED)
-                    //Trả về số lượng hàng hóa hiện tại đang bị khóa/sử dụng trong kho
-                    //=> giúp service khác khi gọi nó biết số lượng hiện tại của kho, hoặc hiển thị
-                    .used(b.used)
-                    .limit(req.limit())
-                    // trả về 0 như "hết hạn" giao dịch không có quyền giữ kho
-                    .holdUntilEpochMs(0)
-                    .build();
-        }
-        Reservation existing = b.reserved.get(req.requestId());
-        if(existing !=  null) {
-            if(metrics != null) metrics.incReserveDuplicate();
-            return QuotaResult.builder()
-                    .decision(QuotaDecision.DUPLICATE)
-                    .state(QuotaState.RESERVED)
-                    .used(b.used)
-                    // limit do Client(service khác có thể là OrderService gửi)
-                    .limit(req.limit())
-                    .holdUntilEpochMs(existing.expiresAtMs)
-                    .build();
-        }
-        int amount = Math.max(1, req.amount());
-        int limit = req.limit();
-        if(b.used + amount  > limit){
-            if(metrics != null) metrics.incReserveRejected();
-            return QuotaResult.builder()
-                    .decision(QuotaDecision.REJECTED)
-                    .state(null)
-                    .used(b.used)
-                    .limit(limit)
-                    .holdUntilEpochMs(0)
-                    .build();
-        }
-
-        Duration hold = (req.hold() != null) ? req.hold() : Duration.ofSeconds(props.getDefaultHoldSeconds());
-        long exp = now + Math.max(1, hold.toMillis());
-        b.used += amount;
-        b.reserved.put(req.requestId(), new Reservation(amount, exp));
-        if (metrics != null) metrics.incReserveAccepted();
-        return QuotaResult.builder()
-                .decision(QuotaDecision.ACCEPTED)
-                .state(QuotaState.RESERVED)
-                .used(b.used)
-                .limit(limit)
-                .holdUntilEpochMs(exp)
-                .build();
+        MemoryBucket b = buckets.computeIfAbsent(req.quotaKey(), k -> newBucket.get());
+        return b.reserve(req, now, props, metrics);
     }
 
     @Override
     public synchronized QuotaResult confirm(String quotaKey, String requestId) {
         long now = clock.millis();
-        Bucket b = buckets.computeIfAbsent(quotaKey, k -> new Bucket());
-        b.purgeExpired(now);
-
-        if (b.confirmed.containsKey(requestId)) {
-            if (metrics != null) metrics.incConfirmOk();
-            return QuotaResult.builder()
-                    .decision(QuotaDecision.DUPLICATE)
-                    .state(QuotaState.CONFIRMED)
-                    .used(b.used)
-                    .limit(0)
-                    .holdUntilEpochMs(0)
-                    .build();
-        }
-        // Hàm remove(requestId) sẽ lôi cái vé giữ chỗ từ trong danh sách chờ (reserved) ra ngoài
-        Reservation r = b.reserved.remove(requestId);
-        if (r == null) {
-            if (metrics != null) metrics.incConfirmNotFound();
-            return QuotaResult.builder()
-                    .decision(QuotaDecision.NOT_FOUND)
-                    .state(null)
-                    .used(b.used)
-                    .limit(0)
-                    .holdUntilEpochMs(0)
-                    .build();
-        }
-
-        b.confirmed.put(requestId, r.amount);
-        if (metrics != null) metrics.incConfirmOk();
-        return QuotaResult.builder()
-                .decision(QuotaDecision.ACCEPTED)
-                .state(QuotaState.CONFIRMED)
-                .used(b.used)
-                .limit(0)
-                .holdUntilEpochMs(0)
-                .build();
+        // key chưa từng reserve -> NOT_FOUND, không tạo bucket rỗng nằm mãi trong map
+        MemoryBucket b = buckets.get(quotaKey);
+        if (b == null) b = newBucket.get();
+        return b.confirm(requestId, now, metrics);
     }
 
     @Override
     public synchronized QuotaResult release(String quotaKey, String requestId) {
         long now = clock.millis();
-        Bucket b = buckets.computeIfAbsent(quotaKey, k -> new Bucket());
-        b.purgeExpired(now);
+        MemoryBucket b = buckets.get(quotaKey);
+        if (b == null) b = newBucket.get();
+        return b.release(requestId, now, props, metrics);
+    }
 
-        //Xả kho đang giữ chỗ (Release Pending)
-        Reservation r = b.reserved.remove(requestId);
-        if (r != null) {
-            b.used -= r.amount;
-            if (metrics != null) metrics.incReleaseOk();
-            return QuotaResult.builder()
-                    .decision(QuotaDecision.ACCEPTED)
-                    .state(null)
-                    .used(b.used)
-                    .limit(0)
-                    .holdUntilEpochMs(0)
-                    .build();
-        }
+    @Override
+    public synchronized List<QuotaResult> reserveAll(List<QuotaRequest> requests, QuotaBatchMode mode) {
+        Map<String, MemoryBucket> batch = batch(requests.stream().map(QuotaRequest::quotaKey).toList(), true);
+        return MemoryBatch.reserveAll(requests, batch, mode, clock.millis(), props, metrics);
+    }
 
-        //Nhả hàng đã chốt đơn (Release Confirmed)
-        Integer confirmedAmt = b.confirmed.get(requestId);
-        if (confirmedAmt != null && props.isAllowReleaseConfirmed()) {
-            b.confirmed.remove(requestId);
-            b.used -= confirmedAmt;
-            if (metrics != null) metrics.incReleaseOk();
-            return QuotaResult.builder()
-                    .decision(QuotaDecision.ACCEPTED)
-                    .state(null).used(b.used)
-                    .limit(0)
-                    .holdUntilEpochMs(0)
-                    .build();
-        }
+    @Override
+    public synchronized QuotaGroupResult confirmGroup(List<String> quotaKeys, String requestId) {
+        List<QuotaResult> results = MemoryBatch.confirmAll(quotaKeys, requestId, batch(quotaKeys, false), clock.millis(), metrics);
+        return QuotaGroupResult.ofConfirm(quotaKeys, requestId, results);
+    }
+
+    @Override
+    public synchronized QuotaGroupResult releaseGroup(List<String> quotaKeys, String requestId) {
+        List<QuotaResult> results = MemoryBatch.releaseAll(quotaKeys, requestId, batch(quotaKeys, false), clock.millis(), props, metrics);
+        return QuotaGroupResult.ofRelease(quotaKeys, requestId, results);
+    }
+
+    // rate limit có map + lock riêng theo key, không cần monitor của service
+    @Override
+    public RateLimitResult tryAcquire(RateLimitRequest req) {
+        return rateLimiter.tryAcquire(req, clock.millis());
+    }
 
-        if (metrics != null) metrics.incReleaseNotFound();
-        return QuotaResult.builder()
-                .decision(QuotaDecision.NOT_FOUND)
-                .state(null).used(b.used)
-                .limit(0)
-                .holdUntilEpochMs(0)
-                .build();
+    @Override
+    public synchronized int purgeExpired() {
+        long now = clock.millis();
+        int purged = 0;
+        for (MemoryBucket b : buckets.values()) {
+            purged += b.purgeExpired(now, metrics);
+        }
+        return purged;
     }
 
-    private static class Reservation {
-        final int amount;
-        final long expiresAtMs;
-        Reservation(int amount, long expiresAtMs) { this.amount = amount; this.expiresAtMs = expiresAtMs; }
+    @Override
+    public synchronized int evictIdle() {
+        long now = clock.millis();
+        long keepAliveMs = Duration.ofSeconds(props.getKeepAliveSeconds()).toMillis();
+        rateLimiter.evictIdle(now);
+        return MemoryBucketEvictor.evict(buckets, now, keepAliveMs, props.getMemory().getMaxBuckets(), metrics);
     }
 
-    private static class Bucket {
-        //tổng của tất cả những sp đang bị giữ chỗ + những sp đã bán thành công
-        int used = 0;
-        final Map<String, Reservation> reserved = new HashMap<>();
-        final Map<String, Integer> confirmed = new HashMap<>();
+    @Override
+    public synchronized int bucketCount() {
+        return buckets.size();
+    }
 
-        void purgeExpired(long now) {
-            var it = reserved.entrySet().iterator();
-            while (it.hasNext()) {
-                var e = it.next();
-                if (e.getValue().expiresAtMs <= now) {
-                    used -= e.getValue().amount;
-                    it.remove();
-                }
-            }
+    private Map<String, MemoryBucket> batch(List<String> quotaKeys, boolean create) {
+        Map<String, MemoryBucket> batch = new HashMap<>();
+        for (String key : quotaKeys) {
+            MemoryBucket b = buckets.get(key);
+            if (b == null) b = create ? buckets.computeIfAbsent(key, k -> newBucket.get()) : newBucket.get();
+            batch.put(key, b);
         }
+        return batch;
     }
 }
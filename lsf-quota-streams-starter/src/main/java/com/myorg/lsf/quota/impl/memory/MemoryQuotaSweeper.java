@@ -0,0 +1,43 @@
+package com.myorg.lsf.quota.impl.memory;
+
+import com.myorg.lsf.quota.api.QuotaService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+
+/**
+ * Background sweeper for the in-memory backends: reclaims expired holds on idle
+ * keys so {@code used} does not stay inflated until the next request arrives,
+ * and evicts idle buckets so heap use does not grow with key cardinality.
+ * No-op when the active {@link QuotaService} is not an in-memory store.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class MemoryQuotaSweeper {
+
+    private final QuotaService quotaService;
+
+    @Scheduled(
+            initialDelayString = "${lsf.quota.memory.sweep-interval-ms:1000}",
+            fixedDelayString = "${lsf.quota.memory.sweep-interval-ms:1000}"
+    )
+    public void scheduledSweep() {
+        runOnce();
+    }
+
+    public int runOnce() {
+        if (!(quotaService instanceof SweepableQuotaService store)) return 0;
+        try {
+            int purged = store.purgeExpired();
+            int evicted = store.evictIdle();
+            if (purged > 0 || evicted > 0) {
+                log.debug("quota.sweep purgedExpired={} evictedBuckets={} buckets={}", purged, evicted, store.bucketCount());
+            }
+            return purged;
+        } catch (RuntimeException e) {
+            // never let one failed run cancel the schedule
+            log.warn("quota.sweep failed: {}", e.toString());
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.myorg.lsf.quota.impl.memory;
+
+import com.myorg.lsf.quota.api.QuotaDecision;
+import com.myorg.lsf.quota.api.RateLimitAlgorithm;
+import com.myorg.lsf.quota.api.RateLimitRequest;
+import com.myorg.lsf.quota.api.RateLimitResult;
+import com.myorg.lsf.quota.obs.QuotaMetrics;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Rate-limit state of the in-memory backends, separate from the quota buckets.
+ *
+ * Every check runs inside {@link ConcurrentMap#compute} of its own key, so keys do not
+ * contend with each other (nor with the quota buckets). Same arithmetic as the Redis scripts
+ * in {@code RateLimitLua}: a key behaves the same whichever backend answers.
+ */
+final class MemoryRateLimiter {
+    private final ConcurrentMap<String, State> states = new ConcurrentHashMap<>();
+    private final QuotaMetrics metrics; // nullable
+
+    MemoryRateLimiter(QuotaMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    RateLimitResult tryAcquire(RateLimitRequest req, long now) {
+        RateLimitResult[] out = new RateLimitResult[1];
+        states.compute(req.quotaKey(), (key, s) -> {
+            // policy đổi thuật toán: bắt đầu lại từ trạng thái rỗng
+            State st = (s != null && s.algorithm == req.algorithm()) ? s : new State(req.algorithm());
+            out[0] = (st.algorithm == RateLimitAlgorithm.TOKEN_BUCKET) ? st.takeTokens(req, now) : st.countInWindow(req, now);
+            return st;
+        });
+        if (metrics != null) {
+            if (out[0].allowed()) metrics.incRateAllowed();
+            else metrics.incRateLimited();
+        }
+        return out[0];
+    }
+
+    /** Drops keys that are back to their initial state (bucket full / both windows over). */
+    int evictIdle(long now) {
+        int[] evicted = {0};
+        for (String key : states.keySet()) {
+            states.computeIfPresent(key, (k, s) -> {
+                if (!s.isIdle(now)) return s;
+                evicted[0]++;
+                return null;
+            });
+        }
+        return evicted[0];
+    }
+
+    int size() {
+        return states.size();
+    }
+
+    private static final class State {
+        final RateLimitAlgorithm algorithm;
+        // TOKEN_BUCKET: tokens / lastMs; SLIDING_WINDOW: count của window hiện tại + trước / chỉ số window
+        double current;
+        double previous;
+        long mark = -1;
+        // của lần gọi gần nhất, để biết khi nào trạng thái về lại ban đầu
+        long windowMs;
+        int limit;
+        int capacity;
+
+        State(RateLimitAlgorithm algorithm) {
+            this.algorithm = algorithm;
+        }
+
+        RateLimitResult takeTokens(RateLimitRequest req, long now) {
+            remember(req);
+            double rate = (double) limit / windowMs;
+            if (mark < 0) {
+                current = capacity;
+                mark = now;
+            }
+            if (now > mark) {
+                current = Math.min(capacity, current + (now - mark) * rate);
+                mark = now;
+            }
+            int permits = req.permits();
+            if (permits > capacity) return rejected(current, -1);
+            if (current >= permits) {
+                current -= permits;
+                return accepted(current);
+            }
+            return rejected(current, (long) Math.ceil((permits - current) / rate));
+        }
+
+        RateLimitResult countInWindow(RateLimitRequest req, long now) {
+            remember(req);
+            long w = windowMs;
+            long idx = now / w;
+            if (mark < 0 || idx >= mark + 2) {
+                previous = 0;
+                current = 0;
+                mark = idx;
+            } else if (idx == mark + 1) {
+                previous = current;
+                current = 0;
+                mark = idx;
+            }
+            long elapsed = now - idx * w;
+            double estimated = previous * (w - elapsed) / w + current;
+            int permits = req.permits();
+            if (permits > limit) return rejected(limit - estimated, -1);
+            if (estimated + permits <= limit) {
+                current += permits;
+                return accepted(limit - estimated - permits);
+            }
+            long retry;
+            if (current + permits <= limit) {
+                // đợi phần của window trước giảm đủ trong window này
+                retry = (long) Math.ceil(w * (1 - (limit - current - permits) / previous)) - elapsed;
+            } else {
+                // window này đã đầy: sang window sau, current thành previous
+                retry = (w - elapsed) + (long) Math.ceil(w * (1 - (limit - permits) / current));
+            }
+            return rejected(limit - estimated, Math.max(1, retry));
+        }
+
+        boolean isIdle(long now) {
+            if (mark < 0) return true;
+            if (algorithm == RateLimitAlgorithm.TOKEN_BUCKET) {
+                return current + (double) (now - mark) * limit / windowMs >= capacity;
+            }
+            return now / windowMs >= mark + 2;
+        }
+
+        private void remember(RateLimitRequest req) {
+            windowMs = Math.max(1, req.window().toMillis());
+            limit = req.limit();
+            capacity = req.capacity();
+        }
+
+        private RateLimitResult accepted(double remaining) {
+            return result(QuotaDecision.ACCEPTED, remaining, 0);
+        }
+
+        private RateLimitResult rejected(double remaining, long retryAfterMs) {
+            return result(QuotaDecision.REJECTED, remaining, retryAfterMs);
+        }
+
+        private RateLimitResult result(QuotaDecision decision, double remaining, long retryAfterMs) {
+            return RateLimitResult.builder()
+                    .decision(decision)
+                    .remaining((int) Math.max(0, Math.floor(remaining)))
+                    .limit(capacity)
+                    .retryAfterMs(retryAfterMs)
+                    .build();
+        }
+    }
+}
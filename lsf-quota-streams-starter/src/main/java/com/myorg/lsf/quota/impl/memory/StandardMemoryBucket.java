@@ -0,0 +1,98 @@
+package com.myorg.lsf.quota.impl.memory;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Default layout: {@code HashMap} of reservation objects, boxed confirmed amounts
+ * and a heap of reservations ordered by expiry.
+ */
+final class StandardMemoryBucket extends MemoryBucket {
+
+    final Map<String, Reservation> reserved = new HashMap<>();
+    final Map<String, Integer> confirmed = new HashMap<>();
+    // expiry index: min-heap theo expiresAtMs, purge chỉ chạm vào các hold đã hết hạn.
+    // confirm/release không xóa khỏi heap (O(n)); entry cũ bị bỏ qua khi nổi lên đầu heap.
+    final PriorityQueue<Reservation> expiry = new PriorityQueue<>(Comparator.comparingLong(r -> r.expiresAtMs));
+
+    @Override
+    long holdUntil(String requestId) {
+        Reservation r = reserved.get(requestId);
+        return (r != null) ? r.expiresAtMs : NONE;
+    }
+
+    @Override
+    void addHold(String requestId, int amount, long expiresAtMs) {
+        Reservation r = new Reservation(requestId, amount, expiresAtMs);
+        reserved.put(requestId, r);
+        expiry.add(r);
+    }
+
+    @Override
+    int removeHold(String requestId) {
+        Reservation r = reserved.remove(requestId);
+        if (r == null) return NONE;
+        compactExpiryIndex();
+        return r.amount;
+    }
+
+    @Override
+    boolean hasHolds() {
+        return !reserved.isEmpty();
+    }
+
+    @Override
+    int confirmedAmount(String requestId) {
+        Integer amount = confirmed.get(requestId);
+        return (amount != null) ? amount : NONE;
+    }
+
+    @Override
+    void addConfirmed(String requestId, int amount) {
+        confirmed.put(requestId, amount);
+    }
+
+    @Override
+    void removeConfirmed(String requestId) {
+        confirmed.remove(requestId);
+    }
+
+    @Override
+    int expireHolds(long now) {
+        int purged = 0;
+        Reservation head;
+        while ((head = expiry.peek()) != null && head.expiresAtMs <= now) {
+            expiry.poll();
+            // remove(key, value) so a stale entry (confirmed / released / re-reserved) never touches the live hold
+            if (reserved.remove(head.requestId, head)) {
+                used -= head.amount;
+                purged++;
+            }
+        }
+        return purged;
+    }
+
+    /**
+     * Stale entries stay in the heap until their original expiry; rebuild it when
+     * they dominate so a confirm-heavy key with long holds does not keep garbage around.
+     */
+    private void compactExpiryIndex() {
+        if (expiry.size() > 2 * reserved.size() + 64) {
+            expiry.clear();
+            expiry.addAll(reserved.values());
+        }
+    }
+
+    static final class Reservation {
+        final String requestId;
+        final int amount;
+        final long expiresAtMs;
+        Reservation(String requestId, int amount, long expiresAtMs) {
+            this.requestId = requestId;
+            this.amount = amount;
+            this.expiresAtMs = expiresAtMs;
+        }
+    }
+}
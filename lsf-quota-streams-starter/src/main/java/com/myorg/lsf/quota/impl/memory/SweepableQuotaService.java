@@ -0,0 +1,28 @@
+package com.myorg.lsf.quota.impl.memory;
+
+import com.myorg.lsf.quota.api.QuotaService;
+
+/**
+ * In-memory backend whose expired holds and idle buckets can be reclaimed
+ * without waiting for the next request on the same key. Driven by {@link MemoryQuotaSweeper}.
+ */
+public interface SweepableQuotaService extends QuotaService {
+
+    /**
+     * Reclaims expired holds on every bucket.
+     *
+     * @return number of holds freed
+     */
+    int purgeExpired();
+
+    /**
+     * Drops buckets idle for longer than {@code lsf.quota.keep-alive-seconds} with no
+     * live holds, then trims empty buckets down to {@code lsf.quota.memory.max-buckets}.
+     * Rate-limit keys back at their initial state (bucket refilled) are dropped too, uncounted.
+     *
+     * @return number of buckets evicted
+     */
+    int evictIdle();
+
+    int bucketCount();
+}
@@ -0,0 +1,395 @@
+package com.myorg.lsf.quota.impl.redis;
+
+/**
+ * Lua for {@code lsf.quota.redis.layout=hash}: one hash per quota key holding the
+ * counter ({@code u}), holds ({@code r:<requestId>}) and confirmed amounts
+ * ({@code c:<requestId>}), plus the {@code :z} expiry zset shared with the split layout.
+ *
+ * KEYS per quota key (stride 5): hash, zset, then the three split-layout keys
+ * ({@code :c}, {@code :res}, {@code :conf}) so a key still in the old layout can be
+ * imported atomically on first touch. ARGV matches {@link SplitLayoutLua} with one
+ * extra trailing argument: migrateLegacy (0|1).
+ *
+ * TTL is only refreshed when less than half of the keep-alive is left, instead of
+ * four PEXPIREs on every call.
+ */
+final class HashLayoutLua {
+
+    private HashLayoutLua() {
+    }
+
+    static final String LIB_LUA = """
+            local function purge(h, z, now, cap)
+              local expired = redis.call('ZRANGEBYSCORE', z, '-inf', now, 'LIMIT', 0, cap)
+              if #expired == 0 then return 0 end
+              local freed = 0
+              for i=1,#expired do
+                local f = 'r:' .. expired[i]
+                local a = redis.call('HGET', h, f)
+                if a then
+                  redis.call('HDEL', h, f)
+                  freed = freed + tonumber(a)
+                end
+              end
+              redis.call('ZREM', z, unpack(expired))
+              if freed > 0 then
+                if redis.call('HINCRBY', h, 'u', -freed) < 0 then redis.call('HSET', h, 'u', 0) end
+              end
+              return #expired
+            end
+
+            -- lazy import of a key written by the split layout; the :z zset is shared as is
+            local function migrate(h, z, lc, lres, lconf, keep)
+              if redis.call('EXISTS', h) == 1 or redis.call('EXISTS', lc) == 0 then return end
+              redis.call('HSET', h, 'u', redis.call('GET', lc) or '0')
+              local prefixes = {'r:', 'c:'}
+              local sources = {lres, lconf}
+              for s=1,2 do
+                local all = redis.call('HGETALL', sources[s])
+                -- HSET in chunks: unpack() of a huge confirmed hash would overflow the Lua stack
+                local args = {}
+                for i=1,#all,2 do
+                  args[#args+1] = prefixes[s] .. all[i]
+                  args[#args+1] = all[i+1]
+                  if #args >= 1000 then
+                    redis.call('HSET', h, unpack(args))
+                    args = {}
+                  end
+                end
+                if #args > 0 then redis.call('HSET', h, unpack(args)) end
+              end
+              redis.call('DEL', lc, lres, lconf)
+              redis.call('PEXPIRE', h, keep)
+              redis.call('PEXPIRE', z, keep)
+            end
+
+            -- refresh TTL only when less than half of keep-alive is left
+            local function touch(h, z, keep)
+              local ttl = redis.call('PTTL', h)
+              if ttl == -2 then return end
+              if ttl == -1 or ttl < keep / 2 then
+                redis.call('PEXPIRE', h, keep)
+                redis.call('PEXPIRE', z, keep)
+              end
+            end
+
+            -- a zset created by this ZADD has no TTL yet
+            local function addHold(h, z, req, amt, holdUntil, keep)
+              redis.call('HSET', h, 'r:' .. req, amt)
+              redis.call('ZADD', z, holdUntil, req)
+              if redis.call('ZCARD', z) == 1 then redis.call('PEXPIRE', z, keep) end
+              return redis.call('HINCRBY', h, 'u', amt)
+            end
+
+            local migrateLegacy = tonumber(ARGV[#ARGV])
+
+            """;
+
+    // KEYS: hash, zset, legacy c/res/conf, activeIndex
+    // ARGV: nowMs, requestId, amount, limit, holdMs, keepAliveMs, purgeCap, quotaKey ('' = no index), migrateLegacy
+    static final String RESERVE_LUA = LIB_LUA + """
+            local h, z = KEYS[1], KEYS[2]
+            local idx  = KEYS[6]
+
+            local now  = tonumber(ARGV[1])
+            local req  = ARGV[2]
+            local amt  = tonumber(ARGV[3])
+            local lim  = tonumber(ARGV[4])
+            local hold = tonumber(ARGV[5])
+            local keep = tonumber(ARGV[6])
+            local cap  = tonumber(ARGV[7])
+            local qkey = ARGV[8]
+
+            if migrateLegacy == 1 then migrate(h, z, KEYS[3], KEYS[4], KEYS[5], keep) end
+            purge(h, z, now, cap)
+
+            local v = redis.call('HMGET', h, 'u', 'r:' .. req, 'c:' .. req)
+            local cur = tonumber(v[1] or '0')
+            if v[2] then
+              touch(h, z, keep)
+              return {2, cur, 1, tonumber(redis.call('ZSCORE', z, req) or '0')}
+            end
+            if v[3] then
+              touch(h, z, keep)
+              return {2, cur, 2, 0}
+            end
+            if (cur + amt) > lim then
+              touch(h, z, keep)
+              return {0, cur, 0, 0}
+            end
+
+            local holdUntil = now + hold
+            cur = addHold(h, z, req, amt, holdUntil, keep)
+            if qkey ~= '' then
+              redis.call('ZADD', idx, 'LT', holdUntil, qkey)
+            end
+            touch(h, z, keep)
+            return {1, cur, 1, holdUntil}
+            """;
+
+    // KEYS: (hash, zset, legacy c/res/conf) x distinct quota keys, then activeIndex
+    // ARGV: nowMs, keepAliveMs, allOrNothing(0|1), n, purgeCap, useIndex(0|1),
+    //       then n x (group, requestId, amount, limit, holdMs), then one quotaKey per group, migrateLegacy
+    static final String RESERVE_ALL_LUA = LIB_LUA + """
+            local now  = tonumber(ARGV[1])
+            local keep = tonumber(ARGV[2])
+            local allOrNothing = tonumber(ARGV[3])
+            local n    = tonumber(ARGV[4])
+            local cap  = tonumber(ARGV[5])
+            local useIndex = tonumber(ARGV[6])
+            local groups = (#KEYS - 1) / 5
+            local idx  = KEYS[#KEYS]
+
+            for g=0,groups-1 do
+              local b = g*5
+              if migrateLegacy == 1 then migrate(KEYS[b+1], KEYS[b+2], KEYS[b+3], KEYS[b+4], KEYS[b+5], keep) end
+              purge(KEYS[b+1], KEYS[b+2], now, cap)
+            end
+
+            local items = {}
+            for i=1,n do
+              local b = 6 + (i-1)*5
+              items[i] = {tonumber(ARGV[b+1]), ARGV[b+2], tonumber(ARGV[b+3]), tonumber(ARGV[b+4]), tonumber(ARGV[b+5])}
+            end
+            local names = 6 + n*5
+
+            local fits = true
+            if allOrNothing == 1 then
+              local pending = {}
+              local seen = {}
+              for i=1,n do
+                local g, req, amt, lim = items[i][1], items[i][2], items[i][3], items[i][4]
+                local sk = g .. ':' .. req
+                if not seen[sk] then
+                  seen[sk] = true
+                  local v = redis.call('HMGET', KEYS[g*5+1], 'u', 'r:' .. req, 'c:' .. req)
+                  if not v[2] and not v[3] then
+                    local p = (pending[g] or 0) + amt
+                    pending[g] = p
+                    if tonumber(v[1] or '0') + p > lim then
+                      fits = false
+                      break
+                    end
+                  end
+                end
+              end
+            end
+
+            local out = {}
+            for i=1,n do
+              local g, req, amt, lim, hold = items[i][1], items[i][2], items[i][3], items[i][4], items[i][5]
+              local h, z = KEYS[g*5+1], KEYS[g*5+2]
+              local v = redis.call('HMGET', h, 'u', 'r:' .. req, 'c:' .. req)
+              local cur = tonumber(v[1] or '0')
+              local r
+              if v[2] then
+                r = {2, cur, 1, tonumber(redis.call('ZSCORE', z, req) or '0')}
+              elseif v[3] then
+                r = {2, cur, 2, 0}
+              elseif (not fits) or (cur + amt) > lim then
+                r = {0, cur, 0, 0}
+              else
+                local holdUntil = now + hold
+                cur = addHold(h, z, req, amt, holdUntil, keep)
+                if useIndex == 1 then
+                  redis.call('ZADD', idx, 'LT', holdUntil, ARGV[names + g + 1])
+                end
+                r = {1, cur, 1, holdUntil}
+              end
+              for j=1,4 do out[#out+1] = r[j] end
+            end
+
+            for g=0,groups-1 do
+              touch(KEYS[g*5+1], KEYS[g*5+2], keep)
+            end
+            return out
+            """;
+
+    // KEYS: hash, zset, legacy c/res/conf
+    // ARGV: nowMs, requestId, keepAliveMs, purgeCap, migrateLegacy
+    static final String CONFIRM_LUA = LIB_LUA + """
+            local h, z = KEYS[1], KEYS[2]
+            local now  = tonumber(ARGV[1])
+            local req  = ARGV[2]
+            local keep = tonumber(ARGV[3])
+            local cap  = tonumber(ARGV[4])
+
+            if migrateLegacy == 1 then migrate(h, z, KEYS[3], KEYS[4], KEYS[5], keep) end
+            purge(h, z, now, cap)
+
+            local v = redis.call('HMGET', h, 'u', 'r:' .. req, 'c:' .. req)
+            local cur = tonumber(v[1] or '0')
+            if v[3] then
+              touch(h, z, keep)
+              return {2, cur}
+            end
+            if not v[2] then
+              touch(h, z, keep)
+              return {0, cur}
+            end
+
+            redis.call('HDEL', h, 'r:' .. req)
+            redis.call('ZREM', z, req)
+            redis.call('HSET', h, 'c:' .. req, v[2])
+            touch(h, z, keep)
+            return {1, cur}
+            """;
+
+    // KEYS: hash, zset, legacy c/res/conf
+    // ARGV: nowMs, requestId, allowReleaseConfirmed(0|1), keepAliveMs, purgeCap, migrateLegacy
+    static final String RELEASE_LUA = LIB_LUA + """
+            local h, z = KEYS[1], KEYS[2]
+            local now  = tonumber(ARGV[1])
+            local req  = ARGV[2]
+            local allowConf = tonumber(ARGV[3])
+            local keep = tonumber(ARGV[4])
+            local cap  = tonumber(ARGV[5])
+
+            if migrateLegacy == 1 then migrate(h, z, KEYS[3], KEYS[4], KEYS[5], keep) end
+            purge(h, z, now, cap)
+
+            local v = redis.call('HMGET', h, 'u', 'r:' .. req, 'c:' .. req)
+            local cur = tonumber(v[1] or '0')
+            local freed = nil
+            if v[2] then
+              redis.call('HDEL', h, 'r:' .. req)
+              redis.call('ZREM', z, req)
+              freed = tonumber(v[2])
+            elseif allowConf == 1 and v[3] then
+              redis.call('HDEL', h, 'c:' .. req)
+              freed = tonumber(v[3])
+            end
+            if freed then
+              cur = redis.call('HINCRBY', h, 'u', -freed)
+              if cur < 0 then
+                redis.call('HSET', h, 'u', 0)
+                cur = 0
+              end
+              touch(h, z, keep)
+              return {1, cur}
+            end
+            touch(h, z, keep)
+            return {0, cur}
+            """;
+
+    // KEYS: (hash, zset, legacy c/res/conf) x group keys
+    // ARGV: nowMs, requestId, keepAliveMs, purgeCap, migrateLegacy
+    // Return: per key [code, used, holdUntil], flattened; nothing is confirmed unless every key holds requestId
+    static final String CONFIRM_GROUP_LUA = LIB_LUA + """
+            local now  = tonumber(ARGV[1])
+            local req  = ARGV[2]
+            local keep = tonumber(ARGV[3])
+            local cap  = tonumber(ARGV[4])
+            local groups = #KEYS / 5
+
+            local state = {}
+            local complete = true
+            for g=0,groups-1 do
+              local b = g*5
+              if migrateLegacy == 1 then migrate(KEYS[b+1], KEYS[b+2], KEYS[b+3], KEYS[b+4], KEYS[b+5], keep) end
+              purge(KEYS[b+1], KEYS[b+2], now, cap)
+              local v = redis.call('HMGET', KEYS[b+1], 'u', 'r:' .. req, 'c:' .. req)
+              state[g] = v
+              if not v[2] and not v[3] then complete = false end
+            end
+
+            local out = {}
+            for g=0,groups-1 do
+              local h, z = KEYS[g*5+1], KEYS[g*5+2]
+              local v = state[g]
+              local code = 0
+              local holdUntil = 0
+              if v[3] then
+                code = 2
+              elseif v[2] and complete then
+                redis.call('HDEL', h, 'r:' .. req)
+                redis.call('ZREM', z, req)
+                redis.call('HSET', h, 'c:' .. req, v[2])
+                code = 1
+              elseif v[2] then
+                code = 3
+                holdUntil = tonumber(redis.call('ZSCORE', z, req) or '0')
+              end
+              out[#out+1] = code
+              out[#out+1] = tonumber(v[1] or '0')
+              out[#out+1] = holdUntil
+              touch(h, z, keep)
+            end
+            return out
+            """;
+
+    // KEYS: (hash, zset, legacy c/res/conf) x group keys
+    // ARGV: nowMs, requestId, allowReleaseConfirmed(0|1), keepAliveMs, purgeCap, migrateLegacy
+    // Return: per key [code, used], flattened
+    static final String RELEASE_GROUP_LUA = LIB_LUA + """
+            local now  = tonumber(ARGV[1])
+            local req  = ARGV[2]
+            local allowConf = tonumber(ARGV[3])
+            local keep = tonumber(ARGV[4])
+            local cap  = tonumber(ARGV[5])
+            local groups = #KEYS / 5
+
+            local out = {}
+            for g=0,groups-1 do
+              local b = g*5
+              local h, z = KEYS[b+1], KEYS[b+2]
+              if migrateLegacy == 1 then migrate(h, z, KEYS[b+3], KEYS[b+4], KEYS[b+5], keep) end
+              purge(h, z, now, cap)
+              local v = redis.call('HMGET', h, 'u', 'r:' .. req, 'c:' .. req)
+              local cur = tonumber(v[1] or '0')
+              local code = 0
+              local freed = nil
+              if v[2] then
+                redis.call('HDEL', h, 'r:' .. req)
+                redis.call('ZREM', z, req)
+                freed = tonumber(v[2])
+              elseif allowConf == 1 and v[3] then
+                redis.call('HDEL', h, 'c:' .. req)
+                freed = tonumber(v[3])
+              end
+              if freed then
+                cur = redis.call('HINCRBY', h, 'u', -freed)
+                if cur < 0 then
+                  redis.call('HSET', h, 'u', 0)
+                  cur = 0
+                end
+                code = 1
+              end
+              out[#out+1] = code
+              out[#out+1] = cur
+              touch(h, z, keep)
+            end
+            return out
+            """;
+
+    // KEYS: hash, zset, legacy c/res/conf, activeIndex
+    // ARGV: nowMs, purgeCap, quotaKey, migrateLegacy
+    // Return: [holds purged, 1 if more expired holds remain else 0]
+    static final String SWEEP_LUA = LIB_LUA + """
+            local h, z = KEYS[1], KEYS[2]
+            local idx  = KEYS[6]
+            local now  = tonumber(ARGV[1])
+            local cap  = tonumber(ARGV[2])
+            local qkey = ARGV[3]
+
+            -- key chưa migrate: purge trên hash rỗng sẽ bỏ mất hold khỏi :z, nên import trước,
+            -- giữ nguyên TTL còn lại của key cũ
+            if migrateLegacy == 1 then
+              local left = redis.call('PTTL', KEYS[3])
+              if left > 0 then migrate(h, z, KEYS[3], KEYS[4], KEYS[5], left) end
+            end
+            local purged = purge(h, z, now, cap)
+
+            local head = redis.call('ZRANGE', z, 0, 0, 'WITHSCORES')
+            if #head == 0 then
+              redis.call('ZREM', idx, qkey)
+              return {purged, 0}
+            end
+            local nextExp = tonumber(head[2])
+            redis.call('ZADD', idx, nextExp, qkey)
+            if nextExp <= now then
+              return {purged, 1}
+            end
+            return {purged, 0}
+            """;
+}
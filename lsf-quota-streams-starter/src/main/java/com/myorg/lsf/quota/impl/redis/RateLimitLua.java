@@ -0,0 +1,111 @@
+package com.myorg.lsf.quota.impl.redis;
+
+import com.myorg.lsf.redis.script.LsfRedisScript;
+
+import java.util.List;
+
+/**
+ * Rate-limit scripts: one hash per key, one EVALSHA per check, independent of the quota layout.
+ * Same arithmetic as {@code MemoryRateLimiter}.
+ *
+ * Both return {code, remaining, retryAfterMs}; code 1 allowed, 0 limited, retryAfterMs -1 when
+ * permits exceed the capacity. The key expires once it is back at its initial state, so
+ * an idle limiter costs no memory and needs no sweeper.
+ */
+@SuppressWarnings("rawtypes")
+final class RateLimitLua {
+
+    private RateLimitLua() {
+    }
+
+    // KEYS: <key>:tb (hash t = tokens, ts = lần nạp cuối)
+    // ARGV: nowMs, permits, limit, windowMs, capacity
+    static final LsfRedisScript<List> TOKEN_BUCKET = LsfRedisScript.of("lsf.quota.rate.token-bucket", """
+            local now  = tonumber(ARGV[1])
+            local n    = tonumber(ARGV[2])
+            local lim  = tonumber(ARGV[3])
+            local win  = tonumber(ARGV[4])
+            local cap  = tonumber(ARGV[5])
+            local rate = lim / win
+
+            local st = redis.call('HMGET', KEYS[1], 't', 'ts')
+            local tokens = tonumber(st[1])
+            local last = tonumber(st[2])
+            if tokens == nil or last == nil then
+              tokens = cap
+              last = now
+            end
+            if now > last then
+              tokens = math.min(cap, tokens + (now - last) * rate)
+              last = now
+            end
+
+            local code = 0
+            local retry = 0
+            if n > cap then
+              retry = -1
+            elseif tokens >= n then
+              tokens = tokens - n
+              code = 1
+            else
+              retry = math.ceil((n - tokens) / rate)
+            end
+            if code == 1 then
+              redis.call('HSET', KEYS[1], 't', tostring(tokens), 'ts', last)
+              -- đầy lại sau (cap - tokens) / rate ms: lúc đó key mất cũng như còn
+              redis.call('PEXPIRE', KEYS[1], math.ceil((cap - tokens) / rate) + 1000)
+            end
+            return {code, math.floor(tokens), retry}
+            """, List.class);
+
+    // KEYS: <key>:sw (hash w = chỉ số window, c = count window hiện tại, p = count window trước)
+    // ARGV: nowMs, permits, limit, windowMs
+    static final LsfRedisScript<List> SLIDING_WINDOW = LsfRedisScript.of("lsf.quota.rate.sliding-window", """
+            local now = tonumber(ARGV[1])
+            local n   = tonumber(ARGV[2])
+            local lim = tonumber(ARGV[3])
+            local w   = tonumber(ARGV[4])
+            local idx = math.floor(now / w)
+
+            local st = redis.call('HMGET', KEYS[1], 'w', 'c', 'p')
+            local mark = tonumber(st[1])
+            local cur = tonumber(st[2]) or 0
+            local prev = tonumber(st[3]) or 0
+            if mark == nil or idx >= mark + 2 then
+              prev = 0
+              cur = 0
+            elseif idx == mark + 1 then
+              prev = cur
+              cur = 0
+            end
+
+            local elapsed = now - idx * w
+            local est = prev * (w - elapsed) / w + cur
+            local code = 0
+            local retry = 0
+            local left = lim - est
+            if n > lim then
+              retry = -1
+            elseif est + n <= lim then
+              cur = cur + n
+              left = lim - est - n
+              code = 1
+            elseif cur + n <= lim then
+              retry = math.ceil(w * (1 - (lim - cur - n) / prev)) - elapsed
+            else
+              retry = (w - elapsed) + math.ceil(w * (1 - (lim - n) / cur))
+            end
+            if retry ~= -1 and retry < 1 and code == 0 then retry = 1 end
+            if code == 1 then
+              redis.call('HSET', KEYS[1], 'w', idx, 'c', cur, 'p', prev)
+              -- sau hết window kế tiếp thì cả hai count đều về 0
+              redis.call('PEXPIRE', KEYS[1], (idx + 2) * w - now)
+            end
+            if left < 0 then left = 0 end
+            return {code, math.floor(left), retry}
+            """, List.class);
+
+    static List<LsfRedisScript<List>> scripts() {
+        return List.of(TOKEN_BUCKET, SLIDING_WINDOW);
+    }
+}
@@ -0,0 +1,84 @@
+package com.myorg.lsf.quota.impl.redis;
+
+import com.myorg.lsf.quota.api.QuotaRequest;
+import com.myorg.lsf.quota.api.QuotaResult;
+import com.myorg.lsf.quota.api.ReactiveQuotaService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import reactor.core.publisher.Mono;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * {@link ReactiveQuotaService} on Lettuce's reactive driver.
+ *
+ * Scripts, KEYS / ARGV, result parsing, metrics and the sold-out cache are those of
+ * {@link RedisQuotaService}; only the transport differs. Each call is one EVALSHA on the
+ * shared connection, so concurrent subscribers are pipelined by the driver instead of
+ * each parking a thread for a round trip. The template falls back to EVAL on NOSCRIPT by
+ * itself; latencies go to the same {@code lsf.redis.script} timers as the blocking calls.
+ */
+@RequiredArgsConstructor
+public class ReactiveRedisQuotaService implements ReactiveQuotaService {
+
+    private final ReactiveStringRedisTemplate reactive;
+    private final RedisQuotaService commands;
+
+    @Override
+    public Mono<QuotaResult> reserve(QuotaRequest req) {
+        if (req.shards() > 1) return shardedNotSupported();
+        return Mono.defer(() -> {
+            QuotaResult known = commands.soldOutAnswer(req);
+            if (known != null) return Mono.just(known);
+            return run(commands.reserveCall(req)).map(out -> commands.reserveResult(req, out));
+        });
+    }
+
+    @Override
+    public Mono<QuotaResult> confirm(String quotaKey, String requestId) {
+        return Mono.defer(() -> run(commands.confirmCall(quotaKey, requestId))).map(commands::confirmResult);
+    }
+
+    @Override
+    public Mono<QuotaResult> release(String quotaKey, String requestId) {
+        return Mono.defer(() -> run(commands.releaseCall(quotaKey, requestId)))
+                .flatMap(out -> freed(quotaKey, requestId, out).thenReturn(commands.releaseResult(out)));
+    }
+
+    // hold của key sharded có thể nằm ở sub-bucket khác home: chỉ bản blocking dò được
+    @Override
+    public Mono<QuotaResult> confirm(String quotaKey, String requestId, int shards) {
+        return shards > 1 ? shardedNotSupported() : confirm(quotaKey, requestId);
+    }
+
+    @Override
+    public Mono<QuotaResult> release(String quotaKey, String requestId, int shards) {
+        return shards > 1 ? shardedNotSupported() : release(quotaKey, requestId);
+    }
+
+    private static <T> Mono<T> shardedNotSupported() {
+        return Mono.error(new IllegalArgumentException("sharded quota keys are only supported by the blocking QuotaService"));
+    }
+
+    private Mono<Void> freed(String quotaKey, String requestId, List<Long> out) {
+        RedisSoldOutCache soldOut = commands.soldOutCache();
+        if (soldOut == null || out.get(0) != 1) return Mono.empty();
+        soldOut.forget(quotaKey, requestId);
+        soldOut.invalidate(quotaKey);
+        return reactive.convertAndSend(soldOut.channel(), quotaKey).then();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Mono<List<Long>> run(RedisQuotaService.Call call) {
+        List<Object> args = Arrays.asList(call.args());
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return reactive.execute(call.script(), call.keys(), args)
+                    .map((Function<Object, List<Long>>) o -> (List<Long>) o)
+                    .single()
+                    .doFinally(signal -> commands.scripts().record(call.script(), System.nanoTime() - start));
+        });
+    }
+}
@@ -0,0 +1,84 @@
+package com.myorg.lsf.quota.impl.redis;
+
+import com.myorg.lsf.quota.config.LsfQuotaProperties;
+import com.myorg.lsf.redis.script.LsfRedisScript;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Key naming + scripts of one Redis storage layout.
+ *
+ * Both layouts take the same ARGV and return the same shapes, so RedisQuotaService
+ * only needs {@link #keys} for the per-quota-key KEYS block. HASH additionally reads a
+ * trailing migrate flag and gets the three split-layout keys appended to every block,
+ * so a key still in the old layout is converted inside the same atomic script.
+ */
+@SuppressWarnings("rawtypes")
+final class RedisQuotaLayout {
+
+    static final RedisQuotaLayout SPLIT = new RedisQuotaLayout("split", false,
+            List.of(":c", ":res", ":conf", ":z"),
+            SplitLayoutLua.RESERVE_LUA, SplitLayoutLua.RESERVE_ALL_LUA,
+            SplitLayoutLua.CONFIRM_LUA, SplitLayoutLua.RELEASE_LUA,
+            SplitLayoutLua.CONFIRM_GROUP_LUA, SplitLayoutLua.RELEASE_GROUP_LUA,
+            SplitLayoutLua.SWEEP_LUA);
+
+    // :c/:res/:conf là key cũ, chỉ để migrate; script HASH không tạo chúng
+    static final RedisQuotaLayout HASH = new RedisQuotaLayout("hash", true,
+            List.of(":h", ":z", ":c", ":res", ":conf"),
+            HashLayoutLua.RESERVE_LUA, HashLayoutLua.RESERVE_ALL_LUA,
+            HashLayoutLua.CONFIRM_LUA, HashLayoutLua.RELEASE_LUA,
+            HashLayoutLua.CONFIRM_GROUP_LUA, HashLayoutLua.RELEASE_GROUP_LUA,
+            HashLayoutLua.SWEEP_LUA);
+
+    final boolean migrating;
+    private final List<String> suffixes;
+    final LsfRedisScript<List> reserve;
+    final LsfRedisScript<List> reserveAll;
+    final LsfRedisScript<List> confirm;
+    final LsfRedisScript<List> release;
+    final LsfRedisScript<List> confirmGroup;
+    final LsfRedisScript<List> releaseGroup;
+    final LsfRedisScript<List> sweep;
+
+    private RedisQuotaLayout(String name, boolean migrating, List<String> suffixes,
+                             String reserve, String reserveAll, String confirm, String release,
+                             String confirmGroup, String releaseGroup, String sweep) {
+        this.migrating = migrating;
+        this.suffixes = suffixes;
+        this.reserve = script(name, "reserve", reserve);
+        this.reserveAll = script(name, "reserve-all", reserveAll);
+        this.confirm = script(name, "confirm", confirm);
+        this.release = script(name, "release", release);
+        this.confirmGroup = script(name, "confirm-group", confirmGroup);
+        this.releaseGroup = script(name, "release-group", releaseGroup);
+        this.sweep = script(name, "sweep", sweep);
+    }
+
+    static RedisQuotaLayout of(LsfQuotaProperties.Redis.Layout layout) {
+        return (layout == LsfQuotaProperties.Redis.Layout.HASH) ? HASH : SPLIT;
+    }
+
+    /** KEYS block of one quota key; the scripts index it with a stride of {@link #stride()}. */
+    List<String> keys(String base) {
+        List<String> keys = new ArrayList<>(suffixes.size());
+        for (String suffix : suffixes) {
+            keys.add(base + suffix);
+        }
+        return keys;
+    }
+
+    int stride() {
+        return suffixes.size();
+    }
+
+    /** Every script of the layout, for {@link com.myorg.lsf.redis.script.RedisScriptRegistry#register}. */
+    List<LsfRedisScript<List>> scripts() {
+        return List.of(reserve, reserveAll, confirm, release, confirmGroup, releaseGroup, sweep);
+    }
+
+    private static LsfRedisScript<List> script(String layout, String op, String lua) {
+        return LsfRedisScript.of("lsf.quota." + layout + "." + op, lua, List.class);
+    }
+}
@@ -3,20 +3,64 @@ package com.myorg.lsf.quota.impl.redis;
 import com.myorg.lsf.quota.api.*;
 import com.myorg.lsf.quota.config.LsfQuotaProperties;
 import com.myorg.lsf.quota.obs.QuotaMetrics;
-import lombok.RequiredArgsConstructor;
+import com.myorg.lsf.redis.script.LsfRedisScript;
+import com.myorg.lsf.redis.script.RedisScriptRegistry;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
-import org.springframework.data.redis.core.script.DefaultRedisScript;
 
 import java.time.Clock;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
 
-@RequiredArgsConstructor
 public class RedisQuotaService implements QuotaService {
+
+    // forward entry của sharding, đọc cùng pipeline với script ở sub-bucket nhà
+    private static final LsfRedisScript<String> READ_FORWARD = LsfRedisScript.of("lsf.quota.read-forward",
+            "return redis.call('HGET', KEYS[1], ARGV[1])", String.class);
+
     private final StringRedisTemplate redis;
     private final LsfQuotaProperties props;
     private final QuotaMetrics metrics; // nullable
     private final Clock clock;
+    private final RedisSoldOutCache soldOut; // nullable, lsf.quota.redis.sold-out-cache.enabled
+    private final RedisScriptRegistry scripts;
+
+    // hash-tags: slot tiếp theo mà sweeper sẽ quét index (chỉ sweeper ghi)
+    private volatile int slotCursor;
+
+    public RedisQuotaService(StringRedisTemplate redis, LsfQuotaProperties props, QuotaMetrics metrics, Clock clock) {
+        this(redis, props, metrics, clock, null);
+    }
+
+    public RedisQuotaService(StringRedisTemplate redis, LsfQuotaProperties props, QuotaMetrics metrics, Clock clock,
+                             RedisSoldOutCache soldOut) {
+        this(redis, props, metrics, clock, soldOut, new RedisScriptRegistry(redis));
+    }
+
+    /** {@code scripts} is usually the application-wide registry, so quota scripts are preloaded with the others. */
+    public RedisQuotaService(StringRedisTemplate redis, LsfQuotaProperties props, QuotaMetrics metrics, Clock clock,
+                             RedisSoldOutCache soldOut, RedisScriptRegistry scripts) {
+        this.redis = redis;
+        this.props = props;
+        this.metrics = metrics;
+        this.clock = clock;
+        this.soldOut = soldOut;
+        this.scripts = scripts;
+        scripts.register(layout().scripts().toArray(LsfRedisScript[]::new));
+        scripts.register(READ_FORWARD);
+        scripts.register(RateLimitLua.scripts().toArray(LsfRedisScript[]::new));
+    }
 
     // Return: [code, used, state, holdUntil]
     // code: 1 accepted, 0 rejected, 2 duplicate
@@ -24,51 +68,533 @@ public class RedisQuotaService implements QuotaService {
 
     @Override
     public QuotaResult reserve(QuotaRequest req) {
+        if (req.shards() > 1) return reserveSharded(req);
+        QuotaResult known = soldOutAnswer(req);
+        if (known != null) return known;
+        return reserveResult(req, executeAll(List.of(reserveCall(req))).get(0));
+    }
+
+    /**
+     * Whole batch in one EVAL: every key of the batch is passed to a single script,
+     * so the all-or-nothing check and the writes are atomic and cost one round trip.
+     *
+     * With hash tags (Redis Cluster) one script can only touch one slot, so the batch is
+     * split per slot and the scripts go out in one pipeline. ALL_OR_NOTHING is then atomic
+     * per slot: if any slot rejects, the holds taken in the other slots are released again.
+     * Meanwhile they can only cause a conservative reject elsewhere, never an oversell.
+     */
+    @Override
+    public List<QuotaResult> reserveAll(List<QuotaRequest> requests, QuotaBatchMode mode) {
+        if (requests.isEmpty()) return List.of();
+        // sub-bucket của item sharded chỉ biết khi probe => không gộp vào script theo slot được
+        if (requests.stream().anyMatch(r -> r.shards() > 1)) return QuotaService.super.reserveAll(requests, mode);
+        RedisQuotaLayout layout = layout();
+        List<List<Integer>> parts = bySlot(requests.stream().map(QuotaRequest::quotaKey).toList());
+        List<Call> calls = new ArrayList<>(parts.size());
+        for (List<Integer> part : parts) {
+            calls.add(reserveAllCall(layout, requests, part, mode));
+        }
+        List<List<Long>> outs = executeAll(calls);
+
+        List<List<Long>> raw = new ArrayList<>(Collections.nCopies(requests.size(), null));
+        boolean rejected = false;
+        for (int p = 0; p < parts.size(); p++) {
+            List<Integer> part = parts.get(p);
+            for (int j = 0; j < part.size(); j++) {
+                List<Long> r = outs.get(p).subList(j * 4, j * 4 + 4);
+                raw.set(part.get(j), r);
+                if (r.get(0) == 0) rejected = true;
+            }
+        }
+        if (rejected && mode == QuotaBatchMode.ALL_OR_NOTHING && parts.size() > 1) {
+            undoAccepted(layout, requests, raw);
+        }
+
+        List<QuotaResult> results = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            results.add(parseReserveResult(raw.get(i), requests.get(i).limit()));
+        }
+        return results;
+    }
+
+    /** On Redis Cluster a group must sit in one slot, otherwise confirmGroup could not be all-or-none. */
+    @Override
+    public QuotaGroupResult reserveGroup(List<QuotaRequest> requests) {
+        if (requests != null) {
+            if (requests.stream().anyMatch(r -> r.shards() > 1)) {
+                throw new IllegalArgumentException("sharded quota keys cannot be part of a group");
+            }
+            requireOneSlot(requests.stream().map(QuotaRequest::quotaKey).toList());
+        }
+        return QuotaService.super.reserveGroup(requests);
+    }
+
+    /** All keys of the group confirmed in one EVAL, or none if any hold is missing. */
+    @Override
+    public QuotaGroupResult confirmGroup(List<String> quotaKeys, String requestId) {
+        requireOneSlot(quotaKeys);
         long now = clock.millis();
-        Duration hold = (req.hold() != null) ? req.hold() : Duration.ofSeconds(props.getDefaultHoldSeconds());
-        long holdMs = Math.max(1, hold.toMillis());
-        long keepAliveMs = Math.max(holdMs * 2, Duration.ofSeconds(props.getKeepAliveSeconds()).toMillis());
+        long keepAliveMs = Duration.ofSeconds(props.getKeepAliveSeconds()).toMillis();
+        RedisQuotaLayout layout = layout();
 
-        Keys k = keys(req.quotaKey());
-        //ckey (Counter Key): Một biến đếm lưu tổng số lượng đã dùng (tương đương biến used).
-        //resHash (Reserved Hash): Cấu trúc Hash của Redis lưu danh sách khách đang giữ chỗ (tương đương Map reserved).
-        //confHash (Confirmed Hash): Cấu trúc Hash lưu danh sách đã chốt đơn (tương đương Map confirmed).
-        //zset (Sorted Set):  Redis dùng Sorted Set để lưu danh sách
-        // các vé giữ chỗ sắp xếp theo thời gian hết hạn.Việc "dọn rác" (purgeExpired)
-        // trong Lua Script nhờ zset này diễn ra với tốc độ cực kì khủng khiếp.
         @SuppressWarnings("unchecked")
-        //Thực thi Lua Script
-        List<Long> out = (List<Long>) redis.execute(
-                RESERVE_SCRIPT,
-                List.of(k.ckey, k.resHash, k.confHash, k.zset),
-                String.valueOf(now),
-                req.requestId(),
-                String.valueOf(Math.max(1, req.amount())),
-                String.valueOf(req.limit()),
-                String.valueOf(holdMs),
-                String.valueOf(keepAliveMs)
+        List<Long> out = (List<Long>) scripts.execute(
+                layout.confirmGroup,
+                groupKeys(layout, quotaKeys),
+                argv(layout,
+                        String.valueOf(now),
+                        requestId,
+                        String.valueOf(keepAliveMs),
+                        String.valueOf(props.getRedis().getInlinePurgeLimit()))
         );
-        return parseReserveResult(out, req.limit());
+
+        List<QuotaResult> results = new ArrayList<>(quotaKeys.size());
+        for (int i = 0; i < quotaKeys.size(); i++) {
+            long code = out.get(i * 3);
+            int used = out.get(i * 3 + 1).intValue();
+            long holdUntil = out.get(i * 3 + 2);
+            results.add(parseConfirmResult(code, used, holdUntil));
+        }
+        return QuotaGroupResult.ofConfirm(quotaKeys, requestId, results);
+    }
+
+    /** Release has nothing to keep consistent across keys: one script per slot, pipelined. */
+    @Override
+    public QuotaGroupResult releaseGroup(List<String> quotaKeys, String requestId) {
+        long now = clock.millis();
+        long keepAliveMs = Duration.ofSeconds(props.getKeepAliveSeconds()).toMillis();
+        RedisQuotaLayout layout = layout();
+        List<List<Integer>> parts = bySlot(quotaKeys);
+        List<Call> calls = new ArrayList<>(parts.size());
+        for (List<Integer> part : parts) {
+            List<String> keys = new ArrayList<>(part.size() * layout.stride());
+            for (int i : part) {
+                keys.addAll(keys(layout, quotaKeys.get(i)));
+            }
+            calls.add(new Call(layout.releaseGroup, keys, argv(layout,
+                    String.valueOf(now),
+                    requestId,
+                    props.isAllowReleaseConfirmed() ? "1" : "0",
+                    String.valueOf(keepAliveMs),
+                    String.valueOf(props.getRedis().getInlinePurgeLimit()))));
+        }
+        List<List<Long>> outs = executeAll(calls);
+
+        QuotaResult[] results = new QuotaResult[quotaKeys.size()];
+        for (int p = 0; p < parts.size(); p++) {
+            List<Integer> part = parts.get(p);
+            List<Long> out = outs.get(p);
+            for (int j = 0; j < part.size(); j++) {
+                results[part.get(j)] = parseReleaseResult(out.get(j * 2), out.get(j * 2 + 1).intValue());
+            }
+        }
+        if (soldOut != null) {
+            List<String> freed = new ArrayList<>();
+            for (int i = 0; i < results.length; i++) {
+                if (results[i].decision() == QuotaDecision.ACCEPTED) freed.add(quotaKeys.get(i));
+            }
+            publishFreed(freed);
+        }
+        return QuotaGroupResult.ofRelease(quotaKeys, requestId, Arrays.asList(results));
     }
 
     @Override
     public QuotaResult confirm(String quotaKey, String requestId) {
+        return confirmResult(executeAll(List.of(confirmCall(quotaKey, requestId))).get(0));
+    }
+
+    @Override
+    public QuotaResult confirm(String quotaKey, String requestId, int shards) {
+        if (shards <= 1) return confirm(quotaKey, requestId);
+        RedisQuotaLayout layout = layout();
+        int home = RedisShards.home(requestId, shards);
+        HomeRead read = readHome(confirmCall(layout, RedisShards.key(quotaKey, home), requestId), quotaKey, home, requestId);
+        List<Long> out = read.out();
+        if (out.get(0) == 0) {
+            if (read.forward() != null) {
+                out = executeAll(List.of(confirmCall(layout, RedisShards.key(quotaKey, read.forward()), requestId))).get(0);
+            } else {
+                Found found = findOnSiblings(home, shards, s -> confirmCall(layout, RedisShards.key(quotaKey, s), requestId));
+                if (found != null) {
+                    remember(quotaKey, home, requestId, found.shard()); // sửa lại forward bị mất
+                    out = found.out();
+                }
+            }
+        }
+        return parseConfirmResult(out.get(0), out.get(1).intValue(), 0);
+    }
+
+    @Override
+    public QuotaResult release(String quotaKey, String requestId) {
+        List<Long> out = executeAll(List.of(releaseCall(quotaKey, requestId))).get(0);
+        released(quotaKey, requestId, out);
+        return releaseResult(out);
+    }
+
+    @Override
+    public QuotaResult release(String quotaKey, String requestId, int shards) {
+        if (shards <= 1) return release(quotaKey, requestId);
+        RedisQuotaLayout layout = layout();
         long now = clock.millis();
         long keepAliveMs = Duration.ofSeconds(props.getKeepAliveSeconds()).toMillis();
-        Keys k = keys(quotaKey);
+        boolean allowConfirmed = props.isAllowReleaseConfirmed();
+        int home = RedisShards.home(requestId, shards);
+        HomeRead read = readHome(releaseCall(layout, RedisShards.key(quotaKey, home), requestId, allowConfirmed, now, keepAliveMs),
+                quotaKey, home, requestId);
+        List<Long> out = read.out();
+        if (read.forward() != null) {
+            List<Long> there = executeAll(List.of(releaseCall(layout, RedisShards.key(quotaKey, read.forward()), requestId,
+                    allowConfirmed, now, keepAliveMs))).get(0);
+            // confirmed và không cho release thì giữ forward để reserve lặp lại vẫn ra DUPLICATE
+            if (there.get(0) == 1) redis.opsForHash().delete(forwardKey(quotaKey, home), requestId);
+            if (out.get(0) == 0) out = there;
+        } else if (out.get(0) == 0) {
+            Found found = findOnSiblings(home, shards, s -> releaseCall(layout, RedisShards.key(quotaKey, s), requestId,
+                    allowConfirmed, now, keepAliveMs));
+            if (found != null) out = found.out();
+        }
+        return parseReleaseResult(out.get(0), out.get(1).intValue());
+    }
 
-        @SuppressWarnings("unchecked")
-        List<Long> out = (List<Long>) redis.execute(
-                CONFIRM_SCRIPT,
-                List.of(k.ckey, k.resHash, k.confHash, k.zset),
-                String.valueOf(now),
-                requestId,
-                String.valueOf(keepAliveMs)
-        );
+    /** Confirms every hold in one pipeline; falls back to one by one when a hold is sharded. */
+    @Override
+    public List<QuotaResult> confirmAll(List<QuotaHold> holds) {
+        if (holds.isEmpty()) return List.of();
+        if (holds.stream().anyMatch(h -> h.shards() > 1)) return QuotaService.super.confirmAll(holds);
+        List<Call> calls = new ArrayList<>(holds.size());
+        for (QuotaHold hold : holds) {
+            calls.add(confirmCall(hold.quotaKey(), hold.requestId()));
+        }
+        List<List<Long>> outs = executeAll(calls);
+        List<QuotaResult> results = new ArrayList<>(outs.size());
+        for (List<Long> out : outs) {
+            results.add(confirmResult(out));
+        }
+        return results;
+    }
 
-        long code = out.get(0);
-        int used = out.get(1).intValue();
+    /** Releases every hold in one pipeline; falls back to one by one when a hold is sharded. */
+    @Override
+    public List<QuotaResult> releaseAll(List<QuotaHold> holds) {
+        if (holds.isEmpty()) return List.of();
+        if (holds.stream().anyMatch(h -> h.shards() > 1)) return QuotaService.super.releaseAll(holds);
+        List<Call> calls = new ArrayList<>(holds.size());
+        for (QuotaHold hold : holds) {
+            calls.add(releaseCall(hold.quotaKey(), hold.requestId()));
+        }
+        List<List<Long>> outs = executeAll(calls);
+        List<QuotaResult> results = new ArrayList<>(outs.size());
+        List<String> freed = new ArrayList<>();
+        for (int i = 0; i < outs.size(); i++) {
+            List<Long> out = outs.get(i);
+            if (out.get(0) == 1) {
+                freed.add(holds.get(i).quotaKey());
+                if (soldOut != null) soldOut.forget(holds.get(i).quotaKey(), holds.get(i).requestId());
+            }
+            results.add(releaseResult(out));
+        }
+        if (soldOut != null && !freed.isEmpty()) publishFreed(freed);
+        return results;
+    }
+
+    /** One script call on {@code <prefix><key>:tb} / {@code :sw}; the key expires by itself once idle. */
+    @Override
+    @SuppressWarnings("unchecked")
+    public RateLimitResult tryAcquire(RateLimitRequest req) {
+        long now = clock.millis();
+        long windowMs = Math.max(1, req.window().toMillis());
+        List<Long> out;
+        if (req.algorithm() == RateLimitAlgorithm.TOKEN_BUCKET) {
+            out = (List<Long>) scripts.execute(RateLimitLua.TOKEN_BUCKET,
+                    List.of(base(req.quotaKey()) + ":tb"),
+                    String.valueOf(now),
+                    String.valueOf(req.permits()),
+                    String.valueOf(req.limit()),
+                    String.valueOf(windowMs),
+                    String.valueOf(req.capacity()));
+        } else {
+            out = (List<Long>) scripts.execute(RateLimitLua.SLIDING_WINDOW,
+                    List.of(base(req.quotaKey()) + ":sw"),
+                    String.valueOf(now),
+                    String.valueOf(req.permits()),
+                    String.valueOf(req.limit()),
+                    String.valueOf(windowMs));
+        }
+        boolean allowed = out.get(0) == 1;
+        if (metrics != null) {
+            if (allowed) metrics.incRateAllowed();
+            else metrics.incRateLimited();
+        }
+        return RateLimitResult.builder()
+                .decision(allowed ? QuotaDecision.ACCEPTED : QuotaDecision.REJECTED)
+                .remaining(out.get(1).intValue())
+                .limit(req.capacity())
+                .retryAfterMs(out.get(2))
+                .build();
+    }
+
+    /**
+     * One incremental sweep: visits at most {@code sweep-keys-per-run} quota keys of the
+     * active index whose earliest hold has expired, and purges at most
+     * {@code sweep-holds-per-key} holds on each. Every key is its own short script, so
+     * a burst of expirations never turns into one long blocking call.
+     *
+     * With hash tags the index is split per slot; each run reads the next
+     * {@code sweep-slots-per-run} slot indexes (pipelined) in rotation.
+     *
+     * @return number of expired holds reclaimed
+     */
+    public int sweepExpired() {
+        long startNanos = System.nanoTime();
+        long now = clock.millis();
+        LsfQuotaProperties.Redis cfg = props.getRedis();
+        RedisQuotaLayout layout = layout();
+
+        List<String> due = cfg.isHashTags() ? dueBySlot(now, cfg) : dueInIndex(now, cfg);
+        List<Call> calls = new ArrayList<>(due.size());
+        for (String quotaKey : due) {
+            List<String> keys = new ArrayList<>(keys(layout, quotaKey));
+            keys.add(activeIndexKey(quotaKey));
+            calls.add(new Call(layout.sweep, keys, argv(layout,
+                    String.valueOf(now),
+                    String.valueOf(cfg.getSweepHoldsPerKey()),
+                    quotaKey)));
+        }
+        int purged = 0;
+        int backlog = 0;
+        List<String> freed = new ArrayList<>();
+        List<List<Long>> outs = executeAll(calls);
+        for (int i = 0; i < outs.size(); i++) {
+            List<Long> out = outs.get(i);
+            purged += out.get(0).intValue();
+            backlog += out.get(1).intValue();
+            if (out.get(0) > 0) freed.add(due.get(i));
+        }
+        if (soldOut != null) publishFreed(freed);
+        if (metrics != null) metrics.recordSweep(due.size(), purged, backlog, System.nanoTime() - startNanos);
+        return purged;
+    }
+
+    private List<String> dueInIndex(long now, LsfQuotaProperties.Redis cfg) {
+        Set<String> due = redis.opsForZSet().rangeByScore(activeIndexKey(null), Double.NEGATIVE_INFINITY, now, 0, cfg.getSweepKeysPerRun());
+        return (due != null) ? new ArrayList<>(due) : List.of();
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<String> dueBySlot(long now, LsfQuotaProperties.Redis cfg) {
+        int first = slotCursor;
+        int count = cfg.getSweepSlotsPerRun();
+        slotCursor = (first + count) % RedisSlots.COUNT;
+        List<Object> ranges = redis.executePipelined(new SessionCallback<Object>() {
+            @Override
+            public <K, V> Object execute(RedisOperations<K, V> operations) {
+                RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                for (int i = 0; i < count; i++) {
+                    String index = slotIndexKey((first + i) % RedisSlots.COUNT);
+                    ops.opsForZSet().rangeByScore(index, Double.NEGATIVE_INFINITY, now, 0, cfg.getSweepKeysPerRun());
+                }
+                return null;
+            }
+        });
+        List<String> due = new ArrayList<>();
+        for (Object range : ranges) {
+            for (String quotaKey : (Set<String>) range) {
+                if (due.size() == cfg.getSweepKeysPerRun()) return due;
+                due.add(quotaKey);
+            }
+        }
+        return due;
+    }
+
+    /** Release of one hold answered by Redis: drop it from the sold-out cache and publish the key. */
+    private void released(String quotaKey, String requestId, List<Long> out) {
+        if (soldOut == null || out.get(0) != 1) return;
+        soldOut.forget(quotaKey, requestId);
+        publishFreed(List.of(quotaKey));
+    }
+
+    /** Drops the keys from every instance's sold-out cache (this one included, via its own subscription). */
+    private void publishFreed(List<String> quotaKeys) {
+        if (quotaKeys.isEmpty()) return;
+        quotaKeys.forEach(soldOut::invalidate);
+        String channel = soldOut.channel();
+        if (quotaKeys.size() == 1) {
+            redis.convertAndSend(channel, quotaKeys.get(0));
+            return;
+        }
+        redis.executePipelined(new SessionCallback<Object>() {
+            @Override
+            public <K, V> Object execute(RedisOperations<K, V> operations) {
+                for (String quotaKey : quotaKeys) {
+                    operations.convertAndSend(channel, quotaKey);
+                }
+                return null;
+            }
+        });
+    }
+
+    // ReactiveRedisQuotaService gửi đúng các script / KEYS / ARGV này, chỉ khác driver
+
+    Call reserveCall(QuotaRequest req) {
+        return reserveCall(layout(), req.quotaKey(), req, req.limit());
+    }
+
+    Call confirmCall(String quotaKey, String requestId) {
+        return confirmCall(layout(), quotaKey, requestId);
+    }
+
+    Call releaseCall(String quotaKey, String requestId) {
+        long keepAliveMs = Duration.ofSeconds(props.getKeepAliveSeconds()).toMillis();
+        return releaseCall(layout(), quotaKey, requestId, props.isAllowReleaseConfirmed(), clock.millis(), keepAliveMs);
+    }
+
+    /** REJECTED from the sold-out cache, or null when the script has to run. */
+    QuotaResult soldOutAnswer(QuotaRequest req) {
+        if (soldOut == null) return null;
+        QuotaResult known = soldOut.lookup(req.quotaKey(), req.requestId(), req.limit());
+        if (known != null && metrics != null) metrics.incReserveRejected();
+        return known;
+    }
+
+    QuotaResult reserveResult(QuotaRequest req, List<Long> out) {
+        QuotaResult result = parseReserveResult(out, req.limit());
+        if (soldOut != null) soldOut.remember(req.quotaKey(), req.requestId(), result);
+        return result;
+    }
+
+    QuotaResult confirmResult(List<Long> out) {
+        return parseConfirmResult(out.get(0), out.get(1).intValue(), 0);
+    }
+
+    QuotaResult releaseResult(List<Long> out) {
+        return parseReleaseResult(out.get(0), out.get(1).intValue());
+    }
 
+    RedisSoldOutCache soldOutCache() {
+        return soldOut;
+    }
+
+    RedisScriptRegistry scripts() {
+        return scripts;
+    }
+
+    RedisConnectionFactory connectionFactory() {
+        return redis.getConnectionFactory();
+    }
+
+    /**
+     * Hot key split into {@code shards} sub-buckets, each owning its share of the limit, so
+     * on Redis Cluster the traffic of one SKU spreads over several slots / nodes.
+     *
+     * The hold goes to the home sub-bucket of the requestId when it has room, otherwise to
+     * the next {@code shard-fallback-probes} siblings in order. A hold placed on a sibling
+     * leaves a forward entry (requestId -> sub-bucket) next to the home sub-bucket, read in
+     * the same pipeline as the home script, so retries, confirm and release find the owner
+     * with at most one more call. No sub-bucket ever exceeds its share, so the key as a
+     * whole never exceeds the limit; a request can be rejected while a sub-bucket it did
+     * not probe still has room.
+     *
+     * The forward entry is written after the sibling script (another slot, so not in the
+     * same script). If that write is lost, confirm / release find the hold by probing the
+     * siblings (see {@link #findOnSiblings}) and a retried reserve gets DUPLICATE from the
+     * sibling; both write the entry again.
+     */
+    private QuotaResult reserveSharded(QuotaRequest req) {
+        int n = req.shards();
+        RedisQuotaLayout layout = layout();
+        int home = RedisShards.home(req.requestId(), n);
+        HomeRead read = readHome(shardReserveCall(layout, req, home), req.quotaKey(), home, req.requestId());
+        List<Long> out = read.out();
+
+        if (read.forward() != null) {
+            int owner = read.forward();
+            List<Long> there = executeAll(List.of(shardReserveCall(layout, req, owner))).get(0);
+            if (there.get(0) != 0) {
+                // một requestId chỉ giữ một chỗ: giữ bản forward trỏ tới, nhả bản vừa lấy ở nhà
+                if (out.get(0) == 1) undoShardHold(layout, req, home);
+                return parseReserveResult(there, RedisShards.share(req.limit(), n, owner));
+            }
+            // hold ở sub-bucket đó đã hết hạn và nó cũng hết chỗ: forward không còn giá trị
+            redis.opsForHash().delete(forwardKey(req.quotaKey(), home), req.requestId());
+        }
+        if (out.get(0) != 0) {
+            return parseReserveResult(out, RedisShards.share(req.limit(), n, home));
+        }
+
+        int probes = Math.min(n - 1, props.getRedis().getShardFallbackProbes());
+        for (int k = 1; k <= probes; k++) {
+            int shard = (home + k) % n;
+            List<Long> there = executeAll(List.of(shardReserveCall(layout, req, shard))).get(0);
+            if (there.get(0) != 0) {
+                // DUPLICATE ở sibling = forward bị mất sau lần accept trước: ghi lại
+                remember(req.quotaKey(), home, req.requestId(), shard);
+                return parseReserveResult(there, RedisShards.share(req.limit(), n, shard));
+            }
+        }
+        return parseReserveResult(out, RedisShards.share(req.limit(), n, home));
+    }
+
+    private Call shardReserveCall(RedisQuotaLayout layout, QuotaRequest req, int shard) {
+        return reserveCall(layout, RedisShards.key(req.quotaKey(), shard), req, RedisShards.share(req.limit(), req.shards(), shard));
+    }
+
+    private void undoShardHold(RedisQuotaLayout layout, QuotaRequest req, int shard) {
+        long keepAliveMs = Duration.ofSeconds(props.getKeepAliveSeconds()).toMillis();
+        executeAll(List.of(releaseCall(layout, RedisShards.key(req.quotaKey(), shard), req.requestId(), false,
+                clock.millis(), keepAliveMs)));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void remember(String quotaKey, int home, String requestId, int shard) {
+        String key = forwardKey(quotaKey, home);
+        long keepAliveMs = Duration.ofSeconds(props.getKeepAliveSeconds()).toMillis();
+        redis.executePipelined(new SessionCallback<Object>() {
+            @Override
+            public <K, V> Object execute(RedisOperations<K, V> operations) {
+                RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                ops.opsForHash().put(key, requestId, String.valueOf(shard));
+                ops.expire(key, Duration.ofMillis(keepAliveMs));
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Home has no hold and no forward entry: the entry may have been lost between the sibling
+     * reserve and its write (crash, timeout). Runs {@code call} on every sibling reserve could
+     * have probed, in one pipeline, and returns the first that found the hold. Only paid on
+     * NOT_FOUND of a sharded key.
+     */
+    private Found findOnSiblings(int home, int shards, IntFunction<Call> call) {
+        int probes = Math.min(shards - 1, props.getRedis().getShardFallbackProbes());
+        if (probes <= 0) return null;
+        List<Call> calls = new ArrayList<>(probes);
+        for (int k = 1; k <= probes; k++) {
+            calls.add(call.apply((home + k) % shards));
+        }
+        List<List<Long>> outs = executeAll(calls);
+        for (int k = 0; k < outs.size(); k++) {
+            if (outs.get(k).get(0) != 0) return new Found((home + k + 1) % shards, outs.get(k));
+        }
+        return null;
+    }
+
+    /** The home script and the forward entry of requestId in one round trip (same slot). */
+    @SuppressWarnings("unchecked")
+    private HomeRead readHome(Call call, String quotaKey, int home, String requestId) {
+        List<Object> raw = scripts.executePipelined(List.of(
+                new RedisScriptRegistry.Invocation(READ_FORWARD, List.of(forwardKey(quotaKey, home)), new Object[]{requestId}),
+                call.invocation()));
+        Object forward = raw.get(0);
+        return new HomeRead(forward != null ? Integer.valueOf(forward.toString()) : null, (List<Long>) raw.get(1));
+    }
+
+    private String forwardKey(String quotaKey, int home) {
+        return base(RedisShards.key(quotaKey, home)) + ":fwd";
+    }
+
+    // confirm code: 1 confirmed, 2 already confirmed, 0 not found, 3 held but group incomplete (not confirmed)
+    private QuotaResult parseConfirmResult(long code, int used, long holdUntil) {
         if (code == 1) {
             if (metrics != null) metrics.incConfirmOk();
             return QuotaResult.builder().decision(QuotaDecision.ACCEPTED).state(QuotaState.CONFIRMED).used(used).limit(0).holdUntilEpochMs(0).build();
@@ -77,29 +603,14 @@ public class RedisQuotaService implements QuotaService {
             if (metrics != null) metrics.incConfirmOk();
             return QuotaResult.builder().decision(QuotaDecision.DUPLICATE).state(QuotaState.CONFIRMED).used(used).limit(0).holdUntilEpochMs(0).build();
         }
+        if (code == 3) {
+            return QuotaResult.builder().decision(QuotaDecision.REJECTED).state(QuotaState.RESERVED).used(used).limit(0).holdUntilEpochMs(holdUntil).build();
+        }
         if (metrics != null) metrics.incConfirmNotFound();
         return QuotaResult.builder().decision(QuotaDecision.NOT_FOUND).state(null).used(used).limit(0).holdUntilEpochMs(0).build();
     }
 
-    @Override
-    public QuotaResult release(String quotaKey, String requestId) {
-        long now = clock.millis();
-        long keepAliveMs = Duration.ofSeconds(props.getKeepAliveSeconds()).toMillis();
-        Keys k = keys(quotaKey);
-
-        @SuppressWarnings("unchecked")
-        List<Long> out = (List<Long>) redis.execute(
-                RELEASE_SCRIPT,
-                List.of(k.ckey, k.resHash, k.confHash, k.zset),
-                String.valueOf(now),
-                requestId,
-                props.isAllowReleaseConfirmed() ? "1" : "0",
-                String.valueOf(keepAliveMs)
-        );
-
-        long code = out.get(0);
-        int used = out.get(1).intValue();
-
+    private QuotaResult parseReleaseResult(long code, int used) {
         if (code == 1) {
             if (metrics != null) metrics.incReleaseOk();
             return QuotaResult.builder().decision(QuotaDecision.ACCEPTED).state(null).used(used).limit(0).holdUntilEpochMs(0).build();
@@ -144,234 +655,211 @@ public class RedisQuotaService implements QuotaService {
                 .build();
     }
 
-    private Keys keys(String quotaKey) {
-        String base = props.getKeyPrefix() + quotaKey;
-        return new Keys(
-                base + ":c",
-                base + ":res",
-                base + ":conf",
-                base + ":z"
-        );
+    private RedisQuotaLayout layout() {
+        return RedisQuotaLayout.of(props.getRedis().getLayout());
+    }
+
+    private List<String> keys(RedisQuotaLayout layout, String quotaKey) {
+        return layout.keys(base(quotaKey));
+    }
+
+    /**
+     * prefix + quotaKey; with hash tags the quota key becomes the tag, unless it already
+     * carries one (e.g. {term:2026A}section:X) so that a group keeps sharing its slot.
+     */
+    private String base(String quotaKey) {
+        if (!props.getRedis().isHashTags() || RedisSlots.hasHashTag(quotaKey)) {
+            return props.getKeyPrefix() + quotaKey;
+        }
+        return props.getKeyPrefix() + "{" + quotaKey + "}";
+    }
+
+    /** SPLIT scripts take ARGV as is; HASH reads one more trailing flag: migrate keys of the old layout. */
+    private Object[] argv(RedisQuotaLayout layout, String... args) {
+        if (!layout.migrating) return args;
+        Object[] out = Arrays.copyOf(args, args.length + 1, Object[].class);
+        out[args.length] = props.getRedis().isMigrateLegacyKeys() ? "1" : "0";
+        return out;
+    }
+
+    /**
+     * ZSET quotaKey -> earliest expiry that may still need a purge; maintained by the reserve scripts.
+     * With hash tags there is one per slot, so it is always in the slot of the quota key.
+     */
+    private String activeIndexKey(String quotaKey) {
+        if (!props.getRedis().isHashTags()) return props.getKeyPrefix() + "_active";
+        return slotIndexKey(RedisSlots.slot(base(quotaKey)));
+    }
+
+    private String slotIndexKey(int slot) {
+        return props.getKeyPrefix() + "_active{" + RedisSlots.tag(slot) + "}";
+    }
+
+    /** Without a sweeper nobody trims the index, so do not grow it. */
+    private boolean indexed() {
+        return props.getRedis().isSweeperEnabled();
     }
 
-    private record Keys(String ckey, String resHash, String confHash, String zset) {}
-
-    // KEYS: ckey, resHash, confHash, zset
-    // ARGV: nowMs, requestId, amount, limit, holdMs, keepAliveMs
-    private static final String RESERVE_LUA = """
-            local ckey = KEYS[1]
-            local res  = KEYS[2]
-            local conf = KEYS[3]
-            local zkey = KEYS[4]
-    
-            local now  = tonumber(ARGV[1])
-            local req  = ARGV[2]
-            local amt  = tonumber(ARGV[3])
-            local lim  = tonumber(ARGV[4])
-            local hold = tonumber(ARGV[5])
-            local keep = tonumber(ARGV[6])
-    
-            -- purge expired reservations
-            local expired = redis.call('ZRANGEBYSCORE', zkey, '-inf', now)
-            if expired and #expired > 0 then
-              for i=1,#expired do
-                local rid = expired[i]
-                local a = redis.call('HGET', res, rid)
-                if a then
-                  redis.call('HDEL', res, rid)
-                  redis.call('ZREM', zkey, rid)
-                  local cur = tonumber(redis.call('GET', ckey) or '0')
-                  cur = cur - tonumber(a)
-                  if cur < 0 then cur = 0 end
-                  redis.call('SET', ckey, cur)
-                else
-                  redis.call('ZREM', zkey, rid)
-                end
-              end
-            end
-    
-            -- duplicate?
-            local a_res = redis.call('HGET', res, req)
-            if a_res then
-              local cur = tonumber(redis.call('GET', ckey) or '0')
-              local holdUntil = tonumber(redis.call('ZSCORE', zkey, req) or '0')
-              redis.call('PEXPIRE', ckey, keep)
-              redis.call('PEXPIRE', res, keep)
-              redis.call('PEXPIRE', conf, keep)
-              redis.call('PEXPIRE', zkey, keep)
-              return {2, cur, 1, holdUntil}
-            end
-            local a_conf = redis.call('HGET', conf, req)
-            if a_conf then
-              local cur = tonumber(redis.call('GET', ckey) or '0')
-              redis.call('PEXPIRE', ckey, keep)
-              redis.call('PEXPIRE', res, keep)
-              redis.call('PEXPIRE', conf, keep)
-              redis.call('PEXPIRE', zkey, keep)
-              return {2, cur, 2, 0}
-            end
-    
-            local cur = tonumber(redis.call('GET', ckey) or '0')
-            if (cur + amt) > lim then
-              redis.call('PEXPIRE', ckey, keep)
-              redis.call('PEXPIRE', res, keep)
-              redis.call('PEXPIRE', conf, keep)
-              redis.call('PEXPIRE', zkey, keep)
-              return {0, cur, 0, 0}
-            end
-    
-            local holdUntil = now + hold
-            redis.call('HSET', res, req, amt)
-            redis.call('ZADD', zkey, holdUntil, req)
-            cur = cur + amt
-            redis.call('SET', ckey, cur)
-    
-            redis.call('PEXPIRE', ckey, keep)
-            redis.call('PEXPIRE', res, keep)
-            redis.call('PEXPIRE', conf, keep)
-            redis.call('PEXPIRE', zkey, keep)
-    
-            return {1, cur, 1, holdUntil}
-            """;
-
-    // KEYS: ckey, resHash, confHash, zset
-    // ARGV: nowMs, requestId, keepAliveMs
-    private static final String CONFIRM_LUA = """
-            local ckey = KEYS[1]
-            local res  = KEYS[2]
-            local conf = KEYS[3]
-            local zkey = KEYS[4]
-
-            local now  = tonumber(ARGV[1])
-            local req  = ARGV[2]
-            local keep = tonumber(ARGV[3])
-
-            -- purge expired
-            local expired = redis.call('ZRANGEBYSCORE', zkey, '-inf', now)
-            if expired and #expired > 0 then
-              for i=1,#expired do
-                local rid = expired[i]
-                local a = redis.call('HGET', res, rid)
-                if a then
-                  redis.call('HDEL', res, rid)
-                  redis.call('ZREM', zkey, rid)
-                  local cur = tonumber(redis.call('GET', ckey) or '0')
-                  cur = cur - tonumber(a)
-                  if cur < 0 then cur = 0 end
-                  redis.call('SET', ckey, cur)
-                else
-                  redis.call('ZREM', zkey, rid)
-                end
-              end
-            end
-
-            local cur = tonumber(redis.call('GET', ckey) or '0')
-
-            if redis.call('HGET', conf, req) then
-              redis.call('PEXPIRE', ckey, keep)
-              redis.call('PEXPIRE', res, keep)
-              redis.call('PEXPIRE', conf, keep)
-              redis.call('PEXPIRE', zkey, keep)
-              return {2, cur}
-            end
-
-            local a = redis.call('HGET', res, req)
-            if not a then
-              redis.call('PEXPIRE', ckey, keep)
-              redis.call('PEXPIRE', res, keep)
-              redis.call('PEXPIRE', conf, keep)
-              redis.call('PEXPIRE', zkey, keep)
-              return {0, cur}
-            end
-
-            redis.call('HDEL', res, req)
-            redis.call('ZREM', zkey, req)
-            redis.call('HSET', conf, req, a)
-
-            redis.call('PEXPIRE', ckey, keep)
-            redis.call('PEXPIRE', res, keep)
-            redis.call('PEXPIRE', conf, keep)
-            redis.call('PEXPIRE', zkey, keep)
-
-            return {1, cur}
-            """;
-
-    // KEYS: ckey, resHash, confHash, zset
-    // ARGV: nowMs, requestId, allowReleaseConfirmed(0|1), keepAliveMs
-    private static final String RELEASE_LUA = """
-            local ckey = KEYS[1]
-            local res  = KEYS[2]
-            local conf = KEYS[3]
-            local zkey = KEYS[4]
-
-            local now  = tonumber(ARGV[1])
-            local req  = ARGV[2]
-            local allowConf = tonumber(ARGV[3])
-            local keep = tonumber(ARGV[4])
-
-            -- purge expired
-            local expired = redis.call('ZRANGEBYSCORE', zkey, '-inf', now)
-            if expired and #expired > 0 then
-              for i=1,#expired do
-                local rid = expired[i]
-                local a = redis.call('HGET', res, rid)
-                if a then
-                  redis.call('HDEL', res, rid)
-                  redis.call('ZREM', zkey, rid)
-                  local cur = tonumber(redis.call('GET', ckey) or '0')
-                  cur = cur - tonumber(a)
-                  if cur < 0 then cur = 0 end
-                  redis.call('SET', ckey, cur)
-                else
-                  redis.call('ZREM', zkey, rid)
-                end
-              end
-            end
-
-            local cur = tonumber(redis.call('GET', ckey) or '0')
-
-            local a = redis.call('HGET', res, req)
-            if a then
-              redis.call('HDEL', res, req)
-              redis.call('ZREM', zkey, req)
-              cur = cur - tonumber(a)
-              if cur < 0 then cur = 0 end
-              redis.call('SET', ckey, cur)
-
-              redis.call('PEXPIRE', ckey, keep)
-              redis.call('PEXPIRE', res, keep)
-              redis.call('PEXPIRE', conf, keep)
-              redis.call('PEXPIRE', zkey, keep)
-
-              return {1, cur}
-            end
-
-            if allowConf == 1 then
-              local b = redis.call('HGET', conf, req)
-              if b then
-                redis.call('HDEL', conf, req)
-                cur = cur - tonumber(b)
-                if cur < 0 then cur = 0 end
-                redis.call('SET', ckey, cur)
-
-                redis.call('PEXPIRE', ckey, keep)
-                redis.call('PEXPIRE', res, keep)
-                redis.call('PEXPIRE', conf, keep)
-                redis.call('PEXPIRE', zkey, keep)
-
-                return {1, cur}
-              end
-            end
-
-            redis.call('PEXPIRE', ckey, keep)
-            redis.call('PEXPIRE', res, keep)
-            redis.call('PEXPIRE', conf, keep)
-            redis.call('PEXPIRE', zkey, keep)
-
-            return {0, cur}
-            """;
-
-    private static final DefaultRedisScript<List> RESERVE_SCRIPT = new DefaultRedisScript<>(RESERVE_LUA, List.class);
-    private static final DefaultRedisScript<List> CONFIRM_SCRIPT = new DefaultRedisScript<>(CONFIRM_LUA, List.class);
-    private static final DefaultRedisScript<List> RELEASE_SCRIPT = new DefaultRedisScript<>(RELEASE_LUA, List.class);
+    private List<String> groupKeys(RedisQuotaLayout layout, List<String> quotaKeys) {
+        List<String> keys = new ArrayList<>(quotaKeys.size() * layout.stride());
+        for (String quotaKey : quotaKeys) {
+            keys.addAll(keys(layout, quotaKey));
+        }
+        return keys;
+    }
+
+    /** Item indexes grouped per hash slot, in first-seen order; a single group when hash tags are off. */
+    private List<List<Integer>> bySlot(List<String> quotaKeys) {
+        if (!props.getRedis().isHashTags()) {
+            return List.of(IntStream.range(0, quotaKeys.size()).boxed().toList());
+        }
+        Map<Integer, List<Integer>> parts = new LinkedHashMap<>();
+        for (int i = 0; i < quotaKeys.size(); i++) {
+            parts.computeIfAbsent(RedisSlots.slot(base(quotaKeys.get(i))), s -> new ArrayList<>()).add(i);
+        }
+        return new ArrayList<>(parts.values());
+    }
+
+    private void requireOneSlot(List<String> quotaKeys) {
+        if (bySlot(quotaKeys).size() > 1) {
+            throw new IllegalArgumentException("group keys must share one hash slot on Redis Cluster, use a common {tag}: " + quotaKeys);
+        }
+    }
+
+    private Call reserveAllCall(RedisQuotaLayout layout, List<QuotaRequest> requests, List<Integer> part, QuotaBatchMode mode) {
+        long now = clock.millis();
+        long keepAliveMs = Duration.ofSeconds(props.getKeepAliveSeconds()).toMillis();
+
+        // mỗi quotaKey chỉ xuất hiện 1 lần trong KEYS; item trỏ tới key group qua index
+        Map<String, Integer> groups = new LinkedHashMap<>();
+        List<String> keys = new ArrayList<>();
+        List<String> args = new ArrayList<>(4 + part.size() * 5);
+        args.add(String.valueOf(now));
+        args.add(null); // keepAliveMs, biết sau khi đã đọc hết hold
+        args.add(mode == QuotaBatchMode.ALL_OR_NOTHING ? "1" : "0");
+        args.add(String.valueOf(part.size()));
+        args.add(String.valueOf(props.getRedis().getInlinePurgeLimit()));
+        args.add(indexed() ? "1" : "0");
+        for (int i : part) {
+            QuotaRequest req = requests.get(i);
+            Integer g = groups.get(req.quotaKey());
+            if (g == null) {
+                g = groups.size();
+                groups.put(req.quotaKey(), g);
+                keys.addAll(keys(layout, req.quotaKey()));
+            }
+            Duration hold = (req.hold() != null) ? req.hold() : Duration.ofSeconds(props.getDefaultHoldSeconds());
+            long holdMs = Math.max(1, hold.toMillis());
+            keepAliveMs = Math.max(keepAliveMs, holdMs * 2);
+            args.add(String.valueOf(g));
+            args.add(req.requestId());
+            args.add(String.valueOf(Math.max(1, req.amount())));
+            args.add(String.valueOf(req.limit()));
+            args.add(String.valueOf(holdMs));
+        }
+        args.set(1, String.valueOf(keepAliveMs));
+        args.addAll(groups.keySet());
+        keys.add(activeIndexKey(requests.get(part.get(0)).quotaKey()));
+        return new Call(layout.reserveAll, keys, argv(layout, args.toArray(String[]::new)));
+    }
+
+    // KEYS của 1 quota key (xem RedisQuotaLayout) + index hold cùng slot
+    private Call reserveCall(RedisQuotaLayout layout, String quotaKey, QuotaRequest req, int limit) {
+        long now = clock.millis();
+        Duration hold = (req.hold() != null) ? req.hold() : Duration.ofSeconds(props.getDefaultHoldSeconds());
+        long holdMs = Math.max(1, hold.toMillis());
+        long keepAliveMs = Math.max(holdMs * 2, Duration.ofSeconds(props.getKeepAliveSeconds()).toMillis());
+
+        List<String> keys = new ArrayList<>(keys(layout, quotaKey));
+        keys.add(activeIndexKey(quotaKey));
+        //ckey (Counter Key): Một biến đếm lưu tổng số lượng đã dùng (tương đương biến used).
+        //resHash (Reserved Hash): Cấu trúc Hash của Redis lưu danh sách khách đang giữ chỗ (tương đương Map reserved).
+        //confHash (Confirmed Hash): Cấu trúc Hash lưu danh sách đã chốt đơn (tương đương Map confirmed).
+        //zset (Sorted Set):  Redis dùng Sorted Set để lưu danh sách
+        // các vé giữ chỗ sắp xếp theo thời gian hết hạn.Việc "dọn rác" (purgeExpired)
+        // trong Lua Script nhờ zset này diễn ra với tốc độ cực kì khủng khiếp.
+        // Layout HASH gộp ckey/resHash/confHash vào 1 hash (:h), xem RedisQuotaLayout.
+        return new Call(layout.reserve, keys, argv(layout,
+                String.valueOf(now),
+                req.requestId(),
+                String.valueOf(Math.max(1, req.amount())),
+                String.valueOf(limit),
+                String.valueOf(holdMs),
+                String.valueOf(keepAliveMs),
+                String.valueOf(props.getRedis().getInlinePurgeLimit()),
+                indexed() ? quotaKey : ""));
+    }
+
+    private Call confirmCall(RedisQuotaLayout layout, String quotaKey, String requestId) {
+        long keepAliveMs = Duration.ofSeconds(props.getKeepAliveSeconds()).toMillis();
+        return new Call(layout.confirm, keys(layout, quotaKey), argv(layout,
+                String.valueOf(clock.millis()),
+                requestId,
+                String.valueOf(keepAliveMs),
+                String.valueOf(props.getRedis().getInlinePurgeLimit())));
+    }
+
+    private Call releaseCall(RedisQuotaLayout layout, String quotaKey, String requestId,
+                             boolean allowReleaseConfirmed, long now, long keepAliveMs) {
+        return new Call(layout.release, keys(layout, quotaKey), argv(layout,
+                String.valueOf(now),
+                requestId,
+                allowReleaseConfirmed ? "1" : "0",
+                String.valueOf(keepAliveMs),
+                String.valueOf(props.getRedis().getInlinePurgeLimit())));
+    }
+
+    // slot khác đã giữ chỗ trong lúc 1 slot bị reject: nhả lại, kết quả giống hệt trường hợp 1 script
+    private void undoAccepted(RedisQuotaLayout layout, List<QuotaRequest> requests, List<List<Long>> raw) {
+        long now = clock.millis();
+        long keepAliveMs = Duration.ofSeconds(props.getKeepAliveSeconds()).toMillis();
+        List<Call> releases = new ArrayList<>();
+        List<Integer> released = new ArrayList<>();
+        Set<String> undone = new HashSet<>();
+        for (int i = 0; i < requests.size(); i++) {
+            if (raw.get(i).get(0) != 1) continue;
+            QuotaRequest req = requests.get(i);
+            releases.add(releaseCall(layout, req.quotaKey(), req.requestId(), false, now, keepAliveMs));
+            released.add(i);
+            undone.add(req.quotaKey() + '\u0000' + req.requestId());
+        }
+        List<List<Long>> outs = executeAll(releases);
+        for (int k = 0; k < released.size(); k++) {
+            raw.set(released.get(k), List.of(0L, outs.get(k).get(1), 0L, 0L));
+        }
+        // the same key + requestId repeated later in the batch reported DUPLICATE of the hold just released
+        for (int i = 0; i < requests.size(); i++) {
+            QuotaRequest req = requests.get(i);
+            if (raw.get(i).get(0) == 2 && undone.contains(req.quotaKey() + '\u0000' + req.requestId())) {
+                raw.set(i, List.of(0L, raw.get(i).get(1), 0L, 0L));
+            }
+        }
+    }
+
+    /** One script: plain EVALSHA. Several (one per slot): one pipeline, the driver routes each call to its node. */
+    @SuppressWarnings("unchecked")
+    private List<List<Long>> executeAll(List<Call> calls) {
+        if (calls.isEmpty()) return List.of();
+        if (calls.size() == 1) {
+            Call c = calls.get(0);
+            return List.of((List<Long>) scripts.execute(c.script(), c.keys(), c.args()));
+        }
+        List<Object> raw = scripts.executePipelined(calls.stream().map(Call::invocation).toList());
+        List<List<Long>> outs = new ArrayList<>(raw.size());
+        for (Object o : raw) {
+            outs.add((List<Long>) o);
+        }
+        return outs;
+    }
+
+    private record HomeRead(Integer forward, List<Long> out) {}
+
+    private record Found(int shard, List<Long> out) {}
+
+    @SuppressWarnings("rawtypes")
+    record Call(LsfRedisScript<List> script, List<String> keys, Object[] args) {
+        RedisScriptRegistry.Invocation invocation() {
+            return new RedisScriptRegistry.Invocation(script, keys, args);
+        }
+    }
 }
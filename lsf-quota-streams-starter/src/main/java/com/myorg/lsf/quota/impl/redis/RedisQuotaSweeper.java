@@ -0,0 +1,42 @@
+package com.myorg.lsf.quota.impl.redis;
+
+import com.myorg.lsf.quota.api.QuotaService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+
+/**
+ * Background sweeper for {@link RedisQuotaService}: drains expired holds incrementally
+ * across quota keys so the inline purge of each Lua script can stay capped.
+ * Safe to run on every instance; each key is swept by its own atomic script.
+ * No-op when the active {@link QuotaService} is not the Redis store.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class RedisQuotaSweeper {
+
+    private final QuotaService quotaService;
+
+    @Scheduled(
+            initialDelayString = "${lsf.quota.redis.sweep-interval-ms:1000}",
+            fixedDelayString = "${lsf.quota.redis.sweep-interval-ms:1000}"
+    )
+    public void scheduledSweep() {
+        runOnce();
+    }
+
+    public int runOnce() {
+        if (!(quotaService instanceof RedisQuotaService store)) return 0;
+        try {
+            int purged = store.sweepExpired();
+            if (purged > 0) {
+                log.debug("quota.redis.sweep purgedExpired={}", purged);
+            }
+            return purged;
+        } catch (RuntimeException e) {
+            // Redis down / failover: skip this run, the next one retries
+            log.warn("quota.redis.sweep failed: {}", e.toString());
+            return 0;
+        }
+    }
+}
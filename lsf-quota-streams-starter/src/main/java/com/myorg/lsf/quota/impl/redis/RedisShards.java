@@ -0,0 +1,27 @@
+package com.myorg.lsf.quota.impl.redis;
+
+/**
+ * Routing for hot keys split into sub-buckets {@code quotaKey#0..N-1}.
+ *
+ * The limit is split evenly (the first {@code limit % N} sub-buckets get one more), and a
+ * requestId always has the same home sub-bucket so every instance routes it alike.
+ */
+final class RedisShards {
+
+    private RedisShards() {
+    }
+
+    static String key(String quotaKey, int shard) {
+        return quotaKey + "#" + shard;
+    }
+
+    static int home(String requestId, int shards) {
+        // String.hashCode is fixed by the JLS, so all instances agree; mix it since ids are often sequential
+        int h = requestId.hashCode() * 0x9E3779B9;
+        return Integer.remainderUnsigned(h ^ (h >>> 16), shards);
+    }
+
+    static int share(int limit, int shards, int shard) {
+        return limit / shards + ((shard < limit % shards) ? 1 : 0);
+    }
+}
@@ -0,0 +1,53 @@
+package com.myorg.lsf.quota.impl.redis;
+
+import org.springframework.data.redis.connection.ClusterSlotHashUtil;
+
+/**
+ * Redis Cluster slot helpers for {@code lsf.quota.redis.hash-tags=true}.
+ *
+ * The hold index has to live in the same slot as the quota keys a script touches,
+ * so there is one index per slot, named with a hash tag that hashes to that slot.
+ * The tags are found once by brute force (~160k CRC16 over short base-36 strings).
+ */
+final class RedisSlots {
+
+    static final int COUNT = ClusterSlotHashUtil.SLOT_COUNT;
+
+    private RedisSlots() {
+    }
+
+    static int slot(String key) {
+        return ClusterSlotHashUtil.calculateSlot(key);
+    }
+
+    /** Shortest base-36 string whose CRC16 lands on {@code slot}. */
+    static String tag(int slot) {
+        return Tags.BY_SLOT[slot];
+    }
+
+    /** Same rule as Redis: the first '{' followed by a non-empty '...}' decides the slot. */
+    static boolean hasHashTag(String key) {
+        int open = key.indexOf('{');
+        if (open < 0) return false;
+        int close = key.indexOf('}', open + 1);
+        return close > open + 1;
+    }
+
+    private static final class Tags {
+        static final String[] BY_SLOT = build();
+
+        private static String[] build() {
+            String[] tags = new String[COUNT];
+            int missing = COUNT;
+            for (int i = 0; missing > 0; i++) {
+                String candidate = Integer.toString(i, 36);
+                int s = slot(candidate);
+                if (tags[s] == null) {
+                    tags[s] = candidate;
+                    missing--;
+                }
+            }
+            return tags;
+        }
+    }
+}
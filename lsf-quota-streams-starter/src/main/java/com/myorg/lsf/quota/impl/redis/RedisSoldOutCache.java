@@ -0,0 +1,140 @@
+package com.myorg.lsf.quota.impl.redis;
+
+import com.myorg.lsf.quota.api.QuotaDecision;
+import com.myorg.lsf.quota.api.QuotaResult;
+import com.myorg.lsf.quota.config.LsfQuotaProperties;
+import com.myorg.lsf.quota.obs.QuotaMetrics;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Near-cache of quota keys whose last Redis answer had {@code used >= limit}.
+ *
+ * While an entry is fresh, a reserve with a limit not above the remembered one is rejected
+ * in process: whatever the amount, the script would have returned 0. Entries are dropped
+ * after {@code ttl-ms}, when this instance sees the key with room again, or when another
+ * instance publishes the key on the "freed" channel (release, sweeper).
+ *
+ * The cache only ever answers REJECTED, so it can never oversell; the cost is a short
+ * window where freed capacity is not offered yet.
+ *
+ * A retry of a requestId that already holds a unit must still get DUPLICATE, so holds
+ * accepted through this instance are remembered until their holdUntil (at most
+ * {@code max-holds}) and always go to Redis. A retry sent to another instance, or after
+ * the original holdUntil, can still get REJECTED while the key is cached.
+ */
+public class RedisSoldOutCache implements MessageListener {
+
+    private final Clock clock;
+    private final long ttlMs;
+    private final int maxKeys;
+    private final int maxHolds;
+    private final String channel;
+    private final QuotaMetrics metrics; // nullable
+
+    private final Map<String, Entry> map = new ConcurrentHashMap<>();
+    // quotaKey + '\0' + requestId -> holdUntil của hold do instance này accept
+    private final Map<String, Long> ownHolds = new ConcurrentHashMap<>();
+
+    public RedisSoldOutCache(LsfQuotaProperties props, QuotaMetrics metrics, Clock clock) {
+        LsfQuotaProperties.Redis.SoldOutCache cfg = props.getRedis().getSoldOutCache();
+        String ch = cfg.getChannel();
+        this.clock = clock;
+        this.ttlMs = cfg.getTtlMs();
+        this.maxKeys = cfg.getMaxKeys();
+        this.maxHolds = cfg.getMaxHolds();
+        this.channel = (ch != null && !ch.isBlank()) ? ch : props.getKeyPrefix() + "_freed";
+        this.metrics = metrics;
+    }
+
+    public String channel() {
+        return channel;
+    }
+
+    /** REJECTED answer for a key known to be sold out, or null when Redis has to decide. */
+    QuotaResult lookup(String quotaKey, String requestId, int limit) {
+        long now = clock.millis();
+        Entry e = map.get(quotaKey);
+        if (e != null && e.expiresAtMs <= now) {
+            map.remove(quotaKey, e);
+            e = null;
+        }
+        // limit tăng (policy đổi) thì entry cũ không còn đúng; retry của hold mình đã accept phải ra DUPLICATE
+        if (e == null || limit > e.limit || holds(quotaKey, requestId, now)) {
+            if (metrics != null) metrics.incSoldOutMiss();
+            return null;
+        }
+        if (metrics != null) metrics.incSoldOutHit();
+        return QuotaResult.builder()
+                .decision(QuotaDecision.REJECTED)
+                .state(null)
+                .used(e.used)
+                .limit(limit)
+                .holdUntilEpochMs(0)
+                .build();
+    }
+
+    /** Learns from a reserve answered by Redis. */
+    void remember(String quotaKey, String requestId, QuotaResult result) {
+        if (result.decision() == QuotaDecision.REJECTED && result.used() >= result.limit()) {
+            if (map.size() >= maxKeys && !map.containsKey(quotaKey)) {
+                // cheap eviction: remove random 1
+                Iterator<String> it = map.keySet().iterator();
+                if (it.hasNext()) map.remove(it.next());
+            }
+            map.put(quotaKey, new Entry(result.used(), result.limit(), clock.millis() + ttlMs));
+            return;
+        }
+        if (result.decision() == QuotaDecision.ACCEPTED) {
+            map.remove(quotaKey);
+        }
+        if (result.decision() != QuotaDecision.REJECTED && result.holdUntilEpochMs() > clock.millis()) {
+            String id = holdId(quotaKey, requestId);
+            if (ownHolds.size() >= maxHolds && !ownHolds.containsKey(id)) {
+                Iterator<String> it = ownHolds.keySet().iterator();
+                if (it.hasNext()) ownHolds.remove(it.next());
+            }
+            ownHolds.put(id, result.holdUntilEpochMs());
+        }
+    }
+
+    /** The hold was released through this instance: a later reserve is a new request again. */
+    void forget(String quotaKey, String requestId) {
+        ownHolds.remove(holdId(quotaKey, requestId));
+    }
+
+    private boolean holds(String quotaKey, String requestId, long now) {
+        if (requestId == null) return false;
+        String id = holdId(quotaKey, requestId);
+        Long holdUntil = ownHolds.get(id);
+        if (holdUntil == null) return false;
+        if (holdUntil > now) return true;
+        ownHolds.remove(id, holdUntil);
+        return false;
+    }
+
+    private static String holdId(String quotaKey, String requestId) {
+        return quotaKey + '\u0000' + requestId;
+    }
+
+    public void invalidate(String quotaKey) {
+        if (map.remove(quotaKey) != null && metrics != null) metrics.incSoldOutInvalidated();
+    }
+
+    public int size() {
+        return map.size();
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        invalidate(new String(message.getBody(), StandardCharsets.UTF_8));
+    }
+
+    private record Entry(int used, int limit, long expiresAtMs) {}
+}
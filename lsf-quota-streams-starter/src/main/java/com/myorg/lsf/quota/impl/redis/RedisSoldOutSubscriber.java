@@ -0,0 +1,41 @@
+package com.myorg.lsf.quota.impl.redis;
+
+import com.myorg.lsf.quota.api.QuotaService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+/**
+ * Subscribes the {@link RedisSoldOutCache} of {@link RedisQuotaService} to the "freed"
+ * channel so a release or sweep on any instance drops the key from every near-cache.
+ * No-op when the active {@link QuotaService} is not the Redis store or runs without the cache.
+ */
+@RequiredArgsConstructor
+public class RedisSoldOutSubscriber implements InitializingBean, DisposableBean {
+
+    private final QuotaService quotaService;
+
+    private RedisMessageListenerContainer container;
+
+    @Override
+    public void afterPropertiesSet() {
+        if (!(quotaService instanceof RedisQuotaService store) || store.soldOutCache() == null) return;
+        RedisSoldOutCache cache = store.soldOutCache();
+        container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(store.connectionFactory());
+        container.addMessageListener(cache, new ChannelTopic(cache.channel()));
+        container.afterPropertiesSet();
+        container.start();
+    }
+
+    public boolean isSubscribed() {
+        return container != null && container.isListening();
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (container != null) container.destroy();
+    }
+}
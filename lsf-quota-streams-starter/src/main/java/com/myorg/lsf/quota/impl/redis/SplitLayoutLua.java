@@ -0,0 +1,430 @@
+package com.myorg.lsf.quota.impl.redis;
+
+/**
+ * Lua for {@code lsf.quota.redis.layout=split}: four keys per quota key
+ * ({@code :c} counter, {@code :res} / {@code :conf} hashes, {@code :z} expiry zset),
+ * all four PEXPIREd on every call.
+ */
+final class SplitLayoutLua {
+
+    private SplitLayoutLua() {
+    }
+
+    // Shared by every script: drop at most `cap` expired holds of one quota key.
+    // A burst of expirations (e.g. 10k payment timeouts) is drained over several calls and
+    // by RedisQuotaSweeper instead of inside one huge script. Holds not purged yet stay
+    // counted in `used`, so a reserve can only be more conservative, never oversell.
+    // KEEPTTL: the sweeper runs purge() on its own and must not drop the keep-alive TTL.
+    static final String PURGE_LUA = """
+            local function purge(ckey, res, zkey, now, cap)
+              local expired = redis.call('ZRANGEBYSCORE', zkey, '-inf', now, 'LIMIT', 0, cap)
+              if #expired == 0 then return 0 end
+              local freed = 0
+              for i=1,#expired do
+                local a = redis.call('HGET', res, expired[i])
+                if a then
+                  redis.call('HDEL', res, expired[i])
+                  freed = freed + tonumber(a)
+                end
+              end
+              redis.call('ZREM', zkey, unpack(expired))
+              if freed > 0 then
+                local cur = tonumber(redis.call('GET', ckey) or '0') - freed
+                if cur < 0 then cur = 0 end
+                redis.call('SET', ckey, cur, 'KEEPTTL')
+              end
+              return #expired
+            end
+
+            """;
+
+    // KEYS: ckey, resHash, confHash, zset, activeIndex
+    // ARGV: nowMs, requestId, amount, limit, holdMs, keepAliveMs, purgeCap, quotaKey ('' = no index)
+    static final String RESERVE_LUA = PURGE_LUA + """
+            local ckey = KEYS[1]
+            local res  = KEYS[2]
+            local conf = KEYS[3]
+            local zkey = KEYS[4]
+            local idx  = KEYS[5]
+
+            local now  = tonumber(ARGV[1])
+            local req  = ARGV[2]
+            local amt  = tonumber(ARGV[3])
+            local lim  = tonumber(ARGV[4])
+            local hold = tonumber(ARGV[5])
+            local keep = tonumber(ARGV[6])
+            local cap  = tonumber(ARGV[7])
+            local qkey = ARGV[8]
+
+            purge(ckey, res, zkey, now, cap)
+
+            -- duplicate?
+            local a_res = redis.call('HGET', res, req)
+            if a_res then
+              local cur = tonumber(redis.call('GET', ckey) or '0')
+              local holdUntil = tonumber(redis.call('ZSCORE', zkey, req) or '0')
+              redis.call('PEXPIRE', ckey, keep)
+              redis.call('PEXPIRE', res, keep)
+              redis.call('PEXPIRE', conf, keep)
+              redis.call('PEXPIRE', zkey, keep)
+              return {2, cur, 1, holdUntil}
+            end
+            local a_conf = redis.call('HGET', conf, req)
+            if a_conf then
+              local cur = tonumber(redis.call('GET', ckey) or '0')
+              redis.call('PEXPIRE', ckey, keep)
+              redis.call('PEXPIRE', res, keep)
+              redis.call('PEXPIRE', conf, keep)
+              redis.call('PEXPIRE', zkey, keep)
+              return {2, cur, 2, 0}
+            end
+
+            local cur = tonumber(redis.call('GET', ckey) or '0')
+            if (cur + amt) > lim then
+              redis.call('PEXPIRE', ckey, keep)
+              redis.call('PEXPIRE', res, keep)
+              redis.call('PEXPIRE', conf, keep)
+              redis.call('PEXPIRE', zkey, keep)
+              return {0, cur, 0, 0}
+            end
+
+            local holdUntil = now + hold
+            redis.call('HSET', res, req, amt)
+            redis.call('ZADD', zkey, holdUntil, req)
+            cur = cur + amt
+            redis.call('SET', ckey, cur)
+            -- active index: score = earliest time this key may have something to sweep
+            if qkey ~= '' then
+              redis.call('ZADD', idx, 'LT', holdUntil, qkey)
+            end
+
+            redis.call('PEXPIRE', ckey, keep)
+            redis.call('PEXPIRE', res, keep)
+            redis.call('PEXPIRE', conf, keep)
+            redis.call('PEXPIRE', zkey, keep)
+
+            return {1, cur, 1, holdUntil}
+            """;
+
+    // KEYS: (ckey, resHash, confHash, zset) x distinct quota keys, then activeIndex
+    // ARGV: nowMs, keepAliveMs, allOrNothing(0|1), n, purgeCap, useIndex(0|1),
+    //       then n x (group, requestId, amount, limit, holdMs), then one quotaKey per group
+    // Return: n x [code, used, state, holdUntil], flattened, same order as the items
+    static final String RESERVE_ALL_LUA = PURGE_LUA + """
+            local now  = tonumber(ARGV[1])
+            local keep = tonumber(ARGV[2])
+            local allOrNothing = tonumber(ARGV[3])
+            local n    = tonumber(ARGV[4])
+            local cap  = tonumber(ARGV[5])
+            local useIndex = tonumber(ARGV[6])
+            local groups = (#KEYS - 1) / 4
+            local idx  = KEYS[#KEYS]
+
+            for g=0,groups-1 do
+              purge(KEYS[g*4+1], KEYS[g*4+2], KEYS[g*4+4], now, cap)
+            end
+
+            local items = {}
+            for i=1,n do
+              local b = 6 + (i-1)*5
+              items[i] = {tonumber(ARGV[b+1]), ARGV[b+2], tonumber(ARGV[b+3]), tonumber(ARGV[b+4]), tonumber(ARGV[b+5])}
+            end
+            local names = 6 + n*5
+
+            local out = {}
+
+            -- dry run: does every non-duplicate item fit, counting earlier items of the batch?
+            local fits = true
+            if allOrNothing == 1 then
+              local pending = {}
+              local seen = {}
+              for i=1,n do
+                local g, req, amt, lim = items[i][1], items[i][2], items[i][3], items[i][4]
+                local sk = g .. ':' .. req
+                if not seen[sk] then
+                  seen[sk] = true
+                  if redis.call('HEXISTS', KEYS[g*4+2], req) == 0 and redis.call('HEXISTS', KEYS[g*4+3], req) == 0 then
+                    local p = (pending[g] or 0) + amt
+                    pending[g] = p
+                    local cur = tonumber(redis.call('GET', KEYS[g*4+1]) or '0')
+                    if cur + p > lim then
+                      fits = false
+                      break
+                    end
+                  end
+                end
+              end
+            end
+
+            for i=1,n do
+              local g, req, amt, lim, hold = items[i][1], items[i][2], items[i][3], items[i][4], items[i][5]
+              local ckey = KEYS[g*4+1]
+              local res  = KEYS[g*4+2]
+              local conf = KEYS[g*4+3]
+              local zkey = KEYS[g*4+4]
+              local cur = tonumber(redis.call('GET', ckey) or '0')
+              local r
+              if redis.call('HEXISTS', res, req) == 1 then
+                r = {2, cur, 1, tonumber(redis.call('ZSCORE', zkey, req) or '0')}
+              elseif redis.call('HEXISTS', conf, req) == 1 then
+                r = {2, cur, 2, 0}
+              elseif (not fits) or (cur + amt) > lim then
+                r = {0, cur, 0, 0}
+              else
+                local holdUntil = now + hold
+                redis.call('HSET', res, req, amt)
+                redis.call('ZADD', zkey, holdUntil, req)
+                cur = cur + amt
+                redis.call('SET', ckey, cur)
+                if useIndex == 1 then
+                  redis.call('ZADD', idx, 'LT', holdUntil, ARGV[names + g + 1])
+                end
+                r = {1, cur, 1, holdUntil}
+              end
+              for j=1,4 do out[#out+1] = r[j] end
+            end
+
+            for i=1,#KEYS-1 do
+              redis.call('PEXPIRE', KEYS[i], keep)
+            end
+            return out
+            """;
+
+    // KEYS: (ckey, resHash, confHash, zset) x group keys
+    // ARGV: nowMs, requestId, keepAliveMs, purgeCap
+    // Return: per key [code, used, holdUntil], flattened; nothing is confirmed unless every key holds requestId
+    static final String CONFIRM_GROUP_LUA = PURGE_LUA + """
+            local now  = tonumber(ARGV[1])
+            local req  = ARGV[2]
+            local keep = tonumber(ARGV[3])
+            local cap  = tonumber(ARGV[4])
+            local groups = #KEYS / 4
+
+            for g=0,groups-1 do
+              purge(KEYS[g*4+1], KEYS[g*4+2], KEYS[g*4+4], now, cap)
+            end
+
+            local complete = true
+            for g=0,groups-1 do
+              if redis.call('HEXISTS', KEYS[g*4+2], req) == 0 and redis.call('HEXISTS', KEYS[g*4+3], req) == 0 then
+                complete = false
+              end
+            end
+
+            local out = {}
+            for g=0,groups-1 do
+              local ckey = KEYS[g*4+1]
+              local res  = KEYS[g*4+2]
+              local conf = KEYS[g*4+3]
+              local zkey = KEYS[g*4+4]
+              local cur = tonumber(redis.call('GET', ckey) or '0')
+              local a = redis.call('HGET', res, req)
+              local code = 0
+              local holdUntil = 0
+              if redis.call('HEXISTS', conf, req) == 1 then
+                code = 2
+              elseif a and complete then
+                redis.call('HDEL', res, req)
+                redis.call('ZREM', zkey, req)
+                redis.call('HSET', conf, req, a)
+                code = 1
+              elseif a then
+                code = 3
+                holdUntil = tonumber(redis.call('ZSCORE', zkey, req) or '0')
+              end
+              out[#out+1] = code
+              out[#out+1] = cur
+              out[#out+1] = holdUntil
+            end
+
+            for i=1,#KEYS do
+              redis.call('PEXPIRE', KEYS[i], keep)
+            end
+            return out
+            """;
+
+    // KEYS: (ckey, resHash, confHash, zset) x group keys
+    // ARGV: nowMs, requestId, allowReleaseConfirmed(0|1), keepAliveMs, purgeCap
+    // Return: per key [code, used], flattened
+    static final String RELEASE_GROUP_LUA = PURGE_LUA + """
+            local now  = tonumber(ARGV[1])
+            local req  = ARGV[2]
+            local allowConf = tonumber(ARGV[3])
+            local keep = tonumber(ARGV[4])
+            local cap  = tonumber(ARGV[5])
+            local groups = #KEYS / 4
+
+            for g=0,groups-1 do
+              purge(KEYS[g*4+1], KEYS[g*4+2], KEYS[g*4+4], now, cap)
+            end
+
+            local out = {}
+            for g=0,groups-1 do
+              local ckey = KEYS[g*4+1]
+              local res  = KEYS[g*4+2]
+              local conf = KEYS[g*4+3]
+              local zkey = KEYS[g*4+4]
+              local cur = tonumber(redis.call('GET', ckey) or '0')
+              local code = 0
+              local a = redis.call('HGET', res, req)
+              if a then
+                redis.call('HDEL', res, req)
+                redis.call('ZREM', zkey, req)
+                cur = cur - tonumber(a)
+                code = 1
+              elseif allowConf == 1 then
+                local b = redis.call('HGET', conf, req)
+                if b then
+                  redis.call('HDEL', conf, req)
+                  cur = cur - tonumber(b)
+                  code = 1
+                end
+              end
+              if code == 1 then
+                if cur < 0 then cur = 0 end
+                redis.call('SET', ckey, cur)
+              end
+              out[#out+1] = code
+              out[#out+1] = cur
+            end
+
+            for i=1,#KEYS do
+              redis.call('PEXPIRE', KEYS[i], keep)
+            end
+            return out
+            """;
+
+    // KEYS: ckey, resHash, confHash, zset
+    // ARGV: nowMs, requestId, keepAliveMs, purgeCap
+    static final String CONFIRM_LUA = PURGE_LUA + """
+            local ckey = KEYS[1]
+            local res  = KEYS[2]
+            local conf = KEYS[3]
+            local zkey = KEYS[4]
+
+            local now  = tonumber(ARGV[1])
+            local req  = ARGV[2]
+            local keep = tonumber(ARGV[3])
+            local cap  = tonumber(ARGV[4])
+
+            purge(ckey, res, zkey, now, cap)
+
+            local cur = tonumber(redis.call('GET', ckey) or '0')
+
+            if redis.call('HGET', conf, req) then
+              redis.call('PEXPIRE', ckey, keep)
+              redis.call('PEXPIRE', res, keep)
+              redis.call('PEXPIRE', conf, keep)
+              redis.call('PEXPIRE', zkey, keep)
+              return {2, cur}
+            end
+
+            local a = redis.call('HGET', res, req)
+            if not a then
+              redis.call('PEXPIRE', ckey, keep)
+              redis.call('PEXPIRE', res, keep)
+              redis.call('PEXPIRE', conf, keep)
+              redis.call('PEXPIRE', zkey, keep)
+              return {0, cur}
+            end
+
+            redis.call('HDEL', res, req)
+            redis.call('ZREM', zkey, req)
+            redis.call('HSET', conf, req, a)
+
+            redis.call('PEXPIRE', ckey, keep)
+            redis.call('PEXPIRE', res, keep)
+            redis.call('PEXPIRE', conf, keep)
+            redis.call('PEXPIRE', zkey, keep)
+
+            return {1, cur}
+            """;
+
+    // KEYS: ckey, resHash, confHash, zset
+    // ARGV: nowMs, requestId, allowReleaseConfirmed(0|1), keepAliveMs, purgeCap
+    static final String RELEASE_LUA = PURGE_LUA + """
+            local ckey = KEYS[1]
+            local res  = KEYS[2]
+            local conf = KEYS[3]
+            local zkey = KEYS[4]
+
+            local now  = tonumber(ARGV[1])
+            local req  = ARGV[2]
+            local allowConf = tonumber(ARGV[3])
+            local keep = tonumber(ARGV[4])
+            local cap  = tonumber(ARGV[5])
+
+            purge(ckey, res, zkey, now, cap)
+
+            local cur = tonumber(redis.call('GET', ckey) or '0')
+
+            local a = redis.call('HGET', res, req)
+            if a then
+              redis.call('HDEL', res, req)
+              redis.call('ZREM', zkey, req)
+              cur = cur - tonumber(a)
+              if cur < 0 then cur = 0 end
+              redis.call('SET', ckey, cur)
+
+              redis.call('PEXPIRE', ckey, keep)
+              redis.call('PEXPIRE', res, keep)
+              redis.call('PEXPIRE', conf, keep)
+              redis.call('PEXPIRE', zkey, keep)
+
+              return {1, cur}
+            end
+
+            if allowConf == 1 then
+              local b = redis.call('HGET', conf, req)
+              if b then
+                redis.call('HDEL', conf, req)
+                cur = cur - tonumber(b)
+                if cur < 0 then cur = 0 end
+                redis.call('SET', ckey, cur)
+
+                redis.call('PEXPIRE', ckey, keep)
+                redis.call('PEXPIRE', res, keep)
+                redis.call('PEXPIRE', conf, keep)
+                redis.call('PEXPIRE', zkey, keep)
+
+                return {1, cur}
+              end
+            end
+
+            redis.call('PEXPIRE', ckey, keep)
+            redis.call('PEXPIRE', res, keep)
+            redis.call('PEXPIRE', conf, keep)
+            redis.call('PEXPIRE', zkey, keep)
+
+            return {0, cur}
+            """;
+
+    // KEYS: ckey, resHash, confHash, zset, activeIndex
+    // ARGV: nowMs, purgeCap, quotaKey
+    // Return: [holds purged, 1 if more expired holds remain else 0]
+    static final String SWEEP_LUA = PURGE_LUA + """
+            local ckey = KEYS[1]
+            local res  = KEYS[2]
+            local zkey = KEYS[4]
+            local idx  = KEYS[5]
+
+            local now  = tonumber(ARGV[1])
+            local cap  = tonumber(ARGV[2])
+            local qkey = ARGV[3]
+
+            local purged = purge(ckey, res, zkey, now, cap)
+
+            -- re-score the key with its next expiry, or drop it from the index when nothing is held
+            local head = redis.call('ZRANGE', zkey, 0, 0, 'WITHSCORES')
+            if #head == 0 then
+              redis.call('ZREM', idx, qkey)
+              return {purged, 0}
+            end
+            local nextExp = tonumber(head[2])
+            redis.call('ZADD', idx, nextExp, qkey)
+            if nextExp <= now then
+              return {purged, 1}
+            end
+            return {purged, 0}
+            """;
+}
@@ -0,0 +1,296 @@
+package com.myorg.lsf.quota.impl.streams;
+
+import com.myorg.lsf.quota.api.QuotaDecision;
+import com.myorg.lsf.quota.api.QuotaState;
+import com.myorg.lsf.quota.config.LsfQuotaProperties;
+import com.myorg.lsf.quota.obs.QuotaMetrics;
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.processor.PunctuationType;
+import org.apache.kafka.streams.processor.api.Processor;
+import org.apache.kafka.streams.processor.api.ProcessorContext;
+import org.apache.kafka.streams.processor.api.Record;
+import org.apache.kafka.streams.state.KeyValueIterator;
+import org.apache.kafka.streams.state.KeyValueStore;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Applies {@link QuotaOp}s of the partitions owned by one stream task.
+ *
+ * State is split so an op on a hot key reads and writes a few small entries instead of
+ * the whole bucket:
+ * <ul>
+ *   <li>{@code buckets}: quotaKey → used, live holds, last access, next deadline</li>
+ *   <li>{@code holds}: quotaKey \0 requestId → state, amount, expiresAt (confirmed holds too)</li>
+ *   <li>{@code expiry}: quotaKey \0 expiresAt \0 requestId, per-key expiry order for the inline purge</li>
+ *   <li>{@code due}: deadline \0 quotaKey, one entry per key: earliest hold expiry, or
+ *       last access + keep-alive when nothing is held (the Redis key TTL / memory eviction)</li>
+ * </ul>
+ * Times are zero-padded so byte order is time order. Every op purges the expired holds of
+ * its own key first, like the Redis scripts; the wall-clock punctuator handles keys nobody
+ * touches. Decisions are those of the memory backend.
+ */
+class QuotaBucketProcessor implements Processor<String, QuotaOp, String, QuotaOpReply> {
+
+    private static final char SEP = '\u0000';
+    private static final String AFTER_SEP = "\u0001";
+
+    private final LsfQuotaProperties props;
+    private final QuotaMetrics metrics;
+    private final long keepAliveMs;
+
+    private ProcessorContext<String, QuotaOpReply> context;
+    private KeyValueStore<String, byte[]> buckets;
+    private KeyValueStore<String, byte[]> holds;
+    private KeyValueStore<String, byte[]> expiry;
+    private KeyValueStore<String, byte[]> due;
+
+    QuotaBucketProcessor(LsfQuotaProperties props, QuotaMetrics metrics) {
+        this.props = props;
+        this.metrics = metrics;
+        this.keepAliveMs = Duration.ofSeconds(props.getKeepAliveSeconds()).toMillis();
+    }
+
+    @Override
+    public void init(ProcessorContext<String, QuotaOpReply> context) {
+        this.context = context;
+        this.buckets = context.getStateStore(QuotaStreamsTopology.BUCKETS_STORE);
+        this.holds = context.getStateStore(QuotaStreamsTopology.HOLDS_STORE);
+        this.expiry = context.getStateStore(QuotaStreamsTopology.EXPIRY_STORE);
+        this.due = context.getStateStore(QuotaStreamsTopology.DUE_STORE);
+        context.schedule(Duration.ofMillis(props.getStreams().getPunctuateIntervalMs()),
+                PunctuationType.WALL_CLOCK_TIME, this::sweep);
+    }
+
+    @Override
+    public void process(Record<String, QuotaOp> record) {
+        QuotaOp op = record.value();
+        if (op == null || op.id() == null || op.quotaKey() == null || op.requestId() == null || op.type() == null) return;
+
+        long now = context.currentSystemTimeMs();
+        Bucket b = loadBucket(op.quotaKey());
+        boolean existed = b != null;
+        if (b == null) {
+            b = new Bucket();
+        } else {
+            int purged = purgeExpired(op.quotaKey(), b, now);
+            if (purged > 0 && metrics != null) metrics.incExpired(purged);
+        }
+
+        QuotaOpReply reply = switch (op.type()) {
+            case RESERVE -> reserve(op, b, now);
+            case CONFIRM -> confirm(op, b);
+            case RELEASE -> release(op, b);
+        };
+        // confirm / release trên key chưa từng reserve: không tạo bucket rỗng
+        if (existed || reply.decision() == QuotaDecision.ACCEPTED) {
+            b.lastAccessMs = now;
+            saveBucket(op.quotaKey(), b);
+        }
+        context.forward(record.withKey(op.id()).withValue(reply));
+    }
+
+    private QuotaOpReply reserve(QuotaOp op, Bucket b, long now) {
+        Hold h = loadHold(op.quotaKey(), op.requestId());
+        if (h != null) {
+            boolean confirmed = h.state == QuotaState.CONFIRMED;
+            return reply(op, QuotaDecision.DUPLICATE, h.state, b.used, op.limit(), confirmed ? 0 : h.expiresAtMs);
+        }
+        int amount = Math.max(1, op.amount());
+        if (b.used + amount > op.limit()) {
+            return reply(op, QuotaDecision.REJECTED, null, b.used, op.limit(), 0);
+        }
+        long exp = now + Math.max(1, op.holdMs());
+        holds.put(holdKey(op.quotaKey(), op.requestId()), new Hold(QuotaState.RESERVED, amount, exp).encode());
+        expiry.put(expiryKey(op.quotaKey(), exp, op.requestId()), new byte[0]);
+        b.used += amount;
+        b.holds++;
+        return reply(op, QuotaDecision.ACCEPTED, QuotaState.RESERVED, b.used, op.limit(), exp);
+    }
+
+    private QuotaOpReply confirm(QuotaOp op, Bucket b) {
+        Hold h = loadHold(op.quotaKey(), op.requestId());
+        if (h == null) return reply(op, QuotaDecision.NOT_FOUND, null, b.used, 0, 0);
+        if (h.state == QuotaState.CONFIRMED) return reply(op, QuotaDecision.DUPLICATE, QuotaState.CONFIRMED, b.used, 0, 0);
+
+        expiry.delete(expiryKey(op.quotaKey(), h.expiresAtMs, op.requestId()));
+        holds.put(holdKey(op.quotaKey(), op.requestId()), new Hold(QuotaState.CONFIRMED, h.amount, 0).encode());
+        b.holds--;
+        return reply(op, QuotaDecision.ACCEPTED, QuotaState.CONFIRMED, b.used, 0, 0);
+    }
+
+    private QuotaOpReply release(QuotaOp op, Bucket b) {
+        Hold h = loadHold(op.quotaKey(), op.requestId());
+        if (h == null || (h.state == QuotaState.CONFIRMED && !props.isAllowReleaseConfirmed())) {
+            return reply(op, QuotaDecision.NOT_FOUND, null, b.used, 0, 0);
+        }
+        holds.delete(holdKey(op.quotaKey(), op.requestId()));
+        if (h.state == QuotaState.RESERVED) {
+            expiry.delete(expiryKey(op.quotaKey(), h.expiresAtMs, op.requestId()));
+            b.holds--;
+        }
+        b.used -= h.amount;
+        return reply(op, QuotaDecision.ACCEPTED, null, b.used, 0, 0);
+    }
+
+    /** Drops the holds of one key whose expiry is at or before {@code now}; returns how many. */
+    private int purgeExpired(String quotaKey, Bucket b, long now) {
+        List<KeyValue<String, byte[]>> expired = new ArrayList<>();
+        try (KeyValueIterator<String, byte[]> it = expiry.range(quotaKey + SEP, quotaKey + SEP + pad(now + 1))) {
+            while (it.hasNext()) expired.add(it.next());
+        }
+        for (KeyValue<String, byte[]> e : expired) {
+            expiry.delete(e.key);
+            String requestId = e.key.substring(e.key.lastIndexOf(SEP) + 1);
+            Hold h = loadHold(quotaKey, requestId);
+            if (h == null || h.state != QuotaState.RESERVED || h.expiresAtMs > now) continue;
+            holds.delete(holdKey(quotaKey, requestId));
+            b.used -= h.amount;
+            b.holds--;
+        }
+        return expired.size();
+    }
+
+    /**
+     * Wall-clock punctuation: visits at most {@code sweep-keys-per-run} keys whose deadline
+     * has passed, purges their expired holds and evicts the ones idle for keep-alive.
+     */
+    void sweep(long now) {
+        long startNanos = System.nanoTime();
+        int limit = props.getStreams().getSweepKeysPerRun();
+        List<String> dueKeys = new ArrayList<>();
+        boolean more = false;
+        try (KeyValueIterator<String, byte[]> it = due.range(pad(0), pad(now + 1))) {
+            while (it.hasNext()) {
+                if (dueKeys.size() == limit) {
+                    more = true;
+                    break;
+                }
+                dueKeys.add(it.next().key);
+            }
+        }
+
+        int purged = 0;
+        int evicted = 0;
+        for (String dk : dueKeys) {
+            String quotaKey = dk.substring(dk.indexOf(SEP) + 1);
+            Bucket b = loadBucket(quotaKey);
+            if (b == null) {
+                due.delete(dk);
+                continue;
+            }
+            // recordSweep cộng số này vào lsf.quota.expired
+            purged += purgeExpired(quotaKey, b, now);
+            if (b.holds == 0 && now - b.lastAccessMs >= keepAliveMs) {
+                evict(quotaKey, b);
+                evicted++;
+            } else {
+                saveBucket(quotaKey, b);
+            }
+        }
+        if (metrics != null) {
+            if (evicted > 0) metrics.incEvictedIdle(evicted);
+            metrics.recordSweep(dueKeys.size(), purged, more ? 1 : 0, System.nanoTime() - startNanos);
+        }
+    }
+
+    private void evict(String quotaKey, Bucket b) {
+        List<String> keys = new ArrayList<>();
+        try (KeyValueIterator<String, byte[]> it = holds.range(quotaKey + SEP, quotaKey + AFTER_SEP)) {
+            while (it.hasNext()) keys.add(it.next().key);
+        }
+        keys.forEach(holds::delete);
+        due.delete(dueKey(b.dueMs, quotaKey));
+        buckets.delete(quotaKey);
+    }
+
+    private void saveBucket(String quotaKey, Bucket b) {
+        long next = b.holds > 0 ? earliestExpiry(quotaKey) : b.lastAccessMs + keepAliveMs;
+        if (next != b.dueMs) {
+            if (b.dueMs != 0) due.delete(dueKey(b.dueMs, quotaKey));
+            due.put(dueKey(next, quotaKey), new byte[0]);
+            b.dueMs = next;
+        }
+        buckets.put(quotaKey, b.encode());
+    }
+
+    private long earliestExpiry(String quotaKey) {
+        try (KeyValueIterator<String, byte[]> it = expiry.range(quotaKey + SEP, quotaKey + AFTER_SEP)) {
+            if (!it.hasNext()) return Long.MAX_VALUE;
+            String k = it.next().key;
+            int from = quotaKey.length() + 1;
+            return Long.parseLong(k.substring(from, k.indexOf(SEP, from)));
+        }
+    }
+
+    private Bucket loadBucket(String quotaKey) {
+        byte[] raw = buckets.get(quotaKey);
+        return raw == null ? null : Bucket.decode(raw);
+    }
+
+    private Hold loadHold(String quotaKey, String requestId) {
+        byte[] raw = holds.get(holdKey(quotaKey, requestId));
+        return raw == null ? null : Hold.decode(raw);
+    }
+
+    private static QuotaOpReply reply(QuotaOp op, QuotaDecision decision, QuotaState state, int used, int limit, long holdUntil) {
+        return new QuotaOpReply(op.id(), decision, state, used, limit, holdUntil);
+    }
+
+    static String holdKey(String quotaKey, String requestId) {
+        return quotaKey + SEP + requestId;
+    }
+
+    static String expiryKey(String quotaKey, long expiresAtMs, String requestId) {
+        return quotaKey + SEP + pad(expiresAtMs) + SEP + requestId;
+    }
+
+    static String dueKey(long dueMs, String quotaKey) {
+        return pad(dueMs) + SEP + quotaKey;
+    }
+
+    // 19 chữ số: đủ cho mọi long dương, so sánh byte = so sánh số
+    private static String pad(long ms) {
+        return String.format("%019d", Math.max(0, ms));
+    }
+
+    /** Header of one quota key: 24 bytes. */
+    static final class Bucket {
+        int used;
+        int holds;
+        long lastAccessMs;
+        long dueMs;
+
+        byte[] encode() {
+            return ByteBuffer.allocate(24).putInt(used).putInt(holds).putLong(lastAccessMs).putLong(dueMs).array();
+        }
+
+        static Bucket decode(byte[] raw) {
+            ByteBuffer buf = ByteBuffer.wrap(raw);
+            Bucket b = new Bucket();
+            b.used = buf.getInt();
+            b.holds = buf.getInt();
+            b.lastAccessMs = buf.getLong();
+            b.dueMs = buf.getLong();
+            return b;
+        }
+    }
+
+    /** One hold or confirmed amount: 13 bytes. */
+    record Hold(QuotaState state, int amount, long expiresAtMs) {
+
+        byte[] encode() {
+            return ByteBuffer.allocate(13).put((byte) (state == QuotaState.CONFIRMED ? 2 : 1))
+                    .putInt(amount).putLong(expiresAtMs).array();
+        }
+
+        static Hold decode(byte[] raw) {
+            ByteBuffer buf = ByteBuffer.wrap(raw);
+            QuotaState state = buf.get() == 2 ? QuotaState.CONFIRMED : QuotaState.RESERVED;
+            return new Hold(state, buf.getInt(), buf.getLong());
+        }
+    }
+}
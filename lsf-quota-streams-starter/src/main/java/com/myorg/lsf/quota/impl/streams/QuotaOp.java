@@ -0,0 +1,18 @@
+package com.myorg.lsf.quota.impl.streams;
+
+/**
+ * One reserve / confirm / release sent to the ops topic, keyed by quotaKey so every
+ * operation of a key is applied by the one stream task that owns its partition.
+ * {@code limit} / {@code holdMs} are only read by RESERVE.
+ */
+public record QuotaOp(
+        String id,
+        Type type,
+        String quotaKey,
+        String requestId,
+        int amount,
+        int limit,
+        long holdMs
+) {
+    public enum Type { RESERVE, CONFIRM, RELEASE }
+}
@@ -0,0 +1,25 @@
+package com.myorg.lsf.quota.impl.streams;
+
+import com.myorg.lsf.quota.api.QuotaDecision;
+import com.myorg.lsf.quota.api.QuotaResult;
+import com.myorg.lsf.quota.api.QuotaState;
+
+/** Decision of one {@link QuotaOp}, keyed by the op id on the reply topic. */
+public record QuotaOpReply(
+        String id,
+        QuotaDecision decision,
+        QuotaState state,
+        int used,
+        int limit,
+        long holdUntilEpochMs
+) {
+    QuotaResult toResult() {
+        return QuotaResult.builder()
+                .decision(decision)
+                .state(state)
+                .used(used)
+                .limit(limit)
+                .holdUntilEpochMs(holdUntilEpochMs)
+                .build();
+    }
+}
@@ -0,0 +1,48 @@
+package com.myorg.lsf.quota.impl.streams;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serde;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.common.serialization.Serializer;
+
+/**
+ * Plain JSON for the internal ops / reply topics: both ends are this starter, so no schema
+ * registry round trip (SerdeFactory of lsf-kafka-starter) is needed on the hot path.
+ */
+public final class QuotaStreamsSerdes {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private QuotaStreamsSerdes() {
+    }
+
+    public static Serde<QuotaOp> op() {
+        return json(QuotaOp.class);
+    }
+
+    public static Serde<QuotaOpReply> reply() {
+        return json(QuotaOpReply.class);
+    }
+
+    private static <T> Serde<T> json(Class<T> type) {
+        Serializer<T> serializer = (topic, value) -> {
+            if (value == null) return null;
+            try {
+                return MAPPER.writeValueAsBytes(value);
+            } catch (Exception e) {
+                throw new SerializationException("Cannot serialize " + type.getSimpleName(), e);
+            }
+        };
+        Deserializer<T> deserializer = (topic, data) -> {
+            if (data == null) return null;
+            try {
+                return MAPPER.readValue(data, type);
+            } catch (Exception e) {
+                throw new SerializationException("Cannot deserialize " + type.getSimpleName() + " from " + topic, e);
+            }
+        };
+        return Serdes.serdeFrom(serializer, deserializer);
+    }
+}
@@ -0,0 +1,80 @@
+package com.myorg.lsf.quota.impl.streams;
+
+import com.myorg.lsf.quota.config.LsfQuotaProperties;
+import org.apache.kafka.clients.admin.Admin;
+import org.apache.kafka.clients.admin.AdminClientConfig;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.common.config.TopicConfig;
+import org.apache.kafka.common.errors.TopicExistsException;
+import org.apache.kafka.common.errors.UnknownTopicOrPartitionException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ops / reply topics of the streams backend: created when missing ({@code create-topics}),
+ * otherwise required to exist, so a missing topic fails the startup instead of every call.
+ */
+final class QuotaStreamsTopics {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+    /** Reply chỉ có ý nghĩa trong request-timeout-ms: không cần giữ lâu */
+    private static final Duration REPLY_RETENTION = Duration.ofHours(1);
+
+    private QuotaStreamsTopics() {
+    }
+
+    static void prepare(String bootstrapServers, LsfQuotaProperties.Streams cfg, String replyTopic) {
+        try (Admin admin = Admin.create(Map.of(AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers))) {
+            if (cfg.isCreateTopics()) {
+                Optional<Short> replication = cfg.getReplicationFactor() > 0
+                        ? Optional.of((short) cfg.getReplicationFactor()) : Optional.empty();
+                List<NewTopic> topics = new ArrayList<>();
+                topics.add(new NewTopic(cfg.getOpsTopic(), Optional.of(cfg.getOpsPartitions()), replication));
+                topics.add(new NewTopic(replyTopic, Optional.of(1), replication)
+                        .configs(Map.of(TopicConfig.RETENTION_MS_CONFIG, String.valueOf(REPLY_RETENTION.toMillis()))));
+                for (var created : admin.createTopics(topics).values().entrySet()) {
+                    try {
+                        created.getValue().get(TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+                    } catch (ExecutionException e) {
+                        if (!(e.getCause() instanceof TopicExistsException)) throw failure("create", created.getKey(), e);
+                    }
+                }
+            }
+            Set<String> existing = admin.listTopics().names().get(TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+            for (String topic : List.of(cfg.getOpsTopic(), replyTopic)) {
+                if (!existing.contains(topic)) {
+                    throw new IllegalStateException("Quota topic " + topic + " does not exist: create it or set lsf.quota.streams.create-topics=true");
+                }
+            }
+        } catch (IllegalStateException e) {
+            throw e;
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+            throw failure("check", cfg.getOpsTopic() + ", " + replyTopic, e);
+        }
+    }
+
+    /** Xoá reply topic riêng của instance khi đóng; crash thì topic còn lại nhưng chỉ giữ reply {@link #REPLY_RETENTION}. */
+    static void delete(String bootstrapServers, String topic) {
+        try (Admin admin = Admin.create(Map.of(AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers))) {
+            admin.deleteTopics(List.of(topic)).all().get(TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (!(e.getCause() instanceof UnknownTopicOrPartitionException)) throw failure("delete", topic, e);
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+            throw failure("delete", topic, e);
+        }
+    }
+
+    private static IllegalStateException failure(String action, String topic, Exception e) {
+        Throwable cause = (e instanceof ExecutionException && e.getCause() != null) ? e.getCause() : e;
+        return new IllegalStateException("Cannot " + action + " quota topic " + topic, cause);
+    }
+}
@@ -0,0 +1,51 @@
+package com.myorg.lsf.quota.impl.streams;
+
+import com.myorg.lsf.quota.config.LsfQuotaProperties;
+import com.myorg.lsf.quota.obs.QuotaMetrics;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.serialization.Serde;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.streams.Topology;
+import org.apache.kafka.streams.processor.TopicNameExtractor;
+import org.apache.kafka.streams.state.Stores;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * ops topic → {@link QuotaBucketProcessor} (4 persistent stores, RocksDB + changelog) → reply topic.
+ *
+ * The reply goes to the topic named in the {@link #REPLY_TO_HEADER} of the op, so every
+ * instance can read its own reply topic; ops without the header answer on {@code reply-topic}.
+ */
+public final class QuotaStreamsTopology {
+
+    public static final String BUCKETS_STORE = "lsf-quota-buckets";
+    public static final String HOLDS_STORE = "lsf-quota-holds";
+    public static final String EXPIRY_STORE = "lsf-quota-expiry";
+    public static final String DUE_STORE = "lsf-quota-due";
+    public static final String REPLY_TO_HEADER = "lsf-quota-reply-to";
+
+    private QuotaStreamsTopology() {
+    }
+
+    public static Topology build(LsfQuotaProperties props, QuotaMetrics metrics) {
+        var cfg = props.getStreams();
+        Serde<QuotaOp> opSerde = QuotaStreamsSerdes.op();
+        Serde<QuotaOpReply> replySerde = QuotaStreamsSerdes.reply();
+        String defaultReplyTopic = cfg.getReplyTopic();
+        TopicNameExtractor<String, QuotaOpReply> replyTo = (key, value, ctx) -> {
+            Header h = ctx.headers().lastHeader(REPLY_TO_HEADER);
+            return h == null ? defaultReplyTopic : new String(h.value(), StandardCharsets.UTF_8);
+        };
+
+        Topology topology = new Topology();
+        topology.addSource("lsf-quota-ops", Serdes.String().deserializer(), opSerde.deserializer(), cfg.getOpsTopic());
+        topology.addProcessor("lsf-quota-buckets", () -> new QuotaBucketProcessor(props, metrics), "lsf-quota-ops");
+        for (String store : new String[]{BUCKETS_STORE, HOLDS_STORE, EXPIRY_STORE, DUE_STORE}) {
+            topology.addStateStore(Stores.keyValueStoreBuilder(
+                    Stores.persistentKeyValueStore(store), Serdes.String(), Serdes.ByteArray()), "lsf-quota-buckets");
+        }
+        topology.addSink("lsf-quota-replies", replyTo, Serdes.String().serializer(), replySerde.serializer(), "lsf-quota-buckets");
+        return topology;
+    }
+}
@@ -0,0 +1,382 @@
+package com.myorg.lsf.quota.impl.streams;
+
+import com.myorg.lsf.quota.api.QuotaBatchMode;
+import com.myorg.lsf.quota.api.QuotaDecision;
+import com.myorg.lsf.quota.api.QuotaHold;
+import com.myorg.lsf.quota.api.QuotaRequest;
+import com.myorg.lsf.quota.api.QuotaResult;
+import com.myorg.lsf.quota.api.QuotaService;
+import com.myorg.lsf.quota.config.LsfQuotaProperties;
+import com.myorg.lsf.quota.obs.QuotaMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.RecordDeserializationException;
+import org.apache.kafka.common.errors.WakeupException;
+import org.apache.kafka.common.header.internals.RecordHeader;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.apache.kafka.streams.KafkaStreams;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.errors.LogAndContinueExceptionHandler;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * {@link QuotaService} on Kafka Streams: each call is a {@link QuotaOp} on the ops topic
+ * (key = quotaKey) applied by the stream task owning that partition, answered on the reply
+ * topic. Capacity scales with partitions and the state is restored from the changelog
+ * topics after a restart or a rebalance, with no Redis tier.
+ *
+ * A call that times out may still be applied later; retrying it with the same requestId
+ * is safe (DUPLICATE). Batches send every op before waiting, so they cost one round trip.
+ * {@code shards} is ignored: partitions already spread the keys.
+ *
+ * Each instance reads its own reply topic ({@code reply-topic-per-instance}), so reply
+ * traffic per instance follows its own calls, not the total of every instance. A reply that
+ * cannot be read is skipped and consumer errors are retried, like the ops side.
+ */
+@Slf4j
+public class StreamsQuotaService implements QuotaService, AutoCloseable {
+
+    private static final long REPLY_RETRY_MIN_MS = 100;
+    private static final long REPLY_RETRY_MAX_MS = 5000;
+
+    private final Producer<String, QuotaOp> producer;
+    private final Consumer<String, QuotaOpReply> replies;
+    private final KafkaStreams streams;
+    private final LsfQuotaProperties props;
+    private final QuotaMetrics metrics;
+    private final String replyTopic;
+    private final Map<String, CompletableFuture<QuotaOpReply>> pending = new ConcurrentHashMap<>();
+    private volatile boolean running;
+    private Thread replyThread;
+    /** Admin bootstrap để xoá reply topic riêng khi đóng; null = không xoá */
+    private String deleteReplyTopicVia;
+
+    /**
+     * @param replies consumer of the reply topic, polled by {@link #start()}; may be null when
+     *                replies are handed to {@link #onReply} by the caller (tests)
+     * @param streams the topology runner owned by this service, or null
+     */
+    public StreamsQuotaService(Producer<String, QuotaOp> producer, Consumer<String, QuotaOpReply> replies,
+                               KafkaStreams streams, LsfQuotaProperties props, QuotaMetrics metrics) {
+        this(producer, replies, streams, props, metrics, props.getStreams().getReplyTopic());
+    }
+
+    /** @param replyTopic topic this instance reads its replies from, sent in {@link QuotaStreamsTopology#REPLY_TO_HEADER} */
+    public StreamsQuotaService(Producer<String, QuotaOp> producer, Consumer<String, QuotaOpReply> replies,
+                               KafkaStreams streams, LsfQuotaProperties props, QuotaMetrics metrics, String replyTopic) {
+        this.producer = producer;
+        this.replies = replies;
+        this.streams = streams;
+        this.props = props;
+        this.metrics = metrics;
+        this.replyTopic = replyTopic;
+    }
+
+    /** {@code <reply-topic>-<instance-id>}, or the shared {@code reply-topic} when reply-topic-per-instance is off. */
+    static String replyTopicOf(LsfQuotaProperties.Streams cfg, String instanceId) {
+        return cfg.isReplyTopicPerInstance() ? cfg.getReplyTopic() + "-" + instanceId : cfg.getReplyTopic();
+    }
+
+    /**
+     * Creates (or checks) the ops and reply topics, builds the topology, producer and reply
+     * consumer from {@code lsf.quota.streams}, then starts them.
+     */
+    public static StreamsQuotaService create(LsfQuotaProperties props, QuotaMetrics metrics, String bootstrapServers) {
+        var cfg = props.getStreams();
+        String instanceId = (cfg.getInstanceId() == null || cfg.getInstanceId().isBlank())
+                ? UUID.randomUUID().toString() : cfg.getInstanceId();
+        String replyTopic = replyTopicOf(cfg, instanceId);
+        QuotaStreamsTopics.prepare(bootstrapServers, cfg, replyTopic);
+
+        Properties sp = new Properties();
+        sp.put(StreamsConfig.APPLICATION_ID_CONFIG, cfg.getApplicationId());
+        sp.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        sp.put(StreamsConfig.NUM_STREAM_THREADS_CONFIG, cfg.getNumStreamThreads());
+        sp.put(StreamsConfig.PROCESSING_GUARANTEE_CONFIG, cfg.getProcessingGuarantee());
+        sp.put(StreamsConfig.DEFAULT_DESERIALIZATION_EXCEPTION_HANDLER_CLASS_CONFIG, LogAndContinueExceptionHandler.class);
+        if (cfg.getStateDir() != null && !cfg.getStateDir().isBlank()) {
+            sp.put(StreamsConfig.STATE_DIR_CONFIG, cfg.getStateDir());
+        }
+        KafkaStreams streams = new KafkaStreams(QuotaStreamsTopology.build(props, metrics), sp);
+
+        Map<String, Object> pp = Map.of(
+                ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers,
+                ProducerConfig.LINGER_MS_CONFIG, 1,
+                ProducerConfig.ACKS_CONFIG, "all");
+        Producer<String, QuotaOp> producer = new KafkaProducer<>(pp, new StringSerializer(), QuotaStreamsSerdes.op().serializer());
+
+        // không group: mỗi instance tự assign reply topic của mình, bắt đầu từ cuối
+        Map<String, Object> cp = Map.of(
+                ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers,
+                ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false,
+                ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "latest");
+        Consumer<String, QuotaOpReply> replies = new KafkaConsumer<>(cp, new StringDeserializer(), QuotaStreamsSerdes.reply().deserializer());
+
+        StreamsQuotaService service = new StreamsQuotaService(producer, replies, streams, props, metrics, replyTopic);
+        if (cfg.isReplyTopicPerInstance() && cfg.isCreateTopics()) service.deleteReplyTopicVia = bootstrapServers;
+        service.start();
+        return service;
+    }
+
+    /**
+     * Positions the reply consumer at the end of the reply topic, then starts it and the topology.
+     *
+     * @throws IllegalStateException when the reply topic has no partitions
+     */
+    public void start() {
+        if (replies != null) {
+            List<PartitionInfo> infos = replies.partitionsFor(replyTopic);
+            if (infos == null || infos.isEmpty()) {
+                // assign(empty) làm poll ném lỗi trên reply thread: báo ngay lúc khởi động thay vì timeout mọi lệnh
+                throw new IllegalStateException("Quota reply topic " + replyTopic + " has no partitions: create it first");
+            }
+            List<TopicPartition> partitions = new ArrayList<>();
+            for (PartitionInfo p : infos) {
+                partitions.add(new TopicPartition(p.topic(), p.partition()));
+            }
+            replies.assign(partitions);
+            replies.seekToEnd(partitions);
+            // position() chốt offset cuối ngay bây giờ: reply của lệnh gửi sau đây không bị bỏ lỡ
+            partitions.forEach(replies::position);
+            running = true;
+            replyThread = new Thread(this::pollReplies, "lsf-quota-streams-replies");
+            replyThread.setDaemon(true);
+            replyThread.start();
+        }
+        if (streams != null) streams.start();
+    }
+
+    private void pollReplies() {
+        long backoffMs = 0;
+        try {
+            while (running) {
+                ConsumerRecords<String, QuotaOpReply> batch;
+                try {
+                    batch = replies.poll(Duration.ofMillis(500));
+                } catch (WakeupException e) {
+                    continue;   // close(): running đã là false
+                } catch (RecordDeserializationException e) {
+                    // như LogAndContinueExceptionHandler phía ops: bỏ qua record hỏng, không chặn partition
+                    log.warn("quota.streams skipped unreadable reply partition={} offset={}: {}",
+                            e.topicPartition(), e.offset(), e.getMessage());
+                    replies.seek(e.topicPartition(), e.offset() + 1);
+                    continue;
+                } catch (KafkaException e) {
+                    backoffMs = (backoffMs == 0) ? REPLY_RETRY_MIN_MS : Math.min(backoffMs * 2, REPLY_RETRY_MAX_MS);
+                    if (backoffMs == REPLY_RETRY_MIN_MS) {
+                        log.warn("quota.streams reply consumer failed on {}, retrying: {}", replyTopic, e.toString());
+                    } else {
+                        log.debug("quota.streams reply consumer still failing on {}: {}", replyTopic, e.toString());
+                    }
+                    Thread.sleep(backoffMs);
+                    continue;
+                }
+                if (backoffMs > 0) {
+                    log.info("quota.streams reply consumer recovered on {}", replyTopic);
+                    backoffMs = 0;
+                }
+                for (ConsumerRecord<String, QuotaOpReply> record : batch) {
+                    if (record.value() != null) onReply(record.value());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            replies.close();
+        }
+    }
+
+    /** Completes the call waiting for {@code reply}; replies for other instances are ignored. */
+    void onReply(QuotaOpReply reply) {
+        CompletableFuture<QuotaOpReply> f = pending.remove(reply.id());
+        if (f != null) f.complete(reply);
+    }
+
+    @Override
+    public QuotaResult reserve(QuotaRequest req) {
+        return reserveResult(await(send(reserveOp(req))));
+    }
+
+    @Override
+    public QuotaResult confirm(String quotaKey, String requestId) {
+        return confirmResult(await(send(op(QuotaOp.Type.CONFIRM, quotaKey, requestId))));
+    }
+
+    @Override
+    public QuotaResult release(String quotaKey, String requestId) {
+        return releaseResult(await(send(op(QuotaOp.Type.RELEASE, quotaKey, requestId))));
+    }
+
+    @Override
+    public List<QuotaResult> reserveAll(List<QuotaRequest> requests, QuotaBatchMode mode) {
+        List<CompletableFuture<QuotaOpReply>> sent = new ArrayList<>(requests.size());
+        for (QuotaRequest req : requests) {
+            sent.add(send(reserveOp(req)));
+        }
+        List<QuotaResult> results = new ArrayList<>(requests.size());
+        boolean rejected = false;
+        for (CompletableFuture<QuotaOpReply> f : sent) {
+            QuotaResult r = reserveResult(await(f));
+            rejected |= r.decision() == QuotaDecision.REJECTED;
+            results.add(r);
+        }
+        if (!rejected || mode != QuotaBatchMode.ALL_OR_NOTHING) return results;
+
+        // các key nằm ở nhiều partition nên không nguyên tử: nhả bù những hold vừa giữ (chỉ có thể reject sớm)
+        List<CompletableFuture<QuotaOpReply>> undo = new ArrayList<>();
+        for (int i = 0; i < requests.size(); i++) {
+            QuotaResult r = results.get(i);
+            if (r.decision() == QuotaDecision.DUPLICATE) continue;
+            if (r.decision() == QuotaDecision.ACCEPTED) {
+                undo.add(send(op(QuotaOp.Type.RELEASE, requests.get(i).quotaKey(), requests.get(i).requestId())));
+            }
+            results.set(i, QuotaResult.builder()
+                    .decision(QuotaDecision.REJECTED)
+                    .state(null)
+                    .used(r.used())
+                    .limit(requests.get(i).limit())
+                    .holdUntilEpochMs(0)
+                    .build());
+        }
+        undo.forEach(this::await);
+        return results;
+    }
+
+    @Override
+    public List<QuotaResult> confirmAll(List<QuotaHold> holds) {
+        List<CompletableFuture<QuotaOpReply>> sent = new ArrayList<>(holds.size());
+        for (QuotaHold h : holds) {
+            sent.add(send(op(QuotaOp.Type.CONFIRM, h.quotaKey(), h.requestId())));
+        }
+        List<QuotaResult> results = new ArrayList<>(holds.size());
+        for (CompletableFuture<QuotaOpReply> f : sent) {
+            results.add(confirmResult(await(f)));
+        }
+        return results;
+    }
+
+    @Override
+    public List<QuotaResult> releaseAll(List<QuotaHold> holds) {
+        List<CompletableFuture<QuotaOpReply>> sent = new ArrayList<>(holds.size());
+        for (QuotaHold h : holds) {
+            sent.add(send(op(QuotaOp.Type.RELEASE, h.quotaKey(), h.requestId())));
+        }
+        List<QuotaResult> results = new ArrayList<>(holds.size());
+        for (CompletableFuture<QuotaOpReply> f : sent) {
+            results.add(releaseResult(await(f)));
+        }
+        return results;
+    }
+
+    private QuotaOp reserveOp(QuotaRequest req) {
+        Duration hold = (req.hold() != null) ? req.hold() : Duration.ofSeconds(props.getDefaultHoldSeconds());
+        return new QuotaOp(UUID.randomUUID().toString(), QuotaOp.Type.RESERVE, req.quotaKey(), req.requestId(),
+                req.amount(), req.limit(), hold.toMillis());
+    }
+
+    private static QuotaOp op(QuotaOp.Type type, String quotaKey, String requestId) {
+        return new QuotaOp(UUID.randomUUID().toString(), type, quotaKey, requestId, 0, 0, 0);
+    }
+
+    private CompletableFuture<QuotaOpReply> send(QuotaOp op) {
+        CompletableFuture<QuotaOpReply> f = new CompletableFuture<>();
+        pending.put(op.id(), f);
+        ProducerRecord<String, QuotaOp> record = new ProducerRecord<>(props.getStreams().getOpsTopic(), op.quotaKey(), op);
+        record.headers().add(new RecordHeader(QuotaStreamsTopology.REPLY_TO_HEADER,
+                replyTopic.getBytes(StandardCharsets.UTF_8)));
+        producer.send(record, (metadata, e) -> {
+            if (e != null && pending.remove(op.id()) != null) f.completeExceptionally(e);
+        });
+        return f;
+    }
+
+    private QuotaOpReply await(CompletableFuture<QuotaOpReply> f) {
+        long timeoutMs = props.getStreams().getRequestTimeoutMs();
+        try {
+            return f.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            pending.values().remove(f);
+            throw new IllegalStateException("No quota reply within " + timeoutMs + " ms (the op may still be applied)", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to send quota op", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a quota reply", e);
+        }
+    }
+
+    private QuotaResult reserveResult(QuotaOpReply reply) {
+        if (metrics != null) {
+            switch (reply.decision()) {
+                case ACCEPTED -> metrics.incReserveAccepted();
+                case DUPLICATE -> metrics.incReserveDuplicate();
+                default -> metrics.incReserveRejected();
+            }
+        }
+        return reply.toResult();
+    }
+
+    private QuotaResult confirmResult(QuotaOpReply reply) {
+        if (metrics != null) {
+            if (reply.decision() == QuotaDecision.NOT_FOUND) metrics.incConfirmNotFound();
+            else metrics.incConfirmOk();
+        }
+        return reply.toResult();
+    }
+
+    private QuotaResult releaseResult(QuotaOpReply reply) {
+        if (metrics != null) {
+            if (reply.decision() == QuotaDecision.ACCEPTED) metrics.incReleaseOk();
+            else metrics.incReleaseNotFound();
+        }
+        return reply.toResult();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        if (replyThread != null) {
+            replies.wakeup();
+            try {
+                replyThread.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (streams != null) streams.close(Duration.ofSeconds(10));
+        producer.close(Duration.ofSeconds(5));
+        if (deleteReplyTopicVia != null) {
+            try {
+                QuotaStreamsTopics.delete(deleteReplyTopicVia, replyTopic);
+            } catch (IllegalStateException e) {
+                log.warn("quota.streams could not delete reply topic {}: {}", replyTopic, e.getMessage());
+            }
+        }
+        pending.values().forEach(f -> f.completeExceptionally(new IllegalStateException("StreamsQuotaService closed")));
+        pending.clear();
+    }
+}
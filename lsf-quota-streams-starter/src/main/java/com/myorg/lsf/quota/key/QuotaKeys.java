@@ -1,9 +1,23 @@
 package com.myorg.lsf.quota.key;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public final class QuotaKeys {
     private QuotaKeys() {}
 
     public static String of(String tenant, String type, String id) {
         return tenant + ":" + type + ":" + id;
     }
-}
\ No newline at end of file
+
+    /** Ancestors of a key, nearest first: {@code shopA:flashsale_sku:X} -> [shopA:flashsale_sku, shopA]. */
+    public static List<String> parents(String quotaKey, String separator) {
+        List<String> parents = new ArrayList<>();
+        int end = quotaKey.lastIndexOf(separator);
+        while (end > 0) {
+            parents.add(quotaKey.substring(0, end));
+            end = quotaKey.lastIndexOf(separator, end - 1);
+        }
+        return parents;
+    }
+}
@@ -1,9 +1,19 @@
 package com.myorg.lsf.quota.obs;
 
 import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 public class QuotaMetrics {
+    private final MeterRegistry registry;
+    private final String app;
+    private final String backend;
+
     private final Counter reserveAccepted;
     private final Counter reserveRejected;
     private final Counter reserveDuplicate;
@@ -14,7 +24,33 @@ public class QuotaMetrics {
     private final Counter releaseOk;
     private final Counter releaseNotFound;
 
+    private final Counter expired;
+
+    private final Counter evictedIdle;
+    private final Counter evictedCapacity;
+
+    private final Counter rateAllowed;
+    private final Counter rateLimited;
+
+    private final Timer sweepDuration;
+    private final DistributionSummary sweepKeys;
+    private final DistributionSummary sweepExpired;
+    private final DistributionSummary sweepBacklog;
+
+    private final Counter soldOutHit;
+    private final Counter soldOutMiss;
+    private final Counter soldOutInvalidated;
+
+    private final Counter policyCacheHit;
+    private final Counter policyCacheMiss;
+    private final Counter policyCacheEvicted;
+    private final Timer policyLoad;
+
     public QuotaMetrics(MeterRegistry r, String app, String backend) {
+        this.registry = r;
+        this.app = app;
+        this.backend = backend;
+
         this.reserveAccepted = Counter.builder("lsf.quota.reserve").tag("outcome", "accepted").tag("app", app).tag("backend", backend).register(r);
         this.reserveRejected  = Counter.builder("lsf.quota.reserve").tag("outcome", "rejected").tag("app", app).tag("backend", backend).register(r);
         this.reserveDuplicate = Counter.builder("lsf.quota.reserve").tag("outcome", "duplicate").tag("app", app).tag("backend", backend).register(r);
@@ -24,6 +60,32 @@ public class QuotaMetrics {
 
         this.releaseOk        = Counter.builder("lsf.quota.release").tag("outcome", "ok").tag("app", app).tag("backend", backend).register(r);
         this.releaseNotFound  = Counter.builder("lsf.quota.release").tag("outcome", "not_found").tag("app", app).tag("backend", backend).register(r);
+
+        this.expired          = Counter.builder("lsf.quota.expired").tag("app", app).tag("backend", backend).register(r);
+
+        this.evictedIdle      = Counter.builder("lsf.quota.buckets.evicted").tag("reason", "idle").tag("app", app).tag("backend", backend).register(r);
+        this.evictedCapacity  = Counter.builder("lsf.quota.buckets.evicted").tag("reason", "capacity").tag("app", app).tag("backend", backend).register(r);
+
+        this.rateAllowed      = Counter.builder("lsf.quota.ratelimit").tag("outcome", "allowed").tag("app", app).tag("backend", backend).register(r);
+        this.rateLimited      = Counter.builder("lsf.quota.ratelimit").tag("outcome", "limited").tag("app", app).tag("backend", backend).register(r);
+
+        // one sample per sweeper run
+        this.sweepDuration    = Timer.builder("lsf.quota.sweep.duration").tag("app", app).tag("backend", backend).register(r);
+        this.sweepKeys        = DistributionSummary.builder("lsf.quota.sweep.keys").tag("app", app).tag("backend", backend).register(r);
+        this.sweepExpired     = DistributionSummary.builder("lsf.quota.sweep.expired").tag("app", app).tag("backend", backend).register(r);
+        // keys that still had expired holds after the run (cap reached)
+        this.sweepBacklog     = DistributionSummary.builder("lsf.quota.sweep.backlog").tag("app", app).tag("backend", backend).register(r);
+
+        // sold-out near-cache: hit = reject trả lời trong process, không gọi Redis
+        this.soldOutHit        = Counter.builder("lsf.quota.soldout.cache").tag("outcome", "hit").tag("app", app).tag("backend", backend).register(r);
+        this.soldOutMiss       = Counter.builder("lsf.quota.soldout.cache").tag("outcome", "miss").tag("app", app).tag("backend", backend).register(r);
+        this.soldOutInvalidated = Counter.builder("lsf.quota.soldout.invalidated").tag("app", app).tag("backend", backend).register(r);
+
+        // policy cache trong process; load = một lần gọi Redis cache / provider (miss hoặc refresh-ahead)
+        this.policyCacheHit     = Counter.builder("lsf.quota.policy.cache").tag("outcome", "hit").tag("app", app).tag("backend", backend).register(r);
+        this.policyCacheMiss    = Counter.builder("lsf.quota.policy.cache").tag("outcome", "miss").tag("app", app).tag("backend", backend).register(r);
+        this.policyCacheEvicted = Counter.builder("lsf.quota.policy.cache.evicted").tag("app", app).tag("backend", backend).register(r);
+        this.policyLoad         = Timer.builder("lsf.quota.policy.load").tag("app", app).tag("backend", backend).register(r);
     }
 
     public void incReserveAccepted() { reserveAccepted.increment(); }
@@ -35,4 +97,33 @@ public class QuotaMetrics {
 
     public void incReleaseOk() { releaseOk.increment(); }
     public void incReleaseNotFound() { releaseNotFound.increment(); }
+
+    public void incExpired(int holds) { expired.increment(holds); }
+
+    public void incEvictedIdle(int buckets) { evictedIdle.increment(buckets); }
+    public void incEvictedCapacity(int buckets) { evictedCapacity.increment(buckets); }
+
+    public void incRateAllowed() { rateAllowed.increment(); }
+    public void incRateLimited() { rateLimited.increment(); }
+
+    public void recordSweep(int keys, int expiredHolds, int backlogKeys, long durationNanos) {
+        sweepDuration.record(durationNanos, TimeUnit.NANOSECONDS);
+        sweepKeys.record(keys);
+        sweepExpired.record(expiredHolds);
+        sweepBacklog.record(backlogKeys);
+        if (expiredHolds > 0) expired.increment(expiredHolds);
+    }
+
+    public void incSoldOutHit() { soldOutHit.increment(); }
+    public void incSoldOutMiss() { soldOutMiss.increment(); }
+    public void incSoldOutInvalidated() { soldOutInvalidated.increment(); }
+
+    public void incPolicyCacheHit() { policyCacheHit.increment(); }
+    public void incPolicyCacheMiss() { policyCacheMiss.increment(); }
+    public void incPolicyCacheEvicted() { policyCacheEvicted.increment(); }
+    public void recordPolicyLoad(long durationNanos) { policyLoad.record(durationNanos, TimeUnit.NANOSECONDS); }
+
+    public void registerBucketGauge(Supplier<Number> size) {
+        Gauge.builder("lsf.quota.buckets", size).tag("app", app).tag("backend", backend).register(registry);
+    }
 }
\ No newline at end of file
@@ -7,7 +7,7 @@ import lombok.RequiredArgsConstructor;
 import java.util.Optional;
 
 @RequiredArgsConstructor
-public class CachingQuotaPolicyProvider implements QuotaPolicyProvider {
+public class CachingQuotaPolicyProvider implements QuotaPolicyProvider, QuotaPolicyChangeListener, AutoCloseable {
 
     private final QuotaPolicyProvider delegate;
     private final MemoryPolicyCache mem;       // nullable
@@ -15,27 +15,35 @@ public class CachingQuotaPolicyProvider implements QuotaPolicyProvider {
 
     @Override
     public Optional<QuotaPolicy> findPolicy(String quotaKey) {
-        // 1) memory
-        if (mem != null) {
-            Optional<QuotaPolicy> v = mem.get(quotaKey);
-            if (v != null) return v;
-        }
+        // 1) memory: one load per key in flight, hot keys refreshed before they expire
+        if (mem != null) return mem.get(quotaKey, this::loadThrough);
+        return loadThrough(quotaKey);
+    }
+
+    /** Pushes a changed policy into Redis and over the local copy, if the key is cached here. */
+    @Override
+    public void onPolicyChanged(String quotaKey, Optional<QuotaPolicy> policy) {
+        if (redis != null) redis.put(quotaKey, policy);
+        if (mem != null) mem.update(quotaKey, policy);
+    }
 
+    @Override
+    public void close() {
+        if (mem != null) mem.close();
+    }
+
+    private Optional<QuotaPolicy> loadThrough(String quotaKey) {
         // 2) redis
         if (redis != null) {
             Optional<QuotaPolicy> v = redis.get(quotaKey);
-            if (v != null) {
-                if (mem != null) mem.put(quotaKey, v);
-                return v;
-            }
+            if (v != null) return v;
         }
 
         // 3) delegate (jdbc/static/custom)
         Optional<QuotaPolicy> v = delegate.findPolicy(quotaKey);
 
-        // 4) fill caches (including negative)
+        // 4) fill redis (including negative); memory is filled by its own load
         if (redis != null) redis.put(quotaKey, v);
-        if (mem != null) mem.put(quotaKey, v);
         return v;
     }
-}
\ No newline at end of file
+}
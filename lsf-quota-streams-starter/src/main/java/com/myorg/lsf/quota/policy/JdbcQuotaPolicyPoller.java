@@ -0,0 +1,43 @@
+package com.myorg.lsf.quota.policy;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+
+/**
+ * Keeps a preloaded {@link JdbcQuotaPolicyProvider} current: each run reads the rows changed
+ * since the last one (or retries the preload that failed at startup).
+ * No-op when the base provider is not JDBC.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class JdbcQuotaPolicyPoller {
+
+    private final QuotaPolicyProvider baseProvider;
+
+    @Scheduled(
+            initialDelayString = "${lsf.quota.provider.jdbc.preload.poll-interval-ms:5000}",
+            fixedDelayString = "${lsf.quota.provider.jdbc.preload.poll-interval-ms:5000}"
+    )
+    public void scheduledPoll() {
+        runOnce();
+    }
+
+    public int runOnce() {
+        if (!(baseProvider instanceof JdbcQuotaPolicyProvider jdbc)) return 0;
+        try {
+            boolean wasLoaded = jdbc.isPreloaded();
+            int changed = jdbc.pollChanges();
+            if (!wasLoaded) {
+                log.info("quota.policy.jdbc preloaded after startup failure");
+            } else if (changed > 0) {
+                log.debug("quota.policy.jdbc poll changed={}", changed);
+            }
+            return changed;
+        } catch (RuntimeException e) {
+            // DB down: keep serving the snapshot, the next run catches up from the same watermark
+            log.warn("quota.policy.jdbc poll failed: {}", e.toString());
+            return 0;
+        }
+    }
+}
@@ -2,40 +2,212 @@ package com.myorg.lsf.quota.policy;
 
 import com.myorg.lsf.quota.config.LsfQuotaProperties;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.jdbc.core.JdbcTemplate;
 
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Policies from the {@code quota_policy} table.
+ *
+ * Without preload every lookup is one {@code SELECT ... WHERE quota_key=?}. With
+ * {@code lsf.quota.provider.jdbc.preload.enabled} the whole table is loaded by {@link #preload()}
+ * and kept current by {@link #pollChanges()}; lookups then never query the DB and a key that is
+ * not in the table is answered empty right away.
+ */
+@Slf4j
 @RequiredArgsConstructor
 public class JdbcQuotaPolicyProvider implements QuotaPolicyProvider {
 
+    private static final Timestamp EPOCH = new Timestamp(0);
+
     private final JdbcTemplate jdbc;
     private final LsfQuotaProperties props;
 
+    // null until the first preload succeeds
+    private volatile Map<String, QuotaPolicy> snapshot;
+    // max updated_at seen so far
+    private volatile Timestamp watermark = EPOCH;
+    private volatile QuotaPolicyChangeListener listener;
+
     @Override
     public Optional<QuotaPolicy> findPolicy(String quotaKey) {
-        String table = props.getProvider().getJdbc().getTable();
-        boolean enabledOnly = props.getProvider().getJdbc().isEnabledOnly();
+        Map<String, QuotaPolicy> loaded = snapshot;
+        if (loaded != null) return Optional.ofNullable(loaded.get(quotaKey));
+
+        String sql = enabledOnly()
+                ? "SELECT " + columns() + " FROM " + table() + " WHERE quota_key=? AND enabled=1"
+                : "SELECT " + columns() + " FROM " + table() + " WHERE quota_key=?";
+
+        return jdbc.query(sql, rs -> rs.next() ? Optional.of(policy(rs)) : Optional.<QuotaPolicy>empty(), quotaKey);
+    }
+
+    public boolean isPreloaded() {
+        return snapshot != null;
+    }
+
+    /** Receives the policies that {@link #pollChanges()} finds changed (e.g. to update the caches). */
+    public void setChangeListener(QuotaPolicyChangeListener listener) {
+        this.listener = listener;
+    }
+
+    /** {@link #preload()}, logging instead of failing: lookups fall back to one query per key until a poll loads it. */
+    public boolean warmUp() {
+        try {
+            int loaded = preload();
+            log.info("quota.policy.jdbc preloaded policies={}", loaded);
+            return true;
+        } catch (RuntimeException e) {
+            log.warn("quota.policy.jdbc preload failed, querying per key until the next poll: {}", e.toString());
+            return false;
+        }
+    }
+
+    /**
+     * Loads every policy of the table, {@code page-size} rows per query in key order, and
+     * switches lookups to it. Returns the number of policies.
+     */
+    public synchronized int preload() {
+        String sql = "SELECT quota_key, " + updatedAt() + ", " + columns() + " FROM " + table()
+                + " WHERE quota_key > ?" + (enabledOnly() ? " AND enabled=1" : "")
+                + " ORDER BY quota_key LIMIT " + pageSize();
+
+        Map<String, QuotaPolicy> all = new ConcurrentHashMap<>();
+        Timestamp max = watermark;
+        String after = "";
+        while (true) {
+            List<Row> page = jdbc.query(sql, (rs, n) -> row(rs, false), after);
+            for (Row r : page) {
+                all.put(r.quotaKey(), r.policy());
+                max = later(max, r.updatedAt());
+            }
+            if (page.size() < pageSize()) break;
+            after = page.get(page.size() - 1).quotaKey();
+        }
+        snapshot = all;
+        watermark = max;
+        return all.size();
+    }
+
+    /**
+     * Applies the rows whose {@code updated_at} is at or after the watermark minus
+     * {@code poll-overlap-ms}; only policies that really changed reach the listener, so
+     * re-reading the overlap is cheap. Preloads instead while nothing is loaded yet.
+     * Returns the number of changed policies.
+     */
+    public synchronized int pollChanges() {
+        Map<String, QuotaPolicy> loaded = snapshot;
+        if (loaded == null) {
+            preload();
+            return 0;
+        }
 
-        String sql = enabledOnly
-                ? "SELECT quota_limit, hold_seconds FROM " + table + " WHERE quota_key=? AND enabled=1"
-                : "SELECT quota_limit, hold_seconds FROM " + table + " WHERE quota_key=?";
+        String enabledColumn = enabledOnly() ? ", enabled" : "";
+        String sql = "SELECT quota_key, " + updatedAt() + ", " + columns() + enabledColumn + " FROM " + table()
+                + " WHERE " + updatedAt() + " > ? OR (" + updatedAt() + " = ? AND quota_key > ?)"
+                + " ORDER BY " + updatedAt() + ", quota_key LIMIT " + pageSize();
 
-        return jdbc.query(sql, rs -> {
-            if (!rs.next()) return Optional.empty();
+        Timestamp fromTs = new Timestamp(Math.max(0, watermark.getTime() - preloadCfg().getPollOverlapMs()));
+        String fromKey = "";
+        Timestamp max = watermark;
+        int changed = 0;
+        while (true) {
+            List<Row> page = jdbc.query(sql, (rs, n) -> row(rs, enabledOnly()), fromTs, fromTs, fromKey);
+            for (Row r : page) {
+                QuotaPolicy now = r.enabled() ? r.policy() : null;
+                QuotaPolicy before = now != null ? loaded.put(r.quotaKey(), now) : loaded.remove(r.quotaKey());
+                if (!Objects.equals(before, now)) {
+                    changed++;
+                    notifyChanged(r.quotaKey(), Optional.ofNullable(now));
+                }
+                max = later(max, r.updatedAt());
+            }
+            if (page.size() < pageSize()) break;
+            Row last = page.get(page.size() - 1);
+            fromTs = last.updatedAt();
+            fromKey = last.quotaKey();
+        }
+        watermark = max;
+        return changed;
+    }
+
+    private void notifyChanged(String quotaKey, Optional<QuotaPolicy> policy) {
+        QuotaPolicyChangeListener l = listener;
+        if (l == null) return;
+        try {
+            l.onPolicyChanged(quotaKey, policy);
+        } catch (RuntimeException e) {
+            // cache (Redis) down: the cached copy ages out by TTL instead
+            log.warn("quota.policy.jdbc change listener failed key={}: {}", quotaKey, e.toString());
+        }
+    }
+
+    private Row row(ResultSet rs, boolean readEnabled) throws SQLException {
+        boolean enabled = !readEnabled || rs.getInt("enabled") == 1;
+        return new Row(rs.getString("quota_key"), policy(rs), rs.getTimestamp(updatedAt()), enabled);
+    }
 
-            int limit = rs.getInt("quota_limit");
-            Integer holdSeconds = (Integer) rs.getObject("hold_seconds");
+    private QuotaPolicy policy(ResultSet rs) throws SQLException {
+        int limit = rs.getInt("quota_limit");
+        Integer holdSeconds = (Integer) rs.getObject("hold_seconds");
 
-            Duration hold = (holdSeconds != null)
-                    ? Duration.ofSeconds(holdSeconds)
-                    : Duration.ofSeconds(props.getDefaultHoldSeconds());
+        Duration hold = (holdSeconds != null)
+                ? Duration.ofSeconds(holdSeconds)
+                : Duration.ofSeconds(props.getDefaultHoldSeconds());
+        Integer shards = withShards() ? (Integer) rs.getObject(shardsColumn()) : null;
 
-            return Optional.of(QuotaPolicy.builder()
-                    .limit(limit)
-                    .hold(hold)
-                    .build());
-        }, quotaKey);
+        return QuotaPolicy.builder()
+                .limit(limit)
+                .hold(hold)
+                .shards(shards != null ? shards : 0)
+                .build();
     }
-}
\ No newline at end of file
+
+    private String columns() {
+        return withShards() ? "quota_limit, hold_seconds, " + shardsColumn() : "quota_limit, hold_seconds";
+    }
+
+    private boolean withShards() {
+        String shardsColumn = shardsColumn();
+        return shardsColumn != null && !shardsColumn.isBlank();
+    }
+
+    private String shardsColumn() {
+        return props.getProvider().getJdbc().getShardsColumn();
+    }
+
+    private String table() {
+        return props.getProvider().getJdbc().getTable();
+    }
+
+    private boolean enabledOnly() {
+        return props.getProvider().getJdbc().isEnabledOnly();
+    }
+
+    private LsfQuotaProperties.PolicyProvider.Preload preloadCfg() {
+        return props.getProvider().getJdbc().getPreload();
+    }
+
+    private String updatedAt() {
+        return preloadCfg().getUpdatedAtColumn();
+    }
+
+    private int pageSize() {
+        return preloadCfg().getPageSize();
+    }
+
+    private static Timestamp later(Timestamp a, Timestamp b) {
+        if (b == null) return a;
+        return a == null || b.after(a) ? b : a;
+    }
+
+    private record Row(String quotaKey, QuotaPolicy policy, Timestamp updatedAt, boolean enabled) {}
+}
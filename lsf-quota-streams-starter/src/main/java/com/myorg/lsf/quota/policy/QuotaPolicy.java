@@ -7,6 +7,13 @@ import java.time.Duration;
 @Builder
 public record QuotaPolicy (
         int limit,
-        Duration hold
+        Duration hold,
+        // số sub-bucket cho hot key trên Redis; 0/1 = một key như bình thường
+        int shards,
+        // != null: key là rate limit (tryAcquire), không phải tồn kho; limit/hold/shards bỏ qua
+        RateLimitPolicy rateLimit
 ){
+    public boolean isRateLimit() {
+        return rateLimit != null;
+    }
 }
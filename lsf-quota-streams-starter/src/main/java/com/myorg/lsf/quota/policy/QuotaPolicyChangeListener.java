@@ -0,0 +1,12 @@
+package com.myorg.lsf.quota.policy;
+
+import java.util.Optional;
+
+/**
+ * Told about a policy that changed at its source (e.g. a {@code quota_policy} row picked up
+ * by {@link JdbcQuotaPolicyProvider#pollChanges()}); empty = the key no longer has a policy.
+ */
+@FunctionalInterface
+public interface QuotaPolicyChangeListener {
+    void onPolicyChanged(String quotaKey, Optional<QuotaPolicy> policy);
+}
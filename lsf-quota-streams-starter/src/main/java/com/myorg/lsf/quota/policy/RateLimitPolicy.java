@@ -0,0 +1,17 @@
+package com.myorg.lsf.quota.policy;
+
+import com.myorg.lsf.quota.api.RateLimitAlgorithm;
+import lombok.Builder;
+
+import java.time.Duration;
+
+/** Request-rate limit of a key: {@code limit} permits per {@code window}, see {@link RateLimitAlgorithm}. */
+@Builder
+public record RateLimitPolicy(
+        RateLimitAlgorithm algorithm,
+        int limit,
+        Duration window,
+        // TOKEN_BUCKET: sức chứa; <= 0 = limit
+        int burst
+) {
+}
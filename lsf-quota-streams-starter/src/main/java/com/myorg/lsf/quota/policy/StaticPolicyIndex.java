@@ -0,0 +1,131 @@
+package com.myorg.lsf.quota.policy;
+
+import com.myorg.lsf.quota.config.LsfQuotaProperties;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Immutable lookup structure over {@code lsf.quota.policies}, built once per config.
+ *
+ * Plain keys go to a hash map. Keys with wildcard segments go to a trie of ':'-separated
+ * segments: {@code *} matches exactly one segment, a trailing {@code **} matches all remaining
+ * ones (at least one). An exact key wins over any pattern; among patterns a literal segment
+ * wins over {@code *}, and {@code *} over {@code **}. For duplicate keys the first item wins.
+ * Results are prebuilt {@code Optional}s, so a lookup allocates nothing but trie segments.
+ */
+final class StaticPolicyIndex {
+
+    private static final char SEPARATOR = ':';
+
+    private final List<LsfQuotaProperties.PolicyItem> source;
+    private final int defaultHoldSeconds;
+    private final Map<String, Optional<QuotaPolicy>> exact = new HashMap<>();
+    private final Node patterns = new Node();
+    private final boolean hasPatterns;
+
+    private StaticPolicyIndex(LsfQuotaProperties props) {
+        this.source = props.getPolicies();
+        this.defaultHoldSeconds = props.getDefaultHoldSeconds();
+        boolean anyPattern = false;
+        for (LsfQuotaProperties.PolicyItem item : source) {
+            Optional<QuotaPolicy> policy = Optional.of(toPolicy(item, defaultHoldSeconds));
+            if (item.getKey().indexOf('*') < 0) {
+                exact.putIfAbsent(item.getKey(), policy);
+            } else {
+                anyPattern = true;
+                insert(item.getKey(), policy);
+            }
+        }
+        this.hasPatterns = anyPattern;
+    }
+
+    static StaticPolicyIndex build(LsfQuotaProperties props) {
+        return new StaticPolicyIndex(props);
+    }
+
+    /** True while {@code props} still holds the policies this index was built from. */
+    boolean isBuiltFrom(LsfQuotaProperties props) {
+        return props.getPolicies() == source && props.getDefaultHoldSeconds() == defaultHoldSeconds;
+    }
+
+    Optional<QuotaPolicy> find(String quotaKey) {
+        Optional<QuotaPolicy> policy = exact.get(quotaKey);
+        if (policy != null) return policy;
+        if (!hasPatterns) return Optional.empty();
+        policy = match(patterns, quotaKey, 0);
+        return policy != null ? policy : Optional.empty();
+    }
+
+    private void insert(String pattern, Optional<QuotaPolicy> policy) {
+        Node node = patterns;
+        String[] segments = pattern.split(String.valueOf(SEPARATOR), -1);
+        for (int i = 0; i < segments.length; i++) {
+            String segment = segments[i];
+            if (segment.equals("**") && i == segments.length - 1) {
+                if (node.rest == null) node.rest = policy;
+                return;
+            }
+            if (segment.equals("*")) {
+                if (node.any == null) node.any = new Node();
+                node = node.any;
+            } else {
+                node = node.children.computeIfAbsent(segment, s -> new Node());
+            }
+        }
+        if (node.policy == null) node.policy = policy;
+    }
+
+    // from = start of the next segment; key.length() + 1 once every segment is consumed
+    private static Optional<QuotaPolicy> match(Node node, String key, int from) {
+        if (from > key.length()) return node.policy;
+
+        int end = key.indexOf(SEPARATOR, from);
+        if (end < 0) end = key.length();
+
+        Node literal = node.children.isEmpty() ? null : node.children.get(key.substring(from, end));
+        if (literal != null) {
+            Optional<QuotaPolicy> found = match(literal, key, end + 1);
+            if (found != null) return found;
+        }
+        if (node.any != null) {
+            Optional<QuotaPolicy> found = match(node.any, key, end + 1);
+            if (found != null) return found;
+        }
+        return node.rest;
+    }
+
+    private static QuotaPolicy toPolicy(LsfQuotaProperties.PolicyItem item, int defaultHoldSeconds) {
+        if (item.getRateLimit() != null) {
+            LsfQuotaProperties.RateLimit rate = item.getRateLimit();
+            return QuotaPolicy.builder()
+                    .rateLimit(RateLimitPolicy.builder()
+                            .algorithm(rate.getAlgorithm())
+                            .limit(rate.getLimit())
+                            .window(Duration.ofMillis(rate.getWindowMs()))
+                            .burst(rate.getBurst() != null ? rate.getBurst() : 0)
+                            .build())
+                    .build();
+        }
+        Duration hold = (item.getHoldSeconds() != null)
+                ? Duration.ofSeconds(item.getHoldSeconds())
+                : Duration.ofSeconds(defaultHoldSeconds);
+
+        return QuotaPolicy.builder()
+                .limit(item.getLimit())
+                .hold(hold)
+                .shards(item.getShards() != null ? item.getShards() : 0)
+                .build();
+    }
+
+    // policy / rest: null = no policy ends here
+    private static final class Node {
+        final Map<String, Node> children = new HashMap<>();
+        Node any;
+        Optional<QuotaPolicy> policy;
+        Optional<QuotaPolicy> rest;
+    }
+}
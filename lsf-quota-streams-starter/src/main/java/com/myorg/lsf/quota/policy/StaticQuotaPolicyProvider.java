@@ -1,30 +1,41 @@
 package com.myorg.lsf.quota.policy;
 
 import com.myorg.lsf.quota.config.LsfQuotaProperties;
-import lombok.RequiredArgsConstructor;
 
-import java.time.Duration;
 import java.util.Optional;
 
-@RequiredArgsConstructor
+/**
+ * Policies from {@code lsf.quota.policies}, looked up in a prebuilt {@link StaticPolicyIndex}
+ * (exact keys plus {@code *} / {@code **} patterns).
+ *
+ * When the properties are rebound with a new policy list (config refresh), the next lookup
+ * builds a new index and swaps it in whole; {@link #reload()} does the same on demand.
+ */
 public class StaticQuotaPolicyProvider implements QuotaPolicyProvider {
 
     private final LsfQuotaProperties props;
+    private volatile StaticPolicyIndex index;
+
+    public StaticQuotaPolicyProvider(LsfQuotaProperties props) {
+        this.props = props;
+        this.index = StaticPolicyIndex.build(props);
+    }
 
     @Override
     public Optional<QuotaPolicy> findPolicy(String quotaKey) {
-        for (LsfQuotaProperties.PolicyItem item : props.getPolicies()) {
-            if (quotaKey.equals(item.getKey())) {
-                Duration hold = (item.getHoldSeconds() != null)
-                        ? Duration.ofSeconds(item.getHoldSeconds())
-                        : Duration.ofSeconds(props.getDefaultHoldSeconds());
-
-                return Optional.of(QuotaPolicy.builder()
-                        .limit(item.getLimit())
-                        .hold(hold)
-                        .build());
-            }
-        }
-        return Optional.empty();
+        StaticPolicyIndex current = index;
+        if (!current.isBuiltFrom(props)) current = rebuild();
+        return current.find(quotaKey);
+    }
+
+    /** Rebuilds the index from the current properties, e.g. after editing the policy list in place. */
+    public void reload() {
+        rebuild();
+    }
+
+    private synchronized StaticPolicyIndex rebuild() {
+        StaticPolicyIndex fresh = StaticPolicyIndex.build(props);
+        index = fresh;
+        return fresh;
     }
-}
\ No newline at end of file
+}
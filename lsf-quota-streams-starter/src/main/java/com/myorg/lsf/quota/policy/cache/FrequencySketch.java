@@ -0,0 +1,70 @@
+package com.myorg.lsf.quota.policy.cache;
+
+/**
+ * Count-min sketch of recent access frequency (TinyLFU): 4 counters per key, capped at 15,
+ * all halved every {@code 10 * size} increments so old popularity fades.
+ *
+ * Not synchronized: a lost increment under contention only makes the estimate a bit low.
+ */
+final class FrequencySketch {
+
+    private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+    };
+    private static final int MAX_COUNT = 15;
+
+    private final int[] table;
+    private final int mask;
+    private final int sampleSize;
+    private int additions;
+
+    FrequencySketch(int maximumSize) {
+        int length = Integer.highestOneBit(Math.max(16, maximumSize) - 1) << 1;
+        this.table = new int[length];
+        this.mask = length - 1;
+        this.sampleSize = 10 * length;
+    }
+
+    int frequency(String key) {
+        int hash = spread(key.hashCode());
+        int min = MAX_COUNT;
+        for (int i = 0; i < SEEDS.length; i++) {
+            min = Math.min(min, table[index(hash, i)]);
+        }
+        return min;
+    }
+
+    void increment(String key) {
+        int hash = spread(key.hashCode());
+        boolean added = false;
+        for (int i = 0; i < SEEDS.length; i++) {
+            int idx = index(hash, i);
+            if (table[idx] < MAX_COUNT) {
+                table[idx]++;
+                added = true;
+            }
+        }
+        if (added && ++additions >= sampleSize) {
+            reset();
+        }
+    }
+
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] >>>= 1;
+        }
+        additions >>>= 1;
+    }
+
+    private int index(int hash, int i) {
+        long h = (hash + SEEDS[i]) * SEEDS[i];
+        h += h >>> 32;
+        return (int) h & mask;
+    }
+
+    private static int spread(int x) {
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+}
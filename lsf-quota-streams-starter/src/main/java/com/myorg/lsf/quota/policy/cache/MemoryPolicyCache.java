@@ -1,46 +1,230 @@
 package com.myorg.lsf.quota.policy.cache;
 
+import com.myorg.lsf.quota.obs.QuotaMetrics;
 import com.myorg.lsf.quota.policy.QuotaPolicy;
+import lombok.extern.slf4j.Slf4j;
 
 import java.time.Clock;
 import java.time.Duration;
-import java.util.*;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
 
-public class MemoryPolicyCache {
+/**
+ * In-process policy cache in front of Redis / JDBC.
+ *
+ * - single-flight: concurrent misses on one key wait for a single loader call.
+ * - refresh-ahead: a hit past {@code refreshAheadRatio * ttl} returns the cached value and
+ *   reloads it in the background, so a hot key never expires under traffic.
+ * - TinyLFU admission: when full, a new key only replaces the oldest entry if it has been
+ *   asked for more often recently (see {@link FrequencySketch}); a hotter victim goes back
+ *   to the end of the queue. An entry past its TTL is always evicted.
+ *
+ * Values may be {@code Optional.empty()}: negative lookups are cached the same way.
+ */
+@Slf4j
+public class MemoryPolicyCache implements AutoCloseable {
+
+    // oldest entries compared with a new key before it is turned away
+    private static final int MAX_VICTIM_PROBES = 8;
 
     private final Clock clock;
-    private final Duration ttl;
+    private final long ttlMs;
+    private final long refreshAfterMs; // Long.MAX_VALUE = no refresh-ahead
     private final int maxSize;
+    private final Executor refreshExecutor;
+    private final ExecutorService ownedExecutor; // null when the executor was passed in
+    private final QuotaMetrics metrics;          // nullable
 
     private final Map<String, Entry> map = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<Entry>> loading = new ConcurrentHashMap<>();
+    private final FrequencySketch sketch;
+    // insertion order of the keys in map, guarded by admissionLock
+    private final ArrayDeque<String> order = new ArrayDeque<>();
+    private final Object admissionLock = new Object();
 
+    /** TTL cache without refresh-ahead and metrics. */
     public MemoryPolicyCache(Clock clock, Duration ttl, int maxSize) {
+        this(clock, ttl, 0, maxSize, Runnable::run, null);
+    }
+
+    /**
+     * @param refreshAheadRatio 0 disables refresh-ahead, otherwise in (0, 1)
+     * @param refreshExecutor   runs background reloads; null = one daemon thread owned by this cache
+     */
+    public MemoryPolicyCache(Clock clock, Duration ttl, double refreshAheadRatio, int maxSize,
+                             Executor refreshExecutor, QuotaMetrics metrics) {
         this.clock = clock;
-        this.ttl = ttl;
+        this.ttlMs = ttl.toMillis();
+        this.refreshAfterMs = refreshAheadRatio > 0 ? (long) (ttlMs * refreshAheadRatio) : Long.MAX_VALUE;
         this.maxSize = maxSize;
+        this.metrics = metrics;
+        this.sketch = new FrequencySketch(maxSize);
+        if (refreshExecutor != null) {
+            this.refreshExecutor = refreshExecutor;
+            this.ownedExecutor = null;
+        } else {
+            this.ownedExecutor = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "lsf-quota-policy-refresh");
+                t.setDaemon(true);
+                return t;
+            });
+            this.refreshExecutor = ownedExecutor;
+        }
     }
 
-    public Optional<QuotaPolicy> get(String key) {
+    /**
+     * Cached value of {@code key}, loading it with {@code loader} on a miss. Loader exceptions
+     * reach every caller waiting on that load and nothing is cached.
+     */
+    public Optional<QuotaPolicy> get(String key, Function<String, Optional<QuotaPolicy>> loader) {
+        sketch.increment(key);
         long now = clock.millis();
         Entry e = map.get(key);
-        if (e == null) return null; // "no cache"
-        if (e.expiresAtMs <= now) {
-            map.remove(key);
-            return null;
+        if (e != null && now < e.expiresAtMs) {
+            if (metrics != null) metrics.incPolicyCacheHit();
+            if (now >= e.refreshAtMs && e.refreshing.compareAndSet(false, true)) {
+                refreshAsync(key, e, loader);
+            }
+            return e.value;
+        }
+        if (metrics != null) metrics.incPolicyCacheMiss();
+        return load(key, loader).value;
+    }
+
+    /**
+     * Replaces the value of a cached key (e.g. pushed by a change feed), restarting its TTL.
+     * Keys not in the cache stay out: they load on their next lookup.
+     */
+    public void update(String key, Optional<QuotaPolicy> value) {
+        map.computeIfPresent(key, (k, old) -> newEntry(value));
+    }
+
+    public int size() {
+        return map.size();
+    }
+
+    @Override
+    public void close() {
+        if (ownedExecutor != null) ownedExecutor.shutdownNow();
+    }
+
+    private Entry load(String key, Function<String, Optional<QuotaPolicy>> loader) {
+        CompletableFuture<Entry> mine = new CompletableFuture<>();
+        CompletableFuture<Entry> inFlight = loading.putIfAbsent(key, mine);
+        if (inFlight != null) return await(inFlight);
+        try {
+            // the load we just missed may have finished between map.get and putIfAbsent
+            Entry current = map.get(key);
+            if (current != null && clock.millis() < current.expiresAtMs) {
+                mine.complete(current);
+                return current;
+            }
+            Entry fresh = callLoader(key, loader);
+            admit(key, fresh);
+            mine.complete(fresh);
+            return fresh;
+        } catch (RuntimeException | Error ex) {
+            mine.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            loading.remove(key, mine);
+        }
+    }
+
+    private void refreshAsync(String key, Entry stale, Function<String, Optional<QuotaPolicy>> loader) {
+        try {
+            refreshExecutor.execute(() -> refresh(key, stale, loader));
+        } catch (RejectedExecutionException ex) {
+            stale.refreshing.set(false);
         }
-        return e.value; // value may be empty => cached negative
     }
 
-    public void put(String key, Optional<QuotaPolicy> value) {
+    private void refresh(String key, Entry stale, Function<String, Optional<QuotaPolicy>> loader) {
+        CompletableFuture<Entry> mine = new CompletableFuture<>();
+        // a miss is already loading this key: its result replaces the stale entry anyway
+        if (loading.putIfAbsent(key, mine) != null) return;
+        try {
+            Entry fresh = callLoader(key, loader);
+            // evicted meanwhile: stay out, admission decides again on the next miss
+            map.replace(key, stale, fresh);
+            mine.complete(fresh);
+        } catch (RuntimeException ex) {
+            // keep serving the stale value until its TTL, the next hit tries again
+            stale.refreshing.set(false);
+            mine.completeExceptionally(ex);
+            log.warn("quota.policy.cache refresh failed key={}: {}", key, ex.toString());
+        } finally {
+            loading.remove(key, mine);
+        }
+    }
+
+    private Entry callLoader(String key, Function<String, Optional<QuotaPolicy>> loader) {
+        long start = System.nanoTime();
+        try {
+            return newEntry(loader.apply(key));
+        } finally {
+            if (metrics != null) metrics.recordPolicyLoad(System.nanoTime() - start);
+        }
+    }
+
+    private Entry newEntry(Optional<QuotaPolicy> value) {
         long now = clock.millis();
-        if (map.size() > maxSize) {
-            // cheap eviction: remove random 1
-            Iterator<String> it = map.keySet().iterator();
-            if (it.hasNext()) map.remove(it.next());
+        long refreshAt = refreshAfterMs == Long.MAX_VALUE ? Long.MAX_VALUE : now + refreshAfterMs;
+        return new Entry(value, now + ttlMs, refreshAt);
+    }
+
+    private void admit(String key, Entry fresh) {
+        synchronized (admissionLock) {
+            if (map.replace(key, fresh) != null) return;
+
+            long now = clock.millis();
+            for (int probes = Math.min(order.size(), MAX_VICTIM_PROBES); map.size() >= maxSize && probes > 0; probes--) {
+                String victim = order.pollFirst();
+                Entry v = map.get(victim);
+                if (v != null && now < v.expiresAtMs && sketch.frequency(key) <= sketch.frequency(victim)) {
+                    order.addLast(victim);
+                    continue;
+                }
+                map.remove(victim);
+                if (metrics != null) metrics.incPolicyCacheEvicted();
+            }
+            if (map.size() >= maxSize) return; // every probed entry is hotter than key: not admitted
+
+            map.put(key, fresh);
+            order.addLast(key);
+        }
+    }
+
+    private static Entry await(CompletableFuture<Entry> inFlight) {
+        try {
+            return inFlight.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException re) throw re;
+            if (ex.getCause() instanceof Error err) throw err;
+            throw ex;
         }
-        map.put(key, new Entry(value, now + ttl.toMillis()));
     }
 
-    private record Entry(Optional<QuotaPolicy> value, long expiresAtMs) {}
-}
\ No newline at end of file
+    private static final class Entry {
+        final Optional<QuotaPolicy> value; // may be empty => cached negative
+        final long expiresAtMs;
+        final long refreshAtMs;
+        final AtomicBoolean refreshing = new AtomicBoolean();
+
+        Entry(Optional<QuotaPolicy> value, long expiresAtMs, long refreshAtMs) {
+            this.value = value;
+            this.expiresAtMs = expiresAtMs;
+            this.refreshAtMs = refreshAtMs;
+        }
+    }
+}
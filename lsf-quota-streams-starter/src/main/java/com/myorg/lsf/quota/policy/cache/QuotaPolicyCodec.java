@@ -1,6 +1,8 @@
 package com.myorg.lsf.quota.policy.cache;
 
+import com.myorg.lsf.quota.api.RateLimitAlgorithm;
 import com.myorg.lsf.quota.policy.QuotaPolicy;
+import com.myorg.lsf.quota.policy.RateLimitPolicy;
 
 import java.time.Duration;
 import java.util.Optional;
@@ -8,25 +10,45 @@ import java.util.Optional;
 public final class QuotaPolicyCodec {
     private QuotaPolicyCodec() {}
 
-    // format: limit|holdSeconds ; NOT_FOUND encoded as 0|0 with marker "NF"
+    // format: limit|holdSeconds[|shards] ; NOT_FOUND encoded as 0|0 with marker "NF"
+    // rate limit: RL|algorithm|limit|windowMs|burst
     public static String encode(Optional<QuotaPolicy> p) {
         if (p.isEmpty()) return "NF";
         QuotaPolicy q = p.get();
+        if (q.isRateLimit()) {
+            RateLimitPolicy r = q.rateLimit();
+            return "RL|" + r.algorithm().name() + "|" + r.limit() + "|" + r.window().toMillis() + "|" + r.burst();
+        }
         long hs = Math.max(1, q.hold().toSeconds());
-        return q.limit() + "|" + hs;
+        return (q.shards() > 1) ? q.limit() + "|" + hs + "|" + q.shards() : q.limit() + "|" + hs;
     }
 
     public static Optional<QuotaPolicy> decode(String s) {
         if (s == null || s.isBlank()) return Optional.empty();
         if ("NF".equals(s)) return Optional.empty();
         String[] parts = s.split("\\|");
-        if (parts.length != 2) return Optional.empty();
+        if ("RL".equals(parts[0])) return decodeRateLimit(parts);
+        if (parts.length != 2 && parts.length != 3) return Optional.empty();
 
         int limit = Integer.parseInt(parts[0]);
         long hs = Long.parseLong(parts[1]);
+        int shards = (parts.length == 3) ? Integer.parseInt(parts[2]) : 0;
         return Optional.of(QuotaPolicy.builder()
                 .limit(limit)
                 .hold(Duration.ofSeconds(hs))
+                .shards(shards)
                 .build());
     }
-}
\ No newline at end of file
+
+    private static Optional<QuotaPolicy> decodeRateLimit(String[] parts) {
+        if (parts.length != 5) return Optional.empty();
+        return Optional.of(QuotaPolicy.builder()
+                .rateLimit(RateLimitPolicy.builder()
+                        .algorithm(RateLimitAlgorithm.valueOf(parts[1]))
+                        .limit(Integer.parseInt(parts[2]))
+                        .window(Duration.ofMillis(Long.parseLong(parts[3])))
+                        .burst(Integer.parseInt(parts[4]))
+                        .build())
+                .build());
+    }
+}
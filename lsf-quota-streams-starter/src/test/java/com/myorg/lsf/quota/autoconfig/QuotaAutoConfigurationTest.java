@@ -1,14 +1,29 @@
 package com.myorg.lsf.quota.autoconfig;
 
 import com.myorg.lsf.quota.policy.QuotaPolicyProvider;
+import com.myorg.lsf.quota.api.QuotaDecision;
 import com.myorg.lsf.quota.api.QuotaReservationFacade;
 import com.myorg.lsf.quota.api.QuotaService;
+import com.myorg.lsf.quota.api.ReactiveQuotaReservationFacade;
+import com.myorg.lsf.quota.api.ReactiveQuotaService;
+import com.myorg.lsf.quota.command.QuotaCommandProcessor;
+import com.myorg.lsf.quota.impl.BlockingReactiveQuotaService;
+import com.myorg.lsf.quota.impl.memory.ConcurrentMemoryQuotaService;
 import com.myorg.lsf.quota.impl.memory.MemoryQuotaService;
+import com.myorg.lsf.quota.impl.memory.MemoryQuotaSweeper;
+import com.myorg.lsf.quota.impl.redis.RedisQuotaService;
+import com.myorg.lsf.quota.impl.redis.RedisQuotaSweeper;
+import com.myorg.lsf.quota.impl.redis.RedisSoldOutSubscriber;
 import com.myorg.lsf.quota.policy.StaticQuotaPolicyProvider;
+import com.myorg.lsf.redis.autoconfig.LsfRedisScriptAutoConfiguration;
+import com.myorg.lsf.redis.script.LsfRedisScript;
+import com.myorg.lsf.redis.script.RedisScriptRegistry;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.autoconfigure.AutoConfigurations;
 import org.springframework.boot.autoconfigure.context.ConfigurationPropertiesAutoConfiguration;
 import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -32,9 +47,117 @@ class QuotaAutoConfigurationTest {
                     assertThat(context).hasSingleBean(QuotaService.class);
                     assertThat(context.getBean(QuotaService.class)).isInstanceOf(MemoryQuotaService.class);
                     assertThat(context).hasSingleBean(QuotaReservationFacade.class);
+                    assertThat(context).hasSingleBean(MemoryQuotaSweeper.class);
                 });
     }
 
+    @Test
+    void shouldExposeReactiveApiOverTheMemoryBackend() {
+        contextRunner
+                .withPropertyValues(
+                        "lsf.quota.store=memory",
+                        "lsf.quota.provider.mode=static"
+                )
+                .run(context -> {
+                    assertThat(context.getBean(ReactiveQuotaService.class)).isInstanceOf(BlockingReactiveQuotaService.class);
+                    assertThat(context).hasSingleBean(ReactiveQuotaReservationFacade.class);
+                });
+    }
+
+    @Test
+    void reactiveFacadeShouldApplyTheHierarchyLikeTheBlockingOne() {
+        contextRunner
+                .withPropertyValues(
+                        "lsf.quota.store=memory",
+                        "lsf.quota.provider.mode=static",
+                        "lsf.quota.hierarchy.enabled=true",
+                        "lsf.quota.policies[0].key=shopA",
+                        "lsf.quota.policies[0].limit=1",
+                        "lsf.quota.policies[1].key=shopA:flashsale_sku:*",
+                        "lsf.quota.policies[1].limit=5"
+                )
+                .run(context -> {
+                    ReactiveQuotaReservationFacade reactive = context.getBean(ReactiveQuotaReservationFacade.class);
+                    QuotaReservationFacade blocking = context.getBean(QuotaReservationFacade.class);
+                    QuotaService store = context.getBean(QuotaService.class);
+
+                    assertThat(reactive.reserve("shopA:flashsale_sku:X", "REQ-1", 1).block().decision()).isEqualTo(QuotaDecision.ACCEPTED);
+                    assertThat(reactive.reserve("shopA:flashsale_sku:Y", "REQ-2", 1).block().decision())
+                            .as("the tenant cap applies to reactive reserves").isEqualTo(QuotaDecision.REJECTED);
+
+                    // hold của API blocking: confirm reactive phải chốt cả cấp cha
+                    assertThat(reactive.release("shopA:flashsale_sku:X", "REQ-1").block().decision()).isEqualTo(QuotaDecision.ACCEPTED);
+                    assertThat(blocking.reserve("shopA:flashsale_sku:Y", "REQ-2", 1).decision()).isEqualTo(QuotaDecision.ACCEPTED);
+                    reactive.confirm("shopA:flashsale_sku:Y", "REQ-2").block();
+                    assertThat(store.release("shopA", "REQ-2@shopA:flashsale_sku:Y").decision())
+                            .as("parent hold is confirmed, not left to expire").isNotEqualTo(QuotaDecision.ACCEPTED);
+                });
+    }
+
+    @Test
+    void sweeperCanBeDisabled() {
+        contextRunner
+                .withPropertyValues(
+                        "lsf.quota.store=memory",
+                        "lsf.quota.provider.mode=static",
+                        "lsf.quota.memory.sweeper-enabled=false",
+                        "lsf.quota.redis.sweeper-enabled=false"
+                )
+                .run(context -> {
+                    assertThat(context).doesNotHaveBean(MemoryQuotaSweeper.class);
+                    assertThat(context).doesNotHaveBean(RedisQuotaSweeper.class);
+                });
+    }
+
+    @Test
+    void soldOutSubscriberShouldStayIdleWithoutRedisStore() {
+        contextRunner
+                .withPropertyValues(
+                        "lsf.quota.store=memory",
+                        "lsf.quota.provider.mode=static",
+                        "lsf.quota.redis.sold-out-cache.enabled=true"
+                )
+                .run(context -> {
+                    assertThat(context).hasSingleBean(RedisSoldOutSubscriber.class);
+                    assertThat(context.getBean(RedisSoldOutSubscriber.class).isSubscribed()).isFalse();
+                });
+    }
+
+    @Test
+    void commandConsumerShouldRequireKafkaBeansWhenEnabled() {
+        contextRunner
+                .withPropertyValues(
+                        "lsf.quota.store=memory",
+                        "lsf.quota.provider.mode=static",
+                        "lsf.quota.commands.enabled=true"
+                )
+                .run(context -> {
+                    assertThat(context).hasFailed();
+                    assertThat(context.getStartupFailure()).rootCause()
+                            .hasMessageContaining("no Kafka ConsumerFactory found");
+                });
+    }
+
+    @Test
+    void commandConsumerShouldBeOffByDefault() {
+        contextRunner
+                .withPropertyValues(
+                        "lsf.quota.store=memory",
+                        "lsf.quota.provider.mode=static"
+                )
+                .run(context -> assertThat(context).doesNotHaveBean(QuotaCommandProcessor.class));
+    }
+
+    @Test
+    void shouldCreateConcurrentMemoryBackendWhenConfigured() {
+        contextRunner
+                .withPropertyValues(
+                        "lsf.quota.store=memory_concurrent",
+                        "lsf.quota.provider.mode=static"
+                )
+                .run(context -> assertThat(context.getBean(QuotaService.class)).isInstanceOf(ConcurrentMemoryQuotaService.class));
+    }
+
     @Test
     void autoModeShouldFallbackToMemoryWhenRedisIsAbsent() {
         contextRunner
@@ -45,6 +168,30 @@ class QuotaAutoConfigurationTest {
                 .run(context -> assertThat(context.getBean(QuotaService.class)).isInstanceOf(MemoryQuotaService.class));
     }
 
+    @Test
+    void redisBackendShouldRegisterItsScriptsInTheSharedRegistry() {
+        contextRunner
+                .withConfiguration(AutoConfigurations.of(LsfRedisScriptAutoConfiguration.class))
+                .withBean(StringRedisTemplate.class, () -> {
+                    // không cần Redis thật: preload lỗi chỉ log, script vẫn được đăng ký
+                    LettuceConnectionFactory cf = new LettuceConnectionFactory("localhost", 1);
+                    cf.afterPropertiesSet();
+                    return new StringRedisTemplate(cf);
+                })
+                .withPropertyValues(
+                        "lsf.quota.store=redis",
+                        "lsf.quota.provider.mode=static",
+                        "lsf.quota.redis.sweeper-enabled=false"
+                )
+                .run(context -> {
+                    assertThat(context.getBean(QuotaService.class)).isInstanceOf(RedisQuotaService.class);
+                    assertThat(context).hasSingleBean(RedisScriptRegistry.class);
+                    assertThat(context.getBean(RedisScriptRegistry.class).scripts())
+                            .extracting(LsfRedisScript::name)
+                            .contains("lsf.quota.split.reserve", "lsf.quota.split.sweep", "lsf.quota.read-forward");
+                });
+    }
+
     @Test
     void shouldFailFastWhenRedisModeIsForcedButRedisTemplateMissing() {
         contextRunner
@@ -0,0 +1,81 @@
+package com.myorg.lsf.quota.command;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.myorg.lsf.contracts.core.conventions.CoreHeaders;
+import com.myorg.lsf.contracts.core.envelope.EventEnvelope;
+import com.myorg.lsf.quota.config.LsfQuotaProperties;
+import com.myorg.lsf.quota.impl.memory.MemoryQuotaService;
+import com.myorg.lsf.quota.policy.QuotaPolicy;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.kafka.core.KafkaTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class QuotaCommandListenerTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final QuotaCommandProcessor processor = new QuotaCommandProcessor(
+            new MemoryQuotaService(new LsfQuotaProperties(), null, Clock.systemUTC()),
+            quotaKey -> Optional.of(QuotaPolicy.builder().limit(10).hold(Duration.ofMinutes(1)).build()),
+            MAPPER, "quota-test");
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void shouldSendOneResultPerReserveKeyedByWorkflowAndSkipUnreadableRecords() throws Exception {
+        KafkaTemplate<String, Object> kafka = mock(KafkaTemplate.class);
+        when(kafka.send(any(ProducerRecord.class))).thenReturn(CompletableFuture.completedFuture(null));
+        QuotaCommandListener listener = new QuotaCommandListener(processor, kafka, MAPPER, "quota-results", 1000);
+
+        EventEnvelope asJson = QuotaCommandProcessorTest.reserve("WF-1", "seat:A", 1);
+        EventEnvelope asMap = QuotaCommandProcessorTest.reserve("WF-2", "seat:A", 1);
+        listener.onMessage(List.of(
+                record(0, MAPPER.writeValueAsString(asJson)),
+                record(1, MAPPER.convertValue(asMap, Map.class)),
+                record(2, "not json")));
+
+        ArgumentCaptor<ProducerRecord<String, Object>> sent = ArgumentCaptor.forClass(ProducerRecord.class);
+        verify(kafka, times(2)).send(sent.capture());
+        ProducerRecord<String, Object> first = sent.getAllValues().get(0);
+        assertEquals("quota-results", first.topic());
+        assertEquals("WF-1", first.key());
+        assertEquals(asJson.getEventId(), header(first, CoreHeaders.CAUSATION_ID));
+        assertEquals("WF-2", sent.getAllValues().get(1).key());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void failedPublishShouldFailTheBatchSoItIsRedelivered() {
+        KafkaTemplate<String, Object> kafka = mock(KafkaTemplate.class);
+        when(kafka.send(any(ProducerRecord.class))).thenReturn(CompletableFuture.failedFuture(new RuntimeException("broker down")));
+        QuotaCommandListener listener = new QuotaCommandListener(processor, kafka, MAPPER, "quota-results", 1000);
+
+        assertThrows(IllegalStateException.class, () -> listener.onMessage(List.of(
+                record(0, QuotaCommandProcessorTest.reserve("WF-1", "seat:A", 1)))));
+    }
+
+    private static ConsumerRecord<String, Object> record(long offset, Object value) {
+        return new ConsumerRecord<>("quota-commands", 0, offset, "seat:A", value);
+    }
+
+    private static String header(ProducerRecord<String, Object> record, String name) {
+        return new String(record.headers().lastHeader(name).value(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,189 @@
+package com.myorg.lsf.quota.command;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.myorg.lsf.contracts.core.envelope.EnvelopeBuilder;
+import com.myorg.lsf.contracts.core.envelope.EventEnvelope;
+import com.myorg.lsf.contracts.quota.ConfirmReservationCommand;
+import com.myorg.lsf.contracts.quota.QuotaEventTypes;
+import com.myorg.lsf.contracts.quota.QuotaReserveResult;
+import com.myorg.lsf.contracts.quota.ReleaseReservationCommand;
+import com.myorg.lsf.contracts.quota.ReserveQuotaCommand;
+import com.myorg.lsf.quota.api.QuotaBatchMode;
+import com.myorg.lsf.quota.api.QuotaHold;
+import com.myorg.lsf.quota.api.QuotaRequest;
+import com.myorg.lsf.quota.api.QuotaResult;
+import com.myorg.lsf.quota.api.QuotaService;
+import com.myorg.lsf.quota.api.QuotaState;
+import com.myorg.lsf.quota.config.LsfQuotaProperties;
+import com.myorg.lsf.quota.impl.memory.MemoryQuotaService;
+import com.myorg.lsf.quota.policy.QuotaPolicy;
+import com.myorg.lsf.quota.policy.QuotaPolicyProvider;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QuotaCommandProcessorTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final MemoryQuotaService memory = new MemoryQuotaService(new LsfQuotaProperties(), null, Clock.systemUTC());
+    private final CountingQuotaService quotaService = new CountingQuotaService(memory);
+    private final QuotaPolicyProvider policies = quotaKey -> quotaKey.startsWith("seat:")
+            ? Optional.of(QuotaPolicy.builder().limit(2).hold(Duration.ofMinutes(5)).build())
+            : Optional.empty();
+    private final QuotaCommandProcessor processor = new QuotaCommandProcessor(quotaService, policies, MAPPER, "quota-test");
+
+    @Test
+    void reserveRunShouldBeOneBestEffortBatchWithOneResultPerCommand() throws Exception {
+        List<EventEnvelope> commands = List.of(
+                reserve("WF-1", "seat:A", 1),
+                reserve("WF-2", "seat:A", 1),
+                reserve("WF-3", "seat:A", 1),
+                reserve("WF-4", "room:X", 1),
+                reserve("WF-5", "seat:A", 0));
+
+        List<EventEnvelope> out = processor.process(commands);
+
+        assertEquals(1, quotaService.reserveAllCalls);
+        assertEquals(QuotaBatchMode.BEST_EFFORT, quotaService.lastMode);
+        assertEquals(5, out.size());
+        assertResult(out.get(0), "WF-1", true, null);
+        assertResult(out.get(1), "WF-2", true, null);
+        assertResult(out.get(2), "WF-3", false, QuotaCommandProcessor.REASON_QUOTA_EXCEEDED);
+        assertResult(out.get(3), "WF-4", false, QuotaCommandProcessor.REASON_POLICY_NOT_FOUND);
+        assertResult(out.get(4), "WF-5", false, QuotaCommandProcessor.REASON_INVALID_COMMAND);
+
+        EventEnvelope first = out.get(0);
+        assertEquals(QuotaEventTypes.RESERVE_RESULT_V1, first.getEventType());
+        assertEquals("WF-1", first.getAggregateId());
+        assertEquals(commands.get(0).getEventId(), first.getCausationId());
+        assertEquals("corr-WF-1", first.getCorrelationId());
+        assertEquals("quota-test", first.getProducer());
+    }
+
+    @Test
+    void runsShouldKeepCommandOrderAcrossTypes() throws Exception {
+        List<EventEnvelope> out = processor.process(List.of(
+                reserve("WF-1", "seat:B", 2),
+                release("WF-1", "seat:B"),
+                reserve("WF-2", "seat:B", 2)));
+
+        assertEquals(2, quotaService.reserveAllCalls);
+        assertEquals(1, quotaService.releaseAllCalls);
+        assertResult(out.get(0), "WF-1", true, null);
+        assertResult(out.get(1), "WF-2", true, null);
+    }
+
+    @Test
+    void redeliveredBatchShouldReportTheSameOutcomeWithoutDoubleCounting() throws Exception {
+        List<EventEnvelope> batch = List.of(reserve("WF-1", "seat:C", 1), reserve("WF-2", "seat:C", 1));
+
+        processor.process(batch);
+        List<EventEnvelope> replay = processor.process(batch);
+
+        assertResult(replay.get(0), "WF-1", true, null);
+        assertResult(replay.get(1), "WF-2", true, null);
+        assertFalse(result(processor.process(List.of(reserve("WF-3", "seat:C", 1))).get(0)).isSuccess());
+    }
+
+    @Test
+    void confirmRunShouldGoThroughConfirmAll() throws Exception {
+        processor.process(List.of(reserve("WF-1", "seat:D", 1), reserve("WF-2", "seat:D", 1)));
+
+        List<EventEnvelope> out = processor.process(List.of(confirm("WF-1", "seat:D"), confirm("WF-2", "seat:D")));
+
+        assertTrue(out.isEmpty());
+        assertEquals(1, quotaService.confirmAllCalls);
+        assertEquals(QuotaState.CONFIRMED, memory.confirm("seat:D", "WF-1").state());
+    }
+
+    private static void assertResult(EventEnvelope env, String workflowId, boolean success, String reason) throws Exception {
+        QuotaReserveResult result = result(env);
+        assertEquals(workflowId, result.getWorkflowId());
+        assertEquals(success, result.isSuccess());
+        if (reason == null) {
+            assertNull(result.getReason());
+        } else {
+            assertEquals(reason, result.getReason());
+        }
+    }
+
+    private static QuotaReserveResult result(EventEnvelope env) throws Exception {
+        return MAPPER.treeToValue(env.getPayload(), QuotaReserveResult.class);
+    }
+
+    static EventEnvelope reserve(String workflowId, String resourceId, int quantity) {
+        return command(QuotaEventTypes.RESERVE_COMMAND_V1, workflowId, ReserveQuotaCommand.builder()
+                .workflowId(workflowId).resourceId(resourceId).quantity(quantity).build());
+    }
+
+    private static EventEnvelope confirm(String workflowId, String resourceId) {
+        return command(QuotaEventTypes.CONFIRM_COMMAND_V1, workflowId, ConfirmReservationCommand.builder()
+                .workflowId(workflowId).resourceId(resourceId).quantity(1).build());
+    }
+
+    private static EventEnvelope release(String workflowId, String resourceId) {
+        return command(QuotaEventTypes.RELEASE_COMMAND_V1, workflowId, ReleaseReservationCommand.builder()
+                .workflowId(workflowId).resourceId(resourceId).quantity(1).reason("cancelled").build());
+    }
+
+    private static EventEnvelope command(String type, String workflowId, Object payload) {
+        return EnvelopeBuilder.wrap(MAPPER, type, 1, workflowId, "corr-" + workflowId, null, "caller", payload);
+    }
+
+    /** Delegates to the memory backend and counts the batch calls. */
+    private static final class CountingQuotaService implements QuotaService {
+        private final QuotaService delegate;
+        int reserveAllCalls;
+        int confirmAllCalls;
+        int releaseAllCalls;
+        QuotaBatchMode lastMode;
+
+        CountingQuotaService(QuotaService delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public QuotaResult reserve(QuotaRequest req) {
+            return delegate.reserve(req);
+        }
+
+        @Override
+        public QuotaResult confirm(String quotaKey, String requestId) {
+            return delegate.confirm(quotaKey, requestId);
+        }
+
+        @Override
+        public QuotaResult release(String quotaKey, String requestId) {
+            return delegate.release(quotaKey, requestId);
+        }
+
+        @Override
+        public List<QuotaResult> reserveAll(List<QuotaRequest> requests, QuotaBatchMode mode) {
+            reserveAllCalls++;
+            lastMode = mode;
+            return delegate.reserveAll(new ArrayList<>(requests), mode);
+        }
+
+        @Override
+        public List<QuotaResult> confirmAll(List<QuotaHold> holds) {
+            confirmAllCalls++;
+            return delegate.confirmAll(holds);
+        }
+
+        @Override
+        public List<QuotaResult> releaseAll(List<QuotaHold> holds) {
+            releaseAllCalls++;
+            return delegate.releaseAll(holds);
+        }
+    }
+}
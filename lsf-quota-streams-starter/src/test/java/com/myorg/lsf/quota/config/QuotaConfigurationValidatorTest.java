@@ -4,6 +4,7 @@ import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class QuotaConfigurationValidatorTest {
 
@@ -39,4 +40,107 @@ class QuotaConfigurationValidatorTest {
 
         assertThrows(IllegalStateException.class, () -> QuotaConfigurationValidator.validate(props));
     }
+
+    @Test
+    void shouldRejectUnboundedRedisPurge() {
+        LsfQuotaProperties props = new LsfQuotaProperties();
+        props.getRedis().setInlinePurgeLimit(0);
+        assertThrows(IllegalStateException.class, () -> QuotaConfigurationValidator.validate(props));
+
+        props.getRedis().setInlinePurgeLimit(64);
+        props.getRedis().setSweepHoldsPerKey(1_000_000);
+        assertThrows(IllegalStateException.class, () -> QuotaConfigurationValidator.validate(props));
+    }
+
+    @Test
+    void shouldRejectHashTagInPrefixWhenClusterTagsAreOn() {
+        LsfQuotaProperties props = new LsfQuotaProperties();
+        props.setKeyPrefix("{lsf}:quota:");
+        QuotaConfigurationValidator.validate(props);
+
+        props.getRedis().setHashTags(true);
+        assertThrows(IllegalStateException.class, () -> QuotaConfigurationValidator.validate(props));
+    }
+
+    @Test
+    void shouldRejectCommandResultTopicEqualToCommandTopic() {
+        LsfQuotaProperties props = new LsfQuotaProperties();
+        props.getCommands().setEnabled(true);
+        QuotaConfigurationValidator.validate(props);
+
+        props.getCommands().setResultTopic(props.getCommands().getTopic());
+        assertThrows(IllegalStateException.class, () -> QuotaConfigurationValidator.validate(props));
+    }
+
+    @Test
+    void shouldRejectStreamsBackendWithSharedTopicsOrUnknownGuarantee() {
+        LsfQuotaProperties props = new LsfQuotaProperties();
+        props.setStore(LsfQuotaProperties.Store.STREAMS);
+        QuotaConfigurationValidator.validate(props);
+
+        props.getStreams().setProcessingGuarantee("exactly_once");
+        assertThrows(IllegalStateException.class, () -> QuotaConfigurationValidator.validate(props));
+
+        props.getStreams().setProcessingGuarantee("at_least_once");
+        props.getStreams().setReplyTopic(props.getStreams().getOpsTopic());
+        assertThrows(IllegalStateException.class, () -> QuotaConfigurationValidator.validate(props));
+    }
+
+    @Test
+    void shouldValidateRateLimitPolicyInsteadOfInventoryLimit() {
+        LsfQuotaProperties props = new LsfQuotaProperties();
+        LsfQuotaProperties.PolicyItem item = new LsfQuotaProperties.PolicyItem();
+        item.setKey("tenant:acme:api");
+        item.setRateLimit(new LsfQuotaProperties.RateLimit());
+        item.getRateLimit().setLimit(10);
+        props.getPolicies().add(item);
+        QuotaConfigurationValidator.validate(props);
+
+        item.getRateLimit().setWindowMs(0);
+        assertThrows(IllegalStateException.class, () -> QuotaConfigurationValidator.validate(props));
+    }
+
+    @Test
+    void shouldRejectRateLimitPolicyOnStreamsBackend() {
+        LsfQuotaProperties props = new LsfQuotaProperties();
+        props.setStore(LsfQuotaProperties.Store.STREAMS);
+        LsfQuotaProperties.PolicyItem item = new LsfQuotaProperties.PolicyItem();
+        item.setKey("tenant:acme:api");
+        item.setRateLimit(new LsfQuotaProperties.RateLimit());
+        item.getRateLimit().setLimit(10);
+        props.getPolicies().add(item);
+
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> QuotaConfigurationValidator.validate(props));
+        assertTrue(e.getMessage().contains("lsf.quota.policies[0].rate-limit"));
+    }
+
+    @Test
+    void shouldRejectBadPolicyCacheAndPreloadSettings() {
+        LsfQuotaProperties props = new LsfQuotaProperties();
+        props.getProvider().getCache().setRefreshAheadRatio(1.0);
+        assertThrows(IllegalStateException.class, () -> QuotaConfigurationValidator.validate(props));
+
+        props.getProvider().getCache().setRefreshAheadRatio(0);
+        props.getProvider().getJdbc().getPreload().setPageSize(0);
+        QuotaConfigurationValidator.validate(props);
+
+        props.getProvider().getJdbc().getPreload().setEnabled(true);
+        assertThrows(IllegalStateException.class, () -> QuotaConfigurationValidator.validate(props));
+    }
+
+    @Test
+    void shouldAcceptOnlyWholeSegmentWildcardsInPolicyKeys() {
+        LsfQuotaProperties props = new LsfQuotaProperties();
+        LsfQuotaProperties.PolicyItem item = new LsfQuotaProperties.PolicyItem();
+        item.setKey("shopA:*:**");
+        item.setLimit(5);
+        props.getPolicies().add(item);
+        QuotaConfigurationValidator.validate(props);
+
+        item.setKey("shopA:sku*");
+        assertThrows(IllegalStateException.class, () -> QuotaConfigurationValidator.validate(props));
+
+        item.setKey("shopA:**:x");
+        assertThrows(IllegalStateException.class, () -> QuotaConfigurationValidator.validate(props));
+    }
 }
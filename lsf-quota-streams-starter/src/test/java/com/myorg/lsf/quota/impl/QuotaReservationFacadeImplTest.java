@@ -1,15 +1,29 @@
 package com.myorg.lsf.quota.impl;
 
+import com.myorg.lsf.quota.api.QuotaBatchMode;
 import com.myorg.lsf.quota.api.QuotaDecision;
+import com.myorg.lsf.quota.api.QuotaGroupResult;
 import com.myorg.lsf.quota.api.QuotaRequest;
 import com.myorg.lsf.quota.api.QuotaResult;
 import com.myorg.lsf.quota.api.QuotaService;
+import com.myorg.lsf.quota.api.RateLimitAlgorithm;
+import com.myorg.lsf.quota.api.RateLimitRequest;
+import com.myorg.lsf.quota.api.RateLimitResult;
+import com.myorg.lsf.quota.config.LsfQuotaProperties;
+import com.myorg.lsf.quota.impl.memory.MemoryQuotaService;
 import com.myorg.lsf.quota.policy.QuotaPolicy;
 import com.myorg.lsf.quota.policy.QuotaPolicyProvider;
+import com.myorg.lsf.quota.policy.RateLimitPolicy;
 import org.junit.jupiter.api.Test;
 
+import java.time.Clock;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -36,6 +50,88 @@ class QuotaReservationFacadeImplTest {
         assertEquals(Duration.ofSeconds(45), quotaService.lastRequest.hold());
     }
 
+    @Test
+    void tryAcquireShouldPassTheRateLimitPolicyAndRefuseInventoryCalls() {
+        RecordingQuotaService quotaService = new RecordingQuotaService();
+        QuotaPolicyProvider provider = quotaKey -> Optional.of(QuotaPolicy.builder()
+                .rateLimit(RateLimitPolicy.builder()
+                        .algorithm(RateLimitAlgorithm.TOKEN_BUCKET)
+                        .limit(50)
+                        .window(Duration.ofSeconds(1))
+                        .burst(100)
+                        .build())
+                .build());
+        QuotaReservationFacadeImpl facade = new QuotaReservationFacadeImpl(quotaService, provider);
+
+        assertTrue(facade.tryAcquire("tenant:acme:api", 3).allowed());
+        assertEquals("tenant:acme:api", quotaService.lastRate.quotaKey());
+        assertEquals(3, quotaService.lastRate.permits());
+        assertEquals(100, quotaService.lastRate.capacity());
+        assertEquals(Duration.ofSeconds(1), quotaService.lastRate.window());
+
+        assertThrows(IllegalArgumentException.class, () -> facade.reserve("tenant:acme:api", "REQ-1", 1));
+        assertThrows(IllegalArgumentException.class, () -> facade.tryAcquire("tenant:acme:api", 0));
+        QuotaReservationFacadeImpl inventory = new QuotaReservationFacadeImpl(quotaService,
+                quotaKey -> Optional.of(QuotaPolicy.builder().limit(5).hold(Duration.ofSeconds(30)).build()));
+        assertThrows(IllegalArgumentException.class, () -> inventory.tryAcquire("sku:A", 1));
+    }
+
+    @Test
+    void hierarchyShouldTakeFromEveryAncestorWithAPolicyAndNameTheLevelThatRejected() {
+        Map<String, QuotaPolicy> policies = Map.of(
+                "shopA", QuotaPolicy.builder().limit(5).hold(Duration.ofMinutes(5)).build(),
+                "shopA:flashsale_sku:X", QuotaPolicy.builder().limit(3).hold(Duration.ofSeconds(30)).build(),
+                "shopA:flashsale_sku:Y", QuotaPolicy.builder().limit(3).hold(Duration.ofSeconds(30)).build());
+        MemoryQuotaService backend = new MemoryQuotaService(new LsfQuotaProperties(), null, Clock.systemUTC());
+        QuotaReservationFacadeImpl facade = new QuotaReservationFacadeImpl(backend,
+                quotaKey -> Optional.ofNullable(policies.get(quotaKey)), ":");
+
+        QuotaGroupResult first = facade.reserveHierarchy("shopA:flashsale_sku:X", "CART-1", 3);
+        assertEquals(QuotaDecision.ACCEPTED, first.decision());
+        assertEquals(List.of("shopA:flashsale_sku:X", "shopA"), first.quotaKeys(), "level without a policy is skipped");
+        assertEquals(3, first.result("shopA").used());
+
+        QuotaGroupResult tooMuch = facade.reserveHierarchy("shopA:flashsale_sku:Y", "CART-2", 3);
+        assertEquals(QuotaDecision.REJECTED, tooMuch.decision());
+        assertEquals(List.of("shopA"), tooMuch.blockingKeys());
+        assertEquals(0, tooMuch.result("shopA:flashsale_sku:Y").used(), "the SKU took nothing either");
+
+        // cùng requestId trên hai SKU: mỗi SKU giữ riêng phần của mình ở cấp tenant
+        assertEquals(QuotaDecision.ACCEPTED, facade.reserve("shopA:flashsale_sku:Y", "CART-1", 2).decision());
+        assertEquals(QuotaDecision.REJECTED, facade.reserve("shopA:flashsale_sku:Y", "CART-3", 1).decision());
+
+        assertEquals(QuotaDecision.ACCEPTED, facade.confirm("shopA:flashsale_sku:X", "CART-1").decision());
+        assertEquals(QuotaDecision.ACCEPTED, facade.release("shopA:flashsale_sku:Y", "CART-1").decision());
+        QuotaResult afterRelease = facade.reserve("shopA:flashsale_sku:Y", "CART-3", 2);
+        assertEquals(QuotaDecision.ACCEPTED, afterRelease.decision(), "release gave the tenant level back too");
+        facade.release("shopA:flashsale_sku:Y", "CART-3");
+
+        List<QuotaResult> batch = facade.reserveAll(List.of(
+                QuotaRequest.builder().quotaKey("shopA:flashsale_sku:X").requestId("CART-4").amount(1).build(),
+                QuotaRequest.builder().quotaKey("shopA:flashsale_sku:Y").requestId("CART-4").amount(1).build()),
+                QuotaBatchMode.BEST_EFFORT);
+        assertEquals(List.of(QuotaDecision.REJECTED, QuotaDecision.ACCEPTED), batch.stream().map(QuotaResult::decision).toList(),
+                "X is sold out on its own level, Y still fits under the tenant cap");
+    }
+
+    @Test
+    void shardedPolicyShouldReachReserveConfirmAndRelease() {
+        RecordingQuotaService quotaService = new RecordingQuotaService();
+        QuotaPolicyProvider provider = quotaKey -> Optional.of(QuotaPolicy.builder()
+                .limit(1000)
+                .hold(Duration.ofSeconds(30))
+                .shards(8)
+                .build());
+        QuotaReservationFacadeImpl facade = new QuotaReservationFacadeImpl(quotaService, provider);
+
+        facade.reserve("sku:FLASH", "REQ-1", 1);
+        facade.confirm("sku:FLASH", "REQ-1");
+        facade.release("sku:FLASH", "REQ-2");
+
+        assertEquals(8, quotaService.lastRequest.shards());
+        assertEquals(List.of(8, 8), quotaService.shardsSeen);
+    }
+
     @Test
     void reserveShouldFailFastWhenNoPolicyExists() {
         QuotaReservationFacadeImpl facade = new QuotaReservationFacadeImpl(new RecordingQuotaService(), quotaKey -> Optional.empty());
@@ -46,12 +142,82 @@ class QuotaReservationFacadeImplTest {
         assertTrue(ex.getMessage().contains("No quota policy"));
     }
 
+    @Test
+    void reserveAllShouldResolveEachPolicyOnceAndKeepOrder() {
+        RecordingQuotaService quotaService = new RecordingQuotaService();
+        AtomicInteger lookups = new AtomicInteger();
+        QuotaPolicyProvider provider = quotaKey -> {
+            lookups.incrementAndGet();
+            return Optional.of(QuotaPolicy.builder().limit(9).hold(Duration.ofSeconds(30)).build());
+        };
+        QuotaReservationFacadeImpl facade = new QuotaReservationFacadeImpl(quotaService, provider);
+
+        List<QuotaResult> results = facade.reserveAll(List.of(
+                item("sku:A", "CART-1", 1), item("sku:B", "CART-1", 2), item("sku:A", "CART-1b", 3)),
+                QuotaBatchMode.BEST_EFFORT);
+
+        assertEquals(3, results.size());
+        assertEquals(List.of(1, 2, 3), results.stream().map(QuotaResult::used).toList());
+        assertEquals(2, lookups.get());
+        assertEquals(9, quotaService.lastRequest.limit());
+    }
+
+    @Test
+    void defaultReserveAllShouldCompensateAcceptedItemsWhenOneIsRejected() {
+        RecordingQuotaService quotaService = new RecordingQuotaService();
+        quotaService.rejectKey = "sku:SOLD-OUT";
+        QuotaPolicyProvider provider = quotaKey -> Optional.of(QuotaPolicy.builder()
+                .limit(5).hold(Duration.ofSeconds(30)).build());
+        QuotaReservationFacadeImpl facade = new QuotaReservationFacadeImpl(quotaService, provider);
+
+        List<QuotaResult> results = facade.reserveAll(List.of(
+                item("sku:A", "CART-1", 1), item("sku:SOLD-OUT", "CART-1", 1), item("sku:B", "CART-1", 1)));
+
+        assertEquals(List.of(QuotaDecision.REJECTED, QuotaDecision.REJECTED, QuotaDecision.REJECTED),
+                results.stream().map(QuotaResult::decision).toList());
+        assertEquals(List.of("sku:A"), quotaService.released);
+    }
+
+    @Test
+    void reserveGroupShouldApplyEachKeysPolicyUnderOneRequestId() {
+        RecordingQuotaService quotaService = new RecordingQuotaService();
+        QuotaPolicyProvider provider = quotaKey -> Optional.of(QuotaPolicy.builder()
+                .limit(quotaKey.startsWith("credit:") ? 20 : 40)
+                .hold(Duration.ofSeconds(60))
+                .build());
+        QuotaReservationFacadeImpl facade = new QuotaReservationFacadeImpl(quotaService, provider);
+
+        Map<String, Integer> amounts = new LinkedHashMap<>();
+        amounts.put("section:CT101-01", 1);
+        amounts.put("credit:S1:2026A", 3);
+        QuotaGroupResult result = facade.reserveGroup(amounts, "REG-1");
+
+        assertEquals(QuotaDecision.ACCEPTED, result.decision());
+        assertEquals("REG-1", result.requestId());
+        assertEquals(List.of("section:CT101-01", "credit:S1:2026A"), result.quotaKeys());
+        assertEquals("credit:S1:2026A", quotaService.lastRequest.quotaKey());
+        assertEquals(20, quotaService.lastRequest.limit());
+        assertThrows(IllegalArgumentException.class,
+                () -> facade.confirmGroup(List.of("section:CT101-01", "section:CT101-01"), "REG-1"));
+    }
+
+    private static QuotaRequest item(String key, String requestId, int amount) {
+        return QuotaRequest.builder().quotaKey(key).requestId(requestId).amount(amount).build();
+    }
+
     private static final class RecordingQuotaService implements QuotaService {
         private QuotaRequest lastRequest;
+        private RateLimitRequest lastRate;
+        private String rejectKey;
+        private final List<String> released = new ArrayList<>();
+        private final List<Integer> shardsSeen = new ArrayList<>();
 
         @Override
         public QuotaResult reserve(QuotaRequest req) {
             this.lastRequest = req;
+            if (req.quotaKey().equals(rejectKey)) {
+                return QuotaResult.builder().decision(QuotaDecision.REJECTED).limit(req.limit()).used(req.limit()).build();
+            }
             return QuotaResult.builder().decision(QuotaDecision.ACCEPTED).limit(req.limit()).used(req.amount()).build();
         }
 
@@ -60,9 +226,28 @@ class QuotaReservationFacadeImplTest {
             return QuotaResult.builder().decision(QuotaDecision.ACCEPTED).build();
         }
 
+        @Override
+        public RateLimitResult tryAcquire(RateLimitRequest req) {
+            this.lastRate = req;
+            return RateLimitResult.builder().decision(QuotaDecision.ACCEPTED).limit(req.capacity()).build();
+        }
+
         @Override
         public QuotaResult release(String quotaKey, String requestId) {
+            released.add(quotaKey);
             return QuotaResult.builder().decision(QuotaDecision.ACCEPTED).build();
         }
+
+        @Override
+        public QuotaResult confirm(String quotaKey, String requestId, int shards) {
+            shardsSeen.add(shards);
+            return confirm(quotaKey, requestId);
+        }
+
+        @Override
+        public QuotaResult release(String quotaKey, String requestId, int shards) {
+            shardsSeen.add(shards);
+            return release(quotaKey, requestId);
+        }
     }
 }
@@ -0,0 +1,87 @@
+package com.myorg.lsf.quota.impl;
+
+import com.myorg.lsf.quota.api.QuotaDecision;
+import com.myorg.lsf.quota.api.QuotaPolicyNotFoundException;
+import com.myorg.lsf.quota.api.QuotaResult;
+import com.myorg.lsf.quota.api.QuotaService;
+import com.myorg.lsf.quota.config.LsfQuotaProperties;
+import com.myorg.lsf.quota.impl.memory.MemoryQuotaService;
+import com.myorg.lsf.quota.policy.QuotaPolicy;
+import com.myorg.lsf.quota.policy.QuotaPolicyProvider;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReactiveQuotaReservationFacadeImplTest {
+
+    @Test
+    void reserveShouldApplyPolicyAndRunLookupOnThePolicyScheduler() {
+        AtomicReference<String> lookupThread = new AtomicReference<>();
+        QuotaPolicyProvider provider = quotaKey -> {
+            lookupThread.set(Thread.currentThread().getName());
+            return Optional.of(QuotaPolicy.builder().limit(2).hold(Duration.ofSeconds(30)).build());
+        };
+        ReactiveQuotaReservationFacadeImpl facade = new ReactiveQuotaReservationFacadeImpl(
+                new BlockingReactiveQuotaService(new MemoryQuotaService(new LsfQuotaProperties(), null, Clock.systemUTC()), null),
+                provider, Schedulers.boundedElastic());
+
+        Mono<QuotaResult> reserve = facade.reserve("sku:A", "REQ-1", 2);
+        assertNull(lookupThread.get(), "nothing runs before subscription");
+
+        QuotaResult result = reserve.block();
+        assertEquals(QuotaDecision.ACCEPTED, result.decision());
+        assertEquals(2, result.limit());
+        assertTrue(lookupThread.get().startsWith("boundedElastic"));
+        assertEquals(QuotaDecision.REJECTED, facade.reserve("sku:A", "REQ-2", 1).block().decision());
+        assertEquals(QuotaDecision.ACCEPTED, facade.confirm("sku:A", "REQ-1").block().decision());
+        assertEquals(QuotaDecision.NOT_FOUND, facade.release("sku:A", "REQ-2").block().decision());
+    }
+
+    @Test
+    void confirmAndReleaseShouldPassTheShardsOfThePolicy() {
+        List<String> calls = new ArrayList<>();
+        QuotaService store = new MemoryQuotaService(new LsfQuotaProperties(), null, Clock.systemUTC()) {
+            @Override
+            public QuotaResult confirm(String quotaKey, String requestId, int shards) {
+                calls.add("confirm " + quotaKey + " shards=" + shards);
+                return super.confirm(quotaKey, requestId, shards);
+            }
+
+            @Override
+            public QuotaResult release(String quotaKey, String requestId, int shards) {
+                calls.add("release " + quotaKey + " shards=" + shards);
+                return super.release(quotaKey, requestId, shards);
+            }
+        };
+        QuotaPolicyProvider provider = quotaKey -> Optional.of(
+                QuotaPolicy.builder().limit(10).hold(Duration.ofSeconds(30)).shards(quotaKey.equals("sku:HOT") ? 4 : 0).build());
+        ReactiveQuotaReservationFacadeImpl facade = new ReactiveQuotaReservationFacadeImpl(
+                new BlockingReactiveQuotaService(store, null), provider, null);
+
+        facade.reserve("sku:HOT", "REQ-1", 1).block();
+        assertEquals(QuotaDecision.ACCEPTED, facade.confirm("sku:HOT", "REQ-1").block().decision());
+        facade.release("sku:A", "REQ-2").block();
+
+        assertEquals(List.of("confirm sku:HOT shards=4", "release sku:A shards=0"), calls);
+    }
+
+    @Test
+    void invalidInputAndMissingPolicyShouldSurfaceAsErrors() {
+        ReactiveQuotaReservationFacadeImpl facade = new ReactiveQuotaReservationFacadeImpl(
+                new BlockingReactiveQuotaService(new MemoryQuotaService(new LsfQuotaProperties(), null, Clock.systemUTC()), null),
+                quotaKey -> Optional.empty(), null);
+
+        assertThrows(IllegalArgumentException.class, () -> facade.reserve(" ", "REQ-1", 1).block());
+        assertThrows(IllegalArgumentException.class, () -> facade.reserve("sku:A", "REQ-1", 0).block());
+        assertThrows(QuotaPolicyNotFoundException.class, () -> facade.reserve("sku:A", "REQ-1", 1).block());
+    }
+}
@@ -0,0 +1,89 @@
+package com.myorg.lsf.quota.impl.memory;
+
+import com.myorg.lsf.quota.api.QuotaDecision;
+import com.myorg.lsf.quota.api.QuotaRequest;
+import com.myorg.lsf.quota.api.QuotaResult;
+import com.myorg.lsf.quota.config.LsfQuotaProperties;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompactMemoryBucketTest {
+
+    @Test
+    void compactLayoutShouldDecideExactlyLikeStandardLayout() {
+        LsfQuotaProperties props = new LsfQuotaProperties();
+        props.setAllowReleaseConfirmed(true);
+        MemoryBucket standard = new StandardMemoryBucket();
+        MemoryBucket compact = new CompactMemoryBucket();
+        Random random = new Random(42);
+        long now = 1_000_000L;
+
+        for (int step = 0; step < 200_000; step++) {
+            String requestId = "REQ-" + random.nextInt(2_000);
+            int op = random.nextInt(10);
+            QuotaResult expected;
+            QuotaResult actual;
+            if (op < 5) {
+                QuotaRequest req = QuotaRequest.builder()
+                        .quotaKey("sku:DIFF")
+                        .requestId(requestId)
+                        .amount(1 + random.nextInt(3))
+                        .limit(1_500)
+                        .hold(Duration.ofMillis(1 + random.nextInt(5_000)))
+                        .build();
+                expected = standard.reserve(req, now, props, null);
+                actual = compact.reserve(req, now, props, null);
+            } else if (op < 7) {
+                expected = standard.confirm(requestId, now, null);
+                actual = compact.confirm(requestId, now, null);
+            } else if (op < 9) {
+                expected = standard.release(requestId, now, props, null);
+                actual = compact.release(requestId, now, props, null);
+            } else {
+                now += random.nextInt(500);
+                assertEquals(standard.purgeExpired(now, null), compact.purgeExpired(now, null), "purge at step " + step);
+                continue;
+            }
+            assertEquals(expected, actual, "step " + step);
+            assertEquals(standard.hasHolds(), compact.hasHolds());
+        }
+    }
+
+    @Test
+    void tableShouldGrowAndShrinkWithoutLosingEntries() {
+        LsfQuotaProperties props = new LsfQuotaProperties();
+        CompactMemoryBucket bucket = new CompactMemoryBucket();
+        long now = 0;
+
+        for (int i = 0; i < 10_000; i++) {
+            QuotaResult r = bucket.reserve(request("REQ-" + i, 10 + i), now, props, null);
+            assertEquals(QuotaDecision.ACCEPTED, r.decision());
+        }
+        assertEquals(10_000, bucket.used);
+        for (int i = 0; i < 10_000; i += 2) {
+            assertEquals(QuotaDecision.ACCEPTED, bucket.release("REQ-" + i, now, props, null).decision());
+        }
+        for (int i = 1; i < 10_000; i += 2) {
+            assertEquals(10L + i, bucket.holdUntil("REQ-" + i));
+            assertEquals(MemoryBucket.NONE, bucket.holdUntil("REQ-" + (i - 1)));
+        }
+
+        assertEquals(5_000, bucket.purgeExpired(20_000, null));
+        assertFalse(bucket.hasHolds());
+        assertEquals(0, bucket.used);
+    }
+
+    private static QuotaRequest request(String requestId, long holdMs) {
+        return QuotaRequest.builder()
+                .quotaKey("sku:GROW")
+                .requestId(requestId)
+                .amount(1)
+                .limit(Integer.MAX_VALUE)
+                .hold(Duration.ofMillis(holdMs))
+                .build();
+    }
+}
@@ -0,0 +1,198 @@
+package com.myorg.lsf.quota.impl.memory;
+
+import com.myorg.lsf.quota.api.QuotaBatchMode;
+import com.myorg.lsf.quota.api.QuotaDecision;
+import com.myorg.lsf.quota.api.QuotaRequest;
+import com.myorg.lsf.quota.api.QuotaResult;
+import com.myorg.lsf.quota.api.QuotaState;
+import com.myorg.lsf.quota.config.LsfQuotaProperties;
+import com.myorg.lsf.quota.obs.QuotaMetrics;
+import com.myorg.lsf.quota.support.MutableClock;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrentMemoryQuotaServiceTest {
+
+    @Test
+    void reserveConfirmReleaseAndExpiryShouldMatchMemoryBackend() {
+        LsfQuotaProperties props = baseProps();
+        MutableClock clock = MutableClock.startingAt(Instant.parse("2026-03-10T08:00:00Z"));
+        ConcurrentMemoryQuotaService service = new ConcurrentMemoryQuotaService(props, null, clock);
+
+        QuotaResult accepted = service.reserve(request("sku:FLASH-1", "REQ-1", 2, 3, 5));
+        assertEquals(QuotaDecision.ACCEPTED, accepted.decision());
+        assertEquals(QuotaState.RESERVED, accepted.state());
+        assertEquals(2, accepted.used());
+
+        assertEquals(QuotaDecision.DUPLICATE, service.reserve(request("sku:FLASH-1", "REQ-1", 2, 3, 5)).decision());
+        assertEquals(QuotaDecision.REJECTED, service.reserve(request("sku:FLASH-1", "REQ-2", 2, 3, 5)).decision());
+
+        QuotaResult confirmed = service.confirm("sku:FLASH-1", "REQ-1");
+        assertEquals(QuotaDecision.ACCEPTED, confirmed.decision());
+        assertEquals(QuotaState.CONFIRMED, confirmed.state());
+        assertEquals(QuotaDecision.NOT_FOUND, service.release("sku:FLASH-1", "REQ-1").decision());
+
+        QuotaResult held = service.reserve(request("sku:FLASH-1", "REQ-3", 1, 3, 5));
+        assertEquals(QuotaDecision.ACCEPTED, held.decision());
+        assertEquals(3, held.used());
+
+        clock.advance(Duration.ofSeconds(6));
+        QuotaResult afterExpiry = service.reserve(request("sku:FLASH-1", "REQ-4", 1, 3, 5));
+        assertEquals(QuotaDecision.ACCEPTED, afterExpiry.decision());
+        assertEquals(3, afterExpiry.used());
+        assertEquals(QuotaDecision.NOT_FOUND, service.confirm("sku:FLASH-1", "REQ-3").decision());
+    }
+
+    @Test
+    void idleBucketsShouldBeEvictedAfterKeepAliveButLiveHoldsKept() {
+        LsfQuotaProperties props = baseProps();
+        MutableClock clock = MutableClock.startingAt(Instant.parse("2026-03-10T08:00:00Z"));
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ConcurrentMemoryQuotaService service = new ConcurrentMemoryQuotaService(
+                props, new QuotaMetrics(registry, "test", "memory_concurrent"), clock);
+
+        service.reserve(request("sku:SOLD", "REQ-1", 1, 5, 10));
+        service.confirm("sku:SOLD", "REQ-1");
+        service.reserve(request("sku:HELD", "REQ-2", 1, 5, 300));
+        service.confirm("sku:TYPO", "REQ-X");
+        service.release("sku:TYPO-2", "REQ-Y");
+        assertEquals(2, service.bucketCount());
+
+        clock.advance(Duration.ofSeconds(61));
+        assertEquals(1, service.evictIdle());
+        assertEquals(1, service.bucketCount());
+        assertEquals(1.0, registry.get("lsf.quota.buckets.evicted").tag("reason", "idle").counter().count());
+        assertEquals(1.0, registry.get("lsf.quota.buckets").gauge().value());
+
+        // the key with a live hold survives and still counts it
+        assertEquals(QuotaDecision.DUPLICATE, service.reserve(request("sku:HELD", "REQ-2", 1, 5, 300)).decision());
+        // an evicted key starts fresh, exactly like an expired Redis key
+        assertEquals(0, service.release("sku:SOLD", "REQ-1").used());
+    }
+
+    @Test
+    void capacityCapShouldOnlyEvictEmptyBucketsOldestFirst() {
+        LsfQuotaProperties props = baseProps();
+        props.getMemory().setMaxBuckets(2);
+        MutableClock clock = MutableClock.startingAt(Instant.parse("2026-03-10T08:00:00Z"));
+        ConcurrentMemoryQuotaService service = new ConcurrentMemoryQuotaService(props, null, clock);
+
+        service.reserve(request("sku:OLD-EMPTY", "REQ-1", 1, 5, 30));
+        service.release("sku:OLD-EMPTY", "REQ-1");
+        clock.advance(Duration.ofSeconds(1));
+        service.reserve(request("sku:HELD", "REQ-2", 1, 5, 30));
+        clock.advance(Duration.ofSeconds(1));
+        service.reserve(request("sku:NEW-EMPTY", "REQ-3", 1, 5, 30));
+        service.release("sku:NEW-EMPTY", "REQ-3");
+        clock.advance(Duration.ofSeconds(1));
+        service.reserve(request("sku:HELD-2", "REQ-4", 1, 5, 30));
+        assertEquals(4, service.bucketCount());
+
+        assertEquals(2, service.evictIdle());
+        assertEquals(2, service.bucketCount());
+        assertEquals(QuotaDecision.ACCEPTED, service.confirm("sku:HELD", "REQ-2").decision());
+        assertEquals(QuotaDecision.ACCEPTED, service.confirm("sku:HELD-2", "REQ-4").decision());
+    }
+
+    @Test
+    void concurrentReserveAcrossKeysShouldNeverExceedLimitPerKey() throws Exception {
+        LsfQuotaProperties props = baseProps();
+        MutableClock clock = MutableClock.startingAt(Instant.parse("2026-03-10T08:00:00Z"));
+        ConcurrentMemoryQuotaService service = new ConcurrentMemoryQuotaService(props, null, clock);
+
+        int keys = 4;
+        int limit = 10;
+        int workers = 80;
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<QuotaResult>> futures = new ArrayList<>();
+
+        for (int i = 0; i < workers; i++) {
+            final int idx = i;
+            futures.add(executor.submit(() -> {
+                assertTrue(start.await(5, TimeUnit.SECONDS));
+                return service.reserve(request("sku:HOT-" + (idx % keys), "REQ-" + idx, 1, limit, 60));
+            }));
+        }
+        start.countDown();
+
+        int accepted = 0;
+        for (Future<QuotaResult> future : futures) {
+            QuotaResult result = future.get(5, TimeUnit.SECONDS);
+            if (result.decision() == QuotaDecision.ACCEPTED) {
+                accepted++;
+            }
+            assertTrue(result.used() <= limit);
+        }
+        executor.shutdownNow();
+
+        assertEquals(keys * limit, accepted);
+        for (int k = 0; k < keys; k++) {
+            QuotaResult extra = service.reserve(request("sku:HOT-" + k, "REQ-extra", 1, limit, 60));
+            assertEquals(QuotaDecision.REJECTED, extra.decision());
+            assertEquals(limit, extra.used());
+        }
+    }
+
+    @Test
+    void overlappingAllOrNothingBatchesShouldNotDeadlockOrOversell() throws Exception {
+        LsfQuotaProperties props = baseProps();
+        MutableClock clock = MutableClock.startingAt(Instant.parse("2026-03-10T08:00:00Z"));
+        ConcurrentMemoryQuotaService service = new ConcurrentMemoryQuotaService(props, null, clock);
+
+        int limit = 25;
+        int carts = 100;
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<List<QuotaResult>>> futures = new ArrayList<>();
+        for (int i = 0; i < carts; i++) {
+            final String rid = "CART-" + i;
+            // nửa số cart đi A -> B, nửa kia B -> A
+            final boolean forward = i % 2 == 0;
+            futures.add(executor.submit(() -> {
+                assertTrue(start.await(5, TimeUnit.SECONDS));
+                QuotaRequest a = request("sku:A", rid, 1, limit, 60);
+                QuotaRequest b = request("sku:B", rid, 1, limit, 60);
+                return service.reserveAll(forward ? List.of(a, b) : List.of(b, a), QuotaBatchMode.ALL_OR_NOTHING);
+            }));
+        }
+        start.countDown();
+
+        int accepted = 0;
+        for (Future<List<QuotaResult>> future : futures) {
+            List<QuotaResult> results = future.get(10, TimeUnit.SECONDS);
+            assertEquals(results.get(0).decision(), results.get(1).decision());
+            if (results.get(0).decision() == QuotaDecision.ACCEPTED) accepted++;
+        }
+        executor.shutdownNow();
+
+        assertEquals(limit, accepted);
+        assertEquals(QuotaDecision.REJECTED, service.reserve(request("sku:A", "extra", 1, limit, 60)).decision());
+        assertEquals(QuotaDecision.REJECTED, service.reserve(request("sku:B", "extra", 1, limit, 60)).decision());
+    }
+
+    private static QuotaRequest request(String key, String requestId, int amount, int limit, int holdSeconds) {
+        return QuotaRequest.builder()
+                .quotaKey(key)
+                .requestId(requestId)
+                .amount(amount)
+                .limit(limit)
+                .hold(Duration.ofSeconds(holdSeconds))
+                .build();
+    }
+
+    private static LsfQuotaProperties baseProps() {
+        LsfQuotaProperties props = new LsfQuotaProperties();
+        props.setDefaultHoldSeconds(30);
+        props.setKeepAliveSeconds(60);
+        return props;
+    }
+}
@@ -0,0 +1,76 @@
+package com.myorg.lsf.quota.impl.memory;
+
+import com.myorg.lsf.quota.api.QuotaRequest;
+import com.myorg.lsf.quota.config.LsfQuotaProperties;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.openjdk.jol.info.GraphLayout;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Heap footprint of one bucket per layout, measured with JOL on the live object graph.
+ * The requestId strings are owned by the caller and reported separately.
+ *
+ * Run with {@code RUN_QUOTA_BENCHMARKS=true mvn -pl lsf-quota-streams-starter test
+ * -Dtest=MemoryBucketFootprintBenchmarkTest}.
+ */
+@EnabledIfEnvironmentVariable(named = "RUN_QUOTA_BENCHMARKS", matches = "true")
+class MemoryBucketFootprintBenchmarkTest {
+
+    private static final int HOLDS = 100_000;
+
+    static {
+        // JDK 17+ hides field offsets of some JDK classes from JOL's default strategy
+        System.setProperty("jol.magicFieldOffset", "true");
+    }
+
+    @Test
+    void reportBytesPerHoldAndPerConfirmed() {
+        List<String> ids = new ArrayList<>(HOLDS);
+        for (int i = 0; i < HOLDS; i++) ids.add(UUID.randomUUID().toString());
+        long idBytes = GraphLayout.parseInstance(ids.toArray()).totalSize();
+
+        System.out.printf("%-10s %14s %18s%n", "layout", "bytes/hold", "bytes/confirmed");
+        long standardHold = 0;
+        long compactHold = 0;
+        for (var layout : LsfQuotaProperties.Memory.BucketLayout.values()) {
+            Supplier<MemoryBucket> factory = MemoryBucket.factory(layout);
+
+            MemoryBucket held = fill(factory.get(), ids, false);
+            long heldBytes = GraphLayout.parseInstance(held).totalSize() - idBytes;
+
+            MemoryBucket sold = fill(factory.get(), ids, true);
+            long soldBytes = GraphLayout.parseInstance(sold).totalSize() - idBytes;
+
+            System.out.printf("%-10s %14.1f %18.1f%n", layout, heldBytes / (double) HOLDS, soldBytes / (double) HOLDS);
+            if (layout == LsfQuotaProperties.Memory.BucketLayout.STANDARD) standardHold = heldBytes;
+            else compactHold = heldBytes;
+        }
+        System.out.printf("requestId strings: %.1f bytes each (shared by both layouts)%n", idBytes / (double) HOLDS);
+
+        assertTrue(compactHold < standardHold, "compact layout must use less heap per hold");
+    }
+
+    private static MemoryBucket fill(MemoryBucket bucket, List<String> ids, boolean confirm) {
+        LsfQuotaProperties props = new LsfQuotaProperties();
+        long now = 0;
+        for (String id : ids) {
+            bucket.reserve(QuotaRequest.builder()
+                    .quotaKey("sku:FOOTPRINT")
+                    .requestId(id)
+                    .amount(1)
+                    .limit(Integer.MAX_VALUE)
+                    .hold(Duration.ofMinutes(10))
+                    .build(), now, props, null);
+            if (confirm) bucket.confirm(id, now, null);
+        }
+        return bucket;
+    }
+}
@@ -0,0 +1,105 @@
+package com.myorg.lsf.quota.impl.memory;
+
+import com.myorg.lsf.quota.api.QuotaDecision;
+import com.myorg.lsf.quota.api.QuotaRequest;
+import com.myorg.lsf.quota.api.QuotaService;
+import com.myorg.lsf.quota.config.LsfQuotaProperties;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Contention benchmark: reserve + release cycles on unrelated SKUs, measured for
+ * 1..N threads against the global-lock and the per-bucket-lock backends.
+ *
+ * Run with {@code RUN_QUOTA_BENCHMARKS=true mvn -pl lsf-quota-streams-starter test
+ * -Dtest=MemoryQuotaContentionBenchmarkTest}.
+ */
+@EnabledIfEnvironmentVariable(named = "RUN_QUOTA_BENCHMARKS", matches = "true")
+class MemoryQuotaContentionBenchmarkTest {
+
+    private static final int KEYS = 1024;
+    private static final Duration WARMUP = Duration.ofMillis(500);
+    private static final Duration MEASURE = Duration.ofSeconds(2);
+
+    @Test
+    void reportThroughputPerThreadCount() throws Exception {
+        int maxThreads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        List<Integer> threadCounts = new ArrayList<>();
+        for (int t = 1; t <= maxThreads; t *= 2) threadCounts.add(t);
+
+        System.out.printf("%-20s %8s %14s%n", "backend", "threads", "ops/s");
+        for (int threads : threadCounts) {
+            double global = run(() -> new MemoryQuotaService(props(), null, Clock.systemUTC()), threads);
+            double striped = run(() -> new ConcurrentMemoryQuotaService(props(), null, Clock.systemUTC()), threads);
+            System.out.printf("%-20s %8d %,14.0f%n", "memory", threads, global);
+            System.out.printf("%-20s %8d %,14.0f%n", "memory_concurrent", threads, striped);
+            assertTrue(global > 0 && striped > 0);
+        }
+    }
+
+    private static double run(Supplier<QuotaService> factory, int threads) throws Exception {
+        QuotaService service = factory.get();
+        measure(service, threads, WARMUP);
+        return measure(service, threads, MEASURE);
+    }
+
+    private static double measure(QuotaService service, int threads, Duration duration) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Long>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int worker = t;
+            futures.add(pool.submit(() -> {
+                start.await();
+                long deadline = System.nanoTime() + duration.toNanos();
+                long ops = 0;
+                int i = worker;
+                while (System.nanoTime() < deadline) {
+                    String key = "bench:sku-" + (i % KEYS);
+                    String requestId = "w" + worker + "-" + ops;
+                    QuotaDecision d = service.reserve(QuotaRequest.builder()
+                            .quotaKey(key)
+                            .requestId(requestId)
+                            .amount(1)
+                            .limit(Integer.MAX_VALUE)
+                            .hold(Duration.ofMinutes(5))
+                            .build()).decision();
+                    assertEquals(QuotaDecision.ACCEPTED, d);
+                    service.release(key, requestId);
+                    ops += 2;
+                    i += threads;
+                }
+                return ops;
+            }));
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        long total = 0;
+        for (Future<Long> f : futures) total += f.get();
+        long elapsed = System.nanoTime() - begin;
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+        return total / (elapsed / 1_000_000_000.0);
+    }
+
+    private static LsfQuotaProperties props() {
+        LsfQuotaProperties props = new LsfQuotaProperties();
+        props.setDefaultHoldSeconds(30);
+        props.setKeepAliveSeconds(60);
+        return props;
+    }
+}
@@ -1,9 +1,14 @@
 package com.myorg.lsf.quota.impl.memory;
 
+import com.myorg.lsf.quota.api.QuotaBatchMode;
 import com.myorg.lsf.quota.api.QuotaDecision;
+import com.myorg.lsf.quota.api.QuotaGroupResult;
 import com.myorg.lsf.quota.api.QuotaRequest;
 import com.myorg.lsf.quota.api.QuotaResult;
 import com.myorg.lsf.quota.api.QuotaState;
+import com.myorg.lsf.quota.api.RateLimitAlgorithm;
+import com.myorg.lsf.quota.api.RateLimitRequest;
+import com.myorg.lsf.quota.api.RateLimitResult;
 import com.myorg.lsf.quota.config.LsfQuotaProperties;
 import com.myorg.lsf.quota.support.MutableClock;
 import org.junit.jupiter.api.Test;
@@ -18,6 +23,57 @@ import static org.junit.jupiter.api.Assertions.*;
 
 class MemoryQuotaServiceTest {
 
+    @Test
+    void tokenBucketShouldAllowBurstThenRefillAtRate() {
+        MutableClock clock = MutableClock.startingAt(Instant.parse("2026-03-10T08:00:00Z"));
+        MemoryQuotaService service = new MemoryQuotaService(baseProps(), null, clock);
+        RateLimitRequest.RateLimitRequestBuilder req = RateLimitRequest.builder()
+                .quotaKey("tenant:acme:api").algorithm(RateLimitAlgorithm.TOKEN_BUCKET)
+                .limit(10).window(Duration.ofSeconds(1)).burst(20);
+
+        RateLimitResult burst = service.tryAcquire(req.permits(15).build());
+        assertTrue(burst.allowed());
+        assertEquals(5, burst.remaining());
+
+        RateLimitResult limited = service.tryAcquire(req.permits(6).build());
+        assertEquals(QuotaDecision.REJECTED, limited.decision());
+        assertEquals(100, limited.retryAfterMs(), "1 token short at 10 tokens/s");
+
+        clock.advance(Duration.ofMillis(100));
+        RateLimitResult refilled = service.tryAcquire(req.permits(6).build());
+        assertTrue(refilled.allowed());
+        assertEquals(0, refilled.remaining());
+        assertEquals(-1, service.tryAcquire(req.permits(21).build()).retryAfterMs(), "more than the burst never fits");
+
+        clock.advance(Duration.ofSeconds(10));
+        assertEquals(0, service.tryAcquire(req.permits(20).build()).remaining(), "refill stops at burst");
+    }
+
+    @Test
+    void slidingWindowShouldWeighThePreviousWindow() {
+        MutableClock clock = MutableClock.startingAt(Instant.parse("2026-03-10T08:00:00Z"));
+        MemoryQuotaService service = new MemoryQuotaService(baseProps(), null, clock);
+        RateLimitRequest.RateLimitRequestBuilder req = RateLimitRequest.builder()
+                .quotaKey("user:42:login").algorithm(RateLimitAlgorithm.SLIDING_WINDOW)
+                .limit(10).window(Duration.ofSeconds(1));
+
+        assertTrue(service.tryAcquire(req.permits(8).build()).allowed());
+        RateLimitResult full = service.tryAcquire(req.permits(3).build());
+        assertEquals(QuotaDecision.REJECTED, full.decision());
+        assertEquals(1125, full.retryAfterMs(), "next window, once 8 * (1 - 125/1000) + 3 <= 10");
+
+        clock.advance(Duration.ofMillis(1125));
+        RateLimitResult next = service.tryAcquire(req.permits(3).build());
+        assertTrue(next.allowed());
+        assertEquals(0, next.remaining());
+        assertEquals(125, service.tryAcquire(req.permits(1).build()).retryAfterMs());
+
+        clock.advance(Duration.ofSeconds(2));
+        service.evictIdle();
+        assertEquals(0, service.bucketCount(), "rate-limit keys are not quota buckets");
+        assertTrue(service.tryAcquire(req.permits(10).build()).allowed(), "both windows are over");
+    }
+
     @Test
     void reserveDuplicateConfirmAndReleaseFlowShouldBeConsistent() {
         LsfQuotaProperties props = baseProps();
@@ -90,6 +146,92 @@ class MemoryQuotaServiceTest {
         assertEquals(2, afterExpiry.remaining());
     }
 
+    @Test
+    void sweeperShouldReclaimExpiredHoldsOnIdleKeys() {
+        LsfQuotaProperties props = baseProps();
+        MutableClock clock = MutableClock.startingAt(Instant.parse("2026-03-10T08:00:00Z"));
+        MemoryQuotaService service = new MemoryQuotaService(props, null, clock);
+        MemoryQuotaSweeper sweeper = new MemoryQuotaSweeper(service);
+
+        for (int i = 0; i < 3; i++) {
+            service.reserve(QuotaRequest.builder()
+                    .quotaKey("sku:IDLE-" + i)
+                    .requestId("REQ-" + i)
+                    .amount(1)
+                    .limit(5)
+                    .hold(Duration.ofSeconds(5 + i * 10))
+                    .build());
+        }
+
+        assertEquals(0, sweeper.runOnce());
+        clock.advance(Duration.ofSeconds(16));
+        assertEquals(2, sweeper.runOnce());
+        assertEquals(0, sweeper.runOnce());
+
+        assertEquals(QuotaDecision.NOT_FOUND, service.confirm("sku:IDLE-0", "REQ-0").decision());
+        assertEquals(QuotaDecision.NOT_FOUND, service.confirm("sku:IDLE-1", "REQ-1").decision());
+        assertEquals(QuotaDecision.ACCEPTED, service.confirm("sku:IDLE-2", "REQ-2").decision());
+    }
+
+    @Test
+    void sweeperShouldEvictIdleBucketsAfterKeepAlive() {
+        LsfQuotaProperties props = baseProps();
+        MutableClock clock = MutableClock.startingAt(Instant.parse("2026-03-10T08:00:00Z"));
+        MemoryQuotaService service = new MemoryQuotaService(props, null, clock);
+        MemoryQuotaSweeper sweeper = new MemoryQuotaSweeper(service);
+
+        for (int i = 0; i < 5; i++) {
+            service.reserve(QuotaRequest.builder()
+                    .quotaKey("sku:ONE-OFF-" + i)
+                    .requestId("REQ-" + i)
+                    .amount(1)
+                    .limit(5)
+                    .hold(Duration.ofSeconds(5))
+                    .build());
+        }
+        assertEquals(5, service.bucketCount());
+
+        clock.advance(Duration.ofSeconds(30));
+        assertEquals(5, sweeper.runOnce());
+        assertEquals(5, service.bucketCount());
+
+        clock.advance(Duration.ofSeconds(31));
+        sweeper.runOnce();
+        assertEquals(0, service.bucketCount());
+    }
+
+    @Test
+    void staleExpiryEntryShouldNotDropReReservedHold() {
+        LsfQuotaProperties props = baseProps();
+        MutableClock clock = MutableClock.startingAt(Instant.parse("2026-03-10T08:00:00Z"));
+        MemoryQuotaService service = new MemoryQuotaService(props, null, clock);
+
+        QuotaRequest shortHold = QuotaRequest.builder()
+                .quotaKey("sku:RE")
+                .requestId("REQ-1")
+                .amount(2)
+                .limit(5)
+                .hold(Duration.ofSeconds(5))
+                .build();
+        service.reserve(shortHold);
+        service.release("sku:RE", "REQ-1");
+
+        QuotaResult again = service.reserve(QuotaRequest.builder()
+                .quotaKey("sku:RE")
+                .requestId("REQ-1")
+                .amount(2)
+                .limit(5)
+                .hold(Duration.ofSeconds(60))
+                .build());
+        assertEquals(QuotaDecision.ACCEPTED, again.decision());
+
+        clock.advance(Duration.ofSeconds(10));
+        assertEquals(0, service.purgeExpired());
+        QuotaResult duplicate = service.reserve(shortHold);
+        assertEquals(QuotaDecision.DUPLICATE, duplicate.decision());
+        assertEquals(2, duplicate.used());
+    }
+
     @Test
     void releaseConfirmedShouldDependOnConfiguration() {
         MutableClock clock = MutableClock.startingAt(Instant.parse("2026-03-10T08:00:00Z"));
@@ -175,6 +317,120 @@ class MemoryQuotaServiceTest {
         assertEquals(limit, extra.used());
     }
 
+    @Test
+    void reserveAllAllOrNothingShouldHoldNothingWhenOneItemDoesNotFit() {
+        LsfQuotaProperties props = baseProps();
+        MutableClock clock = MutableClock.startingAt(Instant.parse("2026-03-10T08:00:00Z"));
+        MemoryQuotaService service = new MemoryQuotaService(props, null, clock);
+        service.reserve(item("sku:B", "OLD", 2, 3));
+        service.reserve(item("sku:A", "CART-1", 1, 5));
+
+        // sku:A CART-1 đã giữ => DUPLICATE; sku:B chỉ còn 1 nhưng batch cần 1 + 1
+        List<QuotaResult> failed = service.reserveAll(List.of(
+                item("sku:A", "CART-1", 1, 5),
+                item("sku:B", "CART-1", 1, 3),
+                item("sku:B", "CART-1b", 1, 3),
+                item("sku:C", "CART-1", 1, 5)), QuotaBatchMode.ALL_OR_NOTHING);
+
+        assertEquals(List.of(QuotaDecision.DUPLICATE, QuotaDecision.REJECTED, QuotaDecision.REJECTED, QuotaDecision.REJECTED),
+                failed.stream().map(QuotaResult::decision).toList());
+        assertEquals(QuotaDecision.NOT_FOUND, service.release("sku:B", "CART-1").decision());
+        assertEquals(QuotaDecision.NOT_FOUND, service.release("sku:C", "CART-1").decision());
+
+        List<QuotaResult> ok = service.reserveAll(List.of(
+                item("sku:B", "CART-2", 1, 3),
+                item("sku:C", "CART-2", 5, 5),
+                item("sku:B", "CART-2", 1, 3)), QuotaBatchMode.ALL_OR_NOTHING);
+        assertEquals(List.of(QuotaDecision.ACCEPTED, QuotaDecision.ACCEPTED, QuotaDecision.DUPLICATE),
+                ok.stream().map(QuotaResult::decision).toList());
+        assertEquals(3, ok.get(0).used());
+    }
+
+    @Test
+    void reserveAllBestEffortShouldDecideEachItemInOrder() {
+        LsfQuotaProperties props = baseProps();
+        MutableClock clock = MutableClock.startingAt(Instant.parse("2026-03-10T08:00:00Z"));
+        MemoryQuotaService service = new MemoryQuotaService(props, null, clock);
+
+        List<QuotaResult> results = service.reserveAll(List.of(
+                item("sku:A", "R1", 2, 3),
+                item("sku:A", "R2", 2, 3),
+                item("sku:A", "R3", 1, 3),
+                item("sku:B", "R1", 1, 1)), QuotaBatchMode.BEST_EFFORT);
+
+        assertEquals(List.of(QuotaDecision.ACCEPTED, QuotaDecision.REJECTED, QuotaDecision.ACCEPTED, QuotaDecision.ACCEPTED),
+                results.stream().map(QuotaResult::decision).toList());
+        assertEquals(3, results.get(2).used());
+    }
+
+    @Test
+    void groupReserveShouldHoldEveryKeyOrNoneAndReportTheBlockingKey() {
+        LsfQuotaProperties props = baseProps();
+        MutableClock clock = MutableClock.startingAt(Instant.parse("2026-03-10T08:00:00Z"));
+        MemoryQuotaService service = new MemoryQuotaService(props, null, clock);
+        service.reserve(item("credit:S1:2026A", "OTHER-COURSE", 18, 20));
+
+        // seat + lab + credit cap của sinh viên, cùng một requestId
+        List<QuotaRequest> tooMany = List.of(
+                item("section:CT101-01", "REG-1", 1, 40),
+                item("lab:CT101-L2", "REG-1", 1, 20),
+                item("credit:S1:2026A", "REG-1", 3, 20));
+        QuotaGroupResult rejected = service.reserveGroup(tooMany);
+        assertEquals(QuotaDecision.REJECTED, rejected.decision());
+        assertEquals(List.of("credit:S1:2026A"), rejected.blockingKeys());
+        assertEquals(0, rejected.result("section:CT101-01").used());
+
+        List<QuotaRequest> fits = List.of(
+                item("section:CT101-01", "REG-2", 1, 40),
+                item("lab:CT101-L2", "REG-2", 1, 20),
+                item("credit:S1:2026A", "REG-2", 2, 20));
+        QuotaGroupResult accepted = service.reserveGroup(fits);
+        assertEquals(QuotaDecision.ACCEPTED, accepted.decision());
+        assertEquals(20, accepted.result("credit:S1:2026A").used());
+        assertEquals(QuotaDecision.DUPLICATE, service.reserveGroup(fits).decision());
+
+        List<String> keys = List.of("section:CT101-01", "lab:CT101-L2", "credit:S1:2026A");
+        QuotaGroupResult confirmed = service.confirmGroup(keys, "REG-2");
+        assertEquals(QuotaDecision.ACCEPTED, confirmed.decision());
+        assertEquals(QuotaDecision.DUPLICATE, service.confirmGroup(keys, "REG-2").decision());
+
+        assertThrows(IllegalArgumentException.class, () -> service.reserveGroup(List.of(
+                item("section:CT101-01", "REG-3", 1, 40), item("lab:CT101-L2", "REG-4", 1, 20))));
+    }
+
+    @Test
+    void groupConfirmShouldConfirmNothingWhenOneHoldIsGone() {
+        LsfQuotaProperties props = baseProps();
+        MutableClock clock = MutableClock.startingAt(Instant.parse("2026-03-10T08:00:00Z"));
+        MemoryQuotaService service = new MemoryQuotaService(props, null, clock);
+
+        assertEquals(QuotaDecision.ACCEPTED, service.reserveGroup(List.of(
+                item("section:CT200-01", "REG-1", 1, 40),
+                item("lab:CT200-L1", "REG-1", 1, 20))).decision());
+        service.release("lab:CT200-L1", "REG-1");
+
+        List<String> keys = List.of("section:CT200-01", "lab:CT200-L1");
+        QuotaGroupResult confirm = service.confirmGroup(keys, "REG-1");
+        assertEquals(QuotaDecision.NOT_FOUND, confirm.decision());
+        assertEquals(QuotaDecision.REJECTED, confirm.result("section:CT200-01").decision());
+        assertEquals(QuotaDecision.NOT_FOUND, confirm.result("lab:CT200-L1").decision());
+
+        QuotaGroupResult released = service.releaseGroup(keys, "REG-1");
+        assertEquals(QuotaDecision.ACCEPTED, released.decision());
+        assertEquals(0, released.result("section:CT200-01").used());
+        assertEquals(QuotaDecision.NOT_FOUND, service.releaseGroup(keys, "REG-1").decision());
+    }
+
+    private static QuotaRequest item(String key, String requestId, int amount, int limit) {
+        return QuotaRequest.builder()
+                .quotaKey(key)
+                .requestId(requestId)
+                .amount(amount)
+                .limit(limit)
+                .hold(Duration.ofSeconds(30))
+                .build();
+    }
+
     private static LsfQuotaProperties baseProps() {
         LsfQuotaProperties props = new LsfQuotaProperties();
         props.setDefaultHoldSeconds(30);
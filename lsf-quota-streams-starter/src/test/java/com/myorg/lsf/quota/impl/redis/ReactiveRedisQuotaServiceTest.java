@@ -0,0 +1,154 @@
+package com.myorg.lsf.quota.impl.redis;
+
+import com.myorg.lsf.quota.api.QuotaDecision;
+import com.myorg.lsf.quota.api.QuotaRequest;
+import com.myorg.lsf.quota.api.QuotaResult;
+import com.myorg.lsf.quota.config.LsfQuotaProperties;
+import com.myorg.lsf.quota.support.MutableClock;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@Testcontainers(disabledWithoutDocker = true)
+class ReactiveRedisQuotaServiceTest {
+
+    @Container
+    private static final GenericContainer<?> REDIS = new GenericContainer<>(DockerImageName.parse("redis:7.2-alpine"))
+            .withExposedPorts(6379);
+
+    private static LettuceConnectionFactory connectionFactory;
+    private static StringRedisTemplate redisTemplate;
+    private static ReactiveStringRedisTemplate reactiveTemplate;
+
+    private final MutableClock clock = MutableClock.startingAt(Instant.parse("2026-03-10T08:00:00Z"));
+
+    @BeforeAll
+    static void beforeAll() {
+        connectionFactory = new LettuceConnectionFactory(REDIS.getHost(), REDIS.getMappedPort(6379));
+        connectionFactory.afterPropertiesSet();
+        redisTemplate = new StringRedisTemplate(connectionFactory);
+        redisTemplate.afterPropertiesSet();
+        reactiveTemplate = new ReactiveStringRedisTemplate(connectionFactory);
+    }
+
+    @AfterAll
+    static void afterAll() {
+        if (connectionFactory != null) {
+            connectionFactory.destroy();
+        }
+    }
+
+    @BeforeEach
+    void flush() {
+        redisTemplate.getConnectionFactory().getConnection().serverCommands().flushAll();
+    }
+
+    @Test
+    void shouldMatchTheBlockingStoreOnTheSameKeys() {
+        LsfQuotaProperties props = props();
+        RedisQuotaService blocking = new RedisQuotaService(redisTemplate, props, null, clock);
+        ReactiveRedisQuotaService reactive = new ReactiveRedisQuotaService(reactiveTemplate, blocking);
+
+        assertEquals(QuotaDecision.ACCEPTED, reactive.reserve(item("sku:R", "REQ-1", 2, 3)).block().decision());
+        assertEquals(QuotaDecision.DUPLICATE, blocking.reserve(item("sku:R", "REQ-1", 2, 3)).decision());
+        QuotaResult rejected = reactive.reserve(item("sku:R", "REQ-2", 2, 3)).block();
+        assertEquals(QuotaDecision.REJECTED, rejected.decision());
+        assertEquals(2, rejected.used());
+
+        assertEquals(QuotaDecision.ACCEPTED, reactive.confirm("sku:R", "REQ-1").block().decision());
+        assertEquals(QuotaDecision.NOT_FOUND, reactive.release("sku:R", "REQ-1").block().decision());
+        assertEquals(QuotaDecision.NOT_FOUND, reactive.confirm("sku:R", "REQ-404").block().decision());
+        assertThrows(IllegalArgumentException.class,
+                () -> reactive.reserve(QuotaRequest.builder().quotaKey("sku:HOT").requestId("X").amount(1).limit(10).shards(4).build()).block());
+    }
+
+    @Test
+    void shardedHoldShouldFailLoudlyInsteadOfNotFound() {
+        RedisQuotaService blocking = new RedisQuotaService(redisTemplate, props(), null, clock);
+        ReactiveRedisQuotaService reactive = new ReactiveRedisQuotaService(reactiveTemplate, blocking);
+        QuotaRequest hot = QuotaRequest.builder().quotaKey("sku:HOT").requestId("X").amount(1).limit(10)
+                .hold(Duration.ofSeconds(30)).shards(4).build();
+        assertEquals(QuotaDecision.ACCEPTED, blocking.reserve(hot).decision());
+
+        assertThrows(IllegalArgumentException.class, () -> reactive.confirm("sku:HOT", "X", 4).block());
+        assertThrows(IllegalArgumentException.class, () -> reactive.release("sku:HOT", "X", 4).block());
+        // không sharded: như confirm 2 tham số
+        assertEquals(QuotaDecision.NOT_FOUND, reactive.confirm("sku:R", "X", 1).block().decision());
+        assertEquals(QuotaDecision.ACCEPTED, blocking.confirm("sku:HOT", "X", 4).decision());
+    }
+
+    @Test
+    void manyInFlightReservesShouldNeverExceedTheLimit() {
+        RedisQuotaService blocking = new RedisQuotaService(redisTemplate, props(), null, clock);
+        ReactiveRedisQuotaService reactive = new ReactiveRedisQuotaService(reactiveTemplate, blocking);
+
+        // 2000 reserves, 256 in flight at once on one shared connection
+        Map<QuotaDecision, Long> decisions = Flux.range(0, 2000)
+                .flatMap(i -> reactive.reserve(item("sku:FLASH", "U-" + i, 1, 100)), 256)
+                .collect(Collectors.groupingBy(QuotaResult::decision, Collectors.counting()))
+                .block();
+
+        assertEquals(Map.of(QuotaDecision.ACCEPTED, 100L, QuotaDecision.REJECTED, 1900L), decisions);
+        List<QuotaDecision> released = Flux.range(0, 2000)
+                .flatMap(i -> reactive.release("sku:FLASH", "U-" + i), 256)
+                .map(QuotaResult::decision)
+                .filter(d -> d == QuotaDecision.ACCEPTED)
+                .collectList()
+                .block();
+        assertEquals(100, released.size());
+    }
+
+    @Test
+    void soldOutCacheShouldBeSharedWithTheBlockingStore() {
+        LsfQuotaProperties props = props();
+        props.getRedis().getSoldOutCache().setEnabled(true);
+        props.getRedis().getSoldOutCache().setTtlMs(60_000);
+        RedisQuotaService blocking = new RedisQuotaService(redisTemplate, props, null, clock,
+                new RedisSoldOutCache(props, null, clock));
+        ReactiveRedisQuotaService reactive = new ReactiveRedisQuotaService(reactiveTemplate, blocking);
+
+        reactive.reserve(item("sku:S", "R1", 1, 1)).block();
+        reactive.reserve(item("sku:S", "R2", 1, 1)).block();
+        assertEquals(1, blocking.soldOutCache().size());
+        assertEquals(QuotaDecision.REJECTED, blocking.reserve(item("sku:S", "R3", 1, 1)).decision());
+
+        assertEquals(QuotaDecision.ACCEPTED, reactive.release("sku:S", "R1").block().decision());
+        assertEquals(0, blocking.soldOutCache().size());
+        assertEquals(QuotaDecision.ACCEPTED, blocking.reserve(item("sku:S", "R3", 1, 1)).decision());
+    }
+
+    private static QuotaRequest item(String key, String requestId, int amount, int limit) {
+        return QuotaRequest.builder()
+                .quotaKey(key)
+                .requestId(requestId)
+                .amount(amount)
+                .limit(limit)
+                .hold(Duration.ofSeconds(30))
+                .build();
+    }
+
+    private static LsfQuotaProperties props() {
+        LsfQuotaProperties props = new LsfQuotaProperties();
+        props.setKeyPrefix("lsf:test:quota:");
+        props.setKeepAliveSeconds(120);
+        return props;
+    }
+}
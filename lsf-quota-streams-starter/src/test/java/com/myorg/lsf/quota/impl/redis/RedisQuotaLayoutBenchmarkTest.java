@@ -0,0 +1,170 @@
+package com.myorg.lsf.quota.impl.redis;
+
+import com.myorg.lsf.quota.api.QuotaDecision;
+import com.myorg.lsf.quota.api.QuotaRequest;
+import com.myorg.lsf.quota.config.LsfQuotaProperties;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * SPLIT vs HASH layout: Redis memory for 100k SKUs (one confirmed order + one live
+ * hold each) and reserve + release throughput over the same key space.
+ *
+ * Run with {@code RUN_QUOTA_BENCHMARKS=true mvn -pl lsf-quota-streams-starter test
+ * -Dtest=RedisQuotaLayoutBenchmarkTest}.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+@EnabledIfEnvironmentVariable(named = "RUN_QUOTA_BENCHMARKS", matches = "true")
+class RedisQuotaLayoutBenchmarkTest {
+
+    private static final int SKUS = 100_000;
+    private static final int THREADS = 8;
+    private static final Duration WARMUP = Duration.ofSeconds(1);
+    private static final Duration MEASURE = Duration.ofSeconds(5);
+
+    @Container
+    private static final GenericContainer<?> REDIS = new GenericContainer<>(DockerImageName.parse("redis:7.2-alpine"))
+            .withExposedPorts(6379);
+
+    private static LettuceConnectionFactory connectionFactory;
+    private static StringRedisTemplate redisTemplate;
+
+    @BeforeAll
+    static void beforeAll() {
+        connectionFactory = new LettuceConnectionFactory(REDIS.getHost(), REDIS.getMappedPort(6379));
+        connectionFactory.afterPropertiesSet();
+        redisTemplate = new StringRedisTemplate(connectionFactory);
+        redisTemplate.afterPropertiesSet();
+    }
+
+    @AfterAll
+    static void afterAll() {
+        if (connectionFactory != null) {
+            connectionFactory.destroy();
+        }
+    }
+
+    @Test
+    void reportMemoryAndThroughputPerLayout() throws Exception {
+        System.out.printf("%-8s %18s %14s %8s%n", "layout", "bytes/100k SKUs", "ops/s", "keys");
+        for (LsfQuotaProperties.Redis.Layout layout : LsfQuotaProperties.Redis.Layout.values()) {
+            redisTemplate.execute((RedisCallback<Void>) c -> {
+                c.serverCommands().flushAll();
+                return null;
+            });
+            RedisQuotaService service = new RedisQuotaService(redisTemplate, props(layout), null, Clock.systemUTC());
+
+            long before = usedMemory();
+            parallel(THREADS, (worker, deadline) -> {
+                long ops = 0;
+                for (int i = worker; i < SKUS; i += THREADS) {
+                    String key = "bench:sku-" + i;
+                    assertEquals(QuotaDecision.ACCEPTED, service.reserve(request(key, "paid-" + i)).decision());
+                    service.confirm(key, "paid-" + i);
+                    assertEquals(QuotaDecision.ACCEPTED, service.reserve(request(key, "held-" + i)).decision());
+                    ops += 3;
+                }
+                return ops;
+            }, null);
+            long bytes = usedMemory() - before;
+            long keys = redisTemplate.execute((RedisConnection connection) -> connection.serverCommands().dbSize());
+
+            measure(service, WARMUP);
+            double opsPerSec = measure(service, MEASURE);
+            System.out.printf("%-8s %,18d %,14.0f %8d%n", layout, bytes * 100_000L / SKUS, opsPerSec, keys);
+            assertTrue(opsPerSec > 0);
+        }
+    }
+
+    private static double measure(RedisQuotaService service, Duration duration) throws Exception {
+        return parallel(THREADS, (worker, deadline) -> {
+            long ops = 0;
+            int i = worker;
+            while (System.nanoTime() < deadline) {
+                String key = "bench:sku-" + (i % SKUS);
+                String requestId = "w" + worker + "-" + ops;
+                assertEquals(QuotaDecision.ACCEPTED, service.reserve(request(key, requestId)).decision());
+                service.release(key, requestId);
+                ops += 2;
+                i += THREADS * 7919;
+            }
+            return ops;
+        }, duration);
+    }
+
+    private static double parallel(int threads, Worker work, Duration duration) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Long>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int worker = t;
+            futures.add(pool.submit(() -> {
+                start.await();
+                long deadline = (duration == null) ? Long.MAX_VALUE : System.nanoTime() + duration.toNanos();
+                return work.run(worker, deadline);
+            }));
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        long total = 0;
+        for (Future<Long> f : futures) total += f.get();
+        long elapsed = System.nanoTime() - begin;
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+        return total / (elapsed / 1_000_000_000.0);
+    }
+
+    private static long usedMemory() {
+        Properties info = redisTemplate.execute((RedisCallback<Properties>) c -> c.serverCommands().info("memory"));
+        return Long.parseLong(info.getProperty("used_memory"));
+    }
+
+    private static QuotaRequest request(String key, String requestId) {
+        return QuotaRequest.builder()
+                .quotaKey(key)
+                .requestId(requestId)
+                .amount(1)
+                .limit(Integer.MAX_VALUE)
+                .hold(Duration.ofMinutes(5))
+                .build();
+    }
+
+    private static LsfQuotaProperties props(LsfQuotaProperties.Redis.Layout layout) {
+        LsfQuotaProperties props = new LsfQuotaProperties();
+        props.setKeyPrefix("bench:quota:");
+        props.setKeepAliveSeconds(3600);
+        props.getRedis().setLayout(layout);
+        // benchmark the steady state: nothing left to migrate
+        props.getRedis().setMigrateLegacyKeys(false);
+        return props;
+    }
+
+    @FunctionalInterface
+    private interface Worker {
+        long run(int worker, long deadlineNanos) throws Exception;
+    }
+}
@@ -0,0 +1,178 @@
+package com.myorg.lsf.quota.impl.redis;
+
+import com.myorg.lsf.quota.api.QuotaBatchMode;
+import com.myorg.lsf.quota.api.QuotaDecision;
+import com.myorg.lsf.quota.api.QuotaRequest;
+import com.myorg.lsf.quota.api.QuotaResult;
+import com.myorg.lsf.quota.config.LsfQuotaProperties;
+import com.myorg.lsf.quota.support.MutableClock;
+import com.myorg.lsf.quota.support.RedisClusterHarness;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Hash-tagged keys on a 3-master Redis Cluster, see {@link RedisClusterHarness}.
+ *
+ * Run with {@code RUN_REDIS_CLUSTER_TESTS=true} (Docker), or point
+ * {@code LSF_REDIS_CLUSTER_NODES} at local {@code redis-server --cluster-enabled yes} nodes.
+ */
+@EnabledIfEnvironmentVariable(named = "RUN_REDIS_CLUSTER_TESTS", matches = "true")
+class RedisQuotaServiceClusterTest {
+
+    private static RedisClusterHarness cluster;
+    private static StringRedisTemplate redisTemplate;
+
+    private final MutableClock clock = MutableClock.startingAt(Instant.parse("2026-03-10T08:00:00Z"));
+
+    @BeforeAll
+    static void beforeAll() {
+        cluster = RedisClusterHarness.start(3);
+        redisTemplate = new StringRedisTemplate(cluster.connectionFactory());
+        redisTemplate.afterPropertiesSet();
+    }
+
+    @AfterAll
+    static void afterAll() {
+        if (cluster != null) {
+            cluster.close();
+        }
+    }
+
+    @BeforeEach
+    void flush() {
+        cluster.flushAll();
+    }
+
+    @Test
+    void everyOperationShouldRunOnClusterWithBothLayouts() {
+        for (LsfQuotaProperties.Redis.Layout layout : LsfQuotaProperties.Redis.Layout.values()) {
+            RedisQuotaService service = service(layout);
+            Set<Integer> slots = new HashSet<>();
+            for (int i = 0; i < 30; i++) {
+                String key = layout + ":sku:" + i;
+                slots.add(RedisSlots.slot("lsf:test:quota:{" + key + "}"));
+                assertEquals(QuotaDecision.ACCEPTED, service.reserve(item(key, "REQ-1", 1, 1)).decision());
+                assertEquals(QuotaDecision.REJECTED, service.reserve(item(key, "REQ-2", 1, 1)).decision());
+                assertEquals(QuotaDecision.ACCEPTED, service.confirm(key, "REQ-1").decision());
+                assertEquals(QuotaDecision.NOT_FOUND, service.release(key, "REQ-2").decision());
+            }
+            assertTrue(slots.size() > cluster.nodes(), "keys should spread over the nodes");
+        }
+    }
+
+    @Test
+    void reserveAllShouldRunOneScriptPerSlotAndUndoOnReject() {
+        RedisQuotaService service = service(LsfQuotaProperties.Redis.Layout.SPLIT);
+        service.reserve(item("sku:FULL", "OLD", 1, 1));
+
+        List<QuotaResult> failed = service.reserveAll(List.of(
+                item("sku:A", "CART-1", 1, 5),
+                item("sku:B", "CART-1", 2, 5),
+                item("sku:A", "CART-1", 1, 5),
+                item("sku:FULL", "CART-1", 1, 1)), QuotaBatchMode.ALL_OR_NOTHING);
+        assertEquals(List.of(QuotaDecision.REJECTED, QuotaDecision.REJECTED, QuotaDecision.REJECTED, QuotaDecision.REJECTED),
+                failed.stream().map(QuotaResult::decision).toList());
+        assertEquals(0, failed.get(0).used());
+        assertEquals(QuotaDecision.NOT_FOUND, service.release("sku:A", "CART-1").decision());
+        assertEquals(QuotaDecision.NOT_FOUND, service.release("sku:B", "CART-1").decision());
+
+        List<QuotaResult> partial = service.reserveAll(List.of(
+                item("sku:A", "CART-2", 1, 5),
+                item("sku:FULL", "CART-2", 1, 1),
+                item("sku:B", "CART-2", 2, 5)), QuotaBatchMode.BEST_EFFORT);
+        assertEquals(List.of(QuotaDecision.ACCEPTED, QuotaDecision.REJECTED, QuotaDecision.ACCEPTED),
+                partial.stream().map(QuotaResult::decision).toList());
+        assertEquals(2, partial.get(2).used());
+    }
+
+    @Test
+    void groupsShouldShareOneSlotThroughTheirTag() {
+        RedisQuotaService service = service(LsfQuotaProperties.Redis.Layout.HASH);
+        List<String> keys = List.of("{term:2026A}section:CT101-01", "{term:2026A}credit:S1");
+
+        assertEquals(QuotaDecision.ACCEPTED, service.reserveGroup(List.of(
+                item(keys.get(0), "REG-1", 1, 40), item(keys.get(1), "REG-1", 3, 20))).decision());
+        assertEquals(QuotaDecision.ACCEPTED, service.confirmGroup(keys, "REG-1").decision());
+        assertThrows(IllegalArgumentException.class, () -> service.reserveGroup(List.of(
+                item("section:X", "REG-2", 1, 40), item("credit:Y", "REG-2", 1, 20))));
+        assertEquals(QuotaDecision.NOT_FOUND,
+                service.releaseGroup(List.of("section:X", "credit:Y"), "REG-2").decision());
+    }
+
+    @Test
+    void shardedHotKeyShouldSpreadOverSlotsAndNeverExceedTheLimit() {
+        RedisQuotaService service = service(LsfQuotaProperties.Redis.Layout.HASH);
+        Set<Integer> slots = new HashSet<>();
+        for (int shard = 0; shard < 8; shard++) {
+            slots.add(RedisSlots.slot("lsf:test:quota:{" + RedisShards.key("sku:FLASH", shard) + "}"));
+        }
+        assertTrue(slots.size() > 1);
+
+        int accepted = 0;
+        for (int i = 0; i < 200; i++) {
+            QuotaResult r = service.reserve(QuotaRequest.builder().quotaKey("sku:FLASH").requestId("U-" + i)
+                    .amount(1).limit(100).shards(8).hold(Duration.ofSeconds(30)).build());
+            if (r.decision() == QuotaDecision.ACCEPTED) {
+                accepted++;
+                assertEquals(QuotaDecision.ACCEPTED, service.confirm("sku:FLASH", "U-" + i, 8).decision());
+            }
+        }
+        assertTrue(accepted <= 100 && accepted > 80, "accepted " + accepted);
+    }
+
+    @Test
+    void sweeperShouldDrainThePerSlotIndexes() {
+        LsfQuotaProperties props = props(LsfQuotaProperties.Redis.Layout.SPLIT);
+        props.getRedis().setSweepSlotsPerRun(RedisSlots.COUNT / 2);
+        RedisQuotaService service = new RedisQuotaService(redisTemplate, props, null, clock);
+        for (int i = 0; i < 20; i++) {
+            service.reserve(QuotaRequest.builder().quotaKey("sku:S" + i).requestId("T").amount(1).limit(1)
+                    .hold(Duration.ofSeconds(5)).build());
+        }
+        clock.advance(Duration.ofSeconds(6));
+
+        // two runs cover all 16384 slot indexes
+        assertEquals(20, service.sweepExpired() + service.sweepExpired());
+        assertEquals(0, service.sweepExpired() + service.sweepExpired());
+        for (int i = 0; i < 20; i++) {
+            assertEquals(1, service.reserve(item("sku:S" + i, "T2", 1, 1)).used());
+        }
+    }
+
+    private RedisQuotaService service(LsfQuotaProperties.Redis.Layout layout) {
+        return new RedisQuotaService(redisTemplate, props(layout), null, clock);
+    }
+
+    private static QuotaRequest item(String key, String requestId, int amount, int limit) {
+        return QuotaRequest.builder()
+                .quotaKey(key)
+                .requestId(requestId)
+                .amount(amount)
+                .limit(limit)
+                .hold(Duration.ofSeconds(30))
+                .build();
+    }
+
+    private static LsfQuotaProperties props(LsfQuotaProperties.Redis.Layout layout) {
+        LsfQuotaProperties props = new LsfQuotaProperties();
+        props.setKeyPrefix("lsf:test:quota:");
+        props.setKeepAliveSeconds(120);
+        props.getRedis().setLayout(layout);
+        props.getRedis().setHashTags(true);
+        return props;
+    }
+}
@@ -1,9 +1,20 @@
 package com.myorg.lsf.quota.impl.redis;
 
+import com.myorg.lsf.quota.api.QuotaBatchMode;
 import com.myorg.lsf.quota.api.QuotaDecision;
+import com.myorg.lsf.quota.api.QuotaGroupResult;
+import com.myorg.lsf.quota.api.QuotaHold;
 import com.myorg.lsf.quota.api.QuotaRequest;
+import com.myorg.lsf.quota.api.QuotaResult;
+import com.myorg.lsf.quota.api.RateLimitAlgorithm;
+import com.myorg.lsf.quota.api.RateLimitRequest;
+import com.myorg.lsf.quota.api.RateLimitResult;
 import com.myorg.lsf.quota.config.LsfQuotaProperties;
+import com.myorg.lsf.quota.impl.QuotaReservationFacadeImpl;
+import com.myorg.lsf.quota.obs.QuotaMetrics;
+import com.myorg.lsf.quota.policy.QuotaPolicy;
 import com.myorg.lsf.quota.support.MutableClock;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
@@ -16,8 +27,15 @@ import org.testcontainers.utility.DockerImageName;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.IntStream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @Testcontainers(disabledWithoutDocker = true)
 class RedisQuotaServiceTest {
@@ -66,6 +84,67 @@ class RedisQuotaServiceTest {
         assertEquals(QuotaDecision.NOT_FOUND, service.release("ticket:LIVE-1", "REQ-1").decision());
     }
 
+    @Test
+    void rateLimitsShouldTakeOneScriptCallAndMatchTheMemoryBackend() {
+        MutableClock clock = MutableClock.startingAt(Instant.parse("2026-03-10T08:00:00Z"));
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        RedisQuotaService service = new RedisQuotaService(redisTemplate, props(false), new QuotaMetrics(registry, "test", "redis"), clock);
+        redisTemplate.getConnectionFactory().getConnection().serverCommands().flushAll();
+
+        RateLimitRequest.RateLimitRequestBuilder bucket = RateLimitRequest.builder()
+                .quotaKey("tenant:acme:api").algorithm(RateLimitAlgorithm.TOKEN_BUCKET)
+                .limit(10).window(Duration.ofSeconds(1)).burst(20);
+        assertEquals(5, service.tryAcquire(bucket.permits(15).build()).remaining());
+        RateLimitResult limited = service.tryAcquire(bucket.permits(6).build());
+        assertEquals(QuotaDecision.REJECTED, limited.decision());
+        assertEquals(100, limited.retryAfterMs());
+        clock.advance(Duration.ofMillis(100));
+        assertTrue(service.tryAcquire(bucket.permits(6).build()).allowed());
+        Long ttl = redisTemplate.getExpire("lsf:test:quota:tenant:acme:api:tb", java.util.concurrent.TimeUnit.MILLISECONDS);
+        assertTrue(ttl != null && ttl > 2000 && ttl <= 3000, "expires once refilled to burst: " + ttl);
+
+        clock.advance(Duration.ofMillis(900)); // đầu một window mới
+        RateLimitRequest.RateLimitRequestBuilder window = RateLimitRequest.builder()
+                .quotaKey("user:42:login").algorithm(RateLimitAlgorithm.SLIDING_WINDOW)
+                .limit(10).window(Duration.ofSeconds(1));
+        assertTrue(service.tryAcquire(window.permits(8).build()).allowed());
+        assertEquals(1125, service.tryAcquire(window.permits(3).build()).retryAfterMs());
+        clock.advance(Duration.ofMillis(1125));
+        assertEquals(0, service.tryAcquire(window.permits(3).build()).remaining());
+        assertEquals(125, service.tryAcquire(window.permits(1).build()).retryAfterMs());
+
+        assertEquals(4.0, registry.get("lsf.quota.ratelimit").tag("outcome", "allowed").counter().count());
+        assertEquals(3.0, registry.get("lsf.quota.ratelimit").tag("outcome", "limited").counter().count());
+    }
+
+    @Test
+    void hierarchyShouldReserveLeafAndAncestorsInOneScript() {
+        MutableClock clock = MutableClock.startingAt(Instant.parse("2026-03-10T08:00:00Z"));
+        RedisQuotaService service = new RedisQuotaService(redisTemplate, props(false), null, clock);
+        redisTemplate.getConnectionFactory().getConnection().serverCommands().flushAll();
+        Map<String, QuotaPolicy> policies = Map.of(
+                "shopA", QuotaPolicy.builder().limit(4).hold(Duration.ofMinutes(5)).build(),
+                "shopA:flashsale_sku", QuotaPolicy.builder().limit(100).hold(Duration.ofMinutes(5)).build(),
+                "shopA:flashsale_sku:X", QuotaPolicy.builder().limit(3).hold(Duration.ofSeconds(30)).build(),
+                "shopA:flashsale_sku:Y", QuotaPolicy.builder().limit(3).hold(Duration.ofSeconds(30)).build());
+        QuotaReservationFacadeImpl facade = new QuotaReservationFacadeImpl(service,
+                quotaKey -> Optional.ofNullable(policies.get(quotaKey)), ":");
+
+        QuotaGroupResult x = facade.reserveHierarchy("shopA:flashsale_sku:X", "CART-1", 3);
+        assertEquals(List.of("shopA:flashsale_sku:X", "shopA:flashsale_sku", "shopA"), x.quotaKeys());
+        assertEquals(QuotaDecision.ACCEPTED, x.decision());
+        assertEquals("3", redisTemplate.opsForValue().get("lsf:test:quota:shopA:c"));
+
+        QuotaGroupResult y = facade.reserveHierarchy("shopA:flashsale_sku:Y", "CART-1", 2);
+        assertEquals(QuotaDecision.REJECTED, y.decision());
+        assertEquals(List.of("shopA"), y.blockingKeys());
+        assertEquals("3", redisTemplate.opsForValue().get("lsf:test:quota:shopA:flashsale_sku:c"), "no level kept a hold");
+
+        clock.advance(Duration.ofSeconds(31));
+        assertEquals(QuotaDecision.ACCEPTED, facade.reserve("shopA:flashsale_sku:Y", "CART-2", 3).decision(),
+                "tenant hold expired together with the SKU hold");
+    }
+
     @Test
     void expiredReservationShouldBePurgedInRedisScript() {
         MutableClock clock = MutableClock.startingAt(Instant.parse("2026-03-10T08:00:00Z"));
@@ -98,6 +177,343 @@ class RedisQuotaServiceTest {
                 .build()).decision());
     }
 
+    @Test
+    void reserveAllShouldBeAllOrNothingInOneScript() {
+        MutableClock clock = MutableClock.startingAt(Instant.parse("2026-03-10T08:00:00Z"));
+        RedisQuotaService service = new RedisQuotaService(redisTemplate, props(false), null, clock);
+        redisTemplate.getConnectionFactory().getConnection().serverCommands().flushAll();
+
+        service.reserve(item("sku:B", "OLD", 2, 3));
+        List<QuotaResult> failed = service.reserveAll(List.of(
+                item("sku:A", "CART-1", 1, 5),
+                item("sku:B", "CART-1", 2, 3)), QuotaBatchMode.ALL_OR_NOTHING);
+        assertEquals(List.of(QuotaDecision.REJECTED, QuotaDecision.REJECTED),
+                failed.stream().map(QuotaResult::decision).toList());
+        assertEquals(QuotaDecision.NOT_FOUND, service.release("sku:A", "CART-1").decision());
+
+        List<QuotaResult> partial = service.reserveAll(List.of(
+                item("sku:A", "CART-1", 1, 5),
+                item("sku:B", "CART-1", 2, 3),
+                item("sku:A", "CART-1", 1, 5)), QuotaBatchMode.BEST_EFFORT);
+        assertEquals(List.of(QuotaDecision.ACCEPTED, QuotaDecision.REJECTED, QuotaDecision.DUPLICATE),
+                partial.stream().map(QuotaResult::decision).toList());
+        assertEquals(1, partial.get(0).used());
+    }
+
+    @Test
+    void confirmAllAndReleaseAllShouldDecideEachHoldOnItsOwn() {
+        MutableClock clock = MutableClock.startingAt(Instant.parse("2026-03-10T08:00:00Z"));
+        RedisQuotaService service = new RedisQuotaService(redisTemplate, props(false), null, clock);
+        redisTemplate.getConnectionFactory().getConnection().serverCommands().flushAll();
+
+        service.reserveAll(List.of(
+                item("seat:A", "WF-1", 1, 5),
+                item("seat:B", "WF-2", 1, 5),
+                item("seat:B", "WF-3", 1, 5)), QuotaBatchMode.BEST_EFFORT);
+
+        List<QuotaResult> confirmed = service.confirmAll(List.of(
+                QuotaHold.of("seat:A", "WF-1"),
+                QuotaHold.of("seat:B", "WF-2"),
+                QuotaHold.of("seat:B", "MISSING")));
+        assertEquals(List.of(QuotaDecision.ACCEPTED, QuotaDecision.ACCEPTED, QuotaDecision.NOT_FOUND),
+                confirmed.stream().map(QuotaResult::decision).toList());
+
+        List<QuotaResult> released = service.releaseAll(List.of(
+                QuotaHold.of("seat:B", "WF-3"),
+                QuotaHold.of("seat:B", "WF-2")));
+        assertEquals(QuotaDecision.ACCEPTED, released.get(0).decision());
+        assertEquals(QuotaDecision.NOT_FOUND, released.get(1).decision(), "confirmed hold is kept when allowReleaseConfirmed=false");
+        assertEquals(1, released.get(1).used());
+    }
+
+    @Test
+    void groupShouldReserveAndConfirmAllKeysInOneScriptOrNone() {
+        MutableClock clock = MutableClock.startingAt(Instant.parse("2026-03-10T08:00:00Z"));
+        RedisQuotaService service = new RedisQuotaService(redisTemplate, props(false), null, clock);
+        redisTemplate.getConnectionFactory().getConnection().serverCommands().flushAll();
+
+        List<String> keys = List.of("{term:2026A}section:CT101-01", "{term:2026A}credit:S1");
+        service.reserve(item(keys.get(1), "OTHER", 19, 20));
+        QuotaGroupResult rejected = service.reserveGroup(List.of(
+                item(keys.get(0), "REG-1", 1, 40), item(keys.get(1), "REG-1", 3, 20)));
+        assertEquals(QuotaDecision.REJECTED, rejected.decision());
+        assertEquals(List.of(keys.get(1)), rejected.blockingKeys());
+
+        assertEquals(QuotaDecision.ACCEPTED, service.reserveGroup(List.of(
+                item(keys.get(0), "REG-2", 1, 40), item(keys.get(1), "REG-2", 1, 20))).decision());
+        service.release(keys.get(1), "REG-2");
+        QuotaGroupResult incomplete = service.confirmGroup(keys, "REG-2");
+        assertEquals(QuotaDecision.NOT_FOUND, incomplete.decision());
+        assertEquals(QuotaDecision.REJECTED, incomplete.result(keys.get(0)).decision());
+
+        assertEquals(QuotaDecision.ACCEPTED, service.releaseGroup(keys, "REG-2").decision());
+        assertEquals(QuotaDecision.ACCEPTED, service.reserveGroup(List.of(
+                item(keys.get(0), "REG-3", 1, 40), item(keys.get(1), "REG-3", 1, 20))).decision());
+        assertEquals(QuotaDecision.ACCEPTED, service.confirmGroup(keys, "REG-3").decision());
+        assertEquals(QuotaDecision.DUPLICATE, service.confirmGroup(keys, "REG-3").decision());
+    }
+
+    @Test
+    void inlinePurgeShouldBeCappedAndSweeperShouldDrainTheRest() {
+        MutableClock clock = MutableClock.startingAt(Instant.parse("2026-03-10T08:00:00Z"));
+        LsfQuotaProperties props = props(false);
+        props.getRedis().setInlinePurgeLimit(2);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        RedisQuotaService service = new RedisQuotaService(redisTemplate, props, new QuotaMetrics(registry, "test", "redis"), clock);
+        redisTemplate.getConnectionFactory().getConnection().serverCommands().flushAll();
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals(QuotaDecision.ACCEPTED, service.reserve(QuotaRequest.builder()
+                    .quotaKey("sku:BURST").requestId("PAY-" + i).amount(1).limit(5)
+                    .hold(Duration.ofSeconds(5)).build()).decision());
+        }
+        clock.advance(Duration.ofSeconds(6));
+
+        // only 2 of the 5 expired holds are purged inline: conservative reject, never oversell
+        QuotaResult capped = service.reserve(item("sku:BURST", "NEW-1", 3, 5));
+        assertEquals(QuotaDecision.REJECTED, capped.decision());
+        assertEquals(3, capped.used());
+
+        assertEquals(3, service.sweepExpired());
+        assertNull(redisTemplate.opsForZSet().score("lsf:test:quota:_active", "sku:BURST"));
+        assertTrue(redisTemplate.getExpire("lsf:test:quota:sku:BURST:c") > 0, "sweeper must keep the keep-alive TTL");
+        assertEquals(3.0, registry.get("lsf.quota.sweep.expired").summary().totalAmount());
+        assertEquals(1L, registry.get("lsf.quota.sweep.duration").timer().count());
+
+        QuotaResult accepted = service.reserve(item("sku:BURST", "NEW-1", 3, 5));
+        assertEquals(QuotaDecision.ACCEPTED, accepted.decision());
+        assertEquals(3, accepted.used());
+        assertEquals((double) accepted.holdUntilEpochMs(),
+                redisTemplate.opsForZSet().score("lsf:test:quota:_active", "sku:BURST"));
+        assertEquals(0, service.sweepExpired());
+    }
+
+    @Test
+    void hashLayoutShouldKeepSemanticsWithOneHashPerKey() {
+        MutableClock clock = MutableClock.startingAt(Instant.parse("2026-03-10T08:00:00Z"));
+        LsfQuotaProperties props = props(true);
+        props.getRedis().setLayout(LsfQuotaProperties.Redis.Layout.HASH);
+        props.getRedis().setInlinePurgeLimit(2);
+        RedisQuotaService service = new RedisQuotaService(redisTemplate, props, null, clock);
+        redisTemplate.getConnectionFactory().getConnection().serverCommands().flushAll();
+
+        assertEquals(QuotaDecision.ACCEPTED, service.reserve(item("sku:H", "REQ-1", 2, 3)).decision());
+        assertEquals(QuotaDecision.DUPLICATE, service.reserve(item("sku:H", "REQ-1", 2, 3)).decision());
+        assertEquals(QuotaDecision.REJECTED, service.reserve(item("sku:H", "REQ-2", 2, 3)).decision());
+        assertEquals(QuotaDecision.ACCEPTED, service.confirm("sku:H", "REQ-1").decision());
+        assertEquals(QuotaDecision.DUPLICATE, service.reserve(item("sku:H", "REQ-1", 2, 3)).decision());
+        assertEquals(QuotaDecision.ACCEPTED, service.release("sku:H", "REQ-1").decision());
+        assertEquals(Set.of("lsf:test:quota:sku:H:h"), redisTemplate.keys("lsf:test:quota:sku:H*"));
+        assertTrue(redisTemplate.getExpire("lsf:test:quota:sku:H:h") > 0);
+
+        List<QuotaResult> batch = service.reserveAll(List.of(
+                item("sku:H", "CART-1", 1, 3),
+                item("sku:H2", "CART-1", 4, 3)), QuotaBatchMode.ALL_OR_NOTHING);
+        assertEquals(List.of(QuotaDecision.REJECTED, QuotaDecision.REJECTED),
+                batch.stream().map(QuotaResult::decision).toList());
+        List<String> keys = List.of("{t}a", "{t}b");
+        assertEquals(QuotaDecision.ACCEPTED, service.reserveGroup(List.of(
+                item(keys.get(0), "REG-1", 1, 2), item(keys.get(1), "REG-1", 1, 2))).decision());
+        assertEquals(QuotaDecision.ACCEPTED, service.confirmGroup(keys, "REG-1").decision());
+        assertEquals(QuotaDecision.ACCEPTED, service.releaseGroup(keys, "REG-1").decision());
+
+        for (int i = 0; i < 5; i++) {
+            service.reserve(QuotaRequest.builder().quotaKey("sku:HB").requestId("PAY-" + i).amount(1).limit(5)
+                    .hold(Duration.ofSeconds(5)).build());
+        }
+        clock.advance(Duration.ofSeconds(6));
+        assertEquals(3, service.reserve(item("sku:HB", "NEW-1", 3, 5)).used());
+        assertEquals(3, service.sweepExpired());
+        assertNull(redisTemplate.opsForZSet().score("lsf:test:quota:_active", "sku:HB"));
+        assertEquals(QuotaDecision.ACCEPTED, service.reserve(item("sku:HB", "NEW-1", 3, 5)).decision());
+    }
+
+    @Test
+    void hashLayoutShouldMigrateSplitKeysOnFirstTouch() {
+        MutableClock clock = MutableClock.startingAt(Instant.parse("2026-03-10T08:00:00Z"));
+        RedisQuotaService split = new RedisQuotaService(redisTemplate, props(false), null, clock);
+        LsfQuotaProperties hashProps = props(false);
+        hashProps.getRedis().setLayout(LsfQuotaProperties.Redis.Layout.HASH);
+        RedisQuotaService hash = new RedisQuotaService(redisTemplate, hashProps, null, clock);
+        redisTemplate.getConnectionFactory().getConnection().serverCommands().flushAll();
+
+        split.reserve(item("sku:OLD", "HELD", 2, 5));
+        split.reserve(item("sku:OLD", "PAID", 1, 5));
+        split.confirm("sku:OLD", "PAID");
+        split.reserve(QuotaRequest.builder().quotaKey("sku:SWEPT").requestId("T").amount(1).limit(1)
+                .hold(Duration.ofSeconds(5)).build());
+
+        QuotaResult dup = hash.reserve(item("sku:OLD", "HELD", 2, 5));
+        assertEquals(QuotaDecision.DUPLICATE, dup.decision());
+        assertEquals(3, dup.used());
+        assertEquals(Set.of("lsf:test:quota:sku:OLD:h", "lsf:test:quota:sku:OLD:z"),
+                redisTemplate.keys("lsf:test:quota:sku:OLD*"));
+        assertEquals(QuotaDecision.DUPLICATE, hash.reserve(item("sku:OLD", "PAID", 1, 5)).decision());
+        assertEquals(QuotaDecision.REJECTED, hash.reserve(item("sku:OLD", "NEW", 3, 5)).decision());
+        assertEquals(QuotaDecision.ACCEPTED, hash.confirm("sku:OLD", "HELD").decision());
+
+        // the sweeper imports too, otherwise it would drop split-era holds from :z without freeing them
+        clock.advance(Duration.ofSeconds(6));
+        assertEquals(1, hash.sweepExpired());
+        QuotaResult freed = hash.reserve(item("sku:SWEPT", "T2", 1, 1));
+        assertEquals(QuotaDecision.ACCEPTED, freed.decision());
+        assertEquals(1, freed.used());
+    }
+
+    @Test
+    void shardedKeyShouldSplitTheLimitAndFollowForwardedHolds() {
+        MutableClock clock = MutableClock.startingAt(Instant.parse("2026-03-10T08:00:00Z"));
+        RedisQuotaService service = new RedisQuotaService(redisTemplate, props(false), null, clock);
+        redisTemplate.getConnectionFactory().getConnection().serverCommands().flushAll();
+        List<String> home0 = idsWithHome(0, 3);
+        List<String> home1 = idsWithHome(1, 2);
+
+        // limit 4 over 2 sub-buckets: 2 each
+        assertEquals(QuotaDecision.ACCEPTED, service.reserve(sharded(home0.get(0))).decision());
+        assertEquals(QuotaDecision.ACCEPTED, service.reserve(sharded(home0.get(1))).decision());
+        QuotaResult moved = service.reserve(sharded(home0.get(2)));
+        assertEquals(QuotaDecision.ACCEPTED, moved.decision());
+        assertEquals(2, moved.limit());
+        assertEquals("1", redisTemplate.opsForHash().get("lsf:test:quota:sku:HOT#0:fwd", home0.get(2)));
+        assertEquals(QuotaDecision.DUPLICATE, service.reserve(sharded(home0.get(2))).decision());
+        assertEquals(QuotaDecision.ACCEPTED, service.confirm("sku:HOT", home0.get(2), 2).decision());
+
+        assertEquals(QuotaDecision.ACCEPTED, service.release("sku:HOT", home0.get(1), 2).decision());
+        assertEquals(QuotaDecision.ACCEPTED, service.reserve(sharded(home1.get(0))).decision());
+        assertEquals(QuotaDecision.ACCEPTED, service.reserve(sharded(home1.get(1))).decision());
+        assertEquals(QuotaDecision.REJECTED, service.reserve(sharded("LATE")).decision());
+
+        assertEquals(QuotaDecision.ACCEPTED, service.release("sku:HOT", home1.get(1), 2).decision());
+        assertNull(redisTemplate.opsForHash().get("lsf:test:quota:sku:HOT#1:fwd", home1.get(1)));
+        assertEquals(QuotaDecision.NOT_FOUND, service.release("sku:HOT", home1.get(1), 2).decision());
+    }
+
+    @Test
+    void lostForwardEntryShouldNotStrandTheHold() {
+        MutableClock clock = MutableClock.startingAt(Instant.parse("2026-03-10T08:00:00Z"));
+        RedisQuotaService service = new RedisQuotaService(redisTemplate, props(false), null, clock);
+        redisTemplate.getConnectionFactory().getConnection().serverCommands().flushAll();
+        List<String> home0 = idsWithHome(0, 4);
+
+        service.reserve(sharded(home0.get(0)));
+        service.reserve(sharded(home0.get(1)));
+        assertEquals(QuotaDecision.ACCEPTED, service.reserve(sharded(home0.get(2))).decision());
+        assertEquals(QuotaDecision.ACCEPTED, service.reserve(sharded(home0.get(3))).decision());
+        // process chết giữa script ở sub-bucket #1 và lần ghi forward
+        redisTemplate.delete("lsf:test:quota:sku:HOT#0:fwd");
+
+        assertEquals(QuotaDecision.ACCEPTED, service.confirm("sku:HOT", home0.get(2), 2).decision());
+        assertEquals("1", redisTemplate.opsForHash().get("lsf:test:quota:sku:HOT#0:fwd", home0.get(2)));
+        assertEquals(QuotaDecision.ACCEPTED, service.release("sku:HOT", home0.get(3), 2).decision());
+        assertEquals(QuotaDecision.NOT_FOUND, service.release("sku:HOT", home0.get(3), 2).decision());
+
+        redisTemplate.delete("lsf:test:quota:sku:HOT#0:fwd");
+        assertEquals(QuotaDecision.DUPLICATE, service.reserve(sharded(home0.get(2))).decision());
+        assertEquals("1", redisTemplate.opsForHash().get("lsf:test:quota:sku:HOT#0:fwd", home0.get(2)));
+    }
+
+    @Test
+    void shardFallbackShouldBeBoundedByProbes() {
+        MutableClock clock = MutableClock.startingAt(Instant.parse("2026-03-10T08:00:00Z"));
+        LsfQuotaProperties noProbes = props(false);
+        noProbes.getRedis().setShardFallbackProbes(0);
+        RedisQuotaService service = new RedisQuotaService(redisTemplate, noProbes, null, clock);
+        redisTemplate.getConnectionFactory().getConnection().serverCommands().flushAll();
+        List<String> home0 = idsWithHome(0, 3);
+
+        service.reserve(sharded(home0.get(0)));
+        service.reserve(sharded(home0.get(1)));
+        QuotaResult rejected = service.reserve(sharded(home0.get(2)));
+        assertEquals(QuotaDecision.REJECTED, rejected.decision());
+        assertEquals(2, rejected.used());
+        assertEquals(2, rejected.limit());
+    }
+
+    @Test
+    void soldOutCacheShouldRejectInProcessUntilAnotherInstanceFreesCapacity() throws Exception {
+        MutableClock clock = MutableClock.startingAt(Instant.parse("2026-03-10T08:00:00Z"));
+        LsfQuotaProperties props = props(false);
+        props.getRedis().getSoldOutCache().setEnabled(true);
+        props.getRedis().getSoldOutCache().setTtlMs(60_000);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        QuotaMetrics metrics = new QuotaMetrics(registry, "test", "redis");
+        RedisQuotaService a = new RedisQuotaService(redisTemplate, props, metrics, clock, new RedisSoldOutCache(props, metrics, clock));
+        SimpleMeterRegistry registryB = new SimpleMeterRegistry();
+        QuotaMetrics metricsB = new QuotaMetrics(registryB, "test", "redis");
+        RedisQuotaService b = new RedisQuotaService(redisTemplate, props, metricsB, clock, new RedisSoldOutCache(props, metricsB, clock));
+        RedisSoldOutSubscriber subscriberA = new RedisSoldOutSubscriber(a);
+        RedisSoldOutSubscriber subscriberB = new RedisSoldOutSubscriber(b);
+        redisTemplate.getConnectionFactory().getConnection().serverCommands().flushAll();
+        try {
+            subscriberA.afterPropertiesSet();
+            subscriberB.afterPropertiesSet();
+            await(() -> subscriberA.isSubscribed() && subscriberB.isSubscribed());
+
+            assertEquals(QuotaDecision.ACCEPTED, a.reserve(item("sku:SOLD", "R1", 1, 1)).decision());
+            assertEquals(QuotaDecision.REJECTED, a.reserve(item("sku:SOLD", "R2", 1, 1)).decision());
+            assertEquals(QuotaDecision.REJECTED, b.reserve(item("sku:SOLD", "R2", 1, 1)).decision());
+
+            QuotaResult cached = a.reserve(item("sku:SOLD", "R3", 1, 1));
+            assertEquals(QuotaDecision.REJECTED, cached.decision());
+            assertEquals(1, cached.used());
+            assertEquals(1.0, registry.get("lsf.quota.soldout.cache").tag("outcome", "hit").counter().count());
+            // R1 giữ chỗ qua a: retry vẫn đi Redis và nhận DUPLICATE, không bị cache báo REJECTED
+            assertEquals(QuotaDecision.DUPLICATE, a.reserve(item("sku:SOLD", "R1", 1, 1)).decision());
+            assertEquals(1.0, registry.get("lsf.quota.soldout.cache").tag("outcome", "hit").counter().count());
+            // limit lớn hơn limit đã nhớ => hỏi lại Redis
+            assertEquals(QuotaDecision.ACCEPTED, a.reserve(item("sku:SOLD", "R4", 1, 2)).decision());
+            assertEquals(QuotaDecision.ACCEPTED, a.release("sku:SOLD", "R4").decision());
+            await(() -> b.soldOutCache().size() == 0);
+            assertEquals(QuotaDecision.REJECTED, b.reserve(item("sku:SOLD", "R2", 1, 1)).decision());
+            assertEquals(1, b.soldOutCache().size());
+
+            assertEquals(QuotaDecision.ACCEPTED, a.release("sku:SOLD", "R1").decision());
+            await(() -> b.soldOutCache().size() == 0);
+            assertEquals(QuotaDecision.ACCEPTED, b.reserve(item("sku:SOLD", "R2", 1, 1)).decision());
+            assertEquals(2.0, registryB.get("lsf.quota.soldout.invalidated").counter().count());
+        } finally {
+            subscriberA.destroy();
+            subscriberB.destroy();
+        }
+    }
+
+    private static void await(java.util.function.BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "condition not met in time");
+            Thread.sleep(10);
+        }
+    }
+
+    private static QuotaRequest sharded(String requestId) {
+        return QuotaRequest.builder()
+                .quotaKey("sku:HOT")
+                .requestId(requestId)
+                .amount(1)
+                .limit(4)
+                .shards(2)
+                .hold(Duration.ofSeconds(30))
+                .build();
+    }
+
+    private static List<String> idsWithHome(int shard, int count) {
+        return IntStream.iterate(0, i -> i + 1)
+                .mapToObj(i -> "REQ-" + i)
+                .filter(id -> RedisShards.home(id, 2) == shard)
+                .limit(count)
+                .toList();
+    }
+
+    private static QuotaRequest item(String key, String requestId, int amount, int limit) {
+        return QuotaRequest.builder()
+                .quotaKey(key)
+                .requestId(requestId)
+                .amount(amount)
+                .limit(limit)
+                .hold(Duration.ofSeconds(30))
+                .build();
+    }
+
     private static LsfQuotaProperties props(boolean allowReleaseConfirmed) {
         LsfQuotaProperties props = new LsfQuotaProperties();
         props.setKeyPrefix("lsf:test:quota:");
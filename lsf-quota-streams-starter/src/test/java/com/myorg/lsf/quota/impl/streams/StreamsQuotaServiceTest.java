@@ -0,0 +1,278 @@
+package com.myorg.lsf.quota.impl.streams;
+
+import com.myorg.lsf.quota.api.QuotaBatchMode;
+import com.myorg.lsf.quota.api.QuotaDecision;
+import com.myorg.lsf.quota.api.QuotaHold;
+import com.myorg.lsf.quota.api.QuotaRequest;
+import com.myorg.lsf.quota.api.QuotaResult;
+import com.myorg.lsf.quota.api.QuotaState;
+import com.myorg.lsf.quota.config.LsfQuotaProperties;
+import com.myorg.lsf.quota.obs.QuotaMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.RecordDeserializationException;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.TestInputTopic;
+import org.apache.kafka.streams.TestOutputTopic;
+import org.apache.kafka.streams.TopologyTestDriver;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.apache.kafka.streams.test.TestRecord;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StreamsQuotaServiceTest {
+
+    private static final Instant START = Instant.parse("2026-03-10T08:00:00Z");
+
+    private final SimpleMeterRegistry meters = new SimpleMeterRegistry();
+    private LsfQuotaProperties props;
+    private QuotaMetrics metrics;
+    private TopologyTestDriver driver;
+    private StreamsQuotaService service;
+
+    @BeforeEach
+    void setUp() {
+        props = new LsfQuotaProperties();
+        props.setStore(LsfQuotaProperties.Store.STREAMS);
+        props.setKeepAliveSeconds(60);
+        props.getStreams().setApplicationId("lsf-quota-test");
+
+        Properties config = new Properties();
+        config.put(StreamsConfig.APPLICATION_ID_CONFIG, "lsf-quota-test");
+        config.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, "dummy:9092");
+        metrics = new QuotaMetrics(meters, "test", "streams");
+        driver = new TopologyTestDriver(QuotaStreamsTopology.build(props, metrics), config, START);
+
+        DriverProducer producer = new DriverProducer();
+        service = new StreamsQuotaService(producer, null, null, props, metrics);
+        producer.replyTo = service::onReply;
+    }
+
+    @AfterEach
+    void tearDown() {
+        driver.close();
+    }
+
+    @Test
+    void shouldHandleReserveDuplicateConfirmAndReleaseFlow() {
+        QuotaResult first = service.reserve(item("sku:A", "REQ-1", 2, 3));
+        assertEquals(QuotaDecision.ACCEPTED, first.decision());
+        assertEquals(2, first.used());
+        assertEquals(START.toEpochMilli() + 30_000, first.holdUntilEpochMs());
+
+        assertEquals(QuotaDecision.DUPLICATE, service.reserve(item("sku:A", "REQ-1", 2, 3)).decision());
+        assertEquals(QuotaDecision.REJECTED, service.reserve(item("sku:A", "REQ-2", 2, 3)).decision());
+
+        QuotaResult confirmed = service.confirm("sku:A", "REQ-1");
+        assertEquals(QuotaDecision.ACCEPTED, confirmed.decision());
+        assertEquals(QuotaState.CONFIRMED, confirmed.state());
+        assertEquals(QuotaDecision.DUPLICATE, service.confirm("sku:A", "REQ-1").decision());
+        assertEquals(QuotaState.CONFIRMED, service.reserve(item("sku:A", "REQ-1", 2, 3)).state());
+
+        assertEquals(QuotaDecision.NOT_FOUND, service.release("sku:A", "REQ-1").decision(), "confirmed stays by default");
+        assertEquals(QuotaDecision.NOT_FOUND, service.confirm("sku:B", "REQ-9").decision());
+        assertNull(buckets().get("sku:B"), "confirm on an unknown key creates no bucket");
+
+        assertEquals(QuotaDecision.ACCEPTED, service.reserve(item("sku:A", "REQ-3", 1, 3)).decision());
+        QuotaResult released = service.release("sku:A", "REQ-3");
+        assertEquals(QuotaDecision.ACCEPTED, released.decision());
+        assertEquals(2, released.used());
+        assertEquals(1.0, meters.get("lsf.quota.reserve").tag("outcome", "rejected").counter().count());
+    }
+
+    @Test
+    void batchesShouldSendEveryOpBeforeWaitingAndCompensateAllOrNothing() {
+        service.reserve(item("sku:B", "OLD", 2, 3));
+
+        List<QuotaResult> failed = service.reserveAll(List.of(
+                item("sku:A", "CART-1", 1, 5),
+                item("sku:B", "CART-1", 2, 3)), QuotaBatchMode.ALL_OR_NOTHING);
+        assertEquals(List.of(QuotaDecision.REJECTED, QuotaDecision.REJECTED), failed.stream().map(QuotaResult::decision).toList());
+        assertEquals(QuotaDecision.NOT_FOUND, service.release("sku:A", "CART-1").decision(), "accepted item was released again");
+
+        List<QuotaResult> partial = service.reserveAll(List.of(
+                item("sku:A", "CART-1", 1, 5),
+                item("sku:B", "CART-1", 2, 3)), QuotaBatchMode.BEST_EFFORT);
+        assertEquals(List.of(QuotaDecision.ACCEPTED, QuotaDecision.REJECTED), partial.stream().map(QuotaResult::decision).toList());
+
+        List<QuotaResult> confirmed = service.confirmAll(List.of(QuotaHold.of("sku:A", "CART-1"), QuotaHold.of("sku:B", "CART-1")));
+        assertEquals(List.of(QuotaDecision.ACCEPTED, QuotaDecision.NOT_FOUND), confirmed.stream().map(QuotaResult::decision).toList());
+    }
+
+    @Test
+    void punctuatorShouldExpireHoldsOfUntouchedKeysAndEvictIdleOnes() {
+        service.reserve(QuotaRequest.builder().quotaKey("sku:C").requestId("REQ-1").amount(2).limit(5)
+                .hold(Duration.ofSeconds(5)).build());
+        service.reserve(QuotaRequest.builder().quotaKey("sku:C").requestId("REQ-2").amount(1).limit(5)
+                .hold(Duration.ofMinutes(10)).build());
+        service.confirm("sku:C", "REQ-2");
+        assertEquals(3, bucketUsed("sku:C"));
+
+        driver.advanceWallClockTime(Duration.ofSeconds(6));
+        assertEquals(1, bucketUsed("sku:C"), "expired hold purged without any new op on the key");
+        assertNull(holds().get(QuotaBucketProcessor.holdKey("sku:C", "REQ-1")));
+        assertEquals(1.0, meters.get("lsf.quota.expired").counter().count());
+
+        driver.advanceWallClockTime(Duration.ofSeconds(60));
+        assertNull(buckets().get("sku:C"), "no hold and idle for keep-alive: bucket and confirmed entries dropped");
+        assertNull(holds().get(QuotaBucketProcessor.holdKey("sku:C", "REQ-2")));
+        assertEquals(QuotaDecision.ACCEPTED, service.reserve(item("sku:C", "REQ-2", 1, 5)).decision());
+    }
+
+    @Test
+    void everyStoreShouldBeBackedByAChangelogTopic() {
+        service.reserve(item("sku:D", "REQ-1", 1, 5));
+        service.confirm("sku:D", "REQ-1");
+
+        for (String store : List.of(QuotaStreamsTopology.BUCKETS_STORE, QuotaStreamsTopology.HOLDS_STORE,
+                QuotaStreamsTopology.EXPIRY_STORE, QuotaStreamsTopology.DUE_STORE)) {
+            assertTrue(driver.producedTopicNames().contains("lsf-quota-test-" + store + "-changelog"), store);
+        }
+    }
+
+    @Test
+    void replyThreadShouldSkipUnreadableRepliesAndSurviveConsumerErrors() {
+        TopicPartition tp = new TopicPartition(props.getStreams().getReplyTopic(), 0);
+        ReplyConsumer consumer = new ReplyConsumer(tp);
+        DriverProducer producer = new DriverProducer();
+        producer.replyTo = consumer::deliver;
+        StreamsQuotaService polled = new StreamsQuotaService(producer, consumer, null, props, metrics);
+        polled.start();
+        try {
+            consumer.deliverUnreadable("{\"id\":".getBytes(StandardCharsets.UTF_8));
+            consumer.setPollException(new KafkaException("broker connection lost"));
+
+            assertEquals(QuotaDecision.ACCEPTED, polled.reserve(item("sku:G", "REQ-1", 1, 5)).decision());
+            assertEquals(QuotaDecision.ACCEPTED, polled.confirm("sku:G", "REQ-1").decision());
+            assertEquals(3, consumer.position(tp));
+        } finally {
+            polled.close();
+        }
+        assertTrue(consumer.closed());
+    }
+
+    @Test
+    void startShouldFailFastWhenTheReplyTopicHasNoPartitions() {
+        MockConsumer<String, QuotaOpReply> consumer = new MockConsumer<>(OffsetResetStrategy.LATEST);
+        StreamsQuotaService noTopic = new StreamsQuotaService(new DriverProducer(), consumer, null, props, metrics, "lsf-quota-replies-missing");
+
+        IllegalStateException e = assertThrows(IllegalStateException.class, noTopic::start);
+        assertTrue(e.getMessage().contains("lsf-quota-replies-missing"));
+    }
+
+    @Test
+    void replyTopicShouldBePerInstanceByDefault() {
+        assertEquals("lsf-quota-replies-pod-1", StreamsQuotaService.replyTopicOf(props.getStreams(), "pod-1"));
+
+        props.getStreams().setReplyTopicPerInstance(false);
+        assertEquals("lsf-quota-replies", StreamsQuotaService.replyTopicOf(props.getStreams(), "pod-1"));
+    }
+
+    private int bucketUsed(String quotaKey) {
+        byte[] raw = buckets().get(quotaKey);
+        assertNotNull(raw);
+        return QuotaBucketProcessor.Bucket.decode(raw).used;
+    }
+
+    private KeyValueStore<String, byte[]> buckets() {
+        return driver.getKeyValueStore(QuotaStreamsTopology.BUCKETS_STORE);
+    }
+
+    private KeyValueStore<String, byte[]> holds() {
+        return driver.getKeyValueStore(QuotaStreamsTopology.HOLDS_STORE);
+    }
+
+    private static QuotaRequest item(String key, String requestId, int amount, int limit) {
+        return QuotaRequest.builder().quotaKey(key).requestId(requestId).amount(amount).limit(limit).build();
+    }
+
+    /** Sends every op straight through the topology and hands the reply back to {@code replyTo}. */
+    private final class DriverProducer extends MockProducer<String, QuotaOp> {
+        Consumer<QuotaOpReply> replyTo;
+        private final TestInputTopic<String, QuotaOp> ops = driver.createInputTopic(
+                props.getStreams().getOpsTopic(), new StringSerializer(), QuotaStreamsSerdes.op().serializer());
+        private final TestOutputTopic<String, QuotaOpReply> replies = driver.createOutputTopic(
+                props.getStreams().getReplyTopic(), new StringDeserializer(), QuotaStreamsSerdes.reply().deserializer());
+
+        DriverProducer() {
+            super(true, new StringSerializer(), QuotaStreamsSerdes.op().serializer());
+        }
+
+        @Override
+        public synchronized Future<RecordMetadata> send(ProducerRecord<String, QuotaOp> record, Callback callback) {
+            ops.pipeInput(new TestRecord<>(record.key(), record.value(), record.headers(), (Long) null));
+            replies.readValuesToList().forEach(replyTo);
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    /**
+     * Reply topic with one partition. Like KafkaConsumer, a record the deserializer rejects fails
+     * every poll with {@link RecordDeserializationException} until the caller seeks past it.
+     */
+    private static final class ReplyConsumer extends MockConsumer<String, QuotaOpReply> {
+        private final TopicPartition tp;
+        private final Map<Long, byte[]> unreadable = new HashMap<>();
+        private long nextOffset;
+
+        ReplyConsumer(TopicPartition tp) {
+            super(OffsetResetStrategy.LATEST);
+            this.tp = tp;
+            updatePartitions(tp.topic(), List.of(new PartitionInfo(tp.topic(), 0, null, null, null)));
+            updateEndOffsets(Map.of(tp, 0L));
+        }
+
+        synchronized void deliver(QuotaOpReply reply) {
+            addRecord(new ConsumerRecord<>(tp.topic(), tp.partition(), nextOffset++, reply.id(), reply));
+        }
+
+        synchronized void deliverUnreadable(byte[] raw) {
+            unreadable.put(nextOffset++, raw);
+        }
+
+        @Override
+        public synchronized ConsumerRecords<String, QuotaOpReply> poll(Duration timeout) {
+            long position = position(tp);
+            byte[] raw = unreadable.get(position);
+            if (raw != null) {
+                try {
+                    QuotaStreamsSerdes.reply().deserializer().deserialize(tp.topic(), raw);
+                } catch (SerializationException e) {
+                    throw new RecordDeserializationException(tp, position, e.getMessage(), e);
+                }
+            }
+            return super.poll(timeout);
+        }
+    }
+}
@@ -1,12 +1,23 @@
 package com.myorg.lsf.quota.policy;
 
+import com.myorg.lsf.quota.obs.QuotaMetrics;
 import com.myorg.lsf.quota.policy.cache.MemoryPolicyCache;
 import com.myorg.lsf.quota.support.MutableClock;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -53,4 +64,143 @@ class CachingQuotaPolicyProviderTest {
         assertTrue(provider.findPolicy("missing:key").isEmpty());
         assertEquals(1, calls.get());
     }
+
+    @Test
+    void concurrentMissesShouldShareOneLoad() throws Exception {
+        MutableClock clock = MutableClock.startingAt(Instant.parse("2026-03-10T08:00:00Z"));
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        QuotaPolicyProvider delegate = quotaKey -> {
+            calls.incrementAndGet();
+            loading.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return Optional.of(QuotaPolicy.builder().limit(10).hold(Duration.ofSeconds(30)).build());
+        };
+        CachingQuotaPolicyProvider provider = new CachingQuotaPolicyProvider(
+                delegate, new MemoryPolicyCache(clock, Duration.ofSeconds(30), 100), null);
+
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Optional<QuotaPolicy>>> results = new ArrayList<>();
+            results.add(pool.submit(() -> provider.findPolicy("sku:HOT")));
+            assertTrue(loading.await(5, TimeUnit.SECONDS));
+            for (int i = 0; i < 7; i++) {
+                results.add(pool.submit(() -> provider.findPolicy("sku:HOT")));
+            }
+            Thread.sleep(100);
+            release.countDown();
+            for (Future<Optional<QuotaPolicy>> f : results) {
+                assertEquals(10, f.get(5, TimeUnit.SECONDS).orElseThrow().limit());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void hitPastRefreshPointShouldServeCachedValueAndReloadInBackground() {
+        MutableClock clock = MutableClock.startingAt(Instant.parse("2026-03-10T08:00:00Z"));
+        SimpleMeterRegistry meters = new SimpleMeterRegistry();
+        Map<String, Integer> limits = new ConcurrentHashMap<>(Map.of("sku:A", 10));
+        AtomicInteger calls = new AtomicInteger();
+        QuotaPolicyProvider delegate = quotaKey -> {
+            calls.incrementAndGet();
+            return Optional.of(QuotaPolicy.builder().limit(limits.get(quotaKey)).hold(Duration.ofSeconds(30)).build());
+        };
+        List<Runnable> background = new ArrayList<>();
+        MemoryPolicyCache cache = new MemoryPolicyCache(clock, Duration.ofSeconds(10), 0.5, 100,
+                background::add, new QuotaMetrics(meters, "test", "memory"));
+        CachingQuotaPolicyProvider provider = new CachingQuotaPolicyProvider(delegate, cache, null);
+
+        assertEquals(10, provider.findPolicy("sku:A").orElseThrow().limit());
+        limits.put("sku:A", 20);
+
+        clock.advance(Duration.ofSeconds(4));
+        assertEquals(10, provider.findPolicy("sku:A").orElseThrow().limit());
+        assertTrue(background.isEmpty(), "before the refresh point");
+
+        clock.advance(Duration.ofSeconds(2));
+        assertEquals(10, provider.findPolicy("sku:A").orElseThrow().limit(), "stale value served, no wait");
+        assertEquals(10, provider.findPolicy("sku:A").orElseThrow().limit());
+        assertEquals(1, background.size(), "one refresh per entry");
+
+        background.remove(0).run();
+        assertEquals(2, calls.get());
+        assertEquals(20, provider.findPolicy("sku:A").orElseThrow().limit());
+
+        // 12s after the first load: the refreshed entry is still live
+        clock.advance(Duration.ofSeconds(6));
+        assertEquals(20, provider.findPolicy("sku:A").orElseThrow().limit());
+        assertEquals(2, calls.get());
+
+        assertEquals(5.0, meters.get("lsf.quota.policy.cache").tag("outcome", "hit").counter().count());
+        assertEquals(1.0, meters.get("lsf.quota.policy.cache").tag("outcome", "miss").counter().count());
+        assertEquals(2, meters.get("lsf.quota.policy.load").timer().count());
+    }
+
+    @Test
+    void fullCacheShouldKeepFrequentKeysAndAdmitNewOnesOnceTheyGetHotter() {
+        MutableClock clock = MutableClock.startingAt(Instant.parse("2026-03-10T08:00:00Z"));
+        Map<String, AtomicInteger> calls = new ConcurrentHashMap<>();
+        QuotaPolicyProvider delegate = quotaKey -> {
+            calls.computeIfAbsent(quotaKey, k -> new AtomicInteger()).incrementAndGet();
+            return Optional.of(QuotaPolicy.builder().limit(10).hold(Duration.ofSeconds(30)).build());
+        };
+        MemoryPolicyCache cache = new MemoryPolicyCache(clock, Duration.ofSeconds(30), 2);
+        CachingQuotaPolicyProvider provider = new CachingQuotaPolicyProvider(delegate, cache, null);
+
+        for (int i = 0; i < 3; i++) {
+            provider.findPolicy("sku:A");
+            provider.findPolicy("sku:B");
+        }
+        provider.findPolicy("sku:SCAN-1");
+        provider.findPolicy("sku:SCAN-2");
+        assertEquals(2, cache.size());
+
+        provider.findPolicy("sku:A");
+        provider.findPolicy("sku:B");
+        assertEquals(1, calls.get("sku:A").get(), "one-off keys did not push out the hot ones");
+        assertEquals(1, calls.get("sku:B").get());
+
+        for (int i = 0; i < 4; i++) {
+            provider.findPolicy("sku:C");
+        }
+        assertEquals(4, calls.get("sku:C").get(), "not admitted while colder than every entry");
+        provider.findPolicy("sku:C");
+        provider.findPolicy("sku:C");
+        assertEquals(5, calls.get("sku:C").get(), "admitted once hotter than the oldest entry");
+        assertEquals(2, cache.size());
+
+        // expired entries make room whatever their frequency
+        clock.advance(Duration.ofSeconds(31));
+        provider.findPolicy("sku:D");
+        provider.findPolicy("sku:D");
+        assertEquals(1, calls.get("sku:D").get());
+    }
+
+    @Test
+    void changedPolicyShouldOverwriteCachedCopyWithoutAddingUncachedKeys() {
+        MutableClock clock = MutableClock.startingAt(Instant.parse("2026-03-10T08:00:00Z"));
+        AtomicInteger calls = new AtomicInteger();
+        QuotaPolicyProvider delegate = quotaKey -> {
+            calls.incrementAndGet();
+            return Optional.empty();
+        };
+        MemoryPolicyCache cache = new MemoryPolicyCache(clock, Duration.ofSeconds(30), 100);
+        CachingQuotaPolicyProvider provider = new CachingQuotaPolicyProvider(delegate, cache, null);
+
+        assertTrue(provider.findPolicy("sku:NEW").isEmpty());
+        provider.onPolicyChanged("sku:NEW", Optional.of(QuotaPolicy.builder().limit(5).hold(Duration.ofSeconds(30)).build()));
+        provider.onPolicyChanged("sku:OTHER", Optional.empty());
+
+        assertEquals(5, provider.findPolicy("sku:NEW").orElseThrow().limit(), "negative entry replaced");
+        assertEquals(1, calls.get());
+        assertEquals(1, cache.size());
+    }
 }
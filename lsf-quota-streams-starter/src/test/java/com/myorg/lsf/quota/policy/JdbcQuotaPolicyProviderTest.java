@@ -5,7 +5,13 @@ import org.h2.jdbcx.JdbcDataSource;
 import org.junit.jupiter.api.Test;
 import org.springframework.jdbc.core.JdbcTemplate;
 
+import java.sql.Timestamp;
 import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -50,6 +56,109 @@ class JdbcQuotaPolicyProviderTest {
         assertEquals(Duration.ofSeconds(15), policy.hold());
     }
 
+    @Test
+    void shouldReadShardsOnlyWhenColumnIsConfigured() {
+        JdbcTemplate jdbc = new JdbcTemplate(newDataSource("quota_policy_shards"));
+        jdbc.execute("CREATE TABLE quota_policy (quota_key VARCHAR(255) PRIMARY KEY, quota_limit INT, hold_seconds INT, enabled INT, shards INT)");
+        jdbc.update("INSERT INTO quota_policy (quota_key, quota_limit, hold_seconds, enabled, shards) VALUES (?,?,?,?,?)",
+                "sku:FLASH", 1000, 30, 1, 8);
+
+        LsfQuotaProperties props = new LsfQuotaProperties();
+        props.getProvider().getJdbc().setTable("quota_policy");
+        assertEquals(0, new JdbcQuotaPolicyProvider(jdbc, props).findPolicy("sku:FLASH").orElseThrow().shards());
+
+        props.getProvider().getJdbc().setShardsColumn("shards");
+        assertEquals(8, new JdbcQuotaPolicyProvider(jdbc, props).findPolicy("sku:FLASH").orElseThrow().shards());
+    }
+
+    @Test
+    void preloadShouldPageThroughTheTableAndAnswerWithoutQueryingIt() {
+        JdbcTemplate jdbc = new JdbcTemplate(newDataSource("quota_policy_preload"));
+        createWithUpdatedAt(jdbc, "quota_policy");
+        for (int i = 1; i <= 5; i++) {
+            insert(jdbc, "sku:P" + i, 10 * i, 1, "2026-03-10T08:00:0" + i + "Z");
+        }
+        insert(jdbc, "sku:OFF", 7, 0, "2026-03-10T08:00:09Z");
+
+        LsfQuotaProperties props = preloadProps(2);
+        JdbcQuotaPolicyProvider provider = new JdbcQuotaPolicyProvider(jdbc, props);
+        assertFalse(provider.isPreloaded());
+        assertEquals(5, provider.preload(), "3 pages of 2, disabled row skipped");
+
+        jdbc.execute("ALTER TABLE quota_policy RENAME TO quota_policy_gone");
+        assertEquals(30, provider.findPolicy("sku:P3").orElseThrow().limit());
+        assertTrue(provider.findPolicy("sku:OFF").isEmpty());
+        assertTrue(provider.findPolicy("sku:UNKNOWN").isEmpty(), "unknown key answered without the DB");
+    }
+
+    @Test
+    void pollShouldApplyOnlyRowsChangedSinceTheWatermarkAndNotifyRealChanges() {
+        JdbcTemplate jdbc = new JdbcTemplate(newDataSource("quota_policy_poll"));
+        createWithUpdatedAt(jdbc, "quota_policy");
+        insert(jdbc, "sku:A", 10, 1, "2026-03-10T08:00:00Z");
+        insert(jdbc, "sku:B", 20, 1, "2026-03-10T08:00:00Z");
+
+        JdbcQuotaPolicyProvider provider = new JdbcQuotaPolicyProvider(jdbc, preloadProps(2));
+        Map<String, Optional<QuotaPolicy>> changes = new LinkedHashMap<>();
+        provider.setChangeListener(changes::put);
+        provider.preload();
+        assertEquals(0, provider.pollChanges(), "overlap re-reads the preloaded rows, nothing changed");
+
+        jdbc.update("UPDATE quota_policy SET quota_limit=15, updated_at=? WHERE quota_key='sku:A'", ts("2026-03-10T08:01:00Z"));
+        jdbc.update("UPDATE quota_policy SET enabled=0, updated_at=? WHERE quota_key='sku:B'", ts("2026-03-10T08:01:00Z"));
+        insert(jdbc, "sku:C", 30, 1, "2026-03-10T08:01:00Z");
+        insert(jdbc, "sku:D", 40, 1, "2026-03-10T08:01:01Z");
+
+        assertEquals(4, provider.pollChanges());
+        assertEquals(15, provider.findPolicy("sku:A").orElseThrow().limit());
+        assertTrue(provider.findPolicy("sku:B").isEmpty());
+        assertEquals(40, provider.findPolicy("sku:D").orElseThrow().limit());
+        assertEquals(List.of("sku:A", "sku:B", "sku:C", "sku:D"), List.copyOf(changes.keySet()));
+        assertEquals(15, changes.get("sku:A").orElseThrow().limit());
+        assertEquals(30, changes.get("sku:C").orElseThrow().limit());
+        assertTrue(changes.get("sku:B").isEmpty(), "disabled: pushed as no policy");
+
+        changes.clear();
+        assertEquals(0, provider.pollChanges());
+        assertTrue(changes.isEmpty());
+    }
+
+    @Test
+    void pollShouldPreloadWhenStartupPreloadFailed() {
+        JdbcTemplate jdbc = new JdbcTemplate(newDataSource("quota_policy_late"));
+        JdbcQuotaPolicyProvider provider = new JdbcQuotaPolicyProvider(jdbc, preloadProps(100));
+        assertFalse(provider.warmUp(), "table not there yet");
+
+        createWithUpdatedAt(jdbc, "quota_policy");
+        insert(jdbc, "sku:A", 10, 1, "2026-03-10T08:00:00Z");
+        assertEquals(10, provider.findPolicy("sku:A").orElseThrow().limit(), "per-key query meanwhile");
+
+        new JdbcQuotaPolicyPoller(provider).runOnce();
+        assertTrue(provider.isPreloaded());
+    }
+
+    private static LsfQuotaProperties preloadProps(int pageSize) {
+        LsfQuotaProperties props = new LsfQuotaProperties();
+        props.getProvider().getJdbc().setTable("quota_policy");
+        props.getProvider().getJdbc().getPreload().setEnabled(true);
+        props.getProvider().getJdbc().getPreload().setPageSize(pageSize);
+        return props;
+    }
+
+    private static void createWithUpdatedAt(JdbcTemplate jdbc, String table) {
+        jdbc.execute("CREATE TABLE " + table + " (quota_key VARCHAR(255) PRIMARY KEY, quota_limit INT, hold_seconds INT, "
+                + "enabled INT, updated_at TIMESTAMP)");
+    }
+
+    private static void insert(JdbcTemplate jdbc, String key, int limit, int enabled, String updatedAt) {
+        jdbc.update("INSERT INTO quota_policy (quota_key, quota_limit, hold_seconds, enabled, updated_at) VALUES (?,?,?,?,?)",
+                key, limit, 30, enabled, ts(updatedAt));
+    }
+
+    private static Timestamp ts(String instant) {
+        return Timestamp.from(Instant.parse(instant));
+    }
+
     private static JdbcDataSource newDataSource(String dbName) {
         JdbcDataSource ds = new JdbcDataSource();
         ds.setURL("jdbc:h2:mem:" + dbName + ";MODE=MySQL;DATABASE_TO_UPPER=false;DB_CLOSE_DELAY=-1");
@@ -1,9 +1,14 @@
 package com.myorg.lsf.quota.policy;
 
+import com.myorg.lsf.quota.api.RateLimitAlgorithm;
 import com.myorg.lsf.quota.config.LsfQuotaProperties;
+import com.myorg.lsf.quota.policy.cache.QuotaPolicyCodec;
 import org.junit.jupiter.api.Test;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -26,9 +31,76 @@ class StaticQuotaPolicyProviderTest {
         assertEquals(Duration.ofSeconds(25), policy.hold());
     }
 
+    @Test
+    void shouldReturnRateLimitPolicyThatSurvivesTheCacheCodec() {
+        LsfQuotaProperties props = new LsfQuotaProperties();
+        LsfQuotaProperties.PolicyItem item = new LsfQuotaProperties.PolicyItem();
+        item.setKey("tenant:acme:api");
+        LsfQuotaProperties.RateLimit rate = new LsfQuotaProperties.RateLimit();
+        rate.setAlgorithm(RateLimitAlgorithm.SLIDING_WINDOW);
+        rate.setLimit(100);
+        rate.setWindowMs(60_000);
+        item.setRateLimit(rate);
+        props.getPolicies().add(item);
+
+        QuotaPolicy policy = new StaticQuotaPolicyProvider(props).findPolicy("tenant:acme:api").orElseThrow();
+
+        assertTrue(policy.isRateLimit());
+        assertEquals(RateLimitAlgorithm.SLIDING_WINDOW, policy.rateLimit().algorithm());
+        assertEquals(Duration.ofMinutes(1), policy.rateLimit().window());
+        assertEquals(Optional.of(policy), QuotaPolicyCodec.decode(QuotaPolicyCodec.encode(Optional.of(policy))));
+    }
+
     @Test
     void shouldReturnEmptyWhenKeyDoesNotExist() {
         StaticQuotaPolicyProvider provider = new StaticQuotaPolicyProvider(new LsfQuotaProperties());
         assertTrue(provider.findPolicy("missing:key").isEmpty());
     }
+
+    @Test
+    void exactKeyShouldWinOverPatternsAndLiteralOverWildcard() {
+        LsfQuotaProperties props = new LsfQuotaProperties();
+        props.getPolicies().add(item("shopA:flashsale_sku:*", 5));
+        props.getPolicies().add(item("shopA:flashsale_sku:SKU-1", 1));
+        props.getPolicies().add(item("shopA:*:SKU-2", 7));
+        props.getPolicies().add(item("shopA:**", 100));
+        props.getPolicies().add(item("*:flashsale_sku:*", 9));
+
+        StaticQuotaPolicyProvider provider = new StaticQuotaPolicyProvider(props);
+
+        assertEquals(1, provider.findPolicy("shopA:flashsale_sku:SKU-1").orElseThrow().limit());
+        assertEquals(5, provider.findPolicy("shopA:flashsale_sku:SKU-2").orElseThrow().limit(), "literal segment before *");
+        assertEquals(7, provider.findPolicy("shopA:regular:SKU-2").orElseThrow().limit());
+        assertEquals(100, provider.findPolicy("shopA:regular:SKU-3").orElseThrow().limit(), "** takes the rest");
+        assertEquals(100, provider.findPolicy("shopA:flashsale_sku:SKU-9:extra").orElseThrow().limit(), "* is one segment only");
+        assertEquals(9, provider.findPolicy("shopB:flashsale_sku:SKU-1").orElseThrow().limit());
+        assertTrue(provider.findPolicy("shopA").isEmpty(), "** needs at least one segment");
+        assertTrue(provider.findPolicy("shopB:regular:SKU-1").isEmpty());
+        assertSame(provider.findPolicy("shopA:flashsale_sku:SKU-7").orElseThrow(),
+                provider.findPolicy("shopA:flashsale_sku:SKU-8").orElseThrow(), "prebuilt policy object");
+    }
+
+    @Test
+    void reboundPolicyListShouldSwapInANewIndex() {
+        LsfQuotaProperties props = new LsfQuotaProperties();
+        props.getPolicies().add(item("sku:A", 1));
+        StaticQuotaPolicyProvider provider = new StaticQuotaPolicyProvider(props);
+        assertEquals(1, provider.findPolicy("sku:A").orElseThrow().limit());
+
+        List<LsfQuotaProperties.PolicyItem> rebound = new ArrayList<>(List.of(item("sku:*", 2)));
+        props.setPolicies(rebound);
+        assertEquals(2, provider.findPolicy("sku:A").orElseThrow().limit());
+
+        rebound.add(0, item("sku:A", 3));
+        assertEquals(2, provider.findPolicy("sku:A").orElseThrow().limit(), "in-place edits wait for reload()");
+        provider.reload();
+        assertEquals(3, provider.findPolicy("sku:A").orElseThrow().limit());
+    }
+
+    private static LsfQuotaProperties.PolicyItem item(String key, int limit) {
+        LsfQuotaProperties.PolicyItem item = new LsfQuotaProperties.PolicyItem();
+        item.setKey(key);
+        item.setLimit(limit);
+        return item;
+    }
 }
@@ -0,0 +1,172 @@
+package com.myorg.lsf.quota.support;
+
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisURI;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.sync.RedisCommands;
+import io.lettuce.core.internal.HostAndPort;
+import io.lettuce.core.resource.ClientResources;
+import io.lettuce.core.resource.DnsResolvers;
+import io.lettuce.core.resource.MappingSocketAddressResolver;
+import org.springframework.data.redis.connection.RedisClusterConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.testcontainers.DockerClientFactory;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.containers.Network;
+import org.testcontainers.utility.DockerImageName;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Local multi-node Redis Cluster for tests.
+ *
+ * {@code LSF_REDIS_CLUSTER_NODES=127.0.0.1:7001,127.0.0.1:7002,...} reuses nodes already
+ * started with {@code --cluster-enabled yes} (their data is wiped); otherwise N
+ * {@code redis:7.2-alpine} containers are started on one Docker network. Either way the
+ * harness resets the nodes, joins them (CLUSTER MEET), spreads the 16384 slots evenly and
+ * waits for {@code cluster_state:ok}. Containers announce their network address, so the
+ * client maps it back to the published port.
+ */
+public final class RedisClusterHarness implements AutoCloseable {
+
+    private static final int SLOTS = 16384;
+
+    private final List<GenericContainer<?>> containers = new ArrayList<>();
+    private final List<HostAndPort> clientAddresses = new ArrayList<>();
+    private final List<HostAndPort> announcedAddresses = new ArrayList<>();
+    private Network network;
+    private ClientResources resources;
+    private LettuceConnectionFactory connectionFactory;
+
+    private RedisClusterHarness() {
+    }
+
+    public static RedisClusterHarness start(int nodes) {
+        RedisClusterHarness harness = new RedisClusterHarness();
+        String external = System.getenv("LSF_REDIS_CLUSTER_NODES");
+        if (external != null && !external.isBlank()) {
+            for (String node : external.split(",")) {
+                HostAndPort address = HostAndPort.parse(node.trim());
+                harness.clientAddresses.add(address);
+                harness.announcedAddresses.add(address);
+            }
+        } else {
+            assumeTrue(DockerClientFactory.instance().isDockerAvailable(), "Docker or LSF_REDIS_CLUSTER_NODES required");
+            harness.startContainers(nodes);
+        }
+        harness.bootstrap();
+        return harness;
+    }
+
+    public LettuceConnectionFactory connectionFactory() {
+        return connectionFactory;
+    }
+
+    public int nodes() {
+        return clientAddresses.size();
+    }
+
+    public void flushAll() {
+        forEachNode(RedisCommands::flushall);
+    }
+
+    @Override
+    public void close() {
+        if (connectionFactory != null) connectionFactory.destroy();
+        if (resources != null) resources.shutdown();
+        containers.forEach(GenericContainer::stop);
+        if (network != null) network.close();
+    }
+
+    private void startContainers(int nodes) {
+        network = Network.newNetwork();
+        for (int i = 0; i < nodes; i++) {
+            GenericContainer<?> node = new GenericContainer<>(DockerImageName.parse("redis:7.2-alpine"))
+                    .withNetwork(network)
+                    .withExposedPorts(6379)
+                    .withCommand("redis-server", "--cluster-enabled", "yes", "--save", "", "--appendonly", "no");
+            node.start();
+            containers.add(node);
+            String ip = node.getContainerInfo().getNetworkSettings().getNetworks().values().iterator().next().getIpAddress();
+            clientAddresses.add(HostAndPort.of(node.getHost(), node.getMappedPort(6379)));
+            announcedAddresses.add(HostAndPort.of(ip, 6379));
+        }
+    }
+
+    private void bootstrap() {
+        int n = clientAddresses.size();
+        forEachNode(node -> {
+            node.flushall();
+            node.clusterReset(true);
+        });
+        withNode(0, first -> {
+            for (int i = 1; i < n; i++) {
+                first.clusterMeet(announcedAddresses.get(i).getHostText(), announcedAddresses.get(i).getPort());
+            }
+        });
+        for (int i = 0; i < n; i++) {
+            int from = i * SLOTS / n;
+            int to = (i + 1) * SLOTS / n;
+            withNode(i, node -> node.clusterAddSlots(IntStream.range(from, to).toArray()));
+        }
+        awaitClusterOk(n);
+
+        Map<String, HostAndPort> published = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            published.put(announcedAddresses.get(i).toString(), clientAddresses.get(i));
+        }
+        resources = ClientResources.builder()
+                .socketAddressResolver(MappingSocketAddressResolver.create(DnsResolvers.UNRESOLVED,
+                        hp -> published.getOrDefault(hp.toString(), hp)))
+                .build();
+        RedisClusterConfiguration cluster = new RedisClusterConfiguration(
+                clientAddresses.stream().map(HostAndPort::toString).toList());
+        connectionFactory = new LettuceConnectionFactory(cluster,
+                LettuceClientConfiguration.builder().clientResources(resources).build());
+        connectionFactory.afterPropertiesSet();
+    }
+
+    private void awaitClusterOk(int n) {
+        long deadline = System.nanoTime() + Duration.ofSeconds(30).toNanos();
+        while (System.nanoTime() < deadline) {
+            boolean[] ok = {true};
+            forEachNode(node -> {
+                String info = node.clusterInfo();
+                ok[0] &= info.contains("cluster_state:ok") && info.contains("cluster_known_nodes:" + n);
+            });
+            if (ok[0]) return;
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        }
+        throw new IllegalStateException("Redis cluster did not reach cluster_state:ok");
+    }
+
+    private void forEachNode(Consumer<RedisCommands<String, String>> action) {
+        for (int i = 0; i < clientAddresses.size(); i++) {
+            withNode(i, action);
+        }
+    }
+
+    private void withNode(int i, Consumer<RedisCommands<String, String>> action) {
+        HostAndPort address = clientAddresses.get(i);
+        RedisClient client = RedisClient.create(RedisURI.create(address.getHostText(), address.getPort()));
+        try (StatefulRedisConnection<String, String> connection = client.connect()) {
+            action.accept(connection.sync());
+        } finally {
+            client.shutdown();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.myorg.lsf.redis.autoconfig;
+
+import com.myorg.lsf.redis.script.MicrometerRedisScriptMetrics;
+import com.myorg.lsf.redis.script.RedisScriptRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingClass;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+/**
+ * One {@link RedisScriptRegistry} per application, shared by every LSF starter that runs
+ * Lua on Redis (quota, idempotency), so all scripts are preloaded together.
+ *
+ * Starters that create their own StringRedisTemplate must be ordered before this class.
+ */
+@AutoConfiguration(afterName = "org.springframework.boot.autoconfigure.data.redis.RedisAutoConfiguration")
+@ConditionalOnClass(StringRedisTemplate.class)
+public class LsfRedisScriptAutoConfiguration {
+
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnClass(name = "io.micrometer.core.instrument.MeterRegistry")
+    static class MeteredConfig {
+
+        @Bean
+        @ConditionalOnMissingBean
+        @ConditionalOnBean(StringRedisTemplate.class)
+        public RedisScriptRegistry lsfRedisScriptRegistry(StringRedisTemplate redis, ObjectProvider<MeterRegistry> meterRegistryProvider) {
+            MeterRegistry meterRegistry = meterRegistryProvider.getIfAvailable();
+            return new RedisScriptRegistry(redis, meterRegistry != null ? new MicrometerRedisScriptMetrics(meterRegistry) : null);
+        }
+    }
+
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnMissingClass("io.micrometer.core.instrument.MeterRegistry")
+    static class PlainConfig {
+
+        @Bean
+        @ConditionalOnMissingBean
+        @ConditionalOnBean(StringRedisTemplate.class)
+        public RedisScriptRegistry lsfRedisScriptRegistry(StringRedisTemplate redis) {
+            return new RedisScriptRegistry(redis);
+        }
+    }
+}
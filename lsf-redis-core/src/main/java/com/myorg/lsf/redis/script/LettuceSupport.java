@@ -0,0 +1,98 @@
+package com.myorg.lsf.redis.script;
+
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import io.lettuce.core.event.connection.ConnectionActivatedEvent;
+import io.lettuce.core.resource.ClientResources;
+import org.springframework.data.redis.RedisSystemException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.dao.QueryTimeoutException;
+import reactor.core.Disposable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Lettuce-only parts of {@link RedisScriptRegistry}, kept in their own class so the
+ * registry still loads with Jedis on the classpath.
+ */
+final class LettuceSupport {
+
+    private LettuceSupport() {
+    }
+
+    /** Runs {@code onActivated} after every (re)connect; null when the factory is not Lettuce. */
+    static AutoCloseable subscribe(RedisConnectionFactory factory, Runnable onActivated) {
+        if (!(factory instanceof LettuceConnectionFactory lettuce)) return null;
+        ClientResources resources = lettuce.getClientResources();
+        if (resources == null) return null;
+        Disposable subscription = resources.eventBus().get()
+                .filter(ConnectionActivatedEvent.class::isInstance)
+                .subscribe(event -> onActivated.run());
+        return subscription::dispose;
+    }
+
+    static boolean isLettuce(RedisConnection connection) {
+        return connection.getNativeConnection() instanceof RedisClusterAsyncCommands<?, ?>;
+    }
+
+    /**
+     * EVALSHA of every call on the async API, all in flight before the first is awaited.
+     *
+     * Spring's pipeline gives up on the first failed future and loses the other replies,
+     * so after a NOSCRIPT it cannot tell which calls already ran. Here each reply is kept:
+     * a failed call has its exception in its slot, the others their raw result.
+     */
+    @SuppressWarnings("unchecked")
+    static List<Object> evalShaAll(RedisConnection connection, List<RedisScriptRegistry.Invocation> calls,
+                                   List<byte[][]> keysAndArgs, long timeoutMs) {
+        RedisClusterAsyncCommands<byte[], byte[]> async =
+                (RedisClusterAsyncCommands<byte[], byte[]>) connection.getNativeConnection();
+        List<RedisFuture<Object>> futures = new ArrayList<>(calls.size());
+        for (int i = 0; i < calls.size(); i++) {
+            RedisScriptRegistry.Invocation c = calls.get(i);
+            byte[][] all = keysAndArgs.get(i);
+            int numKeys = c.keys().size();
+            byte[][] keys = Arrays.copyOfRange(all, 0, numKeys);
+            byte[][] args = Arrays.copyOfRange(all, numKeys, all.length);
+            futures.add(async.evalsha(c.script().getSha1(), outputType(c.script()), keys, args));
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        List<Object> results = new ArrayList<>(futures.size());
+        for (RedisFuture<Object> f : futures) {
+            try {
+                results.add(f.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                results.add(cause instanceof RuntimeException re ? re : new RedisSystemException(String.valueOf(cause), cause));
+            } catch (TimeoutException e) {
+                throw new QueryTimeoutException("Redis command timed out after " + timeoutMs + " ms", e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RedisSystemException("Interrupted while waiting for Redis", e);
+            }
+        }
+        return results;
+    }
+
+    static long timeoutMs(RedisConnectionFactory factory) {
+        return (factory instanceof LettuceConnectionFactory lettuce) ? lettuce.getTimeout() : 60_000;
+    }
+
+    private static ScriptOutputType outputType(LsfRedisScript<?> script) {
+        return switch (script.returnType()) {
+            case BOOLEAN -> ScriptOutputType.BOOLEAN;
+            case INTEGER -> ScriptOutputType.INTEGER;
+            case MULTI -> ScriptOutputType.MULTI;
+            case STATUS -> ScriptOutputType.STATUS;
+            case VALUE -> ScriptOutputType.VALUE;
+        };
+    }
+}
@@ -0,0 +1,78 @@
+package com.myorg.lsf.redis.script;
+
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Objects;
+
+/**
+ * A named Lua script with its SHA1 computed once, for {@link RedisScriptRegistry}.
+ *
+ * Still a {@link RedisScript}, so the reactive template and plain
+ * {@code StringRedisTemplate.execute} accept it as well.
+ *
+ * @param <T> Java type of the script result: Long, Boolean, String or List
+ */
+public final class LsfRedisScript<T> implements RedisScript<T> {
+
+    private final String name;
+    private final String lua;
+    private final String sha1;
+    private final Class<T> resultType;
+
+    private LsfRedisScript(String name, String lua, Class<T> resultType) {
+        this.name = name;
+        this.lua = lua;
+        this.sha1 = sha1(lua);
+        this.resultType = resultType;
+    }
+
+    /** {@code name} is the meter tag and must be unique per registry, e.g. {@code lsf.quota.split.reserve}. */
+    public static <T> LsfRedisScript<T> of(String name, String lua, Class<T> resultType) {
+        if (name == null || name.isBlank()) throw new IllegalArgumentException("script name must not be blank");
+        Objects.requireNonNull(lua, "lua");
+        Objects.requireNonNull(resultType, "resultType");
+        return new LsfRedisScript<>(name, lua, resultType);
+    }
+
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public String getSha1() {
+        return sha1;
+    }
+
+    @Override
+    public Class<T> getResultType() {
+        return resultType;
+    }
+
+    @Override
+    public String getScriptAsString() {
+        return lua;
+    }
+
+    ReturnType returnType() {
+        return ReturnType.fromJavaType(resultType);
+    }
+
+    @Override
+    public String toString() {
+        return name + "@" + sha1;
+    }
+
+    private static String sha1(String lua) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(lua.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 not available", e);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.myorg.lsf.redis.script;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timer {@code lsf.redis.script} tagged with the script name ({@code script=pipeline} for a
+ * pipelined batch), counter {@code lsf.redis.script.noscript} for recovered NOSCRIPT replies.
+ */
+public class MicrometerRedisScriptMetrics implements RedisScriptMetrics {
+
+    private final MeterRegistry meters;
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+    private final Map<String, Counter> noScript = new ConcurrentHashMap<>();
+
+    public MicrometerRedisScriptMetrics(MeterRegistry meters) {
+        this.meters = meters;
+    }
+
+    @Override
+    public void recordCall(String script, long nanos) {
+        timers.computeIfAbsent(script, name -> Timer.builder("lsf.redis.script")
+                .tag("script", name)
+                .register(meters)).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void incNoScript(String script) {
+        noScript.computeIfAbsent(script, name -> Counter.builder("lsf.redis.script.noscript")
+                .tag("script", name)
+                .register(meters)).increment();
+    }
+}
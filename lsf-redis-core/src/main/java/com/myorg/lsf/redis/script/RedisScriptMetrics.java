@@ -0,0 +1,18 @@
+package com.myorg.lsf.redis.script;
+
+/**
+ * Where {@link RedisScriptRegistry} reports script latency and NOSCRIPT recoveries.
+ * Kept free of Micrometer types so the registry can be used without it on the classpath;
+ * {@link MicrometerRedisScriptMetrics} is the Micrometer binding.
+ */
+public interface RedisScriptMetrics {
+
+    /** Tag used for a whole pipeline: one round trip, not attributable to any one script in it. */
+    String PIPELINE = "pipeline";
+
+    /** Latency of one script call, or of a pipeline under {@link #PIPELINE}. */
+    void recordCall(String script, long nanos);
+
+    /** A NOSCRIPT reply was recovered (scripts reloaded, call retried). */
+    void incNoScript(String script);
+}
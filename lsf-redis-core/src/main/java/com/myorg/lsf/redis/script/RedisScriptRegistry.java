@@ -0,0 +1,385 @@
+package com.myorg.lsf.redis.script;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.data.redis.RedisSystemException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisPipelineException;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.util.ClassUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Every LSF Lua script, called by SHA only.
+ *
+ * Scripts are loaded with SCRIPT LOAD once the context is up, again in the background after
+ * Lettuce reconnects or a new script is registered, then run with EVALSHA, pipelined calls
+ * included. Background loads run on one dedicated daemon thread; when a load fails (Redis
+ * down) it is retried there with backoff. Callers never load every script on their own
+ * thread, they send EVALSHA and rely on NOSCRIPT recovery.
+ *
+ * A NOSCRIPT reply (Redis restarted, SCRIPT FLUSH, failover to a node that never saw the
+ * script) reloads only the rejected script and retries the failed calls once, so callers
+ * never see it. One reload per script runs at a time: concurrent callers hit by the same
+ * NOSCRIPT wait for it instead of each sending the body again.
+ *
+ * Metrics (optional, see {@link RedisScriptMetrics}): latency per script for single calls,
+ * under {@link RedisScriptMetrics#PIPELINE} for pipelines; recovered NOSCRIPT per script.
+ */
+@Slf4j
+public class RedisScriptRegistry implements SmartInitializingSingleton, DisposableBean {
+
+    private static final boolean LETTUCE_PRESENT = ClassUtils.isPresent(
+            "io.lettuce.core.event.connection.ConnectionActivatedEvent", RedisScriptRegistry.class.getClassLoader());
+
+    private static final long RETRY_MIN_MS = 200;
+    private static final long RETRY_MAX_MS = 30_000;
+
+    private final StringRedisTemplate redis;
+    private final RedisScriptMetrics metrics; // nullable
+
+    private final Map<String, LsfRedisScript<?>> scripts = new ConcurrentHashMap<>();
+    // theo tên script: khoá + số lần đã load lại sau NOSCRIPT
+    private final Map<String, Reload> reloads = new ConcurrentHashMap<>();
+    private final ScheduledThreadPoolExecutor loader;
+
+    // false: scripts chưa chắc có trên server, lần gọi tới bật load nền
+    private volatile boolean loaded;
+    // chỉ 1 vòng load nền tại một thời điểm
+    private final AtomicBoolean loading = new AtomicBoolean();
+    private volatile boolean closed;
+    private AutoCloseable reconnectListener;
+
+    public RedisScriptRegistry(StringRedisTemplate redis) {
+        this(redis, null);
+    }
+
+    public RedisScriptRegistry(StringRedisTemplate redis, RedisScriptMetrics metrics) {
+        this.redis = redis;
+        this.metrics = metrics;
+        this.loader = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, "lsf-redis-script-loader");
+            t.setDaemon(true);
+            return t;
+        });
+        // thread chỉ sống khi đang có vòng load
+        loader.setKeepAliveTime(10, TimeUnit.SECONDS);
+        loader.allowCoreThreadTimeOut(true);
+        loader.setRemoveOnCancelPolicy(true);
+    }
+
+    /** One call of a script inside {@link #executePipelined(List)}. */
+    public record Invocation(LsfRedisScript<?> script, List<String> keys, Object[] args) {}
+
+    /** Registers scripts to preload; a different script under a taken name is a bug and fails fast. */
+    public void register(LsfRedisScript<?>... toRegister) {
+        for (LsfRedisScript<?> script : toRegister) {
+            LsfRedisScript<?> prev = scripts.putIfAbsent(script.name(), script);
+            if (prev == null) {
+                reloads.putIfAbsent(script.name(), new Reload());
+                loaded = false;
+            } else if (!prev.getSha1().equals(script.getSha1())) {
+                throw new IllegalStateException("Redis script name '" + script.name() + "' already registered with another body");
+            }
+        }
+    }
+
+    public Collection<LsfRedisScript<?>> scripts() {
+        return List.copyOf(scripts.values());
+    }
+
+    /**
+     * SCRIPT LOAD of every registered script. On Redis Cluster the driver sends it to every
+     * master. Failures are logged only: the first call reloads through NOSCRIPT anyway.
+     *
+     * @return false when the load failed
+     */
+    public boolean loadAll() {
+        List<LsfRedisScript<?>> all = List.copyOf(scripts.values());
+        if (all.isEmpty()) {
+            loaded = true;
+            return true;
+        }
+        try {
+            redis.execute((RedisCallback<Void>) connection -> {
+                for (LsfRedisScript<?> script : all) {
+                    load(connection, script);
+                }
+                return null;
+            });
+            loaded = true;
+            log.debug("Loaded {} Redis scripts", all.size());
+            return true;
+        } catch (RuntimeException e) {
+            log.debug("Could not load {} Redis scripts: {}", all.size(), e.toString());
+            return false;
+        }
+    }
+
+    boolean isLoaded() {
+        return loaded;
+    }
+
+    /** EVALSHA of one script; NOSCRIPT reloads that script and retries once. */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(LsfRedisScript<T> script, List<String> keys, Object... args) {
+        ensureLoaded(script);
+        byte[][] keysAndArgs = keysAndArgs(keys, args);
+        long generation = reloads.get(script.name()).generation;
+        long start = System.nanoTime();
+        try {
+            Object raw;
+            try {
+                raw = evalSha(script, keys.size(), keysAndArgs);
+            } catch (RuntimeException e) {
+                if (!isNoScript(e)) throw e;
+                recovered(script);
+                reload(script, generation);
+                raw = evalSha(script, keys.size(), keysAndArgs);
+            }
+            return (T) decode(raw);
+        } finally {
+            record(script, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * All invocations in one pipeline, results in order. Invocations rejected with NOSCRIPT
+     * are sent again (one pipeline) after their scripts are reloaded; the others are never
+     * re-run. Any other error is rethrown.
+     */
+    public List<Object> executePipelined(List<Invocation> calls) {
+        if (calls.isEmpty()) return List.of();
+        Map<String, Long> generations = new LinkedHashMap<>();
+        for (Invocation call : calls) {
+            ensureLoaded(call.script());
+            generations.putIfAbsent(call.script().name(), reloads.get(call.script().name()).generation);
+        }
+        long start = System.nanoTime();
+        try {
+            List<Object> results = new ArrayList<>(pipeline(calls));
+            List<Integer> retry = noScriptEntries(results);
+            if (!retry.isEmpty()) {
+                Map<String, LsfRedisScript<?>> missing = new LinkedHashMap<>();
+                retry.forEach(i -> missing.putIfAbsent(calls.get(i).script().name(), calls.get(i).script()));
+                missing.values().forEach(script -> {
+                    recovered(script);
+                    reload(script, generations.get(script.name()));
+                });
+                List<Object> again = pipeline(retry.stream().map(calls::get).toList());
+                for (Object r : again) {
+                    if (r instanceof RuntimeException e) throw e;
+                }
+                for (int k = 0; k < retry.size(); k++) {
+                    results.set(retry.get(k), again.get(k));
+                }
+            }
+            for (int i = 0; i < results.size(); i++) {
+                results.set(i, decode(results.get(i)));
+            }
+            return results;
+        } finally {
+            // 1 round trip cho cả pipeline: không gán được cho script nào trong đó
+            if (metrics != null) metrics.recordCall(RedisScriptMetrics.PIPELINE, System.nanoTime() - start);
+        }
+    }
+
+    /** Latency of a call made outside the registry (e.g. the reactive template with the same script). */
+    public void record(LsfRedisScript<?> script, long nanos) {
+        if (metrics != null) metrics.recordCall(script.name(), nanos);
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!loadAll()) loadInBackground();
+        RedisConnectionFactory factory = redis.getConnectionFactory();
+        if (LETTUCE_PRESENT && reconnectListener == null) {
+            reconnectListener = LettuceSupport.subscribe(factory, () -> {
+                loaded = false;
+                // không chạy lệnh Redis trên event loop của Lettuce
+                loadInBackground();
+            });
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        closed = true;
+        loader.shutdownNow();
+        if (reconnectListener != null) reconnectListener.close();
+    }
+
+    /**
+     * Single background load, retried with exponential backoff (200 ms .. 30 s) until it
+     * succeeds; a no-op while one is already running.
+     */
+    void loadInBackground() {
+        if (closed || !loading.compareAndSet(false, true)) return;
+        try {
+            loader.execute(() -> backgroundLoad(RETRY_MIN_MS));
+        } catch (RejectedExecutionException e) {
+            loading.set(false); // destroy() đang chạy
+        }
+    }
+
+    private void backgroundLoad(long nextDelayMs) {
+        if (closed || loaded || loadAll()) {
+            loading.set(false);
+            // register() giữa lúc load xong và lúc nhả cờ: chạy thêm 1 vòng
+            if (!loaded) loadInBackground();
+            return;
+        }
+        if (nextDelayMs == RETRY_MIN_MS) {
+            log.warn("Could not load {} Redis scripts, retrying in the background with backoff", scripts.size());
+        }
+        try {
+            loader.schedule(() -> backgroundLoad(Math.min(nextDelayMs * 2, RETRY_MAX_MS)), nextDelayMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            loading.set(false);
+        }
+    }
+
+    /**
+     * SCRIPT LOAD of one script after NOSCRIPT, unless it was reloaded since the caller read
+     * {@code seenGeneration} (its EVALSHA went out before that reload). Concurrent callers of
+     * the same script queue on its lock, so the body is sent once per NOSCRIPT wave.
+     */
+    private void reload(LsfRedisScript<?> script, long seenGeneration) {
+        Reload reload = reloads.get(script.name());
+        reload.lock.lock();
+        try {
+            if (reload.generation != seenGeneration) return;
+            log.info("NOSCRIPT for Redis script {}, reloading it", script.name());
+            redis.execute((RedisCallback<Void>) connection -> {
+                load(connection, script);
+                return null;
+            });
+            reload.generation++;
+        } finally {
+            reload.lock.unlock();
+        }
+    }
+
+    private static void load(RedisConnection connection, LsfRedisScript<?> script) {
+        String sha = connection.scriptingCommands().scriptLoad(bytes(script.getScriptAsString()));
+        if (!script.getSha1().equals(sha)) {
+            throw new IllegalStateException("SCRIPT LOAD of " + script.name() + " returned " + sha + ", expected " + script.getSha1());
+        }
+    }
+
+    /** Never loads on the caller thread: EVALSHA goes out anyway, NOSCRIPT recovery covers a miss. */
+    private void ensureLoaded(LsfRedisScript<?> script) {
+        if (!scripts.containsKey(script.name())) register(script);
+        if (!loaded) loadInBackground();
+    }
+
+    private Object evalSha(LsfRedisScript<?> script, int numKeys, byte[][] keysAndArgs) {
+        return redis.execute((RedisCallback<Object>) connection ->
+                evalSha(connection, script, numKeys, keysAndArgs));
+    }
+
+    /** Raw replies in order; a failed call has its exception in its slot. */
+    private List<Object> pipeline(List<Invocation> calls) {
+        List<byte[][]> encoded = calls.stream().map(c -> keysAndArgs(c.keys(), c.args())).toList();
+        if (LETTUCE_PRESENT) {
+            List<Object> viaLettuce = redis.execute((RedisCallback<List<Object>>) connection ->
+                    LettuceSupport.isLettuce(connection)
+                            ? LettuceSupport.evalShaAll(connection, calls, encoded, LettuceSupport.timeoutMs(redis.getConnectionFactory()))
+                            : null);
+            if (viaLettuce != null) return viaLettuce;
+        }
+        try {
+            // null serializer: kết quả thô (byte[] / Long / List), decode() chuyển sang String
+            return redis.executePipelined((RedisCallback<Object>) connection -> {
+                for (int i = 0; i < calls.size(); i++) {
+                    Invocation c = calls.get(i);
+                    evalSha(connection, c.script(), c.keys().size(), encoded.get(i));
+                }
+                return null;
+            }, null);
+        } catch (RedisPipelineException e) {
+            // Jedis trả lỗi theo từng lệnh; không có thì không biết lệnh nào đã chạy
+            if (e.getPipelineResult().size() != calls.size()) throw e;
+            return e.getPipelineResult();
+        }
+    }
+
+    /** Indexes of NOSCRIPT replies; any other error is thrown. */
+    private static List<Integer> noScriptEntries(List<Object> results) {
+        List<Integer> retry = new ArrayList<>();
+        for (int i = 0; i < results.size(); i++) {
+            if (!(results.get(i) instanceof Throwable t)) continue;
+            if (!isNoScript(t)) {
+                throw (t instanceof RuntimeException re) ? re : new RedisSystemException(t.getMessage(), t);
+            }
+            retry.add(i);
+        }
+        return retry;
+    }
+
+    private static Object evalSha(RedisConnection connection, LsfRedisScript<?> script, int numKeys, byte[][] keysAndArgs) {
+        return connection.scriptingCommands().evalSha(script.getSha1(), script.returnType(), numKeys, keysAndArgs);
+    }
+
+    private void recovered(LsfRedisScript<?> script) {
+        if (metrics != null) metrics.incNoScript(script.name());
+    }
+
+    static boolean isNoScript(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            String msg = t.getMessage();
+            if (msg != null && msg.contains("NOSCRIPT")) return true;
+            if (t.getCause() == t) break;
+        }
+        return false;
+    }
+
+    private static final class Reload {
+        final ReentrantLock lock = new ReentrantLock(); // không pin carrier của virtual thread như synchronized
+        volatile long generation;
+    }
+
+    private static byte[][] keysAndArgs(List<String> keys, Object[] args) {
+        byte[][] out = new byte[keys.size() + args.length][];
+        int i = 0;
+        for (String key : keys) {
+            out[i++] = bytes(key);
+        }
+        for (Object arg : args) {
+            out[i++] = (arg instanceof byte[] b) ? b : bytes(String.valueOf(arg));
+        }
+        return out;
+    }
+
+    /** byte[] -> String, recursively in multi-bulk replies; numbers and statuses unchanged. */
+    private static Object decode(Object raw) {
+        if (raw instanceof byte[] b) return new String(b, StandardCharsets.UTF_8);
+        if (raw instanceof List<?> list) {
+            List<Object> out = new ArrayList<>(list.size());
+            for (Object o : list) {
+                out.add(decode(o));
+            }
+            return out;
+        }
+        return raw;
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,233 @@
+package com.myorg.lsf.redis.script;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Testcontainers(disabledWithoutDocker = true)
+class RedisScriptRegistryTest {
+
+    @Container
+    private static final GenericContainer<?> REDIS = new GenericContainer<>(DockerImageName.parse("redis:7.2-alpine"))
+            .withExposedPorts(6379);
+
+    private static final LsfRedisScript<Long> INCR = LsfRedisScript.of("test.incr",
+            "return redis.call('INCRBY', KEYS[1], ARGV[1])", Long.class);
+    private static final LsfRedisScript<List> ECHO = LsfRedisScript.of("test.echo",
+            "return {KEYS[1], ARGV[1], 7}", List.class);
+
+    private static LettuceConnectionFactory connectionFactory;
+    private static StringRedisTemplate redisTemplate;
+
+    @BeforeAll
+    static void beforeAll() {
+        connectionFactory = new LettuceConnectionFactory(REDIS.getHost(), REDIS.getMappedPort(6379));
+        connectionFactory.afterPropertiesSet();
+        redisTemplate = new StringRedisTemplate(connectionFactory);
+        redisTemplate.afterPropertiesSet();
+    }
+
+    @AfterAll
+    static void afterAll() {
+        if (connectionFactory != null) {
+            connectionFactory.destroy();
+        }
+    }
+
+    @BeforeEach
+    void flush() {
+        redisTemplate.getConnectionFactory().getConnection().serverCommands().flushAll();
+        redisTemplate.getConnectionFactory().getConnection().scriptingCommands().scriptFlush();
+    }
+
+    @Test
+    void shouldPreloadScriptsAndCallThemBySha() throws Exception {
+        SimpleMeterRegistry meters = new SimpleMeterRegistry();
+        RedisScriptRegistry registry = new RedisScriptRegistry(redisTemplate, new MicrometerRedisScriptMetrics(meters));
+        registry.register(INCR, ECHO);
+        registry.afterSingletonsInstantiated();
+
+        List<Boolean> exists = redisTemplate.getConnectionFactory().getConnection().scriptingCommands()
+                .scriptExists(INCR.getSha1(), ECHO.getSha1());
+        assertEquals(List.of(true, true), exists);
+
+        long before = evalCalls();
+        assertEquals(5L, registry.execute(INCR, List.of("n"), 5));
+        assertEquals(List.of("k", "v", 7L), registry.execute(ECHO, List.of("k"), "v"));
+        assertEquals(before, evalCalls(), "no full-body EVAL once scripts are loaded");
+
+        assertEquals(1L, meters.get("lsf.redis.script").tag("script", "test.incr").timer().count());
+        assertEquals(1L, meters.get("lsf.redis.script").tag("script", "test.echo").timer().count());
+        registry.destroy();
+    }
+
+    @Test
+    void shouldRecoverFromNoScriptForSingleAndPipelinedCalls() {
+        SimpleMeterRegistry meters = new SimpleMeterRegistry();
+        RedisScriptRegistry registry = new RedisScriptRegistry(redisTemplate, new MicrometerRedisScriptMetrics(meters));
+        registry.register(INCR, ECHO);
+        registry.loadAll();
+
+        // Redis restart / failover: script cache is empty but the registry still believes it is loaded
+        redisTemplate.getConnectionFactory().getConnection().scriptingCommands().scriptFlush();
+        assertEquals(2L, registry.execute(INCR, List.of("n"), 2));
+
+        // chỉ INCR còn trong cache: lệnh INCR đã chạy không được gửi lại
+        redisTemplate.getConnectionFactory().getConnection().scriptingCommands().scriptFlush();
+        redisTemplate.getConnectionFactory().getConnection().scriptingCommands().scriptLoad(INCR.getScriptAsString().getBytes());
+        List<Object> out = registry.executePipelined(List.of(
+                new RedisScriptRegistry.Invocation(INCR, List.of("n"), new Object[]{"3"}),
+                new RedisScriptRegistry.Invocation(ECHO, List.of("a"), new Object[]{"b"}),
+                new RedisScriptRegistry.Invocation(INCR, List.of("m"), new Object[]{"1"})));
+        assertEquals(List.of(5L, List.of("a", "b", 7L), 1L), out);
+        assertEquals("5", redisTemplate.opsForValue().get("n"), "each call ran exactly once");
+        // pipeline đo dưới tag riêng, không cộng vào timer của từng script
+        assertEquals(1L, meters.get("lsf.redis.script").tag("script", "pipeline").timer().count());
+        assertEquals(1L, meters.get("lsf.redis.script").tag("script", "test.incr").timer().count());
+
+        assertEquals(1.0, meters.get("lsf.redis.script.noscript").tag("script", "test.incr").counter().count());
+        assertEquals(1.0, meters.get("lsf.redis.script.noscript").tag("script", "test.echo").counter().count());
+    }
+
+    @Test
+    void concurrentNoScriptShouldReloadOnlyTheMissingScriptOnce() throws Exception {
+        RedisScriptRegistry registry = new RedisScriptRegistry(redisTemplate);
+        registry.register(INCR, ECHO);
+        registry.loadAll();
+        redisTemplate.getConnectionFactory().getConnection().scriptingCommands().scriptFlush();
+        redisTemplate.getConnectionFactory().getConnection().serverCommands().resetConfigStats();
+
+        int callers = 16;
+        CountDownLatch go = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(callers);
+        try {
+            List<Future<Long>> results = new ArrayList<>();
+            for (int i = 0; i < callers; i++) {
+                results.add(pool.submit(() -> {
+                    go.await();
+                    return registry.execute(INCR, List.of("n"), 1);
+                }));
+            }
+            go.countDown();
+            for (Future<Long> r : results) r.get(10, TimeUnit.SECONDS);
+        } finally {
+            pool.shutdownNow();
+            registry.destroy();
+        }
+
+        assertEquals(String.valueOf(callers), redisTemplate.opsForValue().get("n"));
+        assertEquals(1, scriptCalls(), "one SCRIPT LOAD for the whole NOSCRIPT wave");
+        assertEquals(List.of(true, false), redisTemplate.getConnectionFactory().getConnection().scriptingCommands()
+                .scriptExists(INCR.getSha1(), ECHO.getSha1()), "scripts nobody called are not resent on the hot path");
+    }
+
+    @Test
+    void shouldNotLoadOnTheCallerThreadWhileRedisIsDown() throws Exception {
+        LettuceConnectionFactory down = new LettuceConnectionFactory("localhost", 1);
+        down.afterPropertiesSet();
+        StringRedisTemplate downTemplate = new StringRedisTemplate(down);
+        downTemplate.afterPropertiesSet();
+        Thread caller = Thread.currentThread();
+        AtomicInteger loadsOnCaller = new AtomicInteger();
+        RedisScriptRegistry registry = new RedisScriptRegistry(downTemplate) {
+            @Override
+            public boolean loadAll() {
+                if (Thread.currentThread() == caller) loadsOnCaller.incrementAndGet();
+                return super.loadAll();
+            }
+        };
+        registry.register(INCR, ECHO);
+        try {
+            registry.afterSingletonsInstantiated(); // lần preload lúc khởi động
+            for (int i = 0; i < 3; i++) {
+                assertThrows(RuntimeException.class, () -> registry.execute(INCR, List.of("n"), 1));
+                assertThrows(RuntimeException.class, () -> registry.executePipelined(List.of(
+                        new RedisScriptRegistry.Invocation(ECHO, List.of("a"), new Object[]{"b"}))));
+            }
+            assertEquals(1, loadsOnCaller.get(), "calls must not resend every script body while Redis is down");
+            assertFalse(registry.isLoaded());
+        } finally {
+            registry.destroy();
+            down.destroy();
+        }
+
+        // Redis lên lại: vòng load nền nạp script trên thread riêng, không cần lời gọi nào
+        List<String> loadThreads = new CopyOnWriteArrayList<>();
+        RedisScriptRegistry up = new RedisScriptRegistry(redisTemplate) {
+            @Override
+            public boolean loadAll() {
+                loadThreads.add(Thread.currentThread().getName());
+                return super.loadAll();
+            }
+        };
+        up.register(INCR, ECHO);
+        up.loadInBackground();
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (!up.isLoaded() && System.nanoTime() < deadline) Thread.sleep(10);
+        assertTrue(up.isLoaded());
+        assertEquals(List.of("lsf-redis-script-loader"), loadThreads);
+        assertEquals(List.of(true, true), redisTemplate.getConnectionFactory().getConnection().scriptingCommands()
+                .scriptExists(INCR.getSha1(), ECHO.getSha1()));
+        up.destroy();
+    }
+
+    @Test
+    void shouldNotRetryScriptErrors() {
+        LsfRedisScript<Long> failing = LsfRedisScript.of("test.fail", "return redis.error_reply('boom')", Long.class);
+        RedisScriptRegistry registry = new RedisScriptRegistry(redisTemplate);
+
+        RuntimeException e = assertThrows(RuntimeException.class, () -> registry.execute(failing, List.of("x")));
+        assertTrue(String.valueOf(e.getMessage()).contains("boom") || String.valueOf(e.getCause()).contains("boom"));
+        assertThrows(RuntimeException.class, () -> registry.executePipelined(List.of(
+                new RedisScriptRegistry.Invocation(INCR, List.of("n"), new Object[]{"1"}),
+                new RedisScriptRegistry.Invocation(failing, List.of("x"), new Object[0]))));
+    }
+
+    @Test
+    void shouldRejectAnotherBodyUnderTheSameName() {
+        RedisScriptRegistry registry = new RedisScriptRegistry(redisTemplate);
+        registry.register(INCR);
+        registry.register(LsfRedisScript.of("test.incr", INCR.getScriptAsString(), Long.class));
+        assertThrows(IllegalStateException.class,
+                () -> registry.register(LsfRedisScript.of("test.incr", "return 1", Long.class)));
+    }
+
+    private static long scriptCalls() {
+        return calls("cmdstat_script");
+    }
+
+    private static long evalCalls() {
+        return calls("cmdstat_eval");
+    }
+
+    private static long calls(String command) {
+        Properties stats = redisTemplate.getConnectionFactory().getConnection().serverCommands().info("commandstats");
+        String eval = stats.getProperty(command);
+        if (eval == null) return 0;
+        return Long.parseLong(eval.substring("calls=".length(), eval.indexOf(',')));
+    }
+}